@@ -95,6 +95,9 @@ public class FocalLQProcess extends AbstractStatisticsProcess {
         Double searchDistance = (Double) Params.getValue(input,
                 FocalLQProcessFactory.searchDistance, FocalLQProcessFactory.searchDistance.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input, FocalLQProcessFactory.parallelism,
+                FocalLQProcessFactory.parallelism.sample);
+
         // start process
         SimpleFeatureCollection resultFc = null;
         try {
@@ -102,6 +105,7 @@ public class FocalLQProcess extends AbstractStatisticsProcess {
             process.setSpatialConceptType(spatialConcept);
             process.setDistanceType(distanceMethod);
             process.setDistanceBand(searchDistance);
+            process.setParallelism(parallelism);
             resultFc = process.execute(inputFeatures, xField, yField);
         } catch (IOException e) {
             throw new ProcessException(e);
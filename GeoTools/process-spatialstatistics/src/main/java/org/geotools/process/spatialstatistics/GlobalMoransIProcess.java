@@ -116,6 +116,14 @@ public class GlobalMoransIProcess extends AbstractStatisticsProcess {
                 GlobalMoransIProcessFactory.selfNeighbors,
                 GlobalMoransIProcessFactory.selfNeighbors.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                GlobalMoransIProcessFactory.parallelism,
+                GlobalMoransIProcessFactory.parallelism.sample);
+
+        Integer permutations = (Integer) Params.getValue(input,
+                GlobalMoransIProcessFactory.permutations,
+                GlobalMoransIProcessFactory.permutations.sample);
+
         // start process
         String typeName = inputFeatures.getSchema().getTypeName();
 
@@ -124,6 +132,8 @@ public class GlobalMoransIProcess extends AbstractStatisticsProcess {
         process.setDistanceType(distanceMethod);
         process.setStandardizationType(standardization);
         process.setSelfNeighbors(selfNeighbors);
+        process.setParallelism(parallelism);
+        process.setPermutations(permutations);
 
         // searchDistance
         if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
@@ -155,6 +165,8 @@ public class GlobalMoransIProcess extends AbstractStatisticsProcess {
 
         String p_Value;
 
+        String pseudo_P_Value;
+
         String conceptualization;
 
         String distanceMethod;
@@ -172,6 +184,9 @@ public class GlobalMoransIProcess extends AbstractStatisticsProcess {
             this.variance = FormatUtils.format(ret.getZVariance());
             this.z_Score = FormatUtils.format(ret.getZScore());
             this.p_Value = FormatUtils.format(ret.getPValue());
+            if (!Double.isNaN(ret.getPseudoPValue())) {
+                this.pseudo_P_Value = FormatUtils.format(ret.getPseudoPValue());
+            }
             this.conceptualization = ret.getConceptualization().toString();
             this.distanceMethod = ret.getDistanceMethod().toString();
             this.rowStandardization = ret.getRowStandardization().toString();
@@ -234,6 +249,14 @@ public class GlobalMoransIProcess extends AbstractStatisticsProcess {
             this.p_Value = p_Value;
         }
 
+        public String getPseudo_P_Value() {
+            return pseudo_P_Value;
+        }
+
+        public void setPseudo_P_Value(String pseudo_P_Value) {
+            this.pseudo_P_Value = pseudo_P_Value;
+        }
+
         public String getConceptualization() {
             return conceptualization;
         }
@@ -279,6 +302,9 @@ public class GlobalMoransIProcess extends AbstractStatisticsProcess {
             sb.append("Variance: ").append(variance).append(separator);
             sb.append("z Score: ").append(z_Score).append(separator);
             sb.append("p Value: ").append(p_Value).append(separator);
+            if (pseudo_P_Value != null) {
+                sb.append("Pseudo p Value: ").append(pseudo_P_Value).append(separator);
+            }
             sb.append("Conceptualization: ").append(conceptualization).append(separator);
             sb.append("DistanceMethod: ").append(distanceMethod).append(separator);
             sb.append("RowStandardization: ").append(rowStandardization).append(separator);
@@ -117,6 +117,16 @@ public class GlobalMoransIProcessFactory extends SpatialStatisticsProcessFactory
             getResource("GlobalMoransI.selfNeighbors.description"), false, 0, 1, Boolean.FALSE,
             null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("GlobalMoransI.parallelism.title"),
+            getResource("GlobalMoransI.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
+    /** permutations */
+    public static final Parameter<Integer> permutations = new Parameter<Integer>("permutations",
+            Integer.class, getResource("GlobalMoransI.permutations.title"),
+            getResource("GlobalMoransI.permutations.description"), false, 0, 1, Integer.valueOf(0), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -127,6 +137,8 @@ public class GlobalMoransIProcessFactory extends SpatialStatisticsProcessFactory
         parameterInfo.put(standardization.key, standardization);
         parameterInfo.put(searchDistance.key, searchDistance);
         // parameterInfo.put(selfNeighbors.key, selfNeighbors);
+        parameterInfo.put(parallelism.key, parallelism);
+        parameterInfo.put(permutations.key, permutations);
         return parameterInfo;
     }
 
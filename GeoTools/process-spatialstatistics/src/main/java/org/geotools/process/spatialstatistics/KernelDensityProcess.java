@@ -94,6 +94,9 @@ public class KernelDensityProcess extends AbstractStatisticsProcess {
                 .getValue(input, KernelDensityProcessFactory.cellSize, 0.0);
         ReferencedEnvelope extent = (ReferencedEnvelope) Params.getValue(input,
                 KernelDensityProcessFactory.extent, null);
+        Integer parallelism = (Integer) Params.getValue(input,
+                KernelDensityProcessFactory.parallelism,
+                KernelDensityProcessFactory.parallelism.sample);
 
         // start process
         ReferencedEnvelope boundingBox = extent == null ? inputFeatures.getBounds() : extent;
@@ -111,6 +114,7 @@ public class KernelDensityProcess extends AbstractStatisticsProcess {
 
         GridCoverage2D resultGc = null;
         RasterKernelDensityOperation process = new RasterKernelDensityOperation();
+        process.setParallelism(parallelism);
         process.setExtentAndCellSize(boundingBox, cellSize, cellSize);
         process.setKernelType(kernelType);
         resultGc = process.execute(inputFeatures, populationField, searchRadius);
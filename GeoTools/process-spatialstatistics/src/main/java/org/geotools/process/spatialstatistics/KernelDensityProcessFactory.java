@@ -107,6 +107,12 @@ public class KernelDensityProcessFactory extends SpatialStatisticsProcessFactory
             "extent", ReferencedEnvelope.class, getResource("KernelDensity.extent.title"),
             getResource("KernelDensity.extent.description"), false, 0, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("KernelDensity.parallelism.title"),
+            getResource("KernelDensity.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -116,6 +122,7 @@ public class KernelDensityProcessFactory extends SpatialStatisticsProcessFactory
         parameterInfo.put(searchRadius.key, searchRadius);
         parameterInfo.put(cellSize.key, cellSize);
         parameterInfo.put(extent.key, extent);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -93,6 +93,9 @@ public class LineDensityProcess extends AbstractStatisticsProcess {
                 LineDensityProcessFactory.cellSize.sample);
         ReferencedEnvelope extent = (ReferencedEnvelope) Params.getValue(input,
                 LineDensityProcessFactory.extent, null);
+        Integer parallelism = (Integer) Params.getValue(input,
+                LineDensityProcessFactory.parallelism,
+                LineDensityProcessFactory.parallelism.sample);
 
         // start process
         ReferencedEnvelope boundingBox = extent == null ? inputFeatures.getBounds() : extent;
@@ -111,6 +114,7 @@ public class LineDensityProcess extends AbstractStatisticsProcess {
 
         GridCoverage2D resultGc = null;
         RasterLineDensityOperation process = new RasterLineDensityOperation();
+        process.setParallelism(parallelism);
         process.setExtentAndCellSize(boundingBox, cellSize, cellSize);
         resultGc = process.execute(inputFeatures, populationField, searchRadius);
         // end process
@@ -99,6 +99,12 @@ public class LineDensityProcessFactory extends SpatialStatisticsProcessFactory {
             "extent", ReferencedEnvelope.class, getResource("LineDensity.extent.title"),
             getResource("LineDensity.extent.description"), false, 0, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("LineDensity.parallelism.title"),
+            getResource("LineDensity.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -107,6 +113,7 @@ public class LineDensityProcessFactory extends SpatialStatisticsProcessFactory {
         parameterInfo.put(searchRadius.key, searchRadius);
         parameterInfo.put(cellSize.key, cellSize);
         parameterInfo.put(extent.key, extent);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -115,6 +115,14 @@ public class LocalGStatisticsProcess extends AbstractStatisticsProcess {
                 LocalGStatisticsProcessFactory.selfNeighbors,
                 LocalGStatisticsProcessFactory.selfNeighbors.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                LocalGStatisticsProcessFactory.parallelism,
+                LocalGStatisticsProcessFactory.parallelism.sample);
+
+        Integer permutations = (Integer) Params.getValue(input,
+                LocalGStatisticsProcessFactory.permutations,
+                LocalGStatisticsProcessFactory.permutations.sample);
+
         // start process
         SimpleFeatureCollection resultFc = null;
 
@@ -123,6 +131,8 @@ public class LocalGStatisticsProcess extends AbstractStatisticsProcess {
         process.setDistanceType(distanceMethod);
         process.setStandardizationType(standardization);
         process.setSelfNeighbors(selfNeighbors);
+        process.setParallelism(parallelism);
+        process.setPermutations(permutations);
 
         // searchDistance
         if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
@@ -116,6 +116,17 @@ public class LocalGStatisticsProcessFactory extends SpatialStatisticsProcessFact
             getResource("LocalGStatistics.selfNeighbors.description"), false, 0, 1, Boolean.TRUE,
             null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("LocalGStatistics.parallelism.title"),
+            getResource("LocalGStatistics.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
+    /** permutations */
+    public static final Parameter<Integer> permutations = new Parameter<Integer>("permutations",
+            Integer.class, getResource("LocalGStatistics.permutations.title"),
+            getResource("LocalGStatistics.permutations.description"), false, 0, 1, Integer.valueOf(0), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -126,6 +137,8 @@ public class LocalGStatisticsProcessFactory extends SpatialStatisticsProcessFact
         parameterInfo.put(standardization.key, standardization);
         parameterInfo.put(searchDistance.key, searchDistance);
         // parameterInfo.put(selfNeighbors.key, selfNeighbors);
+        parameterInfo.put(parallelism.key, parallelism);
+        parameterInfo.put(permutations.key, permutations);
         return parameterInfo;
     }
 
@@ -115,6 +115,12 @@ public class LocalGearysCProcessFactory extends SpatialStatisticsProcessFactory
             Boolean.class, getResource("LocalGearysC.selfNeighbors.title"),
             getResource("LocalGearysC.selfNeighbors.description"), false, 0, 1, Boolean.FALSE, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("LocalGearysC.parallelism.title"),
+            getResource("LocalGearysC.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -125,6 +131,7 @@ public class LocalGearysCProcessFactory extends SpatialStatisticsProcessFactory
         parameterInfo.put(standardization.key, standardization);
         parameterInfo.put(searchDistance.key, searchDistance);
         // parameterInfo.put(selfNeighbors.key, selfNeighbors);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
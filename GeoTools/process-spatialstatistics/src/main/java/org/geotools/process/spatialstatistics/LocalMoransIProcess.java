@@ -115,6 +115,14 @@ public class LocalMoransIProcess extends AbstractStatisticsProcess {
                 LocalMoransIProcessFactory.selfNeighbors,
                 LocalMoransIProcessFactory.selfNeighbors.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                LocalMoransIProcessFactory.parallelism,
+                LocalMoransIProcessFactory.parallelism.sample);
+
+        Integer permutations = (Integer) Params.getValue(input,
+                LocalMoransIProcessFactory.permutations,
+                LocalMoransIProcessFactory.permutations.sample);
+
         // start process
         SimpleFeatureCollection resultFc = null;
 
@@ -123,6 +131,8 @@ public class LocalMoransIProcess extends AbstractStatisticsProcess {
         process.setDistanceType(distanceMethod);
         process.setStandardizationType(standardization);
         process.setSelfNeighbors(selfNeighbors);
+        process.setParallelism(parallelism);
+        process.setPermutations(permutations);
 
         // searchDistance
         if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
@@ -94,6 +94,9 @@ public class PointDensityProcess extends AbstractStatisticsProcess {
                 PointDensityProcessFactory.cellSize.sample);
         ReferencedEnvelope extent = (ReferencedEnvelope) Params.getValue(input,
                 PointDensityProcessFactory.extent, null);
+        Integer parallelism = (Integer) Params.getValue(input,
+                PointDensityProcessFactory.parallelism,
+                PointDensityProcessFactory.parallelism.sample);
 
         // start process
         ReferencedEnvelope boundingBox = extent == null ? inputFeatures.getBounds() : extent;
@@ -129,6 +132,7 @@ public class PointDensityProcess extends AbstractStatisticsProcess {
 
         GridCoverage2D resultGc = null;
         RasterPointDensityOperation process = new RasterPointDensityOperation();
+        process.setParallelism(parallelism);
         process.setExtentAndCellSize(boundingBox, cellSize, cellSize);
         process.setNeighbor(rnh);
 
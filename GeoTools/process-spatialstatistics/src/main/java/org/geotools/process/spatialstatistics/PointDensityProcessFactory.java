@@ -99,6 +99,12 @@ public class PointDensityProcessFactory extends SpatialStatisticsProcessFactory
             "extent", ReferencedEnvelope.class, getResource("PointDensity.extent.title"),
             getResource("PointDensity.extent.description"), false, 0, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("PointDensity.parallelism.title"),
+            getResource("PointDensity.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -107,6 +113,7 @@ public class PointDensityProcessFactory extends SpatialStatisticsProcessFactory
         parameterInfo.put(neighborhood.key, neighborhood);
         parameterInfo.put(cellSize.key, cellSize);
         parameterInfo.put(extent.key, extent);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -75,8 +75,13 @@ public class RasterAspectProcess extends AbstractStatisticsProcess {
             throw new NullPointerException("inputCoverage parameter required");
         }
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                RasterAspectProcessFactory.parallelism,
+                RasterAspectProcessFactory.parallelism.sample);
+
         // start process
         RasterAspectOperation process = new RasterAspectOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage);
         // end process
 
@@ -70,10 +70,17 @@ public class RasterAspectProcessFactory extends SpatialStatisticsProcessFactory
             "inputCoverage", GridCoverage2D.class, getResource("RasterAspect.inputCoverage.title"),
             getResource("RasterAspect.inputCoverage.description"), true, 1, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterAspect.parallelism.title"),
+            getResource("RasterAspect.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputCoverage.key, inputCoverage);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -84,8 +84,13 @@ public class RasterCurvatureProcess extends AbstractStatisticsProcess {
         Double zFactor = (Double) Params.getValue(input, RasterCurvatureProcessFactory.zFactor,
                 RasterCurvatureProcessFactory.zFactor.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                RasterCurvatureProcessFactory.parallelism,
+                RasterCurvatureProcessFactory.parallelism.sample);
+
         // start process
         RasterCurvatureOperation process = new RasterCurvatureOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage, zFactor);
         // end process
 
@@ -77,11 +77,18 @@ public class RasterCurvatureProcessFactory extends SpatialStatisticsProcessFacto
             getResource("RasterCurvature.zFactor.description"), false, 0, 1, Double.valueOf(1.0),
             null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterCurvature.parallelism.title"),
+            getResource("RasterCurvature.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputCoverage.key, inputCoverage);
         parameterInfo.put(zFactor.key, zFactor);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
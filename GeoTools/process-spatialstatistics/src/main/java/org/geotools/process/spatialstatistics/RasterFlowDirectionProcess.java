@@ -74,8 +74,13 @@ public class RasterFlowDirectionProcess extends AbstractStatisticsProcess {
             throw new NullPointerException("inputCoverage parameter required");
         }
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                RasterFlowDirectionProcessFactory.parallelism,
+                RasterFlowDirectionProcessFactory.parallelism.sample);
+
         // start process
         RasterFlowDirectionOperation process = new RasterFlowDirectionOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage);
         // end process
 
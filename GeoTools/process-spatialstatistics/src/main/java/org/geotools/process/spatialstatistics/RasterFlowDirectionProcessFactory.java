@@ -70,10 +70,17 @@ public class RasterFlowDirectionProcessFactory extends SpatialStatisticsProcessF
             "inputCoverage", GridCoverage2D.class, getResource("RasterFlowDirection.inputCoverage.title"),
             getResource("RasterFlowDirection.inputCoverage.description"), true, 1, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterFlowDirection.parallelism.title"),
+            getResource("RasterFlowDirection.parallelism.description"), false, 0, 1,
+            Integer.valueOf(1), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputCoverage.key, inputCoverage);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
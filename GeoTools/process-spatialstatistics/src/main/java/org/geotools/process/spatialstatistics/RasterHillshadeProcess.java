@@ -87,8 +87,13 @@ public class RasterHillshadeProcess extends AbstractStatisticsProcess {
         Double zFactor = (Double) Params.getValue(input, RasterHillshadeProcessFactory.zFactor,
                 RasterHillshadeProcessFactory.zFactor.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                RasterHillshadeProcessFactory.parallelism,
+                RasterHillshadeProcessFactory.parallelism.sample);
+
         // start process
         RasterHillshadeOperation process = new RasterHillshadeOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage, azimuth, altitude, zFactor);
         // end process
 
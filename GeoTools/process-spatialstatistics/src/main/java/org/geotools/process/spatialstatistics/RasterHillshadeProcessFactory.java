@@ -88,6 +88,12 @@ public class RasterHillshadeProcessFactory extends SpatialStatisticsProcessFacto
             getResource("RasterSlope.zFactor.title"),
             getResource("RasterSlope.zFactor.description"), false, 0, 1, Double.valueOf(1.0), null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterHillshade.parallelism.title"),
+            getResource("RasterHillshade.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -95,6 +101,7 @@ public class RasterHillshadeProcessFactory extends SpatialStatisticsProcessFacto
         parameterInfo.put(azimuth.key, azimuth);
         parameterInfo.put(altitude.key, altitude);
         parameterInfo.put(zFactor.key, zFactor);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -75,8 +75,13 @@ public class RasterRoughnessProcess extends AbstractStatisticsProcess {
             throw new NullPointerException("inputCoverage parameter required");
         }
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                RasterRoughnessProcessFactory.parallelism,
+                RasterRoughnessProcessFactory.parallelism.sample);
+
         // start process
         RasterRoughnessOperation process = new RasterRoughnessOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage);
         // end process
 
@@ -71,10 +71,17 @@ public class RasterRoughnessProcessFactory extends SpatialStatisticsProcessFacto
             getResource("RasterRoughness.inputCoverage.title"),
             getResource("RasterRoughness.inputCoverage.description"), true, 1, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterRoughness.parallelism.title"),
+            getResource("RasterRoughness.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputCoverage.key, inputCoverage);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -84,8 +84,13 @@ public class RasterSlopeProcess extends AbstractStatisticsProcess {
         Double zFactor = (Double) Params.getValue(input, RasterSlopeProcessFactory.zFactor,
                 RasterSlopeProcessFactory.zFactor.sample);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                RasterSlopeProcessFactory.parallelism,
+                RasterSlopeProcessFactory.parallelism.sample);
+
         // start process
         RasterSlopeOperation process = new RasterSlopeOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage, slopeType, zFactor);
         // end process
 
@@ -81,12 +81,19 @@ public class RasterSlopeProcessFactory extends SpatialStatisticsProcessFactory {
             getResource("RasterSlope.zFactor.title"),
             getResource("RasterSlope.zFactor.description"), false, 0, 1, Double.valueOf(1.0), null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterSlope.parallelism.title"),
+            getResource("RasterSlope.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputCoverage.key, inputCoverage);
         parameterInfo.put(slopeType.key, slopeType);
         parameterInfo.put(zFactor.key, zFactor);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
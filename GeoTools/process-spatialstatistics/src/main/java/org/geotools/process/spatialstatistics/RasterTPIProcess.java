@@ -75,8 +75,12 @@ public class RasterTPIProcess extends AbstractStatisticsProcess {
             throw new NullPointerException("inputCoverage parameter required");
         }
 
+        Integer parallelism = (Integer) Params.getValue(input, RasterTPIProcessFactory.parallelism,
+                RasterTPIProcessFactory.parallelism.sample);
+
         // start process
         RasterTPIOperation process = new RasterTPIOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage);
         // end process
 
@@ -70,10 +70,17 @@ public class RasterTPIProcessFactory extends SpatialStatisticsProcessFactory {
             "inputCoverage", GridCoverage2D.class, getResource("RasterTPI.inputCoverage.title"),
             getResource("RasterTPI.inputCoverage.description"), true, 1, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("RasterTPI.parallelism.title"),
+            getResource("RasterTPI.parallelism.description"), false, 0, 1, Integer.valueOf(1),
+            null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputCoverage.key, inputCoverage);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
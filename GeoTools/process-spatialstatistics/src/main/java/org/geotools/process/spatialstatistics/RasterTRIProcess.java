@@ -76,8 +76,12 @@ public class RasterTRIProcess extends AbstractStatisticsProcess {
             throw new NullPointerException("inputCoverage parameter required");
         }
 
+        Integer parallelism = (Integer) Params.getValue(input, RasterTRIProcessFactory.parallelism,
+                RasterTRIProcessFactory.parallelism.sample);
+
         // start process
         RasterTRIOperation process = new RasterTRIOperation();
+        process.setParallelism(parallelism);
         GridCoverage2D extractedGC = process.execute(inputCoverage);
         // end process
 
@@ -96,6 +96,10 @@ public class TINInterpolationProcess extends AbstractStatisticsProcess {
         ReferencedEnvelope extent = (ReferencedEnvelope) Params.getValue(input,
                 TINInterpolationProcessFactory.extent, null);
 
+        Integer parallelism = (Integer) Params.getValue(input,
+                TINInterpolationProcessFactory.parallelism,
+                TINInterpolationProcessFactory.parallelism.sample);
+
         // start process
         ReferencedEnvelope boundingBox = extent == null ? inputFeatures.getBounds() : extent;
 
@@ -108,6 +112,7 @@ public class TINInterpolationProcess extends AbstractStatisticsProcess {
         GridCoverage2D resultGc = null;
         RasterInterpolationTINOperation process = new RasterInterpolationTINOperation();
         process.setExtentAndCellSize(boundingBox, cellSize, cellSize);
+        process.setParallelism(parallelism);
         resultGc = process.execute(inputFeatures, inputField, pixelType);
         // end process
 
@@ -49,7 +49,7 @@ public class TINInterpolationProcessFactory extends SpatialStatisticsProcessFact
 
     /*
      * TINInterpolation(SimpleFeatureCollection inputFeatures, Expression inputField, RasterPixelType pixelType, Double cellSize, ReferencedEnvelope
-     * extent): GridCoverage2D
+     * extent, Integer parallelism): GridCoverage2D
      */
 
     public TINInterpolationProcessFactory() {
@@ -101,6 +101,12 @@ public class TINInterpolationProcessFactory extends SpatialStatisticsProcessFact
             "extent", ReferencedEnvelope.class, getResource("TINInterpolation.extent.title"),
             getResource("TINInterpolation.extent.description"), false, 0, 1, null, null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("TINInterpolation.parallelism.title"),
+            getResource("TINInterpolation.parallelism.description"), false, 0, 1,
+            Integer.valueOf(1), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -110,6 +116,7 @@ public class TINInterpolationProcessFactory extends SpatialStatisticsProcessFact
 
         parameterInfo.put(cellSize.key, cellSize);
         parameterInfo.put(extent.key, extent);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
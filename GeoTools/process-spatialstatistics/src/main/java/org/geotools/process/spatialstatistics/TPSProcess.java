@@ -92,6 +92,10 @@ public class TPSProcess extends AbstractStatisticsProcess {
                 TPSProcessFactory.cellSize.sample);
         ReferencedEnvelope extent = (ReferencedEnvelope) Params.getValue(input,
                 TPSProcessFactory.extent, null);
+        Integer neighbors = (Integer) Params.getValue(input, TPSProcessFactory.neighbors,
+                TPSProcessFactory.neighbors.sample);
+        Integer parallelism = (Integer) Params.getValue(input, TPSProcessFactory.parallelism,
+                TPSProcessFactory.parallelism.sample);
 
         // start process
         ReferencedEnvelope boundingBox = inputFeatures.getBounds();
@@ -108,6 +112,8 @@ public class TPSProcess extends AbstractStatisticsProcess {
         GridCoverage2D resultGc = null;
         RasterInterpolationTPSOperation process = new RasterInterpolationTPSOperation();
         process.setExtentAndCellSize(boundingBox, cellSize, cellSize);
+        process.setNeighbors(neighbors);
+        process.setParallelism(parallelism);
         resultGc = process.execute(inputFeatures, inputField);
         // end process
 
@@ -47,7 +47,8 @@ public class TPSProcessFactory extends SpatialStatisticsProcessFactory {
     private static final String PROCESS_NAME = "TPS";
 
     /*
-     * TPS(SimpleFeatureCollection inputFeatures, String inputField, Double cellSize, ReferencedEnvelope extent): GridCoverage2D
+     * TPS(SimpleFeatureCollection inputFeatures, String inputField, Double cellSize, ReferencedEnvelope extent, Integer neighbors, Integer
+     * parallelism): GridCoverage2D
      */
 
     public TPSProcessFactory() {
@@ -91,6 +92,16 @@ public class TPSProcessFactory extends SpatialStatisticsProcessFactory {
             "extent", ReferencedEnvelope.class, getResource("TPS.extent.title"),
             getResource("TPS.extent.description"), false, 0, 1, null, null);
 
+    /** neighbors */
+    public static final Parameter<Integer> neighbors = new Parameter<Integer>("neighbors",
+            Integer.class, getResource("TPS.neighbors.title"),
+            getResource("TPS.neighbors.description"), false, 0, 1, Integer.valueOf(0), null);
+
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("TPS.parallelism.title"),
+            getResource("TPS.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -99,6 +110,8 @@ public class TPSProcessFactory extends SpatialStatisticsProcessFactory {
 
         parameterInfo.put(cellSize.key, cellSize);
         parameterInfo.put(extent.key, extent);
+        parameterInfo.put(neighbors.key, neighbors);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -20,6 +20,8 @@ import java.io.File;
 import java.util.logging.Logger;
 
 import org.geotools.process.spatialstatistics.core.DistanceFactory;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.WeightMatrixBuilder;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -53,6 +55,14 @@ public abstract class AbstractStatisticsOperation extends GeneralOperation {
 
     private File spatialWeightsFile = null;
 
+    // 1 = single thread, 0 or negative = all available processors
+    private int parallelism = 1;
+
+    // 0 = analytical inference only
+    private int permutations = 0;
+
+    private long seed = 0L;
+
     protected final DistanceFactory factory = DistanceFactory.newInstance();
 
     public WeightMatrixBuilder getSwMatrix() {
@@ -84,6 +94,10 @@ public abstract class AbstractStatisticsOperation extends GeneralOperation {
         return standardizationType;
     }
 
+    /**
+     * Sets a precomputed spatial weights file (swb, swm, gal, gwt) used instead of building the spatial weights. This is not a process input,
+     * so a WPS request cannot name a path on the server.
+     */
     public void setSpatialWeightsFile(File spatialWeightsFile) {
         this.spatialWeightsFile = spatialWeightsFile;
     }
@@ -114,4 +128,49 @@ public abstract class AbstractStatisticsOperation extends GeneralOperation {
     public void setSelfNeighbors(boolean selfNeighbors) {
         this.selfNeighbors = selfNeighbors;
     }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used by the per-feature calculation. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getPermutations() {
+        return permutations;
+    }
+
+    /**
+     * Sets the number of random permutations for the pseudo p-value. 0(default) = analytical inference only.
+     */
+    public void setPermutations(int permutations) {
+        this.permutations = permutations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    protected PermutationInference createPermutationInference() {
+        PermutationInference inference = new PermutationInference(swMatrix, selfNeighbors);
+        inference.setPermutations(permutations);
+        inference.setSeed(seed);
+        inference.setParallelism(parallelism);
+        return inference;
+    }
+
+    /**
+     * Splits the feature index range [0, featureCount) across the threads. The task must write only to the indexes of its own range.
+     */
+    protected void executeRange(int featureCount, RangeTask task) {
+        ParallelRange.execute(parallelism, featureCount, task);
+    }
 }
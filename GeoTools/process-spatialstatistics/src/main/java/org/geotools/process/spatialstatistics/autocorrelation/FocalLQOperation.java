@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.api.feature.simple.SimpleFeature;
@@ -26,6 +27,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.SpatialEvent;
 import org.geotools.process.spatialstatistics.core.WeightMatrixBuilder;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
@@ -84,9 +86,11 @@ public class FocalLQOperation extends AbstractStatisticsOperation {
         swMatrix = new WeightMatrixBuilder(getSpatialConceptType(), getStandardizationType());
         swMatrix.setDistanceMethod(getDistanceType());
         swMatrix.setDistanceBandWidth(getDistanceBand());
+        swMatrix.setSpatialWeightsFile(getSpatialWeightsFile());
         swMatrix.buildWeightMatrix(inputFeatures, xField, yField);
 
-        int featureCount = swMatrix.getEvents().size();
+        List<SpatialEvent> events = swMatrix.getEvents();
+        int featureCount = events.size();
 
         // Calculate a spatial LQ for each feature in the data set.
         globalLQ = 0.0;
@@ -98,36 +102,43 @@ public class FocalLQOperation extends AbstractStatisticsOperation {
         final double dXY = swMatrix.sumX / swMatrix.sumY;
 
         // Calculate LQ for each feature i.
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent source = swMatrix.getEvents().get(i);
-
-            // Initialize working variables.
-            double sumX = 0.0;
-            double sumY = 0.0;
-
-            // Look for local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent target = swMatrix.getEvents().get(j);
-                double wij = swMatrix.getWeight(source, target);
-                if (wij == 0) {
-                    continue;
+        executeRange(featureCount, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    SpatialEvent source = events.get(i);
+
+                    // Initialize working variables.
+                    double sumX = 0.0;
+                    double sumY = 0.0;
+
+                    // Look for local neighbors
+                    for (int k = swMatrix.getRowStart(i); k < swMatrix.getRowEnd(i); k++) {
+                        SpatialEvent target = events.get(swMatrix.getNeighbor(k));
+                        double wij = swMatrix.getNeighborWeight(source, k);
+                        if (wij == 0) {
+                            continue;
+                        }
+
+                        sumX += target.xVal;
+                        sumY += target.yVal;
+                    }
+
+                    double dxy = sumY == 0.0 ? 0.0 : sumX / sumY; // y / x
+                    double tmpval2 = sumX * dXY; // x * Y/X
+                    double tmpval4 = 0.0;
+                    if (source.xVal != 0.0) {
+                        tmpval4 = source.yVal / source.xVal; // y / x
+                    }
+
+                    localLQ[i] = validateDouble(tmpval4 / dXY);
+                    lqD[i] = validateDouble(dxy / dXY);
+                    lqZ[i] = validateDouble((sumY - tmpval2) / Math.sqrt(tmpval2));
                 }
-
-                sumX += target.xVal;
-                sumY += target.yVal;
-            }
-
-            double dxy = sumY == 0.0 ? 0.0 : sumX / sumY; // y / x
-            double tmpval2 = sumX * dXY; // x * Y/X
-            double tmpval4 = 0.0;
-            if (source.xVal != 0.0) {
-                tmpval4 = source.yVal / source.xVal; // y / x
             }
+        });
 
-            localLQ[i] = validateDouble(tmpval4 / dXY);
-            lqD[i] = validateDouble(dxy / dXY);
-            lqZ[i] = validateDouble((sumY - tmpval2) / Math.sqrt(tmpval2));
-
+        for (int i = 0; i < featureCount; i++) {
             globalLQ += Math.abs(lqD[i]);
         }
 
@@ -50,6 +50,7 @@ public class GlobalMoranIStatisticOperation extends AbstractStatisticsOperation
         swMatrix = new WeightMatrixBuilder(getSpatialConceptType(), getStandardizationType());
         swMatrix.setDistanceMethod(getDistanceType());
         swMatrix.setDistanceBandWidth(getDistanceBand());
+        swMatrix.setSpatialWeightsFile(getSpatialWeightsFile());
         swMatrix.setSelfNeighbors(isSelfNeighbors());
         swMatrix.buildWeightMatrix(inputFeatures, inputField);
 
@@ -128,6 +129,15 @@ public class GlobalMoranIStatisticOperation extends AbstractStatisticsOperation
         moransI.setRowStandardization(getStandardizationType());
         moransI.setDistanceThreshold(swMatrix.getDistanceBandWidth());
 
+        // random permutation inference
+        if (getPermutations() > 0) {
+            double[] zValues = new double[swMatrix.getEvents().size()];
+            for (int i = 0; i < zValues.length; i++) {
+                zValues[i] = swMatrix.getEvents().get(i).xVal - meanX;
+            }
+            moransI.setPseudoPValue(createPermutationInference().globalPseudoPValue(zValues));
+        }
+
         return moransI;
     }
 
@@ -147,6 +157,8 @@ public class GlobalMoranIStatisticOperation extends AbstractStatisticsOperation
 
         double distanceThreshold = 0.0;
 
+        double pseudoPValue = Double.NaN;
+
         public MoransI() {
         }
 
@@ -193,6 +205,17 @@ public class GlobalMoranIStatisticOperation extends AbstractStatisticsOperation
             return SSUtils.zProb(this.getZScore(), StatEnum.BOTH);
         }
 
+        /**
+         * Pseudo p-value of the random permutation test, NaN if permutations were not performed.
+         */
+        public double getPseudoPValue() {
+            return pseudoPValue;
+        }
+
+        public void setPseudoPValue(double pseudoPValue) {
+            this.pseudoPValue = pseudoPValue;
+        }
+
         public SpatialConcept getConceptualization() {
             return conceptualization;
         }
@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,8 +25,10 @@ import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.autocorrelation.PermutationInference.LocalStatistic;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
 import org.geotools.process.spatialstatistics.core.SpatialEvent;
@@ -52,6 +55,8 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
 
     private double[] dcVar;
 
+    private double[] dcPseudoP;
+
     public LocalGStatisticOperation() {
         // Default Setting
         this.setDistanceType(DistanceMethod.Euclidean);
@@ -60,15 +65,21 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
         this.setSelfNeighbors(true);
     }
 
+    public double[] getPseudoPValue() {
+        return dcPseudoP;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures, String inputField)
             throws IOException {
         swMatrix = new WeightMatrixBuilder(getSpatialConceptType(), getStandardizationType());
         swMatrix.setDistanceMethod(getDistanceType());
         swMatrix.setDistanceBandWidth(getDistanceBand());
+        swMatrix.setSpatialWeightsFile(getSpatialWeightsFile());
         swMatrix.setSelfNeighbors(isSelfNeighbors());
         swMatrix.buildWeightMatrix(inputFeatures, inputField);
 
-        int featureCount = swMatrix.getEvents().size();
+        List<SpatialEvent> events = swMatrix.getEvents();
+        int featureCount = events.size();
         if (featureCount < 3) {
             LOGGER.warning("inputFeatures's feature count < " + featureCount);
             return null;
@@ -89,45 +100,67 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
         dcVar = new double[featureCount];
 
         // calculate Gi* for each feature i.
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent source = swMatrix.getEvents().get(i);
-
-            // initialize working variables.
-            double localSum = 0.0;
-            double wijSum = 0.0;
-            double wij2Sum = 0.0;
-
-            // look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent target = swMatrix.getEvents().get(j);
-                if (!isSelfNeighbors() && source.id == target.id) {
-                    continue;
+        executeRange(featureCount, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    SpatialEvent source = events.get(i);
+
+                    // initialize working variables.
+                    double localSum = 0.0;
+                    double wijSum = 0.0;
+                    double wij2Sum = 0.0;
+
+                    // look for i's local neighbors
+                    for (int k = swMatrix.getRowStart(i); k < swMatrix.getRowEnd(i); k++) {
+                        SpatialEvent target = events.get(swMatrix.getNeighbor(k));
+                        if (!isSelfNeighbors() && source.id == target.id) {
+                            continue;
+                        }
+
+                        // calculate the weight (wij)
+                        double wij = swMatrix.getNeighborWeight(source, k);
+                        wij = swMatrix.standardizeWeight(source, wij);
+                        if (wij == 0) {
+                            continue;
+                        }
+
+                        localSum += wij * target.xVal;
+                        wijSum += wij;
+                        wij2Sum += Math.pow(wij, 2.0);
+                    }
+
+                    dcMean[i] = wijSum / (n * (n - 1.0));
+                    dcVar[i] = Math.pow((wij2Sum / n) - Math.pow(dcMean[i], 2), 0.5);
+
+                    // calculate Gi / Gi*
+                    dcGiZScore[i] = Double.NaN;
+                    try {
+                        double wijSum2 = Math.pow(wijSum, 2.0);
+                        double b = (varX * Math.pow((((n * wij2Sum) - wijSum2) / (n - 1.0)), 0.5));
+                        dcGiZScore[i] = (localSum - (wijSum * meanX)) / b;
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, e.getMessage(), e);
+                    }
                 }
-
-                // calculate the weight (wij)
-                double wij = swMatrix.getWeight(source, target);
-                wij = swMatrix.standardizeWeight(source, wij);
-                if (wij == 0) {
-                    continue;
-                }
-
-                localSum += wij * target.xVal;
-                wijSum += wij;
-                wij2Sum += Math.pow(wij, 2.0);
             }
-
-            dcMean[i] = wijSum / (n * (n - 1.0));
-            dcVar[i] = Math.pow((wij2Sum / n) - Math.pow(dcMean[i], 2), 0.5);
-
-            // calculate Gi / Gi*
-            dcGiZScore[i] = Double.NaN;
-            try {
-                double wijSum2 = Math.pow(wijSum, 2.0);
-                double b = (varX * Math.pow((((n * wij2Sum) - wijSum2) / (n - 1.0)), 0.5));
-                dcGiZScore[i] = (localSum - (wijSum * meanX)) / b;
-            } catch (Exception e) {
-                LOGGER.log(Level.FINE, e.getMessage(), e);
+        });
+
+        // conditional permutation inference, Gi* z-score increases with the local sum
+        dcPseudoP = null;
+        if (getPermutations() > 0) {
+            double[] values = new double[featureCount];
+            for (int i = 0; i < featureCount; i++) {
+                values[i] = events.get(i).xVal;
             }
+
+            PermutationInference inference = createPermutationInference();
+            dcPseudoP = inference.localPseudoPValues(values, new LocalStatistic() {
+                @Override
+                public double evaluate(int i, double lag) {
+                    return lag;
+                }
+            });
         }
 
         return buildFeatureCollection(inputFeatures);
@@ -143,6 +176,9 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
         for (int k = 0; k < fieldList.length; k++) {
             featureType = FeatureTypes.add(featureType, fieldList[k], Double.class);
         }
+        if (dcPseudoP != null) {
+            featureType = FeatureTypes.add(featureType, "GiPseudoP", Double.class);
+        }
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(featureType);
@@ -174,6 +210,10 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
                 newFeature.setAttribute(fieldList[1], FormatUtils.round(pValue));
                 newFeature.setAttribute(fieldList[2], FormatUtils.round(dcMean[idx]));
                 newFeature.setAttribute(fieldList[3], FormatUtils.round(dcVar[idx]));
+                if (dcPseudoP != null) {
+                    double pseudoP = Double.isNaN(dcPseudoP[idx]) ? 1.0 : dcPseudoP[idx];
+                    newFeature.setAttribute("GiPseudoP", FormatUtils.round(pseudoP));
+                }
 
                 featureWriter.write(newFeature);
                 idx++;
@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,11 +72,13 @@ public class LocalLeesLOperation extends AbstractStatisticsOperation {
         swMatrix = new WeightMatrixBuilder(getSpatialConceptType(), getStandardizationType());
         swMatrix.setDistanceMethod(getDistanceType());
         swMatrix.setDistanceBandWidth(getDistanceBand());
+        swMatrix.setSpatialWeightsFile(getSpatialWeightsFile());
         swMatrix.setSelfNeighbors(isSelfNeighbors());
         swMatrix.buildWeightMatrix(inputFeatures, xField, yField);
 
         // calculate the mean and standard deviation for this data set.
-        int featureCount = swMatrix.getEvents().size();
+        List<SpatialEvent> events = swMatrix.getEvents();
+        int featureCount = events.size();
         double n = swMatrix.getEvents().size();
         double meanX = swMatrix.sumX / n;
         double meanY = swMatrix.sumY / n;
@@ -87,13 +90,7 @@ public class LocalLeesLOperation extends AbstractStatisticsOperation {
         for (SpatialEvent source : swMatrix.getEvents()) {
             mx2 += Math.pow(source.xVal - meanX, 2.0);
             my2 += Math.pow(source.yVal - meanY, 2.0);
-            double jwijSum = 0.0;
-            for (SpatialEvent target : swMatrix.getEvents()) {
-                if (!isSelfNeighbors() && source.id == target.id) {
-                    continue;
-                }
-                jwijSum += swMatrix.getWeight(source, target);
-            }
+            double jwijSum = swMatrix.getRowSum(source);
             wij2Sum += Math.pow(jwijSum, 2);
         }
 
@@ -104,21 +101,21 @@ public class LocalLeesLOperation extends AbstractStatisticsOperation {
         dcIndex = new double[featureCount];
         dcZScore = new double[featureCount];
         for (int i = 0; i < featureCount; i++) {
-            SpatialEvent source = swMatrix.getEvents().get(i);
+            SpatialEvent source = events.get(i);
 
             // initialize working variables.
             double zxjWSum = 0.0;
             double zyjWSum = 0.0;
 
             // look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent target = swMatrix.getEvents().get(j);
+            for (int k = swMatrix.getRowStart(i); k < swMatrix.getRowEnd(i); k++) {
+                SpatialEvent target = events.get(swMatrix.getNeighbor(k));
                 if (!isSelfNeighbors() && source.id == target.id) {
                     continue;
                 }
 
                 // calculate the weight (dWij)
-                double wij = swMatrix.getWeight(source, target);
+                double wij = swMatrix.getNeighborWeight(source, k);
                 wij = swMatrix.standardizeWeight(source, wij);
                 if (wij == 0) {
                     continue;
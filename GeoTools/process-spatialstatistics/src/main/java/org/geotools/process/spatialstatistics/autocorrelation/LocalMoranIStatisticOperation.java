@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,8 +25,10 @@ import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.autocorrelation.PermutationInference.LocalStatistic;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
 import org.geotools.process.spatialstatistics.core.SpatialEvent;
@@ -53,6 +56,8 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
 
     private String[] moranBins;
 
+    private double[] dcPseudoP;
+
     public LocalMoranIStatisticOperation() {
         // Default Setting
         this.setDistanceType(DistanceMethod.Euclidean);
@@ -69,6 +74,10 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
         return dcZScore;
     }
 
+    public double[] getPseudoPValue() {
+        return dcPseudoP;
+    }
+
     public WeightMatrixBuilder getSpatialWeightMatrix() {
         return swMatrix;
     }
@@ -78,88 +87,113 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
         swMatrix = new WeightMatrixBuilder(getSpatialConceptType(), getStandardizationType());
         swMatrix.setDistanceMethod(getDistanceType());
         swMatrix.setDistanceBandWidth(getDistanceBand());
+        swMatrix.setSpatialWeightsFile(getSpatialWeightsFile());
         swMatrix.setSelfNeighbors(isSelfNeighbors());
         swMatrix.buildWeightMatrix(inputFeatures, inputField);
 
         // Calculate the mean and standard deviation for this data set.
-        int featureCount = swMatrix.getEvents().size();
+        List<SpatialEvent> events = swMatrix.getEvents();
+        int featureCount = events.size();
         double n = swMatrix.getEvents().size();
         double meanX = swMatrix.sumX / n;
-        double m2 = 0.0;
-        double m4 = 0.0;
+        double m2Sum = 0.0;
+        double m4Sum = 0.0;
 
         // calculate deviation from the mean sums.
         for (SpatialEvent source : swMatrix.getEvents()) {
-            m2 += Math.pow(source.xVal - meanX, 2.0);
-            m4 += Math.pow(source.xVal - meanX, 4.0);
+            m2Sum += Math.pow(source.xVal - meanX, 2.0);
+            m4Sum += Math.pow(source.xVal - meanX, 4.0);
         }
 
-        m2 = m2 / (n - 1.0);
-        m4 = m4 / (n - 1.0);
-        double b2 = m4 / Math.pow(m2, 2.0);
+        final double m2 = m2Sum / (n - 1.0);
+        final double m4 = m4Sum / (n - 1.0);
+        final double b2 = m4 / Math.pow(m2, 2.0);
 
         // calculate local index for each feature i.
         dcIndex = new double[featureCount];
         dcZScore = new double[featureCount];
         moranBins = new String[featureCount];
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent source = swMatrix.getEvents().get(i);
-
-            // initialize working variables.
-            double zxjWSum = 0.0;
-            double wijSum = 0.0;
-            double wij2Sum = 0.0;
-            double localBinSum = 0.0;
-            int numNeighbors = 0;
-
-            // look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent target = swMatrix.getEvents().get(j);
-                if (!isSelfNeighbors() && source.id == target.id) {
-                    continue;
-                }
-
-                // calculate the weight (wij)
-                double wij = swMatrix.getWeight(source, target);
-                wij = swMatrix.standardizeWeight(source, wij);
-                if (wij == 0) {
-                    continue;
-                }
-
-                if (wij > 0) {
-                    localBinSum += wij * target.xVal;
-                    numNeighbors++;
+        executeRange(featureCount, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    SpatialEvent source = events.get(i);
+
+                    // initialize working variables.
+                    double zxjWSum = 0.0;
+                    double wijSum = 0.0;
+                    double wij2Sum = 0.0;
+                    double localBinSum = 0.0;
+                    int numNeighbors = 0;
+
+                    // look for i's local neighbors
+                    for (int k = swMatrix.getRowStart(i); k < swMatrix.getRowEnd(i); k++) {
+                        SpatialEvent target = events.get(swMatrix.getNeighbor(k));
+                        if (!isSelfNeighbors() && source.id == target.id) {
+                            continue;
+                        }
+
+                        // calculate the weight (wij)
+                        double wij = swMatrix.getNeighborWeight(source, k);
+                        wij = swMatrix.standardizeWeight(source, wij);
+                        if (wij == 0) {
+                            continue;
+                        }
+
+                        if (wij > 0) {
+                            localBinSum += wij * target.xVal;
+                            numNeighbors++;
+                        }
+
+                        zxjWSum += wij * (target.xVal - meanX);
+                        wijSum += wij;
+                        wij2Sum += Math.pow(wij, 2.0);
+                    }
+
+                    // calculate Local i
+                    dcIndex[i] = Double.NaN;
+                    dcZScore[i] = Double.NaN;
+                    moranBins[i] = "";
+
+                    try {
+                        dcIndex[i] = ((source.xVal - meanX) / m2) * zxjWSum;
+
+                        double dExpected = (-1.0 * wijSum) / (n - 1);
+                        double wijWihSum = Math.pow(wijSum, 2.0) - wij2Sum;
+                        double v1 = (wij2Sum * (n - b2)) / (n - 1);
+                        double v2 = Math.pow(wijSum, 2.0) / Math.pow(n - 1, 2.0);
+                        double v3 = wijWihSum * ((2.0 * b2) - n);
+                        double v4 = (n - 1) * (n - 2);
+                        double dVariance = v1 + (v3 / v4) - v2;
+                        dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
+
+                        if (numNeighbors > 0) {
+                            double localMean = localBinSum / wijSum;
+                            moranBins[i] = returnMoranBin(dcZScore[i], source.xVal, meanX,
+                                    localMean);
+                        }
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, e.getMessage(), e);
+                    }
                 }
-
-                zxjWSum += wij * (target.xVal - meanX);
-                wijSum += wij;
-                wij2Sum += Math.pow(wij, 2.0);
+            }
+        });
+
+        // conditional permutation inference
+        dcPseudoP = null;
+        if (getPermutations() > 0) {
+            final double[] zValues = new double[featureCount];
+            for (int i = 0; i < featureCount; i++) {
+                zValues[i] = events.get(i).xVal - meanX;
             }
 
-            // calculate Local i
-            dcIndex[i] = Double.NaN;
-            dcZScore[i] = Double.NaN;
-            moranBins[i] = "";
-
-            try {
-                dcIndex[i] = ((source.xVal - meanX) / m2) * zxjWSum;
-
-                double dExpected = (-1.0 * wijSum) / (n - 1);
-                double wijWihSum = Math.pow(wijSum, 2.0) - wij2Sum;
-                double v1 = (wij2Sum * (n - b2)) / (n - 1);
-                double v2 = Math.pow(wijSum, 2.0) / Math.pow(n - 1, 2.0);
-                double v3 = wijWihSum * ((2.0 * b2) - n);
-                double v4 = (n - 1) * (n - 2);
-                double dVariance = v1 + (v3 / v4) - v2;
-                dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
-
-                if (numNeighbors > 0) {
-                    double localMean = localBinSum / wijSum;
-                    moranBins[i] = returnMoranBin(dcZScore[i], source.xVal, meanX, localMean);
+            PermutationInference inference = createPermutationInference();
+            dcPseudoP = inference.localPseudoPValues(zValues, new LocalStatistic() {
+                @Override
+                public double evaluate(int i, double lag) {
+                    return (zValues[i] / m2) * lag;
                 }
-            } catch (Exception e) {
-                LOGGER.log(Level.FINE, e.getMessage(), e);
-            }
+            });
         }
 
         return buildFeatureCollection(inputFeatures);
@@ -177,6 +211,9 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
             featureType = FeatureTypes.add(featureType, fields[k], Double.class);
         }
         featureType = FeatureTypes.add(featureType, fields[fields.length - 1], String.class, 10);
+        if (dcPseudoP != null) {
+            featureType = FeatureTypes.add(featureType, "LMiPseudoP", Double.class);
+        }
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(featureType);
@@ -212,6 +249,10 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
                 newFeature.setAttribute(fields[1], FormatUtils.round(zScore));
                 newFeature.setAttribute(fields[2], FormatUtils.round(pValue));
                 newFeature.setAttribute(fields[3], coType);
+                if (dcPseudoP != null) {
+                    double pseudoP = Double.isNaN(dcPseudoP[idx]) ? 1.0 : dcPseudoP[idx];
+                    newFeature.setAttribute("LMiPseudoP", FormatUtils.round(pseudoP));
+                }
 
                 featureWriter.write(newFeature);
                 idx++;
@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.api.feature.simple.SimpleFeature;
@@ -81,18 +82,31 @@ public class LocalRogersonROperation extends AbstractStatisticsOperation {
         swMatrix = new WeightMatrixBuilder(getSpatialConceptType(), getStandardizationType());
         swMatrix.setDistanceMethod(getDistanceType());
         swMatrix.setDistanceBandWidth(getDistanceBand());
+        swMatrix.setSpatialWeightsFile(getSpatialWeightsFile());
         swMatrix.setSelfNeighbors(isSelfNeighbors());
         swMatrix.buildWeightMatrix(inputFeatures, caseField, popField);
 
         // calculate the mean and standard deviation for this data set.
-        int featureCount = swMatrix.getEvents().size();
+        List<SpatialEvent> events = swMatrix.getEvents();
+        int featureCount = events.size();
         // final double sqrtTwo = Math.sqrt(2.0);
 
+        // rj - pj and sqrt(pj) do not depend on i, calculate once.
+        double[] rjpjs = new double[featureCount];
+        double[] sqrtPjs = new double[featureCount];
+        for (int j = 0; j < featureCount; j++) {
+            SpatialEvent target = events.get(j);
+            double rj = target.xVal / swMatrix.sumX;
+            double pj = target.yVal / swMatrix.sumY;
+            rjpjs[j] = rj - pj;
+            sqrtPjs[j] = Math.sqrt(pj);
+        }
+
         // calculate local index for each feature i.
         dcIndex = new double[featureCount];
         dcZScore = new double[featureCount];
         for (int i = 0; i < featureCount; i++) {
-            SpatialEvent source = swMatrix.getEvents().get(i);
+            SpatialEvent source = events.get(i);
 
             double ri = source.xVal / swMatrix.sumX;
             double pi = source.yVal / swMatrix.sumY;
@@ -102,11 +116,7 @@ public class LocalRogersonROperation extends AbstractStatisticsOperation {
 
             // look for i's local neighbors
             for (int j = 0; j < featureCount; j++) {
-                SpatialEvent target = swMatrix.getEvents().get(j);
-
-                double rj = target.xVal / swMatrix.sumX;
-                double pj = target.yVal / swMatrix.sumY;
-                double rjpj = rj - pj;
+                SpatialEvent target = events.get(j);
 
                 double aij = 0.0;
                 if (source.id == target.id) {
@@ -116,7 +126,7 @@ public class LocalRogersonROperation extends AbstractStatisticsOperation {
                     aij = dij <= 1.0 ? 1.0 : 1.0 / Math.pow(dij, kappa);
                 }
 
-                rjpjWSum += (aij * rjpj) / Math.sqrt(pj);
+                rjpjWSum += (aij * rjpjs[j]) / sqrtPjs[j];
             }
 
             // calculate local index Ri
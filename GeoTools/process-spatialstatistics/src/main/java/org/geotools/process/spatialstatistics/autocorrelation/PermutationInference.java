@@ -0,0 +1,339 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.autocorrelation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
+import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SpatialWeights;
+import org.geotools.process.spatialstatistics.core.WeightMatrixBuilder;
+
+/**
+ * Permutation (Monte Carlo) inference for spatial autocorrelation statistics.<br>
+ * Local statistics use conditional randomization: the value of feature i is held fixed and the remaining values are randomly reassigned to its
+ * neighbors. The global statistic permutes all values. The pseudo p-value is (M + 1) / (R + 1), where R is the number of permutations and M is
+ * the number of permuted statistics at least as extreme as the observed one (folded to the smaller tail).
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class PermutationInference {
+    public static final int DEFAULT_PERMUTATIONS = 999;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Local statistic of feature i as a function of its spatial lag (sum of wij * value j, including the self weight if self neighbors).
+     */
+    public interface LocalStatistic {
+        double evaluate(int i, double lag);
+    }
+
+    private final WeightMatrixBuilder swMatrix;
+
+    private final boolean selfNeighbors;
+
+    private int permutations = DEFAULT_PERMUTATIONS;
+
+    private long seed = 0L;
+
+    private int parallelism = 1;
+
+    public PermutationInference(WeightMatrixBuilder swMatrix, boolean selfNeighbors) {
+        this.swMatrix = swMatrix;
+        this.selfNeighbors = selfNeighbors;
+    }
+
+    public int getPermutations() {
+        return permutations;
+    }
+
+    public void setPermutations(int permutations) {
+        this.permutations = permutations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Calculates the pseudo p-values of a local statistic by conditional randomization.
+     *
+     * @param values the values to be permuted, aligned with the events of the weight matrix
+     * @param statistic local statistic
+     * @return pseudo p-values, NaN if the feature has no neighbors
+     */
+    public double[] localPseudoPValues(final double[] values, final LocalStatistic statistic) {
+        final List<SpatialEvent> events = swMatrix.getEvents();
+        final int n = events.size();
+        final double[] pValues = new double[n];
+        if (permutations <= 0 || n < 2) {
+            Arrays.fill(pValues, Double.NaN);
+            return pValues;
+        }
+
+        int maxNeighbors = 0;
+        for (int i = 0; i < n; i++) {
+            maxNeighbors = Math.max(maxNeighbors, swMatrix.getRowEnd(i) - swMatrix.getRowStart(i));
+        }
+        final int bufferSize = maxNeighbors;
+
+        // row sums are initialized lazily, not by the worker threads
+        swMatrix.getRowSum(events.get(0));
+
+        // buffers are allocated once per worker thread and reused for every feature
+        final ThreadLocal<LocalBuffer> buffers = new ThreadLocal<LocalBuffer>() {
+            @Override
+            protected LocalBuffer initialValue() {
+                return new LocalBuffer(n, bufferSize);
+            }
+        };
+
+        ParallelRange.execute(parallelism, n, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                LocalBuffer buffer = buffers.get();
+                for (int i = start; i < end; i++) {
+                    pValues[i] = localPseudoPValue(i, events, values, statistic, buffer);
+                }
+            }
+        });
+
+        return pValues;
+    }
+
+    private double localPseudoPValue(int i, List<SpatialEvent> events, double[] values,
+            LocalStatistic statistic, LocalBuffer buffer) {
+        final SpatialEvent source = events.get(i);
+        final int[] pool = buffer.pool;
+        final int[] swaps = buffer.swaps;
+        final double[] weights = buffer.weights;
+
+        // collect the weights of i's neighbors, the self weight does not take part in the permutation
+        int count = 0;
+        double selfLag = 0.0;
+        double observedLag = 0.0;
+        for (int k = swMatrix.getRowStart(i); k < swMatrix.getRowEnd(i); k++) {
+            int j = swMatrix.getNeighbor(k);
+            if (!selfNeighbors && j == i) {
+                continue;
+            }
+
+            double wij = swMatrix.standardizeWeight(source, swMatrix.getNeighborWeight(source, k));
+            if (wij == 0) {
+                continue;
+            }
+
+            if (j == i) {
+                selfLag += wij * values[i];
+            } else {
+                weights[count++] = wij;
+                observedLag += wij * values[j];
+            }
+        }
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        final double observed = statistic.evaluate(i, selfLag + observedLag);
+        final SplittableRandom random = new SplittableRandom(seed + (i + 1) * GOLDEN_GAMMA);
+
+        // exclude i from the candidates: the last slot of the pool is never drawn
+        final int m = pool.length - 1;
+        swap(pool, i, m);
+
+        int larger = 0;
+        for (int p = 0; p < permutations; p++) {
+            double lag = selfLag;
+            for (int t = 0; t < count; t++) {
+                int r = t + random.nextInt(m - t);
+                swap(pool, t, r);
+                swaps[t] = r;
+                lag += weights[t] * values[pool[t]];
+            }
+
+            // restore the pool so that the draws do not depend on the previous features
+            for (int t = count - 1; t >= 0; t--) {
+                swap(pool, t, swaps[t]);
+            }
+
+            if (statistic.evaluate(i, lag) >= observed) {
+                larger++;
+            }
+        }
+
+        swap(pool, i, m);
+
+        return pseudoPValue(larger, permutations);
+    }
+
+    /**
+     * Calculates the pseudo p-value of the global cross product (sum of zi * wij * zj) by random permutation of all values.
+     *
+     * @param values the values to be permuted (deviations from the mean), aligned with the events of the weight matrix
+     */
+    public double globalPseudoPValue(final double[] values) {
+        final int n = values.length;
+        if (permutations <= 0 || n < 2) {
+            return Double.NaN;
+        }
+
+        swMatrix.getRowSum(swMatrix.getEvents().get(0));
+        final SpatialWeights weights = buildStandardizedWeights();
+        final double observed = crossProduct(weights, values);
+        final double[] simulated = new double[permutations];
+
+        ParallelRange.execute(parallelism, permutations, 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                final int[] pool = new int[n];
+                final double[] permuted = new double[n];
+                for (int p = start; p < end; p++) {
+                    SplittableRandom random = new SplittableRandom(seed + (p + 1) * GOLDEN_GAMMA);
+                    for (int k = 0; k < n; k++) {
+                        pool[k] = k;
+                    }
+
+                    // Fisher-Yates shuffle
+                    for (int k = n - 1; k > 0; k--) {
+                        swap(pool, k, random.nextInt(k + 1));
+                    }
+
+                    for (int k = 0; k < n; k++) {
+                        permuted[k] = values[pool[k]];
+                    }
+                    simulated[p] = crossProduct(weights, permuted);
+                }
+            }
+        });
+
+        int larger = 0;
+        for (int p = 0; p < permutations; p++) {
+            if (simulated[p] >= observed) {
+                larger++;
+            }
+        }
+
+        return pseudoPValue(larger, permutations);
+    }
+
+    // standardized neighbor weights, self excluded if not self neighbors. null if weights are dense.
+    private SpatialWeights buildStandardizedWeights() {
+        SpatialWeights sw = swMatrix.getSpatialWeights();
+        if (sw == null) {
+            return null;
+        }
+
+        List<SpatialEvent> events = swMatrix.getEvents();
+        SpatialWeights.Builder builder = new SpatialWeights.Builder(sw.getNonZeroCount());
+        builder.ensureSize(sw.size());
+        for (int i = 0; i < sw.size(); i++) {
+            SpatialEvent source = events.get(i);
+            for (int k = sw.getRowStart(i); k < sw.getRowEnd(i); k++) {
+                int j = sw.getNeighbor(k);
+                if (!selfNeighbors && j == i) {
+                    continue;
+                }
+
+                double wij = swMatrix.standardizeWeight(source, sw.getWeight(k));
+                if (wij != 0) {
+                    builder.add(i, j, wij);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private double crossProduct(SpatialWeights weights, double[] values) {
+        double sum = 0.0;
+        if (weights != null) {
+            for (int i = 0; i < weights.size(); i++) {
+                double lag = 0.0;
+                for (int k = weights.getRowStart(i); k < weights.getRowEnd(i); k++) {
+                    lag += weights.getWeight(k) * values[weights.getNeighbor(k)];
+                }
+                sum += values[i] * lag;
+            }
+            return sum;
+        }
+
+        // dense weights
+        List<SpatialEvent> events = swMatrix.getEvents();
+        for (int i = 0; i < values.length; i++) {
+            SpatialEvent source = events.get(i);
+            double lag = 0.0;
+            for (int j = 0; j < values.length; j++) {
+                if (!selfNeighbors && j == i) {
+                    continue;
+                }
+
+                double wij = swMatrix.getWeight(source, events.get(j));
+                lag += swMatrix.standardizeWeight(source, wij) * values[j];
+            }
+            sum += values[i] * lag;
+        }
+        return sum;
+    }
+
+    static double pseudoPValue(int larger, int permutations) {
+        if (permutations - larger < larger) {
+            larger = permutations - larger;
+        }
+        return (larger + 1.0) / (permutations + 1.0);
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    static final class LocalBuffer {
+        final int[] pool;
+
+        final int[] swaps;
+
+        final double[] weights;
+
+        LocalBuffer(int size, int maxNeighbors) {
+            pool = new int[size];
+            for (int k = 0; k < size; k++) {
+                pool[k] = k;
+            }
+            swaps = new int[maxNeighbors];
+            weights = new double[maxNeighbors];
+        }
+    }
+}
@@ -31,7 +31,9 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.process.spatialstatistics.core.DataHistogram;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.HistogramGridCoverage;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.StringHelper;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterHelper;
@@ -72,6 +74,29 @@ public abstract class DataClassify {
 
     public abstract Double[] classify(GridCoverage2D inputGc, int bandIndex, int binCount);
 
+    /**
+     * Classifies the values and frequencies of a calculated histogram
+     * 
+     * @param histogram calculated histogram
+     * @param binCount number of classes
+     * @return class breaks
+     */
+    public Double[] classify(DataHistogram histogram, int binCount) {
+        return classify(histogram.getArrayValues(), histogram.getArrayFrequencies(), binCount);
+    }
+
+    /**
+     * Calculates the compact histogram of the band, or returns null if the band has no valid values
+     */
+    protected DataHistogram calculateHistogram(GridCoverage2D inputGc, int bandIndex) {
+        final double noDataValue = RasterHelper.getNoDataValue(inputGc);
+        DataHistogram histo = new HistogramGridCoverage();
+        if (histo.calculateHistogram(inputGc, bandIndex, noDataValue)) {
+            return histo;
+        }
+        return null;
+    }
+
     protected void initializeClassBreaks(int binCount) {
         classBreaks = new Double[binCount + 1];
         for (int index = 0; index < classBreaks.length; index++) {
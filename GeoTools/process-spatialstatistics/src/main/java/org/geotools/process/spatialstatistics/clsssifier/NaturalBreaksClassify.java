@@ -16,7 +16,7 @@
  */
 package org.geotools.process.spatialstatistics.clsssifier;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -24,13 +24,15 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.process.spatialstatistics.core.DataHistogram;
 import org.geotools.process.spatialstatistics.core.HistogramFeatures;
-import org.geotools.process.spatialstatistics.core.HistogramGridCoverage;
-import org.geotools.process.spatialstatistics.gridcoverage.RasterHelper;
 import org.geotools.util.logging.Logging;
 
 /**
  * The NaturalBreaks uses a statistical formula to determine natural clusters of attribute values. The formula is known as Jenk's method. This
- * attempts to minimize the variance within a class and to maximize the variance between classes.
+ * attempts to minimize the variance within a class and to maximize the variance between classes.<br>
+ * The optimal partition of the sorted (value, frequency) pairs is found by Fisher's dynamic programming over prefix sums of the weights, the
+ * weighted values and the weighted squares. The optimal split of a class is monotone in the end of the class, so every class is solved by divide
+ * and conquer in O(n log n). With a sample size, consecutive values are first grouped into about that many groups of equal frequency, and each break of the
+ * partition of the groups is then moved to the best value of its two neighboring groups.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -41,11 +43,24 @@ public class NaturalBreaksClassify extends DataClassify {
 
     static final String sMethodName = "Natural Breaks(Jenks)";
 
+    private int sampleSize = 0;
+
     @Override
     public String getMethodName() {
         return sMethodName;
     }
 
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Maximum number of value groups of the partition, 0 = exact partition of all distinct values
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
     @Override
     public Double[] classify(double[] arrayValues, int[] arrayFrequencies, int binCount) {
         initializeClassBreaks(binCount);
@@ -54,18 +69,7 @@ public class NaturalBreaksClassify extends DataClassify {
             return classBreaks;
         }
 
-        double sumOfVal = 0.0;
-        int count = 0;
-        List<ValuePair> valuePairs = new ArrayList<ValuePair>();
-        for (int index = 0; index < arrayFrequencies.length; index++) {
-            ValuePair vp = new ValuePair(arrayValues[index], arrayFrequencies[index]);
-            valuePairs.add(vp);
-
-            count += vp.frequency;
-            sumOfVal += vp.value * vp.frequency;
-        }
-
-        calculateJenksBreaks(valuePairs, sumOfVal / count, binCount);
+        calculateJenksBreaks(arrayValues, arrayFrequencies, binCount);
 
         return classBreaks;
     }
@@ -77,16 +81,7 @@ public class NaturalBreaksClassify extends DataClassify {
 
         DataHistogram histo = new HistogramFeatures();
         if (histo.calculateHistogram(inputFeatures, propertyName)) {
-            final double mean = histo.getMean();
-            final double[] arrayValues = histo.getArrayValues();
-            final int[] arrayFrequencies = histo.getArrayFrequencies();
-
-            List<ValuePair> valuePairs = new ArrayList<ValuePair>();
-            for (int index = 0; index < arrayFrequencies.length; index++) {
-                valuePairs.add(new ValuePair(arrayValues[index], arrayFrequencies[index]));
-            }
-
-            calculateJenksBreaks(valuePairs, mean, binCount);
+            calculateJenksBreaks(histo.getArrayValues(), histo.getArrayFrequencies(), binCount);
         }
 
         return classBreaks;
@@ -94,390 +89,255 @@ public class NaturalBreaksClassify extends DataClassify {
 
     @Override
     public Double[] classify(GridCoverage2D inputGc, int bandIndex, int binCount) {
-        initializeClassBreaks(binCount);
-
-        final double noDataValue = RasterHelper.getNoDataValue(inputGc);
-        DataHistogram histo = new HistogramGridCoverage();
-        if (histo.calculateHistogram(inputGc, bandIndex, noDataValue)) {
-            final double mean = histo.getMean();
-            final double[] arrayValues = histo.getArrayValues();
-            final int[] arrayFrequencies = histo.getArrayFrequencies();
-
-            List<ValuePair> valuePairs = new ArrayList<ValuePair>();
-            for (int index = 0; index < arrayFrequencies.length; index++) {
-                valuePairs.add(new ValuePair(arrayValues[index], arrayFrequencies[index]));
-            }
-
-            calculateJenksBreaks(valuePairs, mean, binCount);
+        DataHistogram histo = calculateHistogram(inputGc, bandIndex);
+        if (histo == null) {
+            initializeClassBreaks(binCount);
+            return classBreaks;
         }
 
-        return classBreaks;
+        return classify(histo, binCount);
     }
 
+    /**
+     * @param valuePairs sorted values and their frequencies
+     * @param mean not used, the partition does not depend on the mean
+     * @param numOfClass number of classes
+     */
     public boolean calculateJenksBreaks(List<ValuePair> valuePairs, double mean, int numOfClass) {
-        if (numOfClass >= valuePairs.size()) {
-            classBreaks = new Double[valuePairs.size()];
-            for (int index = 0; index < valuePairs.size(); index++) {
-                classBreaks[index] = valuePairs.get(index).value;
-            }
-            return true;
+        double[] values = new double[valuePairs.size()];
+        int[] frequencies = new int[valuePairs.size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = valuePairs.get(index).value;
+            frequencies[index] = valuePairs.get(index).frequency;
         }
+        return calculateJenksBreaks(values, frequencies, numOfClass);
+    }
 
-        // 1. calculate mean & the sum of squared deviations from the array mean (SDAM).
-        double[] ldSDAM = new double[1];
-
-        double[] finalGVF = new double[1];
-        double[] newGVF = new double[1];
-
-        // Calculate the sum of squared deviations from the array mean (SDAM).
-        ldSDAM[0] = calculateSDAM(valuePairs, mean);
-
-        int[] initClass = new int[numOfClass - 1];
-        int numOfElement = valuePairs.size() / numOfClass;
-        for (int index = 0; index < initClass.length; index++) {
-            if (index == 0) {
-                initClass[index] = numOfElement - 1;
-            } else {
-                initClass[index] = initClass[index - 1] + numOfElement;
-            }
-        }
-
-        DataClass[] ldaSDCM_Parciales = new DataClass[initClass.length + 1];
-        DataClass[] ldaSDCM_Validos = new DataClass[initClass.length + 1];
-
-        if (!calculateGVF(valuePairs, ldaSDCM_Parciales, initClass, ldSDAM[0], finalGVF, -1,
-                false)) {
-            calculateJenksBreaks(valuePairs, mean, valuePairs.size());
+    /**
+     * Calculates the breaks of the partition that minimizes the sum of squared deviations from the class means.
+     * 
+     * @param values sorted distinct values
+     * @param frequencies frequencies of the values
+     * @param numOfClass number of classes
+     */
+    public boolean calculateJenksBreaks(double[] values, int[] frequencies, int numOfClass) {
+        final int n = values.length;
+        if (n == 0 || numOfClass < 1) {
             return false;
         }
 
-        ldaSDCM_Validos = getArray(ldaSDCM_Parciales);
-
-        boolean lbMoverADerecha;
-        boolean lbMoverAIzquierda;
-        boolean lbIntentarDesplazamiento;
-        int llIndiceRupturaOriginal;
-
-        final int maxIteration = 100;
-        double currentGVF = finalGVF[0];
-
-        int i;
-        for (int iter = 1; iter <= maxIteration; iter++) {
-            for (i = 0; i < initClass.length; i++) {
-                lbMoverADerecha = false;
-                lbMoverAIzquierda = false;
-                llIndiceRupturaOriginal = initClass[i];
-                ldaSDCM_Validos = getArray(ldaSDCM_Parciales);
-
-                lbIntentarDesplazamiento = false;
-
-                if (i == (initClass.length - 1)) {
-                    if ((initClass[i] + 1) < valuePairs.size()) {
-                        lbIntentarDesplazamiento = true;
-                    }
-                } else {
-                    if ((initClass[i] + 1) < initClass[i + 1]) {
-                        lbIntentarDesplazamiento = true;
-                    }
-                }
-
-                if (lbIntentarDesplazamiento) {
-                    initClass[i] = initClass[i] + 1;
-
-                    if (!calculateGVF(valuePairs, ldaSDCM_Parciales, initClass, ldSDAM[0], newGVF,
-                            i, false)) {
-                        return false;
-                    }
-
-                    if (newGVF[0] > finalGVF[0]) {
-                        lbMoverADerecha = true;
-                        ldaSDCM_Validos = getArray(ldaSDCM_Parciales);
-                    } else {
-                        initClass[i] = llIndiceRupturaOriginal;
-                        ldaSDCM_Parciales = getArray(ldaSDCM_Validos);
-                    }
-                }
-
-                lbIntentarDesplazamiento = false;
-
-                if (!lbMoverADerecha) {
-                    if (i == 0) {
-                        if ((initClass[i] - 1) >= 0) {
-                            lbIntentarDesplazamiento = true;
-                        }
-                    } else {
-                        if ((initClass[i] - 1) > initClass[i - 1]) {
-                            lbIntentarDesplazamiento = true;
-                        }
-                    }
-                }
-
-                if (lbIntentarDesplazamiento) {
-                    initClass[i] = initClass[i] - 1;
-
-                    if (!calculateGVF(valuePairs, ldaSDCM_Parciales, initClass, ldSDAM[0], newGVF,
-                            i, true)) {
-                        return false;
-                    }
-
-                    if (newGVF[0] > finalGVF[0]) {
-                        lbMoverAIzquierda = true;
-                        ldaSDCM_Validos = getArray(ldaSDCM_Parciales);
-                    } else {
-                        initClass[i] = llIndiceRupturaOriginal;
-                        ldaSDCM_Parciales = getArray(ldaSDCM_Validos);
-                    }
-                }
-
-                lbIntentarDesplazamiento = false;
-
-                if (lbMoverAIzquierda || lbMoverADerecha) {
-                    finalGVF[0] = newGVF[0];
-
-                    boolean exit = false;
-
-                    while (!exit) {
-                        llIndiceRupturaOriginal = initClass[i];
-
-                        if (lbMoverADerecha) {
-                            if (i == (initClass.length - 1)) {
-                                if ((initClass[i] + 1) >= valuePairs.size()) {
-                                    exit = true;
-                                }
-                            } else {
-                                if ((initClass[i] + 1) >= initClass[i + 1]) {
-                                    exit = true;
-                                }
-                            }
-
-                            initClass[i] = initClass[i] + 1;
-                        } else {
-                            if (i == 0) {
-                                if ((initClass[i] - 1) < 0) {
-                                    exit = true;
-                                }
-                            } else {
-                                if ((initClass[i] - 1) <= initClass[i - 1]) {
-                                    exit = true;
-                                }
-                            }
-                            initClass[i] = initClass[i] - 1;
-                        }
-
-                        if (!calculateGVF(valuePairs, ldaSDCM_Parciales, initClass, ldSDAM[0],
-                                newGVF, i, lbMoverAIzquierda)) {
-                            return false;
-                        }
-
-                        if (newGVF[0] < finalGVF[0]) {
-                            initClass[i] = llIndiceRupturaOriginal;
-                            ldaSDCM_Parciales = getArray(ldaSDCM_Validos);
-                            exit = true;
-                        } else {
-                            finalGVF[0] = newGVF[0];
-                            ldaSDCM_Validos = getArray(ldaSDCM_Parciales);
-                        }
-                    }
-                }
+        if (numOfClass >= n) {
+            classBreaks = new Double[n];
+            for (int index = 0; index < n; index++) {
+                classBreaks[index] = values[index];
             }
+            return true;
+        }
 
-            if (finalGVF[0] <= currentGVF) {
-                i = maxIteration + 1;
+        // 1. groups of consecutive values: the index of the last value of each group
+        int[] groupEnds = null;
+        if (sampleSize > 0 && n > sampleSize) {
+            groupEnds = groupValues(frequencies, Math.max(sampleSize, numOfClass * 2));
+            if (groupEnds.length <= numOfClass) {
+                groupEnds = null;
             }
-
-            currentGVF = finalGVF[0];
         }
-
-        initializeClassBreaks(numOfClass);
-
-        classBreaks[0] = Double.valueOf(valuePairs.get(0).value);
-        classBreaks[classBreaks.length - 1] = Double
-                .valueOf(valuePairs.get(valuePairs.size() - 1).value);
-
-        double[] mdaValInit = new double[initClass.length];
-        for (int index = 0; index < mdaValInit.length; index++) {
-            if (initClass[index] == -1) {
-                initClass[index] = 1;
+        final boolean grouped = groupEnds != null;
+        if (!grouped) {
+            groupEnds = new int[n];
+            for (int index = 0; index < n; index++) {
+                groupEnds[index] = index;
             }
+        }
 
-            if (initClass[index] > valuePairs.size() - 1) {
-                initClass[index] = valuePairs.size() - 1;
+        // 2. prefix sums of the groups, values are shifted by the mean for precision
+        final int m = groupEnds.length;
+        double totalWeight = 0;
+        double totalSum = 0;
+        for (int index = 0; index < n; index++) {
+            totalWeight += frequencies[index];
+            totalSum += values[index] * frequencies[index];
+        }
+        final double shift = totalSum / totalWeight;
+
+        final double[] weights = new double[m + 1];
+        final double[] sums = new double[m + 1];
+        final double[] squares = new double[m + 1];
+        int start = 0;
+        for (int group = 0; group < m; group++) {
+            double w = 0, s = 0, q = 0;
+            for (int index = start; index <= groupEnds[group]; index++) {
+                final double dev = values[index] - shift;
+                w += frequencies[index];
+                s += frequencies[index] * dev;
+                q += frequencies[index] * dev * dev;
             }
+            weights[group + 1] = weights[group] + w;
+            sums[group + 1] = sums[group] + s;
+            squares[group + 1] = squares[group] + q;
+            start = groupEnds[group] + 1;
+        }
 
-            classBreaks[index + 1] = Double.valueOf(valuePairs.get(initClass[index]).value);
+        // 3. optimal partitions of the first j groups into c classes
+        final Partition partition = new Partition(weights, sums, squares);
+        final int[][] splits = new int[numOfClass + 1][];
+        double[] previous = new double[m + 1];
+        for (int j = 1; j <= m; j++) {
+            previous[j] = partition.cost(0, j);
+        }
 
-            if ((initClass[index] + 1) < valuePairs.size()) {
-                mdaValInit[index] = valuePairs.get(initClass[index] + 1).value;
-            } else {
-                mdaValInit[index] = valuePairs.get(initClass[index]).value;
-            }
+        for (int c = 2; c <= numOfClass; c++) {
+            double[] current = new double[m + 1];
+            splits[c] = new int[m + 1];
+            partition.solve(previous, current, splits[c], c, m, c - 1, m - 1);
+            previous = current;
         }
 
-        ldaSDCM_Validos = null;
-        ldaSDCM_Parciales = null;
+        // 4. back tracking: the exclusive end of each class in values
+        final int[] classEnds = new int[numOfClass + 1];
+        classEnds[numOfClass] = n;
+        int end = m;
+        for (int c = numOfClass; c >= 2; c--) {
+            end = splits[c][end];
+            classEnds[c - 1] = groupEnds[end - 1] + 1;
+        }
 
-        return true;
-    }
+        // 5. a break between groups is moved to the best value of its two neighboring groups
+        if (grouped) {
+            refineBreaks(values, frequencies, shift, groupEnds, classEnds);
+        }
 
-    private DataClass[] getArray(DataClass[] dataClass) {
-        DataClass[] aux = new DataClass[dataClass.length];
+        // the break of a class is its largest value
+        initializeClassBreaks(numOfClass);
 
-        for (int i = 0; i < dataClass.length; i++) {
-            aux[i] = new DataClass();
-            aux[i].Mean = dataClass[i].Mean;
-            aux[i].Count = dataClass[i].Count;
-            aux[i].SDCM = dataClass[i].SDCM;
-            aux[i].SumOfSquaredTotal = dataClass[i].SumOfSquaredTotal;
-            aux[i].SumOfTotal = dataClass[i].SumOfTotal;
+        classBreaks[0] = Double.valueOf(values[0]);
+        for (int c = 1; c <= numOfClass; c++) {
+            classBreaks[c] = Double.valueOf(values[classEnds[c] - 1]);
         }
 
-        return aux;
+        return true;
     }
 
-    private double calculateSDAM(List<ValuePair> valuePairs, double mean) {
-        double rdSDAM = 0;
-        for (ValuePair vp : valuePairs) {
-            rdSDAM += Math.pow((vp.value - mean), 2) * vp.frequency;
+    private void refineBreaks(double[] values, int[] frequencies, double shift, int[] groupEnds,
+            int[] classEnds) {
+        final int n = values.length;
+        final double[] weights = new double[n + 1];
+        final double[] sums = new double[n + 1];
+        final double[] squares = new double[n + 1];
+        for (int index = 0; index < n; index++) {
+            final double dev = values[index] - shift;
+            weights[index + 1] = weights[index] + frequencies[index];
+            sums[index + 1] = sums[index] + frequencies[index] * dev;
+            squares[index + 1] = squares[index] + frequencies[index] * dev * dev;
         }
-        return rdSDAM;
-    }
-
-    private boolean calculateGVF(List<ValuePair> valuePairs, DataClass[] dataClass,
-            int[] rlaIndicesRuptura, double vdSDAM, double[] rdGVF, int vlIndiceRupturaActual,
-            boolean vbDesplazAIzquierda) {
-        int i;
-
-        if (vlIndiceRupturaActual == -1) {
-            for (i = 0; i < rlaIndicesRuptura.length; i++) {
-                if (i == 0) {
-                    if (!getDataClass(valuePairs, 0, rlaIndicesRuptura[i], dataClass, i)) {
-                        return false;
-                    }
-                } else {
-                    if (!getDataClass(valuePairs, rlaIndicesRuptura[i - 1] + 1,
-                            rlaIndicesRuptura[i], dataClass, i)) {
-                        return false;
-                    }
+        final Partition partition = new Partition(weights, sums, squares);
+
+        for (int c = 1; c < classEnds.length - 1; c++) {
+            final int current = classEnds[c];
+
+            // the group ending at the break and the group after it
+            int group = Arrays.binarySearch(groupEnds, current - 1);
+            int lo = group > 0 ? groupEnds[group - 1] + 1 : 0;
+            int hi = group + 1 < groupEnds.length ? groupEnds[group + 1] + 1 : n;
+            lo = Math.max(lo, classEnds[c - 1] + 1);
+            hi = Math.min(hi, classEnds[c + 1] - 1);
+
+            int best = current;
+            double bestCost = partition.cost(classEnds[c - 1], current)
+                    + partition.cost(current, classEnds[c + 1]);
+            for (int split = lo; split <= hi; split++) {
+                final double cost = partition.cost(classEnds[c - 1], split)
+                        + partition.cost(split, classEnds[c + 1]);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = split;
                 }
             }
+            classEnds[c] = best;
+        }
+    }
 
-            if (!getDataClass(valuePairs, rlaIndicesRuptura[rlaIndicesRuptura.length - 1] + 1,
-                    valuePairs.size() - 1, dataClass, dataClass.length - 1)) {
-                return false;
-            }
-        } else {
-            i = vlIndiceRupturaActual;
-
-            if (vbDesplazAIzquierda) {
-                if (!recalculateDataClass(dataClass, i, valuePairs, rlaIndicesRuptura[i] + 1,
-                        vdSDAM, false)) {
-                    return false;
-                }
-
-                if (!recalculateDataClass(dataClass, i + 1, valuePairs, rlaIndicesRuptura[i] + 1,
-                        vdSDAM, true)) {
-                    return false;
-                }
-            } else {
-                if (!recalculateDataClass(dataClass, i, valuePairs, rlaIndicesRuptura[i], vdSDAM,
-                        true)) {
-                    return false;
-                }
+    /**
+     * Groups consecutive values into about groupCount groups of equal frequency, a value never spans two groups.
+     */
+    private int[] groupValues(int[] frequencies, int groupCount) {
+        double totalWeight = 0;
+        for (int frequency : frequencies) {
+            totalWeight += frequency;
+        }
 
-                if (!recalculateDataClass(dataClass, i + 1, valuePairs, rlaIndicesRuptura[i],
-                        vdSDAM, false)) {
-                    return false;
+        int[] groupEnds = new int[groupCount];
+        int size = 0;
+        double cumulative = 0;
+        for (int index = 0; index < frequencies.length; index++) {
+            cumulative += frequencies[index];
+            final boolean last = index == frequencies.length - 1;
+            if (last || cumulative >= totalWeight * (size + 1) / groupCount) {
+                if (size == groupEnds.length) {
+                    groupEnds[size - 1] = index;
+                } else {
+                    groupEnds[size++] = index;
                 }
             }
         }
 
-        double ldSDCM_aux = 0;
-        for (i = 0; i < dataClass.length; i++) {
-            ldSDCM_aux += dataClass[i].SDCM;
-        }
-
-        rdGVF[0] = (vdSDAM - ldSDCM_aux) / vdSDAM;
-
-        return true;
+        int[] result = new int[size];
+        System.arraycopy(groupEnds, 0, result, 0, size);
+        return result;
     }
 
-    private boolean getDataClass(List<ValuePair> valuePairs, int limitInf, int limitSup,
-            DataClass[] dataClass, int clsIndex) {
-        if (limitInf < 0) {
-            return false;
-        }
+    static final class Partition {
+        private final double[] weights;
 
-        if (limitSup > valuePairs.size()) {
-            return false;
-        }
+        private final double[] sums;
 
-        if (limitSup < limitInf) {
-            return false;
-        }
-
-        dataClass[clsIndex] = new DataClass();
+        private final double[] squares;
 
-        for (int i = limitInf; i < (limitSup + 1); i++) {
-            dataClass[clsIndex].Count += valuePairs.get(i).frequency;
-            dataClass[clsIndex].SumOfTotal += valuePairs.get(i).getMultiValue();
-            dataClass[clsIndex].SumOfSquaredTotal += (Math.pow(valuePairs.get(i).getMultiValue(),
-                    2));
+        Partition(double[] weights, double[] sums, double[] squares) {
+            this.weights = weights;
+            this.sums = sums;
+            this.squares = squares;
         }
 
-        dataClass[clsIndex].Mean = dataClass[clsIndex].SumOfTotal / dataClass[clsIndex].Count;
-        dataClass[clsIndex].SDCM = (dataClass[clsIndex].SumOfSquaredTotal)
-                - (2 * dataClass[clsIndex].Mean * dataClass[clsIndex].SumOfTotal)
-                + (dataClass[clsIndex].Count * Math.pow(dataClass[clsIndex].Mean, 2));
-
-        return true;
-    }
-
-    private boolean recalculateDataClass(DataClass[] dataClass, int idxCls,
-            List<ValuePair> valuePairs, int idxVp, double vdSDAM, boolean vbAnyadir) {
-        try {
-            if (idxVp > valuePairs.size() - 1) {
-                return true;
+        /**
+         * Sum of squared deviations from the mean of the groups [i, j)
+         */
+        double cost(int i, int j) {
+            final double w = weights[j] - weights[i];
+            if (w <= 0) {
+                return 0;
             }
+            final double s = sums[j] - sums[i];
+            return Math.max(0, squares[j] - squares[i] - s * s / w);
+        }
 
-            final double multi = valuePairs.get(idxVp).getMultiValue();
-            final int frequency = valuePairs.get(idxVp).frequency;
-
-            if (vbAnyadir) {
-                dataClass[idxCls].SumOfTotal += multi;
-                dataClass[idxCls].SumOfSquaredTotal += Math.pow(multi, 2);
-                dataClass[idxCls].Count += frequency;
-            } else {
-                dataClass[idxCls].SumOfTotal -= multi;
-                dataClass[idxCls].SumOfSquaredTotal -= Math.pow(multi, 2);
-                dataClass[idxCls].Count -= frequency;
-            }
+        /**
+         * current[j] = min over i in [optLo, min(j - 1, optHi)] of previous[i] + cost(i, j), for j in [lo, hi]
+         */
+        void solve(double[] previous, double[] current, int[] split, int lo, int hi, int optLo,
+                int optHi) {
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int last = Math.min(mid - 1, optHi);
+
+                double best = Double.POSITIVE_INFINITY;
+                int bestIndex = optLo;
+                for (int i = optLo; i <= last; i++) {
+                    final double value = previous[i] + cost(i, mid);
+                    if (value < best) {
+                        best = value;
+                        bestIndex = i;
+                    }
+                }
+                current[mid] = best;
+                split[mid] = bestIndex;
 
-            if (dataClass[idxCls].Count <= 0) {
-                dataClass[idxCls].Count = 1;
+                // the left half recursively, the right half in this loop
+                solve(previous, current, split, lo, mid - 1, optLo, bestIndex);
+                lo = mid + 1;
+                optLo = bestIndex;
             }
-
-            dataClass[idxCls].Mean = dataClass[idxCls].SumOfTotal / dataClass[idxCls].Count;
-
-            dataClass[idxCls].SDCM = (dataClass[idxCls].SumOfSquaredTotal)
-                    - (2 * dataClass[idxCls].Mean * dataClass[idxCls].SumOfTotal)
-                    + (dataClass[idxCls].Count * Math.pow(dataClass[idxCls].Mean, 2));
-        } catch (Exception e) {
-            return false;
         }
-
-        return true;
-    }
-
-    final class DataClass {
-        public long Count;
-
-        public double Mean;
-
-        public double SumOfTotal;
-
-        public double SumOfSquaredTotal;
-
-        public double SDCM;
     }
 
     final class ValuePair {
@@ -22,8 +22,6 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.process.spatialstatistics.core.DataHistogram;
 import org.geotools.process.spatialstatistics.core.HistogramFeatures;
-import org.geotools.process.spatialstatistics.core.HistogramGridCoverage;
-import org.geotools.process.spatialstatistics.gridcoverage.RasterHelper;
 import org.geotools.util.logging.Logging;
 
 /**
@@ -83,19 +81,13 @@ public class QuantileClassify extends DataClassify {
 
     @Override
     public Double[] classify(GridCoverage2D inputGc, int bandIndex, int binCount) {
-        initializeClassBreaks(binCount);
-
-        final double noDataValue = RasterHelper.getNoDataValue(inputGc);
-        DataHistogram histo = new HistogramGridCoverage();
-        if (histo.calculateHistogram(inputGc, bandIndex, noDataValue)) {
-            final int sampleCount = histo.getCount();
-            final double[] arrayValues = histo.getArrayValues();
-            final int[] arrayFrequencies = histo.getArrayFrequencies();
-
-            calculate(arrayValues, arrayFrequencies, sampleCount, binCount);
+        DataHistogram histo = calculateHistogram(inputGc, bandIndex);
+        if (histo == null) {
+            initializeClassBreaks(binCount);
+            return classBreaks;
         }
 
-        return classBreaks;
+        return classify(histo, binCount);
     }
 
     private void calculate(double[] arrayValues, int[] arrayFrequencies, int sampleCount,
@@ -0,0 +1,300 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.ItemBoundable;
+import org.locationtech.jts.index.strtree.ItemDistance;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.distance.IndexedFacetDistance;
+
+/**
+ * K nearest geometry search by exact distances.<br>
+ * The geometries are indexed by an STRtree. Each geometry keeps an indexed facet distance, built on its first distance computation, so repeated
+ * distances to a complex geometry do not scan all of its segments. A geometry inside an area is at distance 0, the same as Geometry.distance: points
+ * are located with an indexed point in area locator of the polygon and other geometries are tested with a prepared geometry, both built on first
+ * use. A search with a maximum distance only visits the geometries whose envelopes lie
+ * within that distance and evaluates them in order of envelope distance, stopping as soon as no remaining envelope can beat the k found so far. The
+ * index can be searched from several threads.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class FacetDistanceIndex {
+    protected static final Logger LOGGER = Logging.getLogger(FacetDistanceIndex.class);
+
+    private final Geometry[] geometries;
+
+    private final AtomicReferenceArray<IndexedFacetDistance> distances;
+
+    private final AtomicReferenceArray<IndexedPointInAreaLocator> locators;
+
+    private final AtomicReferenceArray<PreparedGeometry> prepared;
+
+    private final STRtree index = new STRtree();
+
+    private int count = 0;
+
+    /**
+     * @param geometries target geometries, null or empty geometries are never found
+     */
+    public FacetDistanceIndex(List<Geometry> geometries) {
+        final int size = geometries.size();
+        this.geometries = geometries.toArray(new Geometry[size]);
+        this.distances = new AtomicReferenceArray<IndexedFacetDistance>(size);
+        this.locators = new AtomicReferenceArray<IndexedPointInAreaLocator>(size);
+        this.prepared = new AtomicReferenceArray<PreparedGeometry>(size);
+
+        for (int i = 0; i < size; i++) {
+            Geometry geometry = this.geometries[i];
+            if (geometry == null || geometry.isEmpty()) {
+                continue;
+            }
+            index.insert(geometry.getEnvelopeInternal(), Integer.valueOf(i));
+            count++;
+        }
+        index.build();
+    }
+
+    public int size() {
+        return geometries.length;
+    }
+
+    public Geometry getGeometry(int index) {
+        return geometries[index];
+    }
+
+    /**
+     * Returns the distance between the geometry and the indexed geometry.
+     */
+    public double distance(int index, Geometry geometry) {
+        final Geometry target = geometries[index];
+        final boolean located = geometry instanceof Puntal && target instanceof Polygonal;
+        if (located) {
+            IndexedPointInAreaLocator locator = getLocator(index);
+            for (Coordinate coordinate : geometry.getCoordinates()) {
+                if (locator.locate(coordinate) != Location.EXTERIOR) {
+                    return 0d;
+                }
+            }
+        }
+
+        // the facets only give the distance to the boundary of an area
+        final double distance = getFacetDistance(index).distance(geometry);
+        if (distance > 0 && !located
+                && (target.getDimension() == 2 || geometry.getDimension() == 2)) {
+            if (getPrepared(index).intersects(geometry)) {
+                return 0d;
+            }
+        }
+        return distance;
+    }
+
+    private IndexedFacetDistance getFacetDistance(int index) {
+        IndexedFacetDistance facetDistance = distances.get(index);
+        if (facetDistance == null) {
+            distances.compareAndSet(index, null, new IndexedFacetDistance(geometries[index]));
+            facetDistance = distances.get(index);
+        }
+        return facetDistance;
+    }
+
+    private IndexedPointInAreaLocator getLocator(int index) {
+        IndexedPointInAreaLocator locator = locators.get(index);
+        if (locator == null) {
+            locators.compareAndSet(index, null, new IndexedPointInAreaLocator(geometries[index]));
+            locator = locators.get(index);
+        }
+        return locator;
+    }
+
+    private PreparedGeometry getPrepared(int index) {
+        PreparedGeometry preparedGeometry = prepared.get(index);
+        if (preparedGeometry == null) {
+            prepared.compareAndSet(index, null,
+                    PreparedGeometryFactory.prepare(geometries[index]));
+            preparedGeometry = prepared.get(index);
+        }
+        return preparedGeometry;
+    }
+
+    /**
+     * Finds the k nearest indexed geometries of the geometry, ordered by distance and index.
+     *
+     * @param geometry search geometry
+     * @param k number of neighbors
+     * @param maxDistance maximum distance, 0, negative or infinite = unbounded
+     * @param neighbors receives the neighbors
+     * @return number of neighbors found
+     */
+    public int nearest(Geometry geometry, int k, double maxDistance, Neighbors neighbors) {
+        neighbors.clear();
+        if (geometry == null || geometry.isEmpty() || k < 1 || count == 0) {
+            return 0;
+        }
+
+        final boolean bounded = maxDistance > 0 && !Double.isInfinite(maxDistance);
+        if (bounded) {
+            searchWithin(geometry, k, maxDistance, neighbors);
+        } else {
+            searchNearest(geometry, k, neighbors);
+        }
+        return neighbors.size();
+    }
+
+    private void searchWithin(Geometry geometry, int k, double maxDistance,
+            Neighbors neighbors) {
+        final Envelope source = geometry.getEnvelopeInternal();
+        final Envelope searchEnv = new Envelope(source);
+        searchEnv.expandBy(maxDistance);
+
+        final Candidates candidates = new Candidates();
+        index.query(searchEnv, candidates);
+
+        // envelope distances are lower bounds of the distances
+        final int size = candidates.size;
+        final double[] lowerBounds = new double[size];
+        for (int i = 0; i < size; i++) {
+            lowerBounds[i] = geometries[candidates.items[i]].getEnvelopeInternal()
+                    .distance(source);
+        }
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int compared = Double.compare(lowerBounds[o1], lowerBounds[o2]);
+                return compared != 0 ? compared
+                        : Integer.compare(candidates.items[o1], candidates.items[o2]);
+            }
+        });
+
+        for (int i = 0; i < size; i++) {
+            final int candidate = sorted[i].intValue();
+            final double lowerBound = lowerBounds[candidate];
+            if (lowerBound > maxDistance) {
+                break;
+            }
+            if (neighbors.size() == k && lowerBound > neighbors.getDistance(k - 1)) {
+                break;
+            }
+
+            final int target = candidates.items[candidate];
+            final double distance = distance(target, geometry);
+            if (distance <= maxDistance) {
+                neighbors.offer(target, distance, k);
+            }
+        }
+    }
+
+    private void searchNearest(final Geometry geometry, int k, Neighbors neighbors) {
+        Object[] items = index.nearestNeighbour(geometry.getEnvelopeInternal(), geometry,
+                new ItemDistance() {
+                    @Override
+                    public double distance(ItemBoundable item1, ItemBoundable item2) {
+                        Object item = item1.getItem() instanceof Integer ? item1.getItem()
+                                : item2.getItem();
+                        return FacetDistanceIndex.this.distance(((Integer) item).intValue(),
+                                geometry);
+                    }
+                }, k);
+
+        if (items == null) {
+            return;
+        }
+        for (Object item : items) {
+            final int target = ((Integer) item).intValue();
+            neighbors.offer(target, distance(target, geometry), k);
+        }
+    }
+
+    /**
+     * Neighbors of a search, ordered by distance and index. An instance can be reused by a thread for many searches.
+     */
+    public static final class Neighbors {
+        private int[] indexes = new int[4];
+
+        private double[] distances = new double[4];
+
+        private int size = 0;
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Index of the i-th nearest geometry
+         */
+        public int getIndex(int i) {
+            return indexes[i];
+        }
+
+        /**
+         * Distance of the i-th nearest geometry
+         */
+        public double getDistance(int i) {
+            return distances[i];
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * Inserts a neighbor into the sorted list, keeping at most k neighbors.
+         */
+        public void offer(int index, double distance, int k) {
+            int pos = size;
+            while (pos > 0 && (distances[pos - 1] > distance
+                    || (distances[pos - 1] == distance && indexes[pos - 1] > index))) {
+                pos--;
+            }
+            if (pos >= k) {
+                return;
+            }
+
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            final int end = Math.min(size, k - 1);
+            System.arraycopy(indexes, pos, indexes, pos + 1, end - pos);
+            System.arraycopy(distances, pos, distances, pos + 1, end - pos);
+            indexes[pos] = index;
+            distances[pos] = distance;
+            size = end + 1;
+        }
+    }
+}
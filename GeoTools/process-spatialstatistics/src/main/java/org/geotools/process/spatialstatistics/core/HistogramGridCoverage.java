@@ -16,20 +16,28 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
-import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import org.eclipse.imagen.PlanarImage;
-import org.eclipse.imagen.iterator.RectIter;
-import org.eclipse.imagen.media.iterators.RectIterFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.util.logging.Logging;
 
 /**
- * Histogram GridCoverage
- * 
+ * Histogram GridCoverage<br>
+ * The cells are read tile by tile into primitive arrays, the tiles are counted in parallel and the partial histograms are merged in tile order. A
+ * first pass finds the exact count, sum, minimum and maximum. The second pass then counts:
+ * <ul>
+ * <li>integral values whose range is smaller than {@link #MAX_DIRECT_RANGE} directly in an array indexed by value - the result is exact,</li>
+ * <li>other values up to {@link #getMaxSampleSize()} cells by sorting them - the result is exact,</li>
+ * <li>other values into {@link #getBinCount()} equal bins between the minimum and the maximum. A bin holding a single value keeps it, other bins
+ * are represented by the mean of their values. The minimum and the maximum are kept as entries of their own, so the first and the last values,
+ * the count and the sum of the histogram are exact.</li>
+ * </ul>
+ *
  * @author Minpa Lee
  * @since 1.0
  * @version $Id: HistogramGridCoverage.java 1 2011-09-01 11:22:29Z minpa.lee $
@@ -37,12 +45,54 @@ import org.geotools.util.logging.Logging;
 public class HistogramGridCoverage extends DataHistogram {
     protected static final Logger LOGGER = Logging.getLogger(HistogramGridCoverage.class);
 
+    public static final int MAX_DIRECT_RANGE = 1 << 20;
+
+    public static final int DEFAULT_BIN_COUNT = 65536;
+
     private GridCoverage2D coverage = null;
 
     private int bandIndex = 0;
 
     private double noData = 0.0d;
 
+    private int binCount = DEFAULT_BIN_COUNT;
+
+    private int parallelism = 1;
+
+    private double minimum = Double.NaN;
+
+    private double maximum = Double.NaN;
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    /**
+     * Number of bins of the histogram of non-integral values when there are more than {@link #getMaxSampleSize()} cells
+     */
+    public void setBinCount(int binCount) {
+        this.binCount = Math.max(1, binCount);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to count the tiles. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public double getMinimum() {
+        return minimum;
+    }
+
+    public double getMaximum() {
+        return maximum;
+    }
+
     @Override
     public boolean calculateHistogram(GridCoverage2D coverage, int bandIndex, double noData) {
         this.coverage = coverage;
@@ -55,56 +105,387 @@ public class HistogramGridCoverage extends DataHistogram {
     private boolean calculate() {
         count = 0;
         sumOfVals = 0;
+        minimum = Double.NaN;
+        maximum = Double.NaN;
+        doubleArrayValues = null;
+        longArrayFrequencies = null;
 
         int bandCount = coverage.getNumSampleDimensions();
         if (bandIndex >= bandCount) {
             throw new ArrayIndexOutOfBoundsException("Process failed during execution");
         }
 
-        SortedMap<Double, Integer> valueCountsMap = new TreeMap<Double, Integer>();
-
-        // 1. Iteration
-        PlanarImage inputImage = (PlanarImage) coverage.getRenderedImage();
-        RectIter readIter = RectIterFactory.create(inputImage, inputImage.getBounds());
+        final PlanarImage image = (PlanarImage) coverage.getRenderedImage();
+        final int tileCount = image.getNumXTiles() * image.getNumYTiles();
 
-        readIter.startLines();
-        while (!readIter.finishedLines()) {
-            readIter.startPixels();
-            while (!readIter.finishedPixels()) {
-                double sampleValue = readIter.getSampleDouble(bandIndex);
-                if (!SSUtils.compareDouble(noData, sampleValue)) {
-                    if (valueCountsMap.containsKey(sampleValue)) {
-                        int cnt = valueCountsMap.get(sampleValue);
-                        valueCountsMap.put(sampleValue, Integer.valueOf(cnt + 1));
-                    } else {
-                        valueCountsMap.put(sampleValue, Integer.valueOf(1));
+        // 1. exact count, sum, minimum and maximum
+        final Summary[] summaries = new Summary[tileCount];
+        ParallelRange.execute(parallelism, tileCount, getChunkSize(tileCount), new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                Summary summary = new Summary();
+                double[] samples = null;
+                for (int tile = start; tile < end; tile++) {
+                    samples = readTile(image, tile, samples);
+                    if (samples != null) {
+                        summary.update(samples, getSampleCount(image, tile));
                     }
-
-                    count++;
-                    sumOfVals += sampleValue;
                 }
-                readIter.nextPixel();
+                summaries[start] = summary;
+            }
+        });
+
+        final Summary summary = new Summary();
+        for (Summary partial : summaries) {
+            if (partial != null) {
+                summary.merge(partial);
             }
-            readIter.nextLine();
         }
 
-        if (valueCountsMap.size() == 0) {
+        if (summary.count == 0) {
             return false;
         }
 
-        doubleArrayValues = new double[valueCountsMap.size()];
-        longArrayFrequencies = new int[valueCountsMap.size()];
+        count = (int) Math.min(Integer.MAX_VALUE, summary.count);
+        sumOfVals = summary.sum;
+        minimum = summary.min;
+        maximum = summary.max;
 
-        Iterator<Double> iterator = valueCountsMap.keySet().iterator();
-        int k = 0;
-        while (iterator.hasNext()) {
-            final double key = iterator.next();
-            doubleArrayValues[k] = key;
-            longArrayFrequencies[k] = valueCountsMap.get(key);
-            k++;
+        // 2. counting
+        if (summary.integral && maximum - minimum < MAX_DIRECT_RANGE) {
+            countDirect(image, tileCount);
+        } else if (summary.count <= getMaxSampleSize()) {
+            countExact(image, tileCount, (int) summary.count);
+        } else {
+            countBinned(image, tileCount);
         }
 
         return true;
     }
 
+    /**
+     * Counts integral values in an array indexed by value - minimum.
+     */
+    private void countDirect(final PlanarImage image, int tileCount) {
+        final int range = (int) (maximum - minimum) + 1;
+        final int[][] partials = new int[tileCount][];
+        ParallelRange.execute(parallelism, tileCount, getChunkSize(tileCount), new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                final int[] counts = new int[range];
+                double[] samples = null;
+                for (int tile = start; tile < end; tile++) {
+                    samples = readTile(image, tile, samples);
+                    if (samples == null) {
+                        continue;
+                    }
+                    for (int i = 0, size = getSampleCount(image, tile); i < size; i++) {
+                        final double value = samples[i];
+                        if (isValid(value)) {
+                            counts[(int) (value - minimum)]++;
+                        }
+                    }
+                }
+                partials[start] = counts;
+            }
+        });
+
+        final long[] counts = new long[range];
+        for (int[] partial : partials) {
+            if (partial != null) {
+                for (int i = 0; i < range; i++) {
+                    counts[i] += partial[i];
+                }
+            }
+        }
+
+        int size = 0;
+        for (int i = 0; i < range; i++) {
+            if (counts[i] > 0) {
+                size++;
+            }
+        }
+
+        doubleArrayValues = new double[size];
+        longArrayFrequencies = new int[size];
+        int k = 0;
+        for (int i = 0; i < range; i++) {
+            if (counts[i] > 0) {
+                doubleArrayValues[k] = minimum + i;
+                longArrayFrequencies[k] = (int) Math.min(Integer.MAX_VALUE, counts[i]);
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Sorts all values and counts the runs of equal values.
+     */
+    private void countExact(final PlanarImage image, int tileCount, int sampleCount) {
+        // offsets of the tiles' values in the sorted array
+        final int[] offsets = new int[tileCount + 1];
+        final double[][] partials = new double[tileCount][];
+        ParallelRange.execute(parallelism, tileCount, getChunkSize(tileCount), new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                double[] samples = null;
+                for (int tile = start; tile < end; tile++) {
+                    samples = readTile(image, tile, samples);
+                    if (samples == null) {
+                        continue;
+                    }
+                    int valid = 0;
+                    double[] values = new double[getSampleCount(image, tile)];
+                    for (int i = 0; i < values.length; i++) {
+                        if (isValid(samples[i])) {
+                            values[valid++] = samples[i];
+                        }
+                    }
+                    partials[tile] = Arrays.copyOf(values, valid);
+                    offsets[tile + 1] = valid;
+                }
+            }
+        });
+
+        for (int tile = 0; tile < tileCount; tile++) {
+            offsets[tile + 1] += offsets[tile];
+        }
+
+        final double[] values = new double[sampleCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (partials[tile] != null) {
+                System.arraycopy(partials[tile], 0, values, offsets[tile], partials[tile].length);
+                partials[tile] = null;
+            }
+        }
+        Arrays.parallelSort(values);
+
+        int size = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                size++;
+            }
+        }
+
+        doubleArrayValues = new double[size];
+        longArrayFrequencies = new int[size];
+        int k = -1;
+        for (int i = 0; i < sampleCount; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                doubleArrayValues[++k] = values[i];
+            }
+            longArrayFrequencies[k]++;
+        }
+    }
+
+    /**
+     * Counts values into equal bins between the minimum and the maximum.
+     */
+    private void countBinned(final PlanarImage image, int tileCount) {
+        final int bins = binCount;
+        final double scale = maximum > minimum ? bins / (maximum - minimum) : 0;
+        final Bins[] partials = new Bins[tileCount];
+        ParallelRange.execute(parallelism, tileCount, getChunkSize(tileCount), new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                final Bins partial = new Bins(bins);
+                double[] samples = null;
+                for (int tile = start; tile < end; tile++) {
+                    samples = readTile(image, tile, samples);
+                    if (samples == null) {
+                        continue;
+                    }
+                    for (int i = 0, size = getSampleCount(image, tile); i < size; i++) {
+                        final double value = samples[i];
+                        if (isValid(value)) {
+                            int bin = (int) ((value - minimum) * scale);
+                            partial.add(bin < bins ? bin : bins - 1, value);
+                        }
+                    }
+                }
+                partials[start] = partial;
+            }
+        });
+
+        final Bins merged = new Bins(bins);
+        for (Bins partial : partials) {
+            if (partial != null) {
+                merged.merge(partial);
+            }
+        }
+
+        int first = 0;
+        while (merged.counts[first] == 0) {
+            first++;
+        }
+        int last = bins - 1;
+        while (merged.counts[last] == 0) {
+            last--;
+        }
+
+        // at most 3 entries for the first and the last bins, 1 for the others
+        final int capacity = bins + 4;
+        double[] values = new double[capacity];
+        int[] frequencies = new int[capacity];
+        int size = 0;
+        for (int bin = first; bin <= last; bin++) {
+            long frequency = merged.counts[bin];
+            if (frequency == 0) {
+                continue;
+            }
+
+            final double binMin = merged.minimums[bin];
+            final double binMax = merged.maximums[bin];
+            if (binMin == binMax) {
+                size = append(values, frequencies, size, binMin, frequency);
+                continue;
+            }
+
+            double binSum = merged.sums[bin];
+            if (bin == first) {
+                size = append(values, frequencies, size, binMin, 1);
+                frequency--;
+                binSum -= binMin;
+            }
+            if (bin == last) {
+                frequency--;
+                binSum -= binMax;
+            }
+            if (frequency > 0) {
+                final double mean = Math.max(binMin, Math.min(binMax, binSum / frequency));
+                size = append(values, frequencies, size, mean, frequency);
+            }
+            if (bin == last) {
+                size = append(values, frequencies, size, binMax, 1);
+            }
+        }
+
+        doubleArrayValues = Arrays.copyOf(values, size);
+        longArrayFrequencies = Arrays.copyOf(frequencies, size);
+    }
+
+    private int append(double[] values, int[] frequencies, int size, double value, long count) {
+        if (size > 0 && values[size - 1] == value) {
+            final long merged = frequencies[size - 1] + count;
+            frequencies[size - 1] = (int) Math.min(Integer.MAX_VALUE, merged);
+            return size;
+        }
+        values[size] = value;
+        frequencies[size] = (int) Math.min(Integer.MAX_VALUE, count);
+        return size + 1;
+    }
+
+    private boolean isValid(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value)
+                && !SSUtils.compareDouble(noData, value);
+    }
+
+    // about one chunk of tiles per thread, each chunk owns a partial histogram
+    private int getChunkSize(int tileCount) {
+        final int threads = ParallelRange.getThreadCount(parallelism);
+        return Math.max(1, (tileCount + threads - 1) / threads);
+    }
+
+    private Rectangle getTileRegion(PlanarImage image, int tile) {
+        final int tileX = image.getMinTileX() + tile % image.getNumXTiles();
+        final int tileY = image.getMinTileY() + tile / image.getNumXTiles();
+        return image.getTileRect(tileX, tileY).intersection(image.getBounds());
+    }
+
+    private int getSampleCount(PlanarImage image, int tile) {
+        final Rectangle rect = getTileRegion(image, tile);
+        return rect.isEmpty() ? 0 : rect.width * rect.height;
+    }
+
+    /**
+     * Reads the cells of the tile (row major, clipped to the image) into the buffer, or returns null if the tile is empty.
+     */
+    private double[] readTile(PlanarImage image, int tile, double[] buffer) {
+        final Rectangle rect = getTileRegion(image, tile);
+        if (rect.isEmpty()) {
+            return null;
+        }
+
+        final int tileX = image.getMinTileX() + tile % image.getNumXTiles();
+        final int tileY = image.getMinTileY() + tile / image.getNumXTiles();
+        final Raster raster = image.getTile(tileX, tileY);
+        if (buffer == null || buffer.length < rect.width * rect.height) {
+            buffer = new double[rect.width * rect.height];
+        }
+        return raster.getSamples(rect.x, rect.y, rect.width, rect.height, bandIndex, buffer);
+    }
+
+    private final class Summary {
+        long count = 0;
+
+        double sum = 0;
+
+        double min = Double.MAX_VALUE;
+
+        double max = -Double.MAX_VALUE;
+
+        boolean integral = true;
+
+        void update(double[] samples, int size) {
+            for (int i = 0; i < size; i++) {
+                final double value = samples[i];
+                if (isValid(value)) {
+                    count++;
+                    sum += value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    integral = integral && value == Math.rint(value);
+                }
+            }
+        }
+
+        void merge(Summary other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            integral = integral && other.integral;
+        }
+    }
+
+    private static final class Bins {
+        final long[] counts;
+
+        final double[] sums;
+
+        final double[] minimums;
+
+        final double[] maximums;
+
+        Bins(int bins) {
+            counts = new long[bins];
+            sums = new double[bins];
+            minimums = new double[bins];
+            maximums = new double[bins];
+            Arrays.fill(minimums, Double.MAX_VALUE);
+            Arrays.fill(maximums, -Double.MAX_VALUE);
+        }
+
+        void add(int bin, double value) {
+            counts[bin]++;
+            sums[bin] += value;
+            if (value < minimums[bin]) {
+                minimums[bin] = value;
+            }
+            if (value > maximums[bin]) {
+                maximums[bin] = value;
+            }
+        }
+
+        void merge(Bins other) {
+            for (int bin = 0; bin < counts.length; bin++) {
+                if (other.counts[bin] > 0) {
+                    counts[bin] += other.counts[bin];
+                    sums[bin] += other.sums[bin];
+                    minimums[bin] = Math.min(minimums[bin], other.minimums[bin]);
+                    maximums[bin] = Math.max(maximums[bin], other.maximums[bin]);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+
+/**
+ * Overlays many source geometries with one set of overlay features.<br>
+ * The overlay features are read once and indexed by an STRtree, and each overlay geometry keeps a prepared geometry built on its first use. For
+ * difference, the overlays are clipped to the cells of a regular grid over their extent and the union of each cell is built once and shared by
+ * all the source geometries that touch the cell. The overlays use OverlayNG, which falls back to snapping noding and snap rounding when floating
+ * noding fails. All methods can be called from several threads.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class OverlayEngine {
+    protected static final Logger LOGGER = Logging.getLogger(OverlayEngine.class);
+
+    // average number of overlays per grid cell
+    static final int CELL_CAPACITY = 16;
+
+    static final int MAX_GRID_SIZE = 256;
+
+    private final List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+
+    private final List<Geometry> geometries = new ArrayList<Geometry>();
+
+    private final STRtree index = new STRtree();
+
+    private final Envelope bounds = new Envelope();
+
+    private final AtomicReferenceArray<PreparedGeometry> prepared;
+
+    private int columns;
+
+    private int rows;
+
+    private double cellWidth;
+
+    private double cellHeight;
+
+    private AtomicReferenceArray<Geometry> cellUnions;
+
+    /**
+     * @param overlays overlay features, features with null or empty geometries are skipped
+     */
+    public OverlayEngine(SimpleFeatureCollection overlays) {
+        SimpleFeatureIterator featureIter = overlays.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+
+                index.insert(geometry.getEnvelopeInternal(), Integer.valueOf(features.size()));
+                bounds.expandToInclude(geometry.getEnvelopeInternal());
+                features.add(feature);
+                geometries.add(geometry);
+            }
+        } finally {
+            featureIter.close();
+        }
+        index.build();
+
+        this.prepared = new AtomicReferenceArray<PreparedGeometry>(features.size());
+        buildGrid();
+    }
+
+    private void buildGrid() {
+        int size = (int) Math.ceil(Math.sqrt(features.size() / (double) CELL_CAPACITY));
+        size = Math.max(1, Math.min(MAX_GRID_SIZE, size));
+
+        columns = bounds.getWidth() > 0 ? size : 1;
+        rows = bounds.getHeight() > 0 ? size : 1;
+        cellWidth = bounds.getWidth() / columns;
+        cellHeight = bounds.getHeight() / rows;
+        cellUnions = new AtomicReferenceArray<Geometry>(columns * rows);
+    }
+
+    public int size() {
+        return features.size();
+    }
+
+    public Envelope getBounds() {
+        return bounds;
+    }
+
+    public SimpleFeature getFeature(int overlay) {
+        return features.get(overlay);
+    }
+
+    public Geometry getGeometry(int overlay) {
+        return geometries.get(overlay);
+    }
+
+    private PreparedGeometry getPrepared(int overlay) {
+        PreparedGeometry preparedGeometry = prepared.get(overlay);
+        if (preparedGeometry == null) {
+            prepared.compareAndSet(overlay, null,
+                    PreparedGeometryFactory.prepare(geometries.get(overlay)));
+            preparedGeometry = prepared.get(overlay);
+        }
+        return preparedGeometry;
+    }
+
+    /**
+     * Returns the indexes of the overlays the geometry intersects, in the order of the overlay features.
+     */
+    public int[] query(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return new int[0];
+        }
+
+        Candidates candidates = new Candidates();
+        index.query(geometry.getEnvelopeInternal(), candidates);
+
+        Arrays.sort(candidates.items, 0, candidates.size);
+        int found = 0;
+        for (int i = 0; i < candidates.size; i++) {
+            final int overlay = candidates.items[i];
+            if (getPrepared(overlay).intersects(geometry)) {
+                candidates.items[found++] = overlay;
+            }
+        }
+        return Arrays.copyOf(candidates.items, found);
+    }
+
+    /**
+     * Returns the intersection of the geometry and the overlay.
+     */
+    public Geometry intersection(Geometry geometry, int overlay) {
+        if (getPrepared(overlay).containsProperly(geometry)) {
+            return geometry;
+        }
+        return OverlayNGRobust.overlay(geometry, geometries.get(overlay), OverlayNG.INTERSECTION);
+    }
+
+    /**
+     * Returns the geometry minus the union of the overlays. The geometry itself is returned when it does not intersect any overlay.
+     */
+    public Geometry difference(Geometry geometry) {
+        if (query(geometry).length == 0) {
+            return geometry;
+        }
+
+        final Envelope envelope = geometry.getEnvelopeInternal();
+        final int minCol = column(envelope.getMinX());
+        final int maxCol = column(envelope.getMaxX());
+        final int minRow = row(envelope.getMinY());
+        final int maxRow = row(envelope.getMaxY());
+
+        // every overlay the geometry intersects is a member of a cell within its envelope
+        Geometry difference = geometry;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Geometry union = getCellUnion(row * columns + col, col, row);
+                if (union == null || union.isEmpty() || !union.getEnvelopeInternal()
+                        .intersects(difference.getEnvelopeInternal())) {
+                    continue;
+                }
+
+                difference = OverlayNGRobust.overlay(difference, union, OverlayNG.DIFFERENCE);
+                if (difference.isEmpty()) {
+                    return difference;
+                }
+            }
+        }
+        return difference;
+    }
+
+    private int column(double x) {
+        if (cellWidth == 0) {
+            return 0;
+        }
+        int col = (int) Math.floor((x - bounds.getMinX()) / cellWidth);
+        return Math.max(0, Math.min(columns - 1, col));
+    }
+
+    private int row(double y) {
+        if (cellHeight == 0) {
+            return 0;
+        }
+        int row = (int) Math.floor((y - bounds.getMinY()) / cellHeight);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    // union of the overlays whose envelopes intersect the cell, each clipped to the cell so that
+    // a large overlay is not copied whole into every cell it covers. built once per cell
+    private Geometry getCellUnion(int cell, int col, int row) {
+        Geometry union = cellUnions.get(cell);
+        if (union != null) {
+            return union;
+        }
+
+        // neighboring cells share the same edge coordinates
+        Envelope cellEnvelope = new Envelope(cellX(col), cellX(col + 1), cellY(row),
+                cellY(row + 1));
+        GeometryFactory factory = geometries.get(0).getFactory();
+
+        Candidates candidates = new Candidates();
+        index.query(cellEnvelope, candidates);
+
+        Geometry clip = null;
+        List<Geometry> members = new ArrayList<Geometry>(candidates.size);
+        for (int i = 0; i < candidates.size; i++) {
+            Geometry member = geometries.get(candidates.items[i]);
+            if (cellEnvelope.getArea() > 0 && !cellEnvelope.covers(member.getEnvelopeInternal())) {
+                if (clip == null) {
+                    clip = factory.toGeometry(cellEnvelope);
+                }
+                member = OverlayNGRobust.overlay(member, clip, OverlayNG.INTERSECTION);
+            }
+            if (!member.isEmpty()) {
+                members.add(member);
+            }
+        }
+
+        if (members.isEmpty()) {
+            union = factory.createGeometryCollection();
+        } else {
+            union = OverlayNGRobust.union(members);
+        }
+
+        cellUnions.compareAndSet(cell, null, union);
+        return cellUnions.get(cell);
+    }
+
+    private double cellX(int col) {
+        return col == columns ? bounds.getMaxX() : bounds.getMinX() + col * cellWidth;
+    }
+
+    private double cellY(int row) {
+        return row == rows ? bounds.getMaxY() : bounds.getMinY() + row * cellHeight;
+    }
+}
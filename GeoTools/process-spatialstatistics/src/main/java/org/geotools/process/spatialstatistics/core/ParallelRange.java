@@ -0,0 +1,111 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range [0, count) into chunks and executes them on a fork-join pool.<br>
+ * Each chunk must write only to its own indexes, so the results do not depend on the number of threads.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class ParallelRange {
+
+    static final int DEFAULT_MIN_CHUNK_SIZE = 64;
+
+    public interface RangeTask {
+        /**
+         * Processes the indexes from start (inclusive) to end (exclusive).
+         */
+        void execute(int start, int end);
+    }
+
+    private ParallelRange() {
+    }
+
+    /**
+     * Returns the number of threads for the parallelism level. 0 or negative means all available processors.
+     */
+    public static int getThreadCount(int parallelism) {
+        if (parallelism <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism;
+    }
+
+    public static void execute(int parallelism, int count, RangeTask task) {
+        execute(parallelism, count, DEFAULT_MIN_CHUNK_SIZE, task);
+    }
+
+    public static void execute(int parallelism, int count, int minChunkSize, RangeTask task) {
+        if (count <= 0) {
+            return;
+        }
+
+        final int threads = getThreadCount(parallelism);
+        minChunkSize = Math.max(1, minChunkSize);
+        if (threads == 1 || count <= minChunkSize) {
+            task.execute(0, count);
+            return;
+        }
+
+        // a few chunks per thread for load balancing
+        int chunkSize = Math.max(minChunkSize, (int) Math.ceil(count / (threads * 4.0)));
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RangeAction(task, 0, count, chunkSize));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeTask task;
+
+        private final int start;
+
+        private final int end;
+
+        private final int chunkSize;
+
+        RangeAction(RangeTask task, int start, int end, int chunkSize) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= chunkSize) {
+                task.execute(start, end);
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new RangeAction(task, start, middle, chunkSize),
+                    new RangeAction(task, middle, end, chunkSize));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.filter.expression.Expression;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Aggregates point features by the polygons they fall in, reading the points once.<br>
+ * The polygons are indexed by an STRtree and each polygon keeps an indexed point in area locator, so a point is located by an envelope query and
+ * one locator call per candidate polygon. A point on the boundary of a polygon belongs to the polygon, the same as the intersects predicate, and a
+ * point in overlapping polygons belongs to all of them. Counts and weight sums are accumulated in arrays indexed by the position of the polygon in
+ * the list. The points are read in blocks and the points of a block are located in parallel.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class PointInPolygonAggregator {
+    protected static final Logger LOGGER = Logging.getLogger(PointInPolygonAggregator.class);
+
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private final Geometry[] polygons;
+
+    private final IndexedPointInAreaLocator[] locators;
+
+    private final AtomicReferenceArray<PreparedGeometry> prepared;
+
+    private final STRtree index = new STRtree();
+
+    private final long[] counts;
+
+    private final double[] sums;
+
+    private int parallelism = 1;
+
+    /**
+     * @param polygons polygons, null or empty geometries are never located
+     */
+    public PointInPolygonAggregator(List<Geometry> polygons) {
+        final int size = polygons.size();
+        this.polygons = polygons.toArray(new Geometry[size]);
+        this.locators = new IndexedPointInAreaLocator[size];
+        this.prepared = new AtomicReferenceArray<PreparedGeometry>(size);
+        this.counts = new long[size];
+        this.sums = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            Geometry polygon = this.polygons[i];
+            if (polygon == null || polygon.isEmpty()) {
+                continue;
+            }
+            if (polygon instanceof Polygonal) {
+                // the locator builds its index on the first call
+                locators[i] = new IndexedPointInAreaLocator(polygon);
+            }
+            index.insert(polygon.getEnvelopeInternal(), Integer.valueOf(i));
+        }
+        index.build();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to locate the points. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int size() {
+        return polygons.length;
+    }
+
+    /**
+     * Number of point features in the polygon
+     */
+    public long getCount(int polygon) {
+        return counts[polygon];
+    }
+
+    /**
+     * Sum of the weights of the point features in the polygon
+     */
+    public double getSum(int polygon) {
+        return sums[polygon];
+    }
+
+    /**
+     * Returns the indexes of the polygons the geometry intersects, in ascending order. Point geometries are located with the locators of the
+     * polygons, other geometries and other targets with prepared geometries.
+     */
+    public int[] locate(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return new int[0];
+        }
+
+        final Candidates candidates = new Candidates();
+        index.query(geometry.getEnvelopeInternal(), candidates);
+        if (candidates.size == 0) {
+            return new int[0];
+        }
+
+        Arrays.sort(candidates.items, 0, candidates.size);
+        final boolean puntal = geometry instanceof Puntal;
+        final Coordinate[] coordinates = puntal ? geometry.getCoordinates() : null;
+        int found = 0;
+        for (int k = 0; k < candidates.size; k++) {
+            final int polygon = candidates.items[k];
+            boolean intersects = false;
+            if (puntal && locators[polygon] != null) {
+                for (int i = 0; i < coordinates.length && !intersects; i++) {
+                    intersects = locators[polygon].locate(coordinates[i]) != Location.EXTERIOR;
+                }
+            } else {
+                intersects = getPrepared(polygon).intersects(geometry);
+            }
+
+            if (intersects) {
+                candidates.items[found++] = polygon;
+            }
+        }
+        return Arrays.copyOf(candidates.items, found);
+    }
+
+    private PreparedGeometry getPrepared(int polygon) {
+        PreparedGeometry preparedGeometry = prepared.get(polygon);
+        if (preparedGeometry == null) {
+            prepared.compareAndSet(polygon, null,
+                    PreparedGeometryFactory.prepare(polygons[polygon]));
+            preparedGeometry = prepared.get(polygon);
+        }
+        return preparedGeometry;
+    }
+
+    /**
+     * Reads the points once and adds their counts and weights to the polygons they fall in.
+     *
+     * @param points point features
+     * @param weight weight expression, null = no weight. Null, NaN and infinite weights are counted but not summed.
+     */
+    public void aggregate(SimpleFeatureCollection points, Expression weight) {
+        final Geometry[] geometries = new Geometry[BLOCK_SIZE];
+        final double[] weights = new double[BLOCK_SIZE];
+        final int[][] located = new int[BLOCK_SIZE][];
+
+        SimpleFeatureIterator featureIter = points.features();
+        try {
+            int size = 0;
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+
+                double value = Double.NaN;
+                if (weight != null) {
+                    Double evaluated = weight.evaluate(feature, Double.class);
+                    value = evaluated == null ? Double.NaN : evaluated.doubleValue();
+                }
+
+                geometries[size] = geometry;
+                weights[size] = value;
+                if (++size == BLOCK_SIZE) {
+                    accumulate(geometries, weights, located, size);
+                    size = 0;
+                }
+            }
+            accumulate(geometries, weights, located, size);
+        } finally {
+            featureIter.close();
+        }
+    }
+
+    private void accumulate(final Geometry[] geometries, double[] weights, final int[][] located,
+            int size) {
+        ParallelRange.execute(parallelism, size, 256, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    located[i] = locate(geometries[i]);
+                }
+            }
+        });
+
+        for (int i = 0; i < size; i++) {
+            final boolean summable = !Double.isNaN(weights[i]) && !Double.isInfinite(weights[i]);
+            for (int polygon : located[i]) {
+                counts[polygon]++;
+                if (summable) {
+                    sums[polygon] += weights[i];
+                }
+            }
+            geometries[i] = null;
+            located[i] = null;
+        }
+    }
+}
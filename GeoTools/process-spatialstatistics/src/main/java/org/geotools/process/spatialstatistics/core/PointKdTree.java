@@ -0,0 +1,326 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+
+/**
+ * Static 2D KD-tree over packed point arrays.<br>
+ * The points are reordered so that every subtree occupies a contiguous range [lo, hi) whose median (lo + hi) / 2 is the splitting point, so the
+ * tree needs no node objects. Queries return positions in the tree; {@link #getIndex(int)} maps a position to the index of the point in the input
+ * arrays. The tree is immutable and can be queried concurrently, each thread with its own {@link Neighbors}.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class PointKdTree {
+
+    private final double[] xs;
+
+    private final double[] ys;
+
+    private final int[] indexes;
+
+    // splitting axis of the node at each position, 0 = x, 1 = y
+    private final byte[] axes;
+
+    private final int size;
+
+    public PointKdTree(double[] x, double[] y) {
+        this(x, y, Math.min(x.length, y.length));
+    }
+
+    public PointKdTree(double[] x, double[] y, int count) {
+        this.size = count;
+        this.xs = Arrays.copyOf(x, count);
+        this.ys = Arrays.copyOf(y, count);
+        this.indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        this.axes = new byte[count];
+
+        build(0, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index of the point at the tree position in the input arrays.
+     */
+    public int getIndex(int position) {
+        return indexes[position];
+    }
+
+    public double getX(int position) {
+        return xs[position];
+    }
+
+    public double getY(int position) {
+        return ys[position];
+    }
+
+    private void build(int lo, int hi) {
+        while (hi - lo > 1) {
+            // split on the axis with the larger spread
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                minX = Math.min(minX, xs[i]);
+                maxX = Math.max(maxX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+
+            final byte axis = (maxX - minX) >= (maxY - minY) ? (byte) 0 : (byte) 1;
+            final int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, axis == 0 ? xs : ys);
+            axes[mid] = axis;
+
+            // recurse into the smaller half, loop on the larger one
+            if (mid - lo < hi - mid - 1) {
+                build(lo, mid);
+                lo = mid + 1;
+            } else {
+                build(mid + 1, hi);
+                hi = mid;
+            }
+        }
+    }
+
+    // quickselect: moves the k-th smallest key of [left, right] to k
+    private void select(int left, int right, int k, double[] keys) {
+        while (right > left) {
+            // median of three pivot
+            int mid = (left + right) >>> 1;
+            if (keys[mid] < keys[left]) {
+                swap(mid, left);
+            }
+            if (keys[right] < keys[left]) {
+                swap(right, left);
+            }
+            if (keys[right] < keys[mid]) {
+                swap(right, mid);
+            }
+            final double pivot = keys[mid];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double tx = xs[i];
+        xs[i] = xs[j];
+        xs[j] = tx;
+
+        double ty = ys[i];
+        ys[i] = ys[j];
+        ys[j] = ty;
+
+        int ti = indexes[i];
+        indexes[i] = indexes[j];
+        indexes[j] = ti;
+    }
+
+    /**
+     * Finds the k nearest points within the maximum distance. The result is kept in the neighbors, which are cleared first.
+     *
+     * @param k number of neighbors, 0 or negative = all points within the maximum distance
+     * @param maxDistance maximum distance, NaN or Double.MAX_VALUE = no limit
+     * @return number of neighbors found
+     */
+    public int nearest(double x, double y, int k, double maxDistance, Neighbors neighbors) {
+        boolean unlimited = Double.isNaN(maxDistance) || maxDistance >= Double.MAX_VALUE;
+        neighbors.reset(k, unlimited ? Double.POSITIVE_INFINITY : maxDistance * maxDistance);
+        if (size > 0) {
+            search(0, size, x, y, neighbors);
+        }
+        return neighbors.size();
+    }
+
+    /**
+     * Finds all points within the distance.
+     *
+     * @return number of neighbors found
+     */
+    public int withinDistance(double x, double y, double distance, Neighbors neighbors) {
+        return nearest(x, y, 0, distance, neighbors);
+    }
+
+    private void search(int lo, int hi, double x, double y, Neighbors neighbors) {
+        while (hi > lo) {
+            final int mid = (lo + hi) >>> 1;
+            final double dx = x - xs[mid];
+            final double dy = y - ys[mid];
+            neighbors.offer(mid, dx * dx + dy * dy);
+
+            final double diff = axes[mid] == 0 ? dx : dy;
+            final int nearLo = diff < 0 ? lo : mid + 1;
+            final int nearHi = diff < 0 ? mid : hi;
+            final int farLo = diff < 0 ? mid + 1 : lo;
+            final int farHi = diff < 0 ? hi : mid;
+
+            search(nearLo, nearHi, x, y, neighbors);
+
+            // the far side can only contain closer points if the splitting plane is closer
+            if (diff * diff > neighbors.bound()) {
+                return;
+            }
+            lo = farLo;
+            hi = farHi;
+        }
+    }
+
+    /**
+     * Reusable result of a query: tree positions and squared distances. In bounded (k nearest) mode the entries form a max-heap on the distance,
+     * in unbounded mode they are in visiting order.
+     */
+    public static final class Neighbors {
+        private int[] positions;
+
+        private double[] distances;
+
+        private int size = 0;
+
+        private int k = 0;
+
+        private double limit = Double.POSITIVE_INFINITY;
+
+        public Neighbors() {
+            this(16);
+        }
+
+        public Neighbors(int initialCapacity) {
+            initialCapacity = Math.max(1, initialCapacity);
+            positions = new int[initialCapacity];
+            distances = new double[initialCapacity];
+        }
+
+        void reset(int k, double squaredLimit) {
+            this.k = Math.max(0, k);
+            this.limit = squaredLimit;
+            this.size = 0;
+            if (this.k > positions.length) {
+                positions = new int[this.k];
+                distances = new double[this.k];
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Tree position of the i-th neighbor, see {@link PointKdTree#getIndex(int)}.
+         */
+        public int getPosition(int i) {
+            return positions[i];
+        }
+
+        /**
+         * Squared distance of the i-th neighbor.
+         */
+        public double getSquaredDistance(int i) {
+            return distances[i];
+        }
+
+        // squared distance a point must not exceed to be accepted
+        double bound() {
+            if (k > 0 && size == k) {
+                return Math.min(limit, distances[0]);
+            }
+            return limit;
+        }
+
+        void offer(int position, double distance) {
+            if (distance > limit) {
+                return;
+            }
+
+            if (k == 0) {
+                // unbounded
+                if (size == positions.length) {
+                    int capacity = positions.length * 2;
+                    positions = Arrays.copyOf(positions, capacity);
+                    distances = Arrays.copyOf(distances, capacity);
+                }
+                positions[size] = position;
+                distances[size] = distance;
+                size++;
+            } else if (size < k) {
+                // sift up
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (distances[parent] >= distance) {
+                        break;
+                    }
+                    positions[i] = positions[parent];
+                    distances[i] = distances[parent];
+                    i = parent;
+                }
+                positions[i] = position;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                // replace the farthest and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && distances[child + 1] > distances[child]) {
+                        child++;
+                    }
+                    if (distances[child] <= distance) {
+                        break;
+                    }
+                    positions[i] = positions[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                positions[i] = position;
+                distances[i] = distance;
+            }
+        }
+    }
+}
@@ -29,6 +29,9 @@ public class SpatialEvent {
 
     public Object id = 0;
 
+    // row index in the spatial weights, -1 if not assigned
+    public int index = -1;
+
     public Coordinate coordinate;
 
     public double xVal = 1.0;
@@ -0,0 +1,369 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse spatial weights stored in compressed sparse row (CSR) form.<br>
+ * Features are identified by their index (0 ~ size - 1). The neighbors of row i are stored in {@code neighbors[rowOffsets[i] ~ rowOffsets[i + 1] - 1]}
+ * in ascending order, and the matching weights (or distances) are stored in {@code weights} at the same positions. The arrays are held as
+ * buffers, so the weights of a binary spatial weights file can stay in its memory-mapped buffer.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class SpatialWeights {
+
+    private final int size;
+
+    private final IntBuffer rowOffsets;
+
+    private final IntBuffer neighbors;
+
+    private final DoubleBuffer weights;
+
+    public SpatialWeights(int size, int[] rowOffsets, int[] neighbors, double[] weights) {
+        this(size, IntBuffer.wrap(rowOffsets), IntBuffer.wrap(neighbors),
+                DoubleBuffer.wrap(weights));
+    }
+
+    /**
+     * Creates the weights from buffers, read with absolute indexes from 0 to the limit.
+     */
+    public SpatialWeights(int size, IntBuffer rowOffsets, IntBuffer neighbors,
+            DoubleBuffer weights) {
+        if (rowOffsets.limit() != size + 1) {
+            throw new IllegalArgumentException("rowOffsets length must be size + 1");
+        }
+        final int nnz = rowOffsets.get(size);
+        if (neighbors.limit() < nnz || weights.limit() < nnz) {
+            throw new IllegalArgumentException("neighbors and weights must hold all entries");
+        }
+        this.size = size;
+        this.rowOffsets = rowOffsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+    }
+
+    /**
+     * Number of rows(features)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of stored neighbor pairs
+     */
+    public int getNonZeroCount() {
+        return rowOffsets.get(size);
+    }
+
+    public int getRowStart(int row) {
+        return rowOffsets.get(row);
+    }
+
+    public int getRowEnd(int row) {
+        return rowOffsets.get(row + 1);
+    }
+
+    public int getNeighborCount(int row) {
+        return rowOffsets.get(row + 1) - rowOffsets.get(row);
+    }
+
+    public int getNeighbor(int position) {
+        return neighbors.get(position);
+    }
+
+    public double getWeight(int position) {
+        return weights.get(position);
+    }
+
+    public IntBuffer getRowOffsets() {
+        return rowOffsets.asReadOnlyBuffer();
+    }
+
+    public IntBuffer getNeighbors() {
+        return neighbors.asReadOnlyBuffer();
+    }
+
+    public DoubleBuffer getWeights() {
+        return weights.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the position of (row, column) pair or -1 if not neighbors.
+     */
+    public int indexOf(int row, int column) {
+        if (row < 0 || row >= size) {
+            return -1;
+        }
+        int low = rowOffsets.get(row);
+        int high = rowOffsets.get(row + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int neighbor = neighbors.get(mid);
+            if (neighbor < column) {
+                low = mid + 1;
+            } else if (neighbor > column) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isNeighbor(int row, int column) {
+        return indexOf(row, column) >= 0;
+    }
+
+    public double getWeight(int row, int column) {
+        int pos = indexOf(row, column);
+        return pos < 0 ? 0.0 : weights.get(pos);
+    }
+
+    public double getRowSum(int row) {
+        double sum = 0.0;
+        for (int k = rowOffsets.get(row), end = rowOffsets.get(row + 1); k < end; k++) {
+            sum += weights.get(k);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns new weights with the same structure and the given values.
+     */
+    public SpatialWeights withWeights(double[] newWeights) {
+        if (newWeights.length < getNonZeroCount()) {
+            throw new IllegalArgumentException("weights must hold all entries");
+        }
+        return new SpatialWeights(size, rowOffsets, neighbors, DoubleBuffer.wrap(newWeights));
+    }
+
+    /**
+     * Returns binary weights of the neighbors within the given order, the non zero pattern of (W + I)^order without the diagonal. Rows are
+     * expanded one order at a time from the neighbors found in the previous order.
+     */
+    public SpatialWeights power(int order) {
+        int[] marker = new int[size];
+        Arrays.fill(marker, -1);
+
+        int[] reached = new int[Math.max(16, size)];
+        int[] offsets = new int[size + 1];
+        int[] cols = new int[Math.max(16, getNonZeroCount())];
+        int count = 0;
+
+        for (int row = 0; row < size; row++) {
+            marker[row] = row;
+            int reachedCount = 0;
+            int frontierStart = 0;
+
+            for (int step = 0; step < order; step++) {
+                int frontierEnd = reachedCount;
+                int start = step == 0 ? 0 : frontierStart;
+                int end = step == 0 ? 1 : frontierEnd;
+                for (int f = start; f < end; f++) {
+                    int node = step == 0 ? row : reached[f];
+                    for (int k = rowOffsets.get(node), last = rowOffsets.get(node + 1); k < last;
+                            k++) {
+                        int neighbor = neighbors.get(k);
+                        if (marker[neighbor] != row) {
+                            marker[neighbor] = row;
+                            if (reachedCount == reached.length) {
+                                reached = Arrays.copyOf(reached, reached.length * 2);
+                            }
+                            reached[reachedCount++] = neighbor;
+                        }
+                    }
+                }
+
+                if (reachedCount == frontierEnd) {
+                    break; // no more neighbors
+                }
+                frontierStart = frontierEnd;
+            }
+
+            if (count + reachedCount > cols.length) {
+                cols = Arrays.copyOf(cols, Math.max(cols.length * 2, count + reachedCount));
+            }
+            System.arraycopy(reached, 0, cols, count, reachedCount);
+            Arrays.sort(cols, count, count + reachedCount);
+            count += reachedCount;
+            offsets[row + 1] = count;
+        }
+
+        double[] values = new double[count];
+        Arrays.fill(values, 1.0);
+        return new SpatialWeights(size, offsets, Arrays.copyOf(cols, count), values);
+    }
+
+    /**
+     * Accumulates (row, column, weight) triplets in any order and compacts them into {@link SpatialWeights}. If the same pair is visited twice, the
+     * last weight wins.
+     */
+    public static class Builder {
+
+        private int size = 0;
+
+        private int count = 0;
+
+        private int[] rows;
+
+        private int[] columns;
+
+        private double[] values;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int initialCapacity) {
+            initialCapacity = Math.max(initialCapacity, 4);
+            rows = new int[initialCapacity];
+            columns = new int[initialCapacity];
+            values = new double[initialCapacity];
+        }
+
+        public Builder(SpatialWeights source) {
+            this(Math.max(16, source.getNonZeroCount()));
+            ensureSize(source.size());
+            for (int row = 0; row < source.size(); row++) {
+                for (int k = source.getRowStart(row); k < source.getRowEnd(row); k++) {
+                    add(row, source.getNeighbor(k), source.getWeight(k));
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Ensures the built matrix has at least the given number of rows, including rows without neighbors.
+         */
+        public void ensureSize(int rowCount) {
+            size = Math.max(size, rowCount);
+        }
+
+        public void add(int row, int column, double weight) {
+            if (row < 0 || column < 0) {
+                throw new IllegalArgumentException("row and column must be >= 0");
+            }
+
+            if (count == rows.length) {
+                int capacity = rows.length + (rows.length >> 1) + 1;
+                rows = Arrays.copyOf(rows, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+
+            rows[count] = row;
+            columns[count] = column;
+            values[count] = weight;
+            count++;
+
+            size = Math.max(size, Math.max(row, column) + 1);
+        }
+
+        public SpatialWeights build() {
+            // counting sort by row, stable (preserves visit order within a row)
+            int[] offsets = new int[size + 1];
+            for (int k = 0; k < count; k++) {
+                offsets[rows[k] + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] cursor = Arrays.copyOf(offsets, size);
+            int[] sortedColumns = new int[count];
+            double[] sortedValues = new double[count];
+            for (int k = 0; k < count; k++) {
+                int pos = cursor[rows[k]]++;
+                sortedColumns[pos] = columns[k];
+                sortedValues[pos] = values[k];
+            }
+
+            // sort each row by column and remove duplicated pairs
+            int[] compactOffsets = new int[size + 1];
+            int write = 0;
+            for (int i = 0; i < size; i++) {
+                int start = offsets[i];
+                int end = offsets[i + 1];
+                sortRow(sortedColumns, sortedValues, start, end);
+
+                compactOffsets[i] = write;
+                for (int k = start; k < end; k++) {
+                    if (k + 1 < end && sortedColumns[k + 1] == sortedColumns[k]) {
+                        continue; // keep the last one
+                    }
+                    sortedColumns[write] = sortedColumns[k];
+                    sortedValues[write] = sortedValues[k];
+                    write++;
+                }
+            }
+            compactOffsets[size] = write;
+
+            if (write < count) {
+                sortedColumns = Arrays.copyOf(sortedColumns, write);
+                sortedValues = Arrays.copyOf(sortedValues, write);
+            }
+
+            return new SpatialWeights(size, compactOffsets, sortedColumns, sortedValues);
+        }
+
+        // stable sort: insertion sort for short rows, packed (column, position) keys otherwise
+        private void sortRow(int[] cols, double[] vals, int start, int end) {
+            if (end - start > 32) {
+                long[] keys = new long[end - start];
+                for (int k = start; k < end; k++) {
+                    keys[k - start] = ((long) cols[k] << 32) | (k - start);
+                }
+                Arrays.sort(keys);
+
+                double[] copy = Arrays.copyOfRange(vals, start, end);
+                for (int k = 0; k < keys.length; k++) {
+                    cols[start + k] = (int) (keys[k] >>> 32);
+                    vals[start + k] = copy[(int) (keys[k] & 0xFFFFFFFFL)];
+                }
+                return;
+            }
+
+            for (int k = start + 1; k < end; k++) {
+                int col = cols[k];
+                double val = vals[k];
+                int pos = k - 1;
+                while (pos >= start && cols[pos] > col) {
+                    cols[pos + 1] = cols[pos];
+                    vals[pos + 1] = vals[pos];
+                    pos--;
+                }
+                cols[pos + 1] = col;
+                vals[pos + 1] = val;
+            }
+        }
+    }
+}
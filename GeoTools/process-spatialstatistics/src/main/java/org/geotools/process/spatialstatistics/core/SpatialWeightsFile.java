@@ -0,0 +1,547 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.geotools.process.spatialstatistics.core.AbstractWeightMatrix.SpatialWeightMatrixType;
+
+/**
+ * Reads and writes spatial weights files.<br>
+ * <ul>
+ * <li>SWB: binary CSR format of this library, written once and loaded with a memory-mapped buffer</li>
+ * <li>SWM: ArcGIS spatial weights matrix (import only)</li>
+ * <li>GAL: GeoDa contiguity weights (id count / neighbor ids)</li>
+ * <li>GWT: GeoDa distance weights (id neighbor distance)</li>
+ * </ul>
+ * SWB layout (little endian): magic, version, flags, size, nnz, typeName, uniqueField, ids, rowOffsets[size + 1], neighbors[nnz],
+ * weights[nnz]. Strings are stored as int length + UTF-8 bytes. Ids are stored as int when all ids are integers, weights as float when no
+ * precision is lost. A file is validated when it is read and rejected with an IOException if it is truncated or its arrays are inconsistent.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class SpatialWeightsFile {
+
+    static final int MAGIC = 0x31425753; // "SWB1"
+
+    static final int VERSION = 1;
+
+    static final int FLAG_DISTANCE = 1;
+
+    static final int FLAG_INT_IDS = 2;
+
+    static final int FLAG_DOUBLE_WEIGHTS = 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public enum Format {
+        SWB, SWM, GAL, GWT;
+
+        /**
+         * Returns the format of the file extension, null if unknown.
+         */
+        public static Format fromFile(File file) {
+            String name = file.getName().toLowerCase(Locale.ENGLISH);
+            int pos = name.lastIndexOf('.');
+            String extension = pos < 0 ? "" : name.substring(pos + 1);
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(extension)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private SpatialWeightsFile() {
+    }
+
+    /**
+     * Reads the spatial weights file into the matrix. Feature ids of the loaded matrix are strings.
+     */
+    public static void read(WeightMatrix matrix, File file, Charset charset) throws IOException {
+        Format format = Format.fromFile(file);
+        if (format == null) {
+            format = detect(file, charset);
+        }
+
+        switch (format) {
+        case SWB:
+            readBinary(matrix, file);
+            break;
+        case SWM:
+            readSWM(matrix, file);
+            break;
+        case GWT:
+            readGWT(matrix, file, charset);
+            break;
+        default:
+            readGAL(matrix, file, charset);
+            break;
+        }
+    }
+
+    // binary magic, otherwise GWT if the first record has three tokens
+    private static Format detect(File file, Charset charset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() >= 4) {
+                int magic = Integer.reverseBytes(raf.readInt());
+                if (magic == MAGIC) {
+                    return Format.SWB;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), charset));
+        try {
+            reader.readLine(); // header
+            String line = reader.readLine();
+            while (line != null && line.trim().isEmpty()) {
+                line = reader.readLine();
+            }
+            return line != null && line.trim().split("\\s+").length == 3 ? Format.GWT : Format.GAL;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static void writeBinary(WeightMatrix matrix, File file) throws IOException {
+        final SpatialWeights sw = matrix.getSpatialWeights();
+        final int size = matrix.getFeatureCount();
+        final int nnz = sw.getNonZeroCount();
+
+        boolean intIds = true;
+        for (int i = 0; i < size && intIds; i++) {
+            intIds = toInt(matrix.getFeatureID(i)) != null;
+        }
+
+        boolean doubleWeights = false;
+        for (int k = 0; k < nnz && !doubleWeights; k++) {
+            double weight = sw.getWeight(k);
+            doubleWeights = (double) (float) weight != weight;
+        }
+
+        int flags = 0;
+        if (matrix.getSpatialWeightMatrixType() == SpatialWeightMatrixType.Distance) {
+            flags |= FLAG_DISTANCE;
+        }
+        if (intIds) {
+            flags |= FLAG_INT_IDS;
+        }
+        if (doubleWeights) {
+            flags |= FLAG_DOUBLE_WEIGHTS;
+        }
+
+        byte[] typeName = toBytes(matrix.getTypeName());
+        byte[] uniqueField = toBytes(matrix.getUniqueField());
+        byte[][] ids = null;
+
+        long length = 20 + 8 + typeName.length + uniqueField.length;
+        if (intIds) {
+            length += 4L * size;
+        } else {
+            ids = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                ids[i] = toBytes(matrix.getFeatureID(i));
+                length += 4 + ids[i].length;
+            }
+        }
+        length += 4L * (size + 1) + 4L * nnz + (doubleWeights ? 8L : 4L) * nnz;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(size).putInt(nnz);
+            buffer.putInt(typeName.length).put(typeName);
+            buffer.putInt(uniqueField.length).put(uniqueField);
+
+            for (int i = 0; i < size; i++) {
+                if (intIds) {
+                    buffer.putInt(toInt(matrix.getFeatureID(i)).intValue());
+                } else {
+                    buffer.putInt(ids[i].length).put(ids[i]);
+                }
+            }
+
+            for (int i = 0; i <= size; i++) {
+                buffer.putInt(i < sw.size() ? sw.getRowStart(i) : nnz);
+            }
+            for (int k = 0; k < nnz; k++) {
+                buffer.putInt(sw.getNeighbor(k));
+            }
+            for (int k = 0; k < nnz; k++) {
+                if (doubleWeights) {
+                    buffer.putDouble(sw.getWeight(k));
+                } else {
+                    buffer.putFloat((float) sw.getWeight(k));
+                }
+            }
+            buffer.force();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a binary spatial weights file. The header and the CSR arrays are validated before use, and the row offsets, neighbors and double
+     * weights stay in the memory-mapped buffer instead of being copied to the heap.
+     */
+    static void readBinary(WeightMatrix matrix, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file.getName() + " is larger than 2GB!");
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            checkRemaining(buffer, 20, "header");
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a binary spatial weights file!");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported spatial weights file version: " + version);
+            }
+
+            final int flags = buffer.getInt();
+            if ((flags & ~(FLAG_DISTANCE | FLAG_INT_IDS | FLAG_DOUBLE_WEIGHTS)) != 0) {
+                throw new IOException("Unknown spatial weights file flags: " + flags);
+            }
+            final int size = buffer.getInt();
+            final int nnz = buffer.getInt();
+            if (size < 0 || nnz < 0) {
+                throw new IOException("Invalid feature count " + size + " or neighbor count "
+                        + nnz);
+            }
+
+            String typeName = readString(buffer);
+            String uniqueField = readString(buffer);
+
+            List<Object> ids = new ArrayList<Object>(size);
+            if ((flags & FLAG_INT_IDS) != 0) {
+                IntBuffer values = slice(buffer, 4L * size, "ids").asIntBuffer();
+                for (int i = 0; i < size; i++) {
+                    ids.add(Integer.toString(values.get(i)));
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    ids.add(readString(buffer));
+                }
+            }
+
+            final boolean doubleWeights = (flags & FLAG_DOUBLE_WEIGHTS) != 0;
+            checkRemaining(buffer, 4L * (size + 1) + (doubleWeights ? 12L : 8L) * nnz,
+                    "spatial weights");
+            IntBuffer rowOffsets = slice(buffer, 4L * (size + 1), "row offsets").asIntBuffer();
+            IntBuffer neighbors = slice(buffer, 4L * nnz, "neighbors").asIntBuffer();
+            validate(size, nnz, rowOffsets, neighbors);
+
+            DoubleBuffer weights;
+            if (doubleWeights) {
+                weights = slice(buffer, 8L * nnz, "weights").asDoubleBuffer();
+            } else {
+                // float weights are widened once
+                FloatBuffer values = slice(buffer, 4L * nnz, "weights").asFloatBuffer();
+                weights = DoubleBuffer.allocate(nnz);
+                for (int k = 0; k < nnz; k++) {
+                    weights.put(k, values.get(k));
+                }
+            }
+
+            if ((flags & FLAG_DISTANCE) != 0) {
+                matrix.setSpatialWeightMatrixType(SpatialWeightMatrixType.Distance);
+            } else {
+                matrix.setSpatialWeightMatrixType(SpatialWeightMatrixType.Contiguity);
+            }
+            matrix.setupVariables(typeName, uniqueField);
+            matrix.reset(ids, new SpatialWeights(size, rowOffsets, neighbors, weights));
+        } finally {
+            raf.close();
+        }
+    }
+
+    // row offsets from 0 to nnz without decreasing, neighbors ascending within each row and < size
+    private static void validate(int size, int nnz, IntBuffer rowOffsets, IntBuffer neighbors)
+            throws IOException {
+        if (rowOffsets.get(0) != 0 || rowOffsets.get(size) != nnz) {
+            throw new IOException("Row offsets must start at 0 and end at the neighbor count "
+                    + nnz + ": " + rowOffsets.get(0) + " ~ " + rowOffsets.get(size));
+        }
+
+        for (int row = 0; row < size; row++) {
+            final int start = rowOffsets.get(row);
+            final int end = rowOffsets.get(row + 1);
+            if (end < start) {
+                throw new IOException("Row offsets decrease at row " + row + ": " + start
+                        + " > " + end);
+            }
+
+            int previous = -1;
+            for (int k = start; k < end; k++) {
+                int neighbor = neighbors.get(k);
+                if (neighbor < 0 || neighbor >= size) {
+                    throw new IOException("Neighbor index " + neighbor + " of row " + row
+                            + " is out of range 0 ~ " + (size - 1));
+                }
+                if (neighbor <= previous) {
+                    throw new IOException("Neighbors of row " + row
+                            + " are not in ascending order");
+                }
+                previous = neighbor;
+            }
+        }
+    }
+
+    // little endian view of the next length bytes, the buffer is moved past them
+    private static ByteBuffer slice(MappedByteBuffer buffer, long length, String name)
+            throws IOException {
+        checkRemaining(buffer, length, name);
+        ByteBuffer slice = buffer.slice(buffer.position(), (int) length);
+        buffer.position(buffer.position() + (int) length);
+        return slice.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void checkRemaining(MappedByteBuffer buffer, long length, String name)
+            throws IOException {
+        if (length > buffer.remaining()) {
+            throw new IOException("Spatial weights file is truncated, " + name + " needs "
+                    + length + " bytes but " + buffer.remaining() + " remain");
+        }
+    }
+
+    /**
+     * ArcGIS SWM: header line, int32 count, int32 row standardization, then for each feature int32 id, int32 neighbor count, int32[] neighbor
+     * ids, float64[] weights (a single weight if FIXEDWEIGHTS@True), float64 sum of weights.
+     */
+    static void readSWM(WeightMatrix matrix, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+            StringBuilder sb = new StringBuilder();
+            byte ch;
+            while (buffer.hasRemaining() && (ch = buffer.get()) != '\n') {
+                sb.append((char) (ch & 0xFF));
+            }
+
+            String header = sb.toString().trim();
+            String uniqueField = header;
+            boolean fixedWeights = false;
+            if (header.contains("@")) {
+                uniqueField = null;
+                for (String token : header.split(";")) {
+                    String[] kvp = token.split("@");
+                    if (kvp.length == 2 && kvp[0].equalsIgnoreCase("UNIQUEID")) {
+                        uniqueField = kvp[1];
+                    } else if (kvp.length == 2 && kvp[0].equalsIgnoreCase("FIXEDWEIGHTS")) {
+                        fixedWeights = Boolean.parseBoolean(kvp[1]);
+                    }
+                }
+            }
+
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            final int count = buffer.getInt();
+            buffer.getInt(); // row standardization
+
+            matrix.setSpatialWeightMatrixType(SpatialWeightMatrixType.Contiguity);
+            matrix.setupVariables(file.getName(), uniqueField);
+            matrix.reset(new ArrayList<Object>(), null);
+
+            int[] neighbors = new int[16];
+            for (int i = 0; i < count; i++) {
+                int row = matrix.addFeature(Integer.toString(buffer.getInt()));
+                int numNeighbors = buffer.getInt();
+                if (numNeighbors == 0) {
+                    continue;
+                }
+
+                if (neighbors.length < numNeighbors) {
+                    neighbors = new int[numNeighbors];
+                }
+                for (int k = 0; k < numNeighbors; k++) {
+                    neighbors[k] = matrix.addFeature(Integer.toString(buffer.getInt()));
+                }
+
+                double fixedWeight = fixedWeights ? buffer.getDouble() : 0.0;
+                for (int k = 0; k < numNeighbors; k++) {
+                    double weight = fixedWeights ? fixedWeight : buffer.getDouble();
+                    matrix.visit(row, neighbors[k], weight);
+                }
+                buffer.getDouble(); // sum of weights
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * GAL: header (n, 0 n typeName or 0 n typeName uniqueField), then "id count" and the neighbor ids for each feature.
+     */
+    static void readGAL(WeightMatrix matrix, File file, Charset charset) throws IOException {
+        TextTokenizer tokenizer = new TextTokenizer(file, charset);
+        try {
+            readTextHeader(matrix, file, tokenizer.readHeader());
+            matrix.setSpatialWeightMatrixType(SpatialWeightMatrixType.Contiguity);
+
+            String id;
+            while ((id = tokenizer.next()) != null) {
+                int row = matrix.addFeature(id);
+                int numNeighbors = Integer.parseInt(tokenizer.nextRequired());
+                for (int k = 0; k < numNeighbors; k++) {
+                    matrix.visit(row, matrix.addFeature(tokenizer.nextRequired()), 1.0);
+                }
+            }
+        } finally {
+            tokenizer.close();
+        }
+    }
+
+    /**
+     * GWT: header (n, 0 n typeName or 0 n typeName uniqueField), then "id neighbor distance" for each pair.
+     */
+    static void readGWT(WeightMatrix matrix, File file, Charset charset) throws IOException {
+        TextTokenizer tokenizer = new TextTokenizer(file, charset);
+        try {
+            readTextHeader(matrix, file, tokenizer.readHeader());
+            matrix.setSpatialWeightMatrixType(SpatialWeightMatrixType.Distance);
+
+            String id;
+            while ((id = tokenizer.next()) != null) {
+                int row = matrix.addFeature(id);
+                int column = matrix.addFeature(tokenizer.nextRequired());
+                matrix.visit(row, column, Double.parseDouble(tokenizer.nextRequired()));
+            }
+        } finally {
+            tokenizer.close();
+        }
+    }
+
+    private static void readTextHeader(WeightMatrix matrix, File file, String[] header) {
+        String typeName = file.getName();
+        String uniqueField = null;
+        if (header.length >= 3) {
+            typeName = header[2];
+        }
+        if (header.length >= 4) {
+            uniqueField = header[3];
+        }
+        matrix.setupVariables(typeName, uniqueField);
+        matrix.reset(new ArrayList<Object>(), null);
+    }
+
+    private static Integer toInt(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return Integer.valueOf(((Number) id).intValue());
+        } else if (id instanceof Long) {
+            long value = ((Long) id).longValue();
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return Integer.valueOf((int) value);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] toBytes(Object value) {
+        return value == null ? new byte[0] : value.toString().getBytes(UTF8);
+    }
+
+    private static String readString(MappedByteBuffer buffer) throws IOException {
+        checkRemaining(buffer, 4, "string length");
+        int length = buffer.getInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        checkRemaining(buffer, length, "string");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    static final class TextTokenizer {
+        private final BufferedReader reader;
+
+        private String[] tokens = new String[0];
+
+        private int position = 0;
+
+        TextTokenizer(File file, Charset charset) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    charset));
+        }
+
+        String[] readHeader() throws IOException {
+            String line = reader.readLine();
+            return line == null ? new String[0] : line.trim().split("\\s+");
+        }
+
+        String next() throws IOException {
+            while (position >= tokens.length) {
+                String line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+
+                line = line.trim();
+                tokens = line.isEmpty() ? new String[0] : line.split("\\s+");
+                position = 0;
+            }
+            return tokens[position++];
+        }
+
+        String nextRequired() throws IOException {
+            String token = next();
+            if (token == null) {
+                throw new IOException("Unexpected end of spatial weights file");
+            }
+            return token;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+}
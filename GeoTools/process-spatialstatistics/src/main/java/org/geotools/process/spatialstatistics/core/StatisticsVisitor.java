@@ -16,11 +16,11 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.awt.Rectangle;
+import java.awt.image.Raster;
 import java.util.logging.Logger;
 
 import org.eclipse.imagen.PlanarImage;
-import org.eclipse.imagen.iterator.RectIter;
-import org.eclipse.imagen.media.iterators.RectIterFactory;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.api.feature.type.AttributeDescriptor;
@@ -104,18 +104,28 @@ public class StatisticsVisitor {
     public void visit(GridCoverage2D inputCoverage, Integer bandIndex) {
         reset();
 
+        // tile by tile into a primitive buffer, the first and last values stay the top-left and bottom-right cells
         PlanarImage inputImage = (PlanarImage) inputCoverage.getRenderedImage();
-        RectIter readIter = RectIterFactory.create(inputImage, inputImage.getBounds());
-
-        readIter.startLines();
-        while (!readIter.finishedLines()) {
-            readIter.startPixels();
-            while (!readIter.finishedPixels()) {
-                double sampleValue = readIter.getSampleDouble(bandIndex);
-                visit(Double.valueOf(sampleValue));
-                readIter.nextPixel();
+        Rectangle bounds = inputImage.getBounds();
+        double[] samples = null;
+        for (int tileY = inputImage.getMinTileY(); tileY <= inputImage.getMaxTileY(); tileY++) {
+            for (int tileX = inputImage.getMinTileX(); tileX <= inputImage.getMaxTileX(); tileX++) {
+                Rectangle rect = inputImage.getTileRect(tileX, tileY).intersection(bounds);
+                if (rect.isEmpty()) {
+                    continue;
+                }
+
+                // the first tile may be clipped, getSamples does not grow a smaller buffer
+                Raster tile = inputImage.getTile(tileX, tileY);
+                if (samples == null || samples.length < rect.width * rect.height) {
+                    samples = new double[rect.width * rect.height];
+                }
+                samples = tile.getSamples(rect.x, rect.y, rect.width, rect.height, bandIndex,
+                        samples);
+                for (int i = 0, size = rect.width * rect.height; i < size; i++) {
+                    visit(samples[i]);
+                }
             }
-            readIter.nextLine();
         }
     }
 
@@ -143,6 +153,29 @@ public class StatisticsVisitor {
         strategy.add(value);
     }
 
+    public void visit(double value) {
+        if (strategy == null) {
+            strategy = new DoubleStrategy();
+        }
+        strategy.add(value);
+    }
+
+    /**
+     * Merges the partial statistics of another visitor, e.g. one that visited another part of the data on another thread. The other visitor must
+     * use the same type of strategy and should not be used afterwards.
+     */
+    public void merge(StatisticsVisitor other) {
+        if (other.strategy == null) {
+            return;
+        }
+
+        if (strategy == null) {
+            strategy = other.strategy;
+        } else {
+            strategy.merge(other.strategy);
+        }
+    }
+
     public StatisticsVisitorResult getResult() {
         return strategy == null ? new StatisticsVisitorResult() : strategy.getResult();
     }
@@ -150,6 +183,17 @@ public class StatisticsVisitor {
     public interface StatisticsStrategy {
         public void add(Object value);
 
+        /**
+         * Adds a primitive value, without boxing or conversion.
+         */
+        public void add(double value);
+
+        /**
+         * Merges the partial state of another strategy of the same type, e.g. computed on another thread. The other strategy is treated as the
+         * values visited after the values of this strategy.
+         */
+        public void merge(StatisticsStrategy other);
+
         public StatisticsVisitorResult getResult();
 
         public void setNoData(Number noData);
@@ -157,9 +201,11 @@ public class StatisticsVisitor {
         public void reset();
     }
 
-    public static class DoubleStrategy implements StatisticsStrategy {
-
-        Double noData = null;
+    /**
+     * Numeric statistics with Welford's running mean and sum of squared deviations, which do not lose precision on large values (e.g. elevations)
+     * like sum of squares - square of sum / n.
+     */
+    public static abstract class NumberStrategy implements StatisticsStrategy {
 
         int count = 0;
 
@@ -169,13 +215,40 @@ public class StatisticsVisitor {
 
         Object lastValue = null;
 
+        double lastVal = Double.NaN;
+
         double minVal = Double.MAX_VALUE;
 
-        double maxVal = Double.MIN_VALUE;
+        double maxVal = -Double.MAX_VALUE;
 
         double sumOfVals = 0.0d;
 
-        double sumOfSqrs = 0.0d;
+        double mean = 0.0d;
+
+        // sum of squared deviations from the mean
+        double sumOfSqrDevs = 0.0d;
+
+        /**
+         * Converts the value, or returns NaN if it is not a number.
+         */
+        protected double toDouble(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        protected abstract boolean isValid(double value);
+
+        // boxes the first or last value in the type of the strategy
+        protected abstract Object box(double value);
+
+        protected abstract Number getNoDataValue();
 
         @Override
         public void add(Object value) {
@@ -184,47 +257,87 @@ public class StatisticsVisitor {
                 return;
             }
 
-            // for BigDecimal, Double...
-            double curVal = Double.valueOf(value.toString());
-            if (Double.isNaN(curVal) || Double.isInfinite(curVal)) {
-                invalidCount++;
-                return;
-            } else if (noData != null && SSUtils.compareDouble(curVal, noData)) {
-                invalidCount++;
-                return;
+            double curVal = toDouble(value);
+            if (accept(curVal)) {
+                if (count == 1) {
+                    firstValue = value;
+                }
+                lastValue = value;
             }
+        }
 
-            if (firstValue == null) {
-                firstValue = value;
+        @Override
+        public void add(double value) {
+            if (accept(value)) {
+                if (count == 1) {
+                    firstValue = box(value);
+                }
+                lastValue = null; // boxed on demand
+            }
+        }
+
+        private boolean accept(double curVal) {
+            if (!isValid(curVal)) {
+                invalidCount++;
+                return false;
             }
 
+            count++;
             sumOfVals += curVal;
-            sumOfSqrs += curVal * curVal;
+
+            final double delta = curVal - mean;
+            mean += delta / count;
+            sumOfSqrDevs += delta * (curVal - mean);
 
             maxVal = Math.max(maxVal, curVal);
             minVal = Math.min(minVal, curVal);
 
-            lastValue = value;
+            lastVal = curVal;
+            return true;
+        }
 
-            count++;
+        @Override
+        public void merge(StatisticsStrategy other) {
+            NumberStrategy partial = (NumberStrategy) other;
+            invalidCount += partial.invalidCount;
+            if (partial.count == 0) {
+                return;
+            }
+
+            if (count == 0) {
+                firstValue = partial.firstValue;
+            }
+            lastValue = partial.lastValue;
+            lastVal = partial.lastVal;
+
+            // Chan et al. pairwise update
+            final double total = (double) count + partial.count;
+            final double delta = partial.mean - mean;
+            mean += delta * partial.count / total;
+            sumOfSqrDevs += partial.sumOfSqrDevs + delta * delta * count * partial.count / total;
+
+            count += partial.count;
+            sumOfVals += partial.sumOfVals;
+            maxVal = Math.max(maxVal, partial.maxVal);
+            minVal = Math.min(minVal, partial.minVal);
         }
 
         @Override
         public StatisticsVisitorResult getResult() {
             StatisticsVisitorResult sr = new StatisticsVisitorResult();
             sr.setFirstValue(firstValue);
-            sr.setLastValue(lastValue);
+            sr.setLastValue(lastValue != null || count == 0 ? lastValue : box(lastVal));
             sr.setCount(count);
+            sr.setInvalidCount(invalidCount);
 
             sr.setMinimum(minVal);
             sr.setMaximum(maxVal);
             sr.setSum(sumOfVals);
-            sr.setNoData(noData);
+            sr.setNoData(getNoDataValue());
 
             if (count > 0) {
                 // Population Standard Deviation
-                double variance = (sumOfSqrs - Math.pow(sumOfVals, 2.0) / count) / count;
-                sr.setVariance(variance);
+                sr.setVariance(sumOfSqrDevs / count);
             }
             return sr;
         }
@@ -233,95 +346,61 @@ public class StatisticsVisitor {
         public void reset() {
             count = invalidCount = 0;
             firstValue = lastValue = null;
+            lastVal = Double.NaN;
             minVal = Double.MAX_VALUE;
-            maxVal = Double.MIN_VALUE;
-            sumOfVals = sumOfSqrs = 0.0d;
-        }
-
-        @Override
-        public void setNoData(Number noData) {
-            this.noData = Double.valueOf(noData.doubleValue());
+            maxVal = -Double.MAX_VALUE;
+            sumOfVals = mean = sumOfSqrDevs = 0.0d;
         }
     }
 
-    public static class FloatStrategy implements StatisticsStrategy {
-
-        Float noData = null;
-
-        int count = 0;
-
-        int invalidCount = 0;
-
-        Object firstValue = null;
-
-        Object lastValue = null;
-
-        float minVal = Float.MAX_VALUE;
-
-        float maxVal = Float.MIN_VALUE;
+    public static class DoubleStrategy extends NumberStrategy {
 
-        double sumOfVals = 0.0d;
-
-        double sumOfSqrs = 0.0d;
+        Double noData = null;
 
         @Override
-        public void add(Object value) {
-            if (value == null) {
-                invalidCount++;
-                return;
+        protected boolean isValid(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return false;
             }
+            return noData == null || !SSUtils.compareDouble(value, noData);
+        }
 
-            float curVal = ((Float) value).floatValue();
-            if (Float.isNaN(curVal) || Float.isInfinite(curVal)) {
-                invalidCount++;
-                return;
-            } else if (noData != null && SSUtils.compareFloat(curVal, noData)) {
-                invalidCount++;
-                return;
-            }
+        @Override
+        protected Object box(double value) {
+            return Double.valueOf(value);
+        }
 
-            if (firstValue == null) {
-                firstValue = value;
-            }
+        @Override
+        protected Number getNoDataValue() {
+            return noData;
+        }
 
-            sumOfVals += curVal;
-            sumOfSqrs += curVal * curVal;
+        @Override
+        public void setNoData(Number noData) {
+            this.noData = Double.valueOf(noData.doubleValue());
+        }
+    }
 
-            maxVal = Math.max(maxVal, curVal);
-            minVal = Math.min(minVal, curVal);
+    public static class FloatStrategy extends NumberStrategy {
 
-            lastValue = value;
+        Float noData = null;
 
-            count++;
+        @Override
+        protected boolean isValid(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return false;
+            }
+            return noData == null || !SSUtils.compareFloat((float) value, noData);
         }
 
         @Override
-        public StatisticsVisitorResult getResult() {
-            StatisticsVisitorResult sr = new StatisticsVisitorResult();
-            sr.setFirstValue(firstValue);
-            sr.setLastValue(lastValue);
-            sr.setCount(count);
-
-            sr.setMinimum(minVal);
-            sr.setMaximum(maxVal);
-            sr.setSum(sumOfVals);
-            sr.setNoData(noData);
-
-            if (count > 0) {
-                // Population Standard Deviation
-                double variance = (sumOfSqrs - Math.pow(sumOfVals, 2.0) / count) / count;
-                sr.setVariance(variance);
-            }
-            return sr;
+        protected Object box(double value) {
+            return Float.valueOf((float) value);
         }
 
         @Override
-        public void reset() {
-            count = invalidCount = 0;
-            firstValue = lastValue = null;
-            minVal = Float.MAX_VALUE;
-            maxVal = Float.MIN_VALUE;
-            sumOfVals = sumOfSqrs = 0.0d;
+        protected Number getNoDataValue() {
+            return noData;
         }
 
         @Override
@@ -330,81 +409,35 @@ public class StatisticsVisitor {
         }
     }
 
-    public static class LongStrategy implements StatisticsStrategy {
+    public static class LongStrategy extends NumberStrategy {
 
         Long noData = null;
 
-        int count = 0;
-
-        int invalidCount = 0;
-
-        Object firstValue = null;
-
-        Object lastValue = null;
-
-        long minVal = Long.MAX_VALUE;
-
-        long maxVal = Long.MIN_VALUE;
-
-        double sumOfVals = 0.0d;
-
-        double sumOfSqrs = 0.0d;
-
         @Override
-        public void add(Object value) {
-            if (value == null) {
-                invalidCount++;
-                return;
-            }
-
-            long curVal = ((Long) value).longValue();
-            if (noData != null && curVal == noData) {
-                invalidCount++;
-                return;
+        protected double toDouble(Object value) {
+            // compare the exact value with noData
+            if (noData != null && value instanceof Long && noData.equals(value)) {
+                return Double.NaN;
             }
+            return super.toDouble(value);
+        }
 
-            if (firstValue == null) {
-                firstValue = value;
+        @Override
+        protected boolean isValid(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return false;
             }
-
-            sumOfVals += curVal;
-            sumOfSqrs += curVal * curVal;
-
-            maxVal = Math.max(maxVal, curVal);
-            minVal = Math.min(minVal, curVal);
-
-            lastValue = value;
-
-            count++;
+            return noData == null || (long) value != noData.longValue();
         }
 
         @Override
-        public StatisticsVisitorResult getResult() {
-            StatisticsVisitorResult sr = new StatisticsVisitorResult();
-            sr.setFirstValue(firstValue);
-            sr.setLastValue(lastValue);
-            sr.setCount(count);
-
-            sr.setMinimum(minVal);
-            sr.setMaximum(maxVal);
-            sr.setSum(sumOfVals);
-            sr.setNoData(noData);
-
-            if (count > 0) {
-                // Population Standard Deviation
-                double variance = (sumOfSqrs - Math.pow(sumOfVals, 2.0) / count) / count;
-                sr.setVariance(variance);
-            }
-            return sr;
+        protected Object box(double value) {
+            return Long.valueOf((long) value);
         }
 
         @Override
-        public void reset() {
-            count = invalidCount = 0;
-            firstValue = lastValue = null;
-            minVal = Long.MAX_VALUE;
-            maxVal = Long.MIN_VALUE;
-            sumOfVals = sumOfSqrs = 0.0d;
+        protected Number getNoDataValue() {
+            return noData;
         }
 
         @Override
@@ -413,81 +446,26 @@ public class StatisticsVisitor {
         }
     }
 
-    public static class IntegerStrategy implements StatisticsStrategy {
+    public static class IntegerStrategy extends NumberStrategy {
 
         Integer noData = null;
 
-        int count = 0;
-
-        int invalidCount = 0;
-
-        Object firstValue = null;
-
-        Object lastValue = null;
-
-        int minVal = Integer.MAX_VALUE;
-
-        int maxVal = Integer.MIN_VALUE;
-
-        double sumOfVals = 0.0d;
-
-        double sumOfSqrs = 0.0d;
-
         @Override
-        public void add(Object value) {
-            if (value == null) {
-                invalidCount++;
-                return;
+        protected boolean isValid(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return false;
             }
-
-            int curVal = ((Integer) value).intValue();
-            if (noData != null && curVal == noData) {
-                invalidCount++;
-                return;
-            }
-
-            if (firstValue == null) {
-                firstValue = value;
-            }
-
-            sumOfVals += curVal;
-            sumOfSqrs += curVal * curVal;
-
-            maxVal = Math.max(maxVal, curVal);
-            minVal = Math.min(minVal, curVal);
-
-            lastValue = value;
-
-            count++;
+            return noData == null || (int) value != noData.intValue();
         }
 
         @Override
-        public StatisticsVisitorResult getResult() {
-            StatisticsVisitorResult sr = new StatisticsVisitorResult();
-            sr.setFirstValue(firstValue);
-            sr.setLastValue(lastValue);
-            sr.setCount(count);
-
-            sr.setMinimum(minVal);
-            sr.setMaximum(maxVal);
-            sr.setSum(sumOfVals);
-            sr.setNoData(noData);
-
-            if (count > 0) {
-                // Population Standard Deviation
-                double variance = (sumOfSqrs - Math.pow(sumOfVals, 2.0) / count) / count;
-                sr.setVariance(variance);
-            }
-            return sr;
+        protected Object box(double value) {
+            return Integer.valueOf((int) value);
         }
 
         @Override
-        public void reset() {
-            count = invalidCount = 0;
-            firstValue = lastValue = null;
-            minVal = Integer.MAX_VALUE;
-            maxVal = Integer.MIN_VALUE;
-            sumOfVals = sumOfSqrs = 0.0d;
+        protected Number getNoDataValue() {
+            return noData;
         }
 
         @Override
@@ -529,12 +507,33 @@ public class StatisticsVisitor {
             count++;
         }
 
+        @Override
+        public void add(double value) {
+            add(Double.valueOf(value));
+        }
+
+        @Override
+        public void merge(StatisticsStrategy other) {
+            StringStrategy partial = (StringStrategy) other;
+            invalidCount += partial.invalidCount;
+            if (partial.count == 0) {
+                return;
+            }
+
+            if (count == 0) {
+                firstValue = partial.firstValue;
+            }
+            lastValue = partial.lastValue;
+            count += partial.count;
+        }
+
         @Override
         public StatisticsVisitorResult getResult() {
             StatisticsVisitorResult sr = new StatisticsVisitorResult();
             sr.setFirstValue(firstValue);
             sr.setLastValue(lastValue);
             sr.setCount(count);
+            sr.setInvalidCount(invalidCount);
             sr.setNoData(noData);
             return sr;
         }
@@ -39,7 +39,7 @@ public class StatisticsVisitorResult {
 
     double minimum = Double.MAX_VALUE;
 
-    double maximum = Double.MIN_VALUE;
+    double maximum = -Double.MAX_VALUE;
 
     double standardDeviation = 0.0;
 
@@ -0,0 +1,333 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.triangulate.VoronoiDiagramBuilder;
+
+/**
+ * Builds the Voronoi cell of each site, indexed by the position of the site.<br>
+ * The cells are read from the quad-edge subdivision of the Delaunay triangulation, where each cell carries the coordinate of its site, so no
+ * spatial search is needed to find the cell of a site. Only the cells crossing the clip envelope are clipped. Sites at the same location share
+ * one cell, and a site merged into another by the tolerance gets the cell of the nearest site.
+ * <p>
+ * In tiled mode the sites are split into tiles of about the given number of sites. Each tile is triangulated with the sites within an overlap
+ * around it, and the cell of a site is accepted when no site outside the overlap can be closer to any of its vertices than the site itself. The
+ * cell built from fewer sites contains the exact cell, so every site that can cut it lies within the circles around its vertices. The other
+ * cells of the tile are built again, once, from the sites within the overlap and those circles, so the cells are the same as those of a single
+ * triangulation. The tiles are built in parallel.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class VoronoiCellBuilder {
+    protected static final Logger LOGGER = Logging.getLogger(VoronoiCellBuilder.class);
+
+    // overlap around a tile, in average site spacings
+    static final double OVERLAP_FACTOR = 4.0;
+
+    private final Coordinate[] sites;
+
+    private final Envelope clipEnvelope;
+
+    private final Envelope siteBounds = new Envelope();
+
+    private double tolerance = 0d;
+
+    private int tileSize = 0;
+
+    private int parallelism = 1;
+
+    /**
+     * @param sites site coordinates
+     * @param clipEnvelope envelope the cells are clipped to
+     */
+    public VoronoiCellBuilder(List<Coordinate> sites, Envelope clipEnvelope) {
+        this.sites = sites.toArray(new Coordinate[sites.size()]);
+        this.clipEnvelope = clipEnvelope;
+        for (Coordinate site : this.sites) {
+            siteBounds.expandToInclude(site);
+        }
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the number of sites per tile. 0 or negative = a single triangulation(default).
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to build the tiles. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the cell of each site, null if the cell lies outside the clip envelope.
+     */
+    public Geometry[] build(GeometryFactory gf) {
+        final Geometry[] cells = new Geometry[sites.length];
+        if (sites.length == 0) {
+            return cells;
+        }
+
+        final boolean[] found = new boolean[sites.length];
+        if (tileSize <= 0 || sites.length <= tileSize) {
+            int[] all = new int[sites.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            buildCells(gf, all, all, null, null, cells, found);
+        } else {
+            buildTiles(gf, cells, found);
+        }
+
+        assignMergedSites(cells, found);
+        return cells;
+    }
+
+    // builds the cells of the target sites from the triangulation of the sites. with a region,
+    // returns the targets whose cells may be affected by sites outside the region, and expands
+    // the required envelope to the circles around the vertices of their cells.
+    private int[] buildCells(GeometryFactory gf, int[] siteIndexes, int[] targets, Envelope region,
+            Envelope required, Geometry[] cells, boolean[] found) {
+        List<Coordinate> coordinates = new ArrayList<Coordinate>(siteIndexes.length);
+        for (int index : siteIndexes) {
+            coordinates.add(sites[index]);
+        }
+
+        VoronoiDiagramBuilder vdBuilder = new VoronoiDiagramBuilder();
+        vdBuilder.setClipEnvelope(clipEnvelope);
+        vdBuilder.setSites(coordinates);
+        vdBuilder.setTolerance(tolerance);
+
+        // the cell polygons carry the coordinates of their sites
+        @SuppressWarnings("unchecked")
+        List<Geometry> polygons = vdBuilder.getSubdivision().getVoronoiCellPolygons(gf);
+        Map<Coordinate, Geometry> cellMap = new HashMap<Coordinate, Geometry>(polygons.size() * 2);
+        for (Geometry polygon : polygons) {
+            cellMap.put((Coordinate) polygon.getUserData(), polygon);
+        }
+
+        final Geometry clipPolygon = gf.toGeometry(clipEnvelope);
+        int failed = 0;
+        int[] retry = new int[targets.length];
+        for (int index : targets) {
+            Geometry cell = cellMap.get(sites[index]);
+            if (cell == null) {
+                continue; // merged by the tolerance
+            }
+
+            // clip only the boundary cells
+            if (!clipEnvelope.contains(cell.getEnvelopeInternal())) {
+                cell = clipEnvelope.intersects(cell.getEnvelopeInternal())
+                        ? cell.intersection(clipPolygon) : null;
+                if (cell != null && cell.isEmpty()) {
+                    cell = null;
+                }
+            }
+
+            if (cell != null && region != null && !isExact(cell, sites[index], region)) {
+                for (Coordinate vertex : cell.getCoordinates()) {
+                    final double radius = vertex.distance(sites[index]);
+                    required.expandToInclude(vertex.x - radius, vertex.y - radius);
+                    required.expandToInclude(vertex.x + radius, vertex.y + radius);
+                }
+                retry[failed++] = index;
+                continue;
+            }
+            cells[index] = cell;
+            found[index] = true;
+        }
+        return Arrays.copyOf(retry, failed);
+    }
+
+    // true if no site outside the region can be closer to a vertex of the cell than its site.
+    // the cell is convex, so the vertices bound all of its points.
+    private boolean isExact(Geometry cell, Coordinate site, Envelope region) {
+        for (Coordinate vertex : cell.getCoordinates()) {
+            final double radius = vertex.distance(site);
+            if (vertex.x - radius < region.getMinX() && region.getMinX() > siteBounds.getMinX()) {
+                return false;
+            }
+            if (vertex.x + radius > region.getMaxX() && region.getMaxX() < siteBounds.getMaxX()) {
+                return false;
+            }
+            if (vertex.y - radius < region.getMinY() && region.getMinY() > siteBounds.getMinY()) {
+                return false;
+            }
+            if (vertex.y + radius > region.getMaxY() && region.getMaxY() < siteBounds.getMaxY()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void buildTiles(final GeometryFactory gf, final Geometry[] cells,
+            final boolean[] found) {
+        final int tiles = (int) Math.ceil(Math.sqrt(sites.length / (double) tileSize));
+        final double width = Math.max(siteBounds.getWidth(), Double.MIN_VALUE);
+        final double height = Math.max(siteBounds.getHeight(), Double.MIN_VALUE);
+        final double tileWidth = width / tiles;
+        final double tileHeight = height / tiles;
+
+        // sites of each tile, by counting sort
+        final int[] tileOf = new int[sites.length];
+        final int[] offsets = new int[tiles * tiles + 1];
+        for (int i = 0; i < sites.length; i++) {
+            int col = Math.min(tiles - 1, (int) ((sites[i].x - siteBounds.getMinX()) / tileWidth));
+            int row = Math.min(tiles - 1, (int) ((sites[i].y - siteBounds.getMinY()) / tileHeight));
+            tileOf[i] = row * tiles + col;
+            offsets[tileOf[i] + 1]++;
+        }
+        for (int t = 0; t < tiles * tiles; t++) {
+            offsets[t + 1] += offsets[t];
+        }
+        final int[] members = new int[sites.length];
+        final int[] next = Arrays.copyOf(offsets, tiles * tiles);
+        for (int i = 0; i < sites.length; i++) {
+            members[next[tileOf[i]]++] = i;
+        }
+
+        // average site spacing, along the longer side if the sites are collinear
+        double spacing = Math.sqrt(siteBounds.getArea() / sites.length);
+        if (spacing == 0) {
+            spacing = Math.max(siteBounds.getWidth(), siteBounds.getHeight()) / sites.length;
+        }
+        final double overlap = Math.max(spacing * OVERLAP_FACTOR, Double.MIN_VALUE);
+
+        ParallelRange.execute(parallelism, tiles * tiles, 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int tile = start; tile < end; tile++) {
+                    int[] targets = Arrays.copyOfRange(members, offsets[tile],
+                            offsets[tile + 1]);
+                    int col = tile % tiles;
+                    int row = tile / tiles;
+                    double minX = siteBounds.getMinX() + col * tileWidth;
+                    double minY = siteBounds.getMinY() + row * tileHeight;
+
+                    Envelope region = new Envelope(minX, minX + tileWidth, minY,
+                            minY + tileHeight);
+                    region.expandBy(overlap);
+                    boolean covers = region.contains(siteBounds);
+
+                    Envelope required = new Envelope(region);
+                    int[] siteIndexes = collect(region, tiles, tileWidth, tileHeight, offsets,
+                            members);
+                    targets = buildCells(gf, siteIndexes, targets, covers ? null : region,
+                            required, cells, found);
+
+                    // one more triangulation with every site that can cut the other cells
+                    if (targets.length > 0) {
+                        siteIndexes = collect(required, tiles, tileWidth, tileHeight, offsets,
+                                members);
+                        buildCells(gf, siteIndexes, targets, null, null, cells, found);
+                    }
+                }
+            }
+        });
+    }
+
+    // sites within the region
+    private int[] collect(Envelope region, int tiles, double tileWidth, double tileHeight,
+            int[] offsets, int[] members) {
+        int minCol = clamp((int) Math.floor((region.getMinX() - siteBounds.getMinX()) / tileWidth),
+                tiles);
+        int maxCol = clamp((int) Math.floor((region.getMaxX() - siteBounds.getMinX()) / tileWidth),
+                tiles);
+        int minRow = clamp(
+                (int) Math.floor((region.getMinY() - siteBounds.getMinY()) / tileHeight), tiles);
+        int maxRow = clamp(
+                (int) Math.floor((region.getMaxY() - siteBounds.getMinY()) / tileHeight), tiles);
+
+        int size = 0;
+        int[] result = new int[64];
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                int tile = row * tiles + col;
+                for (int k = offsets[tile]; k < offsets[tile + 1]; k++) {
+                    int index = members[k];
+                    if (region.contains(sites[index])) {
+                        if (size == result.length) {
+                            result = Arrays.copyOf(result, size * 2);
+                        }
+                        result[size++] = index;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int clamp(int value, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, value));
+    }
+
+    // sites merged into another site by the tolerance get the cell of the nearest site
+    private void assignMergedSites(Geometry[] cells, boolean[] found) {
+        int count = 0;
+        double[] x = new double[sites.length];
+        double[] y = new double[sites.length];
+        int[] indexes = new int[sites.length];
+        for (int i = 0; i < sites.length; i++) {
+            if (found[i]) {
+                x[count] = sites[i].x;
+                y[count] = sites[i].y;
+                indexes[count++] = i;
+            }
+        }
+        if (count == sites.length || count == 0) {
+            return;
+        }
+
+        PointKdTree tree = new PointKdTree(x, y, count);
+        PointKdTree.Neighbors neighbors = new PointKdTree.Neighbors(1);
+        for (int i = 0; i < sites.length; i++) {
+            if (!found[i] && tree.nearest(sites[i].x, sites[i].y, 1, Double.NaN, neighbors) > 0) {
+                cells[i] = cells[indexes[tree.getIndex(neighbors.getPosition(0))]];
+            }
+        }
+    }
+}
@@ -24,17 +24,23 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.process.spatialstatistics.core.AbstractWeightMatrix.SpatialWeightMatrixType;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsFile.Format;
 import org.geotools.util.logging.Logging;
 
 /**
- * SpatialWeightMatrixResult
+ * SpatialWeightMatrixResult<br>
+ * Feature ids are mapped to int indexes and neighbor pairs are stored in a compressed sparse row {@link SpatialWeights}.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -53,11 +59,18 @@ public class WeightMatrix {
 
     private SpatialWeightMatrixType spatialWeightMatrixType = SpatialWeightMatrixType.Distance;
 
-    // primaryID, <secondaryID, distance>
-    private LinkedHashMap<Object, Hashtable<Object, Double>> items;
+    // feature id <-> row index
+    private final Map<Object, Integer> indexes = new HashMap<Object, Integer>();
+
+    private final List<Object> featureIDs = new ArrayList<Object>();
+
+    // pending (row, column, distance) triplets, compacted on demand
+    private SpatialWeights.Builder builder = new SpatialWeights.Builder();
+
+    private SpatialWeights weights;
 
     public int getFeatureCount() {
-        return this.items.size();
+        return featureIDs.size();
     }
 
     public String getUniqueField() {
@@ -88,17 +101,50 @@ public class WeightMatrix {
         this.spatialWeightMatrixType = spatialWeightMatrixType;
     }
 
+    /**
+     * Returns a boxed copy of the neighbor pairs: primaryID, &lt;secondaryID, distance&gt;
+     * 
+     * @deprecated use {@link #getSpatialWeights()}
+     */
+    @Deprecated
     public LinkedHashMap<Object, Hashtable<Object, Double>> getItems() {
+        SpatialWeights sw = getSpatialWeights();
+
+        LinkedHashMap<Object, Hashtable<Object, Double>> items;
+        items = new LinkedHashMap<Object, Hashtable<Object, Double>>();
+        for (int row = 0; row < sw.size(); row++) {
+            if (sw.getNeighborCount(row) == 0) {
+                continue;
+            }
+
+            Hashtable<Object, Double> neighbors = new Hashtable<Object, Double>();
+            for (int k = sw.getRowStart(row); k < sw.getRowEnd(row); k++) {
+                neighbors.put(featureIDs.get(sw.getNeighbor(k)), sw.getWeight(k));
+            }
+            items.put(featureIDs.get(row), neighbors);
+        }
         return items;
     }
 
+    /**
+     * @deprecated use {@link #visit(int, int, double)}
+     */
+    @Deprecated
     public void setItems(LinkedHashMap<Object, Hashtable<Object, Double>> items) {
-        this.items = items;
+        this.indexes.clear();
+        this.featureIDs.clear();
+        this.builder = new SpatialWeights.Builder();
+        this.weights = null;
+
+        for (Entry<Object, Hashtable<Object, Double>> entry : items.entrySet()) {
+            for (Entry<Object, Double> second : entry.getValue().entrySet()) {
+                visit(entry.getKey(), second.getKey(), second.getValue());
+            }
+        }
     }
 
     public WeightMatrix(SpatialWeightMatrixType spatialWeightMatrixType) {
         this.setSpatialWeightMatrixType(spatialWeightMatrixType);
-        this.setItems(new LinkedHashMap<Object, Hashtable<Object, Double>>());
     }
 
     public void setupVariables(String typeName, String uniqueField) {
@@ -106,15 +152,59 @@ public class WeightMatrix {
         this.setTypeName(typeName);
     }
 
+    /**
+     * Registers a feature and returns its row index. Features without neighbors should be registered too.
+     */
+    public int addFeature(Object featureID) {
+        Integer index = indexes.get(featureID);
+        if (index == null) {
+            index = Integer.valueOf(featureIDs.size());
+            indexes.put(featureID, index);
+            featureIDs.add(featureID);
+            getBuilder().ensureSize(featureIDs.size());
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Returns the row index of the feature or -1 if not registered.
+     */
+    public int indexOf(Object featureID) {
+        Integer index = indexes.get(featureID);
+        return index == null ? -1 : index.intValue();
+    }
+
+    public Object getFeatureID(int index) {
+        return featureIDs.get(index);
+    }
+
+    public SpatialWeights getSpatialWeights() {
+        if (weights == null) {
+            builder.ensureSize(featureIDs.size());
+            weights = builder.build();
+            builder = null;
+        }
+        return weights;
+    }
+
+    private SpatialWeights.Builder getBuilder() {
+        if (builder == null) {
+            builder = new SpatialWeights.Builder(weights);
+            weights = null;
+        }
+        return builder;
+    }
+
     public void visit(Object primaryID, Object secondaryID) {
         this.visit(primaryID, secondaryID, Double.valueOf(1.0));
     }
 
     public void visit(Object primaryID, Object secondaryID, Double distance) {
-        if (!items.containsKey(primaryID)) {
-            items.put(primaryID, new Hashtable<Object, Double>());
-        }
-        items.get(primaryID).put(secondaryID, distance);
+        this.visit(addFeature(primaryID), addFeature(secondaryID), distance.doubleValue());
+    }
+
+    public void visit(int primaryIndex, int secondaryIndex, double distance) {
+        getBuilder().add(primaryIndex, secondaryIndex, distance);
     }
 
     public boolean isNeighbor(SpatialEvent source, SpatialEvent target) {
@@ -122,10 +212,11 @@ public class WeightMatrix {
     }
 
     public boolean isNeighbor(Object primaryID, Object secondaryID) {
-        if (items.containsKey(primaryID)) {
-            return items.get(primaryID).containsKey(secondaryID);
+        int row = indexOf(primaryID);
+        if (row < 0) {
+            return false;
         }
-        return false;
+        return getSpatialWeights().isNeighbor(row, indexOf(secondaryID));
     }
 
     public double getWeight(SpatialEvent source, SpatialEvent target) {
@@ -136,20 +227,79 @@ public class WeightMatrix {
         return isNeighbor(primaryID, secondaryID) ? 1.0 : 0.0;
     }
 
+    /**
+     * Saves the matrix. The format follows the file extension: swb = binary, gal = contiguity, gwt = distance, otherwise the matrix type.
+     */
     public void save(File outputFile, Charset charset) throws IOException {
-        if (spatialWeightMatrixType == SpatialWeightMatrixType.Distance) {
+        Format format = Format.fromFile(outputFile);
+        if (format == Format.SWB) {
+            SpatialWeightsFile.writeBinary(this, outputFile);
+        } else if (format == Format.GAL) {
+            writeContiguity(outputFile, charset);
+        } else if (format == Format.GWT) {
+            writeDistance(outputFile, charset);
+        } else if (spatialWeightMatrixType == SpatialWeightMatrixType.Distance) {
             writeDistance(outputFile, charset);
         } else {
             writeContiguity(outputFile, charset);
         }
     }
 
+    /**
+     * Loads a spatial weights file (swb, swm, gal, gwt). Feature ids of the loaded matrix are strings.
+     * 
+     * @return true if loaded
+     */
     public boolean load(File swmFile, Charset charset) {
-        // TODO code here
+        if (swmFile == null || !swmFile.isFile()) {
+            return false;
+        }
+
+        try {
+            SpatialWeightsFile.read(this, swmFile, charset);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        } catch (RuntimeException e) {
+            String message = swmFile.getName() + " is not a valid spatial weights file";
+            LOGGER.log(Level.WARNING, message, e);
+        }
 
+        this.reset(new ArrayList<Object>(), null);
         return false;
     }
 
+    // replaces the features and neighbor pairs, weights may be null
+    void reset(List<Object> ids, SpatialWeights newWeights) {
+        this.indexes.clear();
+        this.featureIDs.clear();
+        for (Object id : ids) {
+            this.indexes.put(id, Integer.valueOf(featureIDs.size()));
+            this.featureIDs.add(id);
+        }
+
+        if (newWeights == null) {
+            this.builder = new SpatialWeights.Builder();
+            this.builder.ensureSize(featureIDs.size());
+            this.weights = null;
+        } else {
+            this.builder = null;
+            this.weights = newWeights;
+        }
+    }
+
+    // the type name and unique field are omitted when not set
+    private StringBuffer buildHeader(StringBuffer sb) {
+        sb.append("0").append(space).append(this.getFeatureCount());
+        if (typeName != null && !typeName.isEmpty()) {
+            sb.append(space).append(typeName);
+            if (uniqueField != null && !uniqueField.isEmpty()) {
+                sb.append(space).append(uniqueField);
+            }
+        }
+        return sb;
+    }
+
     private void writeContiguity(File outputFile, Charset charset) throws IOException {
         BufferedWriter writer = null;
         try {
@@ -159,14 +309,13 @@ public class WeightMatrix {
             StringBuffer sb = new StringBuffer();
 
             // header : 0 25 seoul_series sgg_cd
-            sb.append("0").append(space).append(this.getFeatureCount()).append(space);
-            sb.append(this.getTypeName()).append(space).append(this.getUniqueField());
-            writer.write(sb.append(newLine).toString());
+            writer.write(buildHeader(sb).append(newLine).toString());
 
             // matrix
-            for (Entry<Object, Hashtable<Object, Double>> entry : items.entrySet()) {
-                Object primaryID = entry.getKey();
-                int count = entry.getValue().size();
+            SpatialWeights sw = getSpatialWeights();
+            for (int row = 0; row < sw.size(); row++) {
+                Object primaryID = featureIDs.get(row);
+                int count = sw.getNeighborCount(row);
 
                 // 11170 7
                 sb.setLength(0);
@@ -175,11 +324,11 @@ public class WeightMatrix {
 
                 // 11440 11590 11140 11200 11650 11560 11680
                 sb.setLength(0);
-                for (Entry<Object, Double> second : entry.getValue().entrySet()) {
+                for (int k = sw.getRowStart(row); k < sw.getRowEnd(row); k++) {
                     if (sb.length() > 0) {
                         sb.append(space);
                     }
-                    sb.append(second.getKey().toString());
+                    sb.append(featureIDs.get(sw.getNeighbor(k)).toString());
                 }
                 writer.write(sb.append(newLine).toString());
             }
@@ -200,19 +349,18 @@ public class WeightMatrix {
             StringBuffer sb = new StringBuffer();
 
             // header : 0 25 seoul_series sgg_cd
-            sb.append("0").append(space).append(this.getFeatureCount()).append(space);
-            sb.append(this.getTypeName()).append(space).append(this.getUniqueField());
-            writer.write(sb.append(newLine).toString());
+            writer.write(buildHeader(sb).append(newLine).toString());
 
             // matrix
-            for (Entry<Object, Hashtable<Object, Double>> entry : items.entrySet()) {
-                Object primaryID = entry.getKey();
-                for (Entry<Object, Double> second : entry.getValue().entrySet()) {
+            SpatialWeights sw = getSpatialWeights();
+            for (int row = 0; row < sw.size(); row++) {
+                Object primaryID = featureIDs.get(row);
+                for (int k = sw.getRowStart(row); k < sw.getRowEnd(row); k++) {
                     // 11545 11620 4029.25183
                     sb.setLength(0);
                     sb.append(primaryID.toString()).append(space);
-                    sb.append(second.getKey().toString()).append("         ");
-                    sb.append(second.getValue());
+                    sb.append(featureIDs.get(sw.getNeighbor(k)).toString()).append(space);
+                    sb.append(sw.getWeight(k));
                     writer.write(sb.append(newLine).toString());
                 }
             }
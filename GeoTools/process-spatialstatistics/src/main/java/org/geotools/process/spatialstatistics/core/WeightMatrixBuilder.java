@@ -16,8 +16,10 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -27,6 +29,7 @@ import org.geotools.api.filter.expression.Expression;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.process.spatialstatistics.core.AbstractWeightMatrix.SpatialWeightMatrixType;
 import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -66,7 +69,7 @@ public class WeightMatrixBuilder {
 
     private double exponent = 1.0; // 1 or 2
 
-    private Hashtable<Object, Double> rowSum = new Hashtable<Object, Double>();
+    private double[] rowSum;
 
     private double distanceBandWidth = 0;
 
@@ -76,10 +79,18 @@ public class WeightMatrixBuilder {
 
     private WeightMatrix weightMatrix;
 
+    // sparse weights aligned with events (row i = events.get(i)), null if weights are dense
+    private SpatialWeights spatialWeights;
+
     private StandardizationMethod standardizationMethod = StandardizationMethod.None;
 
     private boolean selfNeighbors = false;
 
+    // precomputed weights file, the matrix is loaded instead of built
+    private File spatialWeightsFile;
+
+    private boolean weightsFromFile = false;
+
     private DistanceFactory factory = DistanceFactory.newInstance();
 
     public WeightMatrixBuilder() {
@@ -124,10 +135,38 @@ public class WeightMatrixBuilder {
         this.selfNeighbors = selfNeighbors;
     }
 
+    public File getSpatialWeightsFile() {
+        return spatialWeightsFile;
+    }
+
+    /**
+     * Sets a precomputed spatial weights file (swb, swm, gal, gwt). Only the listed pairs are neighbors. Distance files (gwt, distance swb) are
+     * converted to weights by the spatial concept, the values of the other files are used as weights.
+     */
+    public void setSpatialWeightsFile(File spatialWeightsFile) {
+        this.spatialWeightsFile = spatialWeightsFile;
+    }
+
     public WeightMatrix getWeightMatrix() {
         return weightMatrix;
     }
 
+    /**
+     * Returns the compressed sparse row weights aligned with {@link #getEvents()}, or null if the spatial concept defines a weight for every pair
+     * of features (InverseDistance, InverseDistanceSquared, ZoneOfIndifference).
+     */
+    public SpatialWeights getSpatialWeights() {
+        return spatialWeights;
+    }
+
+    /**
+     * Returns true if the weights of this spatial concept are zero outside the neighbor lists.
+     */
+    public boolean isSparse() {
+        return weightsFromFile || isContiguity || spatialConcept == SpatialConcept.KNearestNeighbors
+                || spatialConcept == SpatialConcept.FixedDistance;
+    }
+
     public double getMeanX() {
         return this.sumX / this.getEvents().size();
     }
@@ -163,7 +202,41 @@ public class WeightMatrixBuilder {
 
     public WeightMatrix buildWeightMatrix(SimpleFeatureCollection inputFeatures, Expression xField,
             Expression yField) {
-        this.events = loadEvents(inputFeatures, xField, yField);
+        WeightMatrix loaded = loadWeightMatrix();
+        this.weightsFromFile = loaded != null;
+
+        if (weightsFromFile) {
+            // match the features by the unique field of the weights file
+            List<String> keys = new ArrayList<String>();
+            Expression keyField = null;
+            String uniqueField = FeatureTypes.validateProperty(inputFeatures.getSchema(),
+                    loaded.getUniqueField());
+            if (uniqueField != null && inputFeatures.getSchema().indexOf(uniqueField) != -1) {
+                FilterFactory ff = CommonFactoryFinder.getFilterFactory(GeoTools.getDefaultHints());
+                keyField = ff.property(uniqueField);
+            }
+
+            this.events = loadEvents(inputFeatures, xField, yField, keyField, keys);
+
+            boolean distanceBand = spatialConcept == SpatialConcept.FixedDistance
+                    || spatialConcept == SpatialConcept.ZoneOfIndifference;
+            if (distanceBandWidth == 0 && distanceBand
+                    && loaded.getSpatialWeightMatrixType() == SpatialWeightMatrixType.Distance) {
+                distanceBandWidth = factory.getThresholDistance(inputFeatures);
+            }
+
+            this.weightMatrix = loaded;
+            this.spatialWeights = buildSpatialWeights(keys);
+            this.rowSum = null;
+
+            if (standardizationMethod == StandardizationMethod.Row) {
+                calculateRowSum();
+            }
+
+            return weightMatrix;
+        }
+
+        this.events = loadEvents(inputFeatures, xField, yField, null, null);
 
         if (isContiguity) {
             WeightMatrixContiguity contiguity = new WeightMatrixContiguity();
@@ -196,6 +269,9 @@ public class WeightMatrixBuilder {
             }
         }
 
+        this.spatialWeights = isSparse() ? buildSpatialWeights(null) : null;
+        this.rowSum = null;
+
         if (standardizationMethod == StandardizationMethod.Row) {
             calculateRowSum();
         }
@@ -203,46 +279,178 @@ public class WeightMatrixBuilder {
         return weightMatrix;
     }
 
+    private WeightMatrix loadWeightMatrix() {
+        if (spatialWeightsFile == null) {
+            return null;
+        }
+
+        WeightMatrix matrix = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+        if (matrix.load(spatialWeightsFile, Charset.defaultCharset())) {
+            return matrix;
+        }
+
+        LOGGER.warning("Failed to load " + spatialWeightsFile.getName()
+                + ", the spatial weights will be built from the features.");
+        return null;
+    }
+
+    // re-index the neighbor pairs of the weight matrix by event order and convert to weights.
+    // keys: feature keys of the loaded weights file, null if the matrix was built from the events
+    private SpatialWeights buildSpatialWeights(List<String> keys) {
+        final int size = events.size();
+
+        int[] eventOfRow = new int[weightMatrix.getFeatureCount()];
+        int[] rowOfEvent = new int[size];
+        Arrays.fill(eventOfRow, -1);
+        for (SpatialEvent event : events) {
+            int row = weightMatrix.indexOf(keys == null ? event.id : keys.get(event.index));
+            rowOfEvent[event.index] = row;
+            if (row >= 0) {
+                eventOfRow[row] = event.index;
+            }
+        }
+
+        final boolean distanceValues = keys != null
+                && weightMatrix.getSpatialWeightMatrixType() == SpatialWeightMatrixType.Distance;
+
+        SpatialWeights source = weightMatrix.getSpatialWeights();
+        SpatialWeights.Builder builder = new SpatialWeights.Builder(source.getNonZeroCount());
+        builder.ensureSize(size);
+        for (SpatialEvent event : events) {
+            boolean fixedDistance = spatialConcept == SpatialConcept.FixedDistance;
+            if (fixedDistance && (keys == null || distanceValues)) {
+                // distance to itself is always within the band
+                builder.add(event.index, event.index, 1.0);
+            }
+
+            int row = rowOfEvent[event.index];
+            if (row < 0) {
+                continue;
+            }
+
+            for (int k = source.getRowStart(row); k < source.getRowEnd(row); k++) {
+                int target = eventOfRow[source.getNeighbor(k)];
+                if (target < 0) {
+                    continue;
+                }
+
+                double weight = 1.0;
+                if (keys != null) {
+                    weight = distanceValues ? distanceToWeight(source.getWeight(k))
+                            : source.getWeight(k);
+                } else if (spatialConcept == SpatialConcept.FixedDistance) {
+                    double dist = factory.getDistance(event, events.get(target));
+                    weight = dist <= distanceBandWidth ? 1.0 : 0.0;
+                }
+
+                if (weight != 0) {
+                    builder.add(event.index, target, weight);
+                }
+            }
+        }
+        return builder.build();
+    }
+
     public double getWeight(SpatialEvent source, SpatialEvent target) {
+        if (spatialWeights != null && source.index >= 0 && target.index >= 0) {
+            return spatialWeights.getWeight(source.index, target.index);
+        }
+
         double weight = 0.0; // default
 
         if (isContiguity) {
             weight = weightMatrix.isNeighbor(source.id, target.id) ? 1.0 : 0.0;
+        } else if (spatialConcept == SpatialConcept.KNearestNeighbors) {
+            weight = weightMatrix.isNeighbor(source.id, target.id) ? 1.0 : 0.0;
         } else {
-            double dist = factory.getDistance(source, target);
-            if (spatialConcept == SpatialConcept.InverseDistance) {
-                weight = dist <= 1.0 ? 1.0 : 1.0 / (Math.pow(dist, exponent)); // beta = 1
-            } else if (spatialConcept == SpatialConcept.InverseDistanceSquared) {
-                weight = dist <= 1.0 ? 1.0 : 1.0 / (Math.pow(dist, exponent)); // beta = 2
-            } else if (spatialConcept == SpatialConcept.FixedDistance) {
-                weight = dist <= distanceBandWidth ? 1.0 : 0.0;
-            } else if (spatialConcept == SpatialConcept.ZoneOfIndifference) {
-                weight = dist > distanceBandWidth ? 1.0 / ((dist - distanceBandWidth) + 1) : 1.0;
-            } else if (spatialConcept == SpatialConcept.KNearestNeighbors) {
-                weight = weightMatrix.isNeighbor(source.id, target.id) ? 1.0 : 0.0;
-            }
+            weight = distanceToWeight(factory.getDistance(source, target));
         }
 
         return weight;
     }
 
+    // weight of the distance by the spatial concept, 1 for contiguity and k nearest neighbors
+    private double distanceToWeight(double dist) {
+        if (spatialConcept == SpatialConcept.InverseDistance) {
+            return dist <= 1.0 ? 1.0 : 1.0 / (Math.pow(dist, exponent)); // beta = 1
+        } else if (spatialConcept == SpatialConcept.InverseDistanceSquared) {
+            return dist <= 1.0 ? 1.0 : 1.0 / (Math.pow(dist, exponent)); // beta = 2
+        } else if (spatialConcept == SpatialConcept.FixedDistance) {
+            return dist <= distanceBandWidth ? 1.0 : 0.0;
+        } else if (spatialConcept == SpatialConcept.ZoneOfIndifference) {
+            return dist > distanceBandWidth ? 1.0 / ((dist - distanceBandWidth) + 1) : 1.0;
+        }
+        return 1.0;
+    }
+
+    /**
+     * Returns the first neighbor position of the i-th event. The neighbors of the i-th event are visited by
+     * {@code for (int k = getRowStart(i); k < getRowEnd(i); k++)} and {@link #getNeighbor(int)}. If the weights are dense, every event is a
+     * neighbor candidate.
+     */
+    public int getRowStart(int i) {
+        return spatialWeights == null ? 0 : spatialWeights.getRowStart(i);
+    }
+
+    public int getRowEnd(int i) {
+        return spatialWeights == null ? events.size() : spatialWeights.getRowEnd(i);
+    }
+
+    /**
+     * Returns the event index at the neighbor position.
+     */
+    public int getNeighbor(int position) {
+        return spatialWeights == null ? position : spatialWeights.getNeighbor(position);
+    }
+
+    /**
+     * Returns the weight (wij) at the neighbor position of the source event.
+     */
+    public double getNeighborWeight(SpatialEvent source, int position) {
+        if (spatialWeights == null) {
+            return getWeight(source, events.get(position));
+        }
+        return spatialWeights.getWeight(position);
+    }
+
+    /**
+     * Returns the sum of the unstandardized weights of the source event.
+     */
+    public double getRowSum(SpatialEvent source) {
+        if (rowSum == null) {
+            calculateRowSum();
+        }
+        return rowSum[source.index];
+    }
+
     public double standardizeWeight(SpatialEvent source, double weight) {
         if (standardizationMethod == StandardizationMethod.Row) {
-            Double rowSum = this.rowSum.get(source.id);
-            return rowSum == 0 ? 0.0 : weight / rowSum;
+            double sum = getRowSum(source);
+            return sum == 0 ? 0.0 : weight / sum;
         }
         return weight;
     }
 
     private void calculateRowSum() {
-        this.rowSum.clear();
+        this.rowSum = new double[events.size()];
         for (SpatialEvent current : events) {
-            this.rowSum.put(current.id, getRowSum(current));
+            this.rowSum[current.index] = calculateRowSum(current);
         }
     }
 
-    private double getRowSum(SpatialEvent source) {
+    private double calculateRowSum(SpatialEvent source) {
         double rowSum = 0.0;
+        if (spatialWeights != null) {
+            for (int k = spatialWeights.getRowStart(source.index); k < spatialWeights
+                    .getRowEnd(source.index); k++) {
+                if (!selfNeighbors && spatialWeights.getNeighbor(k) == source.index) {
+                    continue;
+                }
+                rowSum += spatialWeights.getWeight(k);
+            }
+            return rowSum;
+        }
+
         for (SpatialEvent current : events) {
             if (!selfNeighbors && source.id == current.id) {
                 continue;
@@ -252,6 +460,17 @@ public class WeightMatrixBuilder {
         return rowSum;
     }
 
+    // integral numbers without decimals, as written in the weights files
+    private String toKey(Object value) {
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE) {
+                return Long.toString((long) number);
+            }
+        }
+        return String.valueOf(value);
+    }
+
     private double getValue(SimpleFeature feature, Expression expression) {
         Double value = expression.evaluate(feature, Double.class);
         if (value == null) {
@@ -261,7 +480,7 @@ public class WeightMatrixBuilder {
     }
 
     private List<SpatialEvent> loadEvents(SimpleFeatureCollection features, Expression xField,
-            Expression yField) {
+            Expression yField, Expression keyField, List<String> keys) {
         List<SpatialEvent> eventList = new ArrayList<SpatialEvent>();
 
         this.sumX = this.sumX2 = this.sumX3 = this.sumX4 = 0.0;
@@ -275,8 +494,14 @@ public class WeightMatrixBuilder {
                 Coordinate coordinate = geometry.getCentroid().getCoordinate();
 
                 SpatialEvent event = new SpatialEvent(feature.getID(), coordinate);
+                event.index = eventList.size();
                 event.xVal = getValue(feature, xField);
 
+                if (keys != null) {
+                    Object key = keyField == null ? feature.getID() : keyField.evaluate(feature);
+                    keys.add(toKey(key));
+                }
+
                 sumX += event.xVal;
                 sumX2 += Math.pow(event.xVal, 2.0);
                 sumX3 += Math.pow(event.xVal, 3.0);
@@ -16,22 +16,37 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.api.feature.simple.SimpleFeature;
-import org.geotools.api.filter.Filter;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.geometry.jts.JTS;
 import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
 import org.geotools.util.logging.Logging;
+import org.locationtech.jts.algorithm.LineIntersector;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.noding.BasicSegmentString;
+import org.locationtech.jts.noding.MCIndexNoder;
+import org.locationtech.jts.noding.SegmentIntersector;
+import org.locationtech.jts.noding.SegmentString;
 
 /**
- * SpatialWeightMatrix - Contiguity based weights
+ * SpatialWeightMatrix - Contiguity based weights<br>
+ * Neighbors are found from an index of shared vertices and edges (use the snap tolerance for nearly coincident vertices). Features touching
+ * without a shared vertex, e.g. a vertex on the edge of the other feature or an edge sharing only a part of the other edge, are found by noding
+ * the segments of all features. Edges crossing each other make overlapping polygons rook neighbors. A feature within another feature whose
+ * boundary it does not touch is not a neighbor, and a point feature is a neighbor only of the features sharing its vertex.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -45,6 +60,8 @@ public class WeightMatrixContiguity extends AbstractWeightMatrix {
 
     private ContiguityType contiguityType = ContiguityType.Queen;
 
+    private double snapTolerance = 0.0;
+
     public WeightMatrixContiguity() {
 
     }
@@ -69,155 +86,384 @@ public class WeightMatrixContiguity extends AbstractWeightMatrix {
         this.contiguityType = contiguityType;
     }
 
+    public double getSnapTolerance() {
+        return snapTolerance;
+    }
+
+    /**
+     * Sets the grid size used to snap vertices before they are compared. 0(default) = exact coordinates.
+     */
+    public void setSnapTolerance(double snapTolerance) {
+        this.snapTolerance = snapTolerance;
+    }
+
     @Override
     public WeightMatrix execute(SimpleFeatureCollection features, String uniqueField) {
         uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
         this.uniqueFieldIsFID = uniqueField == null || uniqueField.isEmpty();
 
-        // using SpatialIndexFeatureCollection
-        SimpleFeatureCollection indexed = DataUtils.toSpatialIndexFeatureCollection(features);
-
-        switch (contiguityType) {
-        case Queen:
-            return queen(indexed, uniqueField);
-        case Rook:
-            return rook(indexed, uniqueField);
-        case Bishops:
-            return bishops(indexed, uniqueField);
-        default:
-            return queen(indexed, uniqueField);
-        }
-    }
-
-    // Polygon Contiguity (Edges and Corners)—A queen weights matrix defines a location's
-    // neighbors as those with either a shared border or vertex
-    private WeightMatrix queen(SimpleFeatureCollection features, String uniqueField) {
         WeightMatrix matrix = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
         matrix.setupVariables(features.getSchema().getTypeName(), uniqueField);
 
-        final String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
-
+        // 1. collect the vertices of all features
+        VertexIndex index = new VertexIndex();
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
-                SimpleFeature primaryFeature = featureIter.next();
-                Geometry primaryGeometry = (Geometry) primaryFeature.getDefaultGeometry();
-                Object primaryID = getFeatureID(primaryFeature, uniqueField);
-
-                // spatial query
-                // TODO orderOfContiguity
-                Filter filter = getIntersectsFilter(the_geom, primaryGeometry);
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = getFeatureID(secondaryFeature, uniqueField);
-                        if (!this.isSelfNeighbors() && primaryID.equals(secondaryID)) {
-                            continue;
-                        }
-
-                        matrix.visit(primaryID, secondaryID);
-                    }
-                } finally {
-                    subIter.close();
+                SimpleFeature feature = featureIter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                int featureIndex = matrix.addFeature(getFeatureID(feature, uniqueField));
+                if (geometry != null && !geometry.isEmpty()) {
+                    index.addGeometry(featureIndex, geometry);
                 }
             }
         } finally {
             featureIter.close();
         }
+
+        // 2. pairs of features sharing vertices and edges
+        index.build(snapTolerance);
+        long[] vertexPairs = index.getSharedVertexPairs();
+        long[] edgePairs = index.getSharedEdgePairs();
+
+        // 3. pairs touching without a shared vertex, e.g. a T-junction or a partly shared edge
+        long[][] nodedPairs = index.getNodedPairs(snapTolerance);
+        long[] pairs = VertexIndex.unique(concat(vertexPairs, nodedPairs[0]));
+        edgePairs = VertexIndex.unique(concat(edgePairs, nodedPairs[1]));
+
+        // 4. classify each pair once and visit both directions
+        for (long pair : pairs) {
+            int primary = (int) (pair >>> 32);
+            int secondary = (int) (pair & 0xFFFFFFFFL);
+
+            boolean neighbor = true;
+            if (contiguityType != ContiguityType.Queen) {
+                // a shared edge, a common line split by different vertices or overlapping areas
+                boolean edge = Arrays.binarySearch(edgePairs, pair) >= 0;
+                neighbor = contiguityType == ContiguityType.Rook ? edge : !edge;
+            }
+
+            if (neighbor) {
+                matrix.visit(primary, secondary, 1.0);
+                matrix.visit(secondary, primary, 1.0);
+            }
+        }
+
+        // a polygon intersects itself with an area, not a corner
+        if (this.isSelfNeighbors() && contiguityType != ContiguityType.Bishops) {
+            for (int i = 0; i < matrix.getFeatureCount(); i++) {
+                matrix.visit(i, i, 1.0);
+            }
+        }
+
+        // 5. higher order neighbors
+        if (orderOfContiguity > 1) {
+            SpatialWeights higher = matrix.getSpatialWeights().power(orderOfContiguity);
+            List<Object> featureIDs = new ArrayList<Object>(matrix.getFeatureCount());
+            for (int i = 0; i < matrix.getFeatureCount(); i++) {
+                featureIDs.add(matrix.getFeatureID(i));
+            }
+            matrix.reset(featureIDs, higher);
+
+            if (this.isSelfNeighbors() && contiguityType != ContiguityType.Bishops) {
+                for (int i = 0; i < matrix.getFeatureCount(); i++) {
+                    matrix.visit(i, i, 1.0);
+                }
+            }
+        }
+
         return matrix;
     }
 
-    // Polygon Contiguity (Edges Only)—A rook weights matrix defines a location's neighbors as
-    // those areas with shared borders
-    private WeightMatrix rook(SimpleFeatureCollection features, String uniqueField) {
-        WeightMatrix matrix = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
-        matrix.setupVariables(features.getSchema().getTypeName(), uniqueField);
+    private static long[] concat(long[] first, long[] second) {
+        long[] values = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, values, first.length, second.length);
+        return values;
+    }
 
-        uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
-        final String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
+    /**
+     * Vertices and segments of all features. Vertices are identified by their (snapped) coordinates, segments by their two vertex ids, so the
+     * pairs of features sharing a vertex or an edge are found by sorting primitive keys instead of spatial queries.
+     */
+    static final class VertexIndex {
+        private double[] xs = new double[1024];
 
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature primaryFeature = featureIter.next();
-                Geometry primaryGeometry = (Geometry) primaryFeature.getDefaultGeometry();
-                Object primaryID = getFeatureID(primaryFeature, uniqueField);
-
-                // spatial query
-                Filter filter = getIntersectsFilter(the_geom, primaryGeometry);
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = getFeatureID(secondaryFeature, uniqueField);
-                        if (!this.isSelfNeighbors() && primaryID.equals(secondaryID)) {
-                            continue;
-                        }
+        private double[] ys = new double[1024];
 
-                        Geometry secondaryGeom = (Geometry) secondaryFeature.getDefaultGeometry();
-                        Geometry intersects = primaryGeometry.intersection(secondaryGeom);
-                        if (intersects instanceof Point || intersects instanceof MultiPoint) {
-                            continue;
-                        }
+        private int[] owners = new int[1024];
+
+        // true if the vertex is connected to the previous vertex
+        private boolean[] linked = new boolean[1024];
+
+        // true if the vertex belongs to the ring of a polygon
+        private boolean[] rings = new boolean[1024];
+
+        private int count = 0;
 
-                        matrix.visit(primaryID, secondaryID);
+        private int[] vertexIds;
+
+        void addGeometry(int owner, Geometry geometry) {
+            for (int n = 0; n < geometry.getNumGeometries(); n++) {
+                Geometry part = geometry.getGeometryN(n);
+                if (part instanceof Polygon) {
+                    Polygon polygon = (Polygon) part;
+                    addCoordinates(owner, polygon.getExteriorRing().getCoordinateSequence(), true,
+                            true);
+                    for (int r = 0; r < polygon.getNumInteriorRing(); r++) {
+                        addCoordinates(owner, polygon.getInteriorRingN(r).getCoordinateSequence(),
+                                true, true);
                     }
-                } finally {
-                    subIter.close();
+                } else if (part instanceof LineString) {
+                    addCoordinates(owner, ((LineString) part).getCoordinateSequence(), true,
+                            false);
+                } else if (part instanceof Point) {
+                    addCoordinates(owner, ((Point) part).getCoordinateSequence(), false, false);
+                } else if (part instanceof GeometryCollection) {
+                    addGeometry(owner, part);
                 }
             }
-        } finally {
-            featureIter.close();
         }
-        return matrix;
-    }
 
-    // Polygon Contiguity (Corners Only)—A rook weights matrix defines a location's neighbors as
-    // those areas with shared vertex
-    private WeightMatrix bishops(SimpleFeatureCollection features, String uniqueField) {
-        WeightMatrix matrix = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
-        matrix.setupVariables(features.getSchema().getTypeName(), uniqueField);
+        private void addCoordinates(int owner, CoordinateSequence seq, boolean connected,
+                boolean ring) {
+            for (int i = 0; i < seq.size(); i++) {
+                if (count == xs.length) {
+                    int capacity = xs.length * 2;
+                    xs = Arrays.copyOf(xs, capacity);
+                    ys = Arrays.copyOf(ys, capacity);
+                    owners = Arrays.copyOf(owners, capacity);
+                    linked = Arrays.copyOf(linked, capacity);
+                    rings = Arrays.copyOf(rings, capacity);
+                }
+                xs[count] = seq.getX(i);
+                ys[count] = seq.getY(i);
+                owners[count] = owner;
+                linked[count] = connected && i > 0;
+                rings[count] = ring;
+                count++;
+            }
+        }
 
-        uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
-        final String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
+        void build(double snapTolerance) {
+            long[] xKeys = new long[count];
+            long[] yKeys = new long[count];
+            for (int i = 0; i < count; i++) {
+                xKeys[i] = toKey(xs[i], snapTolerance);
+                yKeys[i] = toKey(ys[i], snapTolerance);
+            }
 
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature primaryFeature = featureIter.next();
-                Geometry primaryGeometry = (Geometry) primaryFeature.getDefaultGeometry();
-                Object primaryID = getFeatureID(primaryFeature, uniqueField);
-
-                // spatial query
-                Filter filter = getIntersectsFilter(the_geom, primaryGeometry);
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = getFeatureID(secondaryFeature, uniqueField);
-                        if (!this.isSelfNeighbors() && primaryID.equals(secondaryID)) {
-                            continue;
-                        }
+            // rank x and y separately, then identify the vertices by the packed ranks
+            long[] uniqueX = unique(xKeys.clone());
+            long[] uniqueY = unique(yKeys.clone());
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                long xRank = Arrays.binarySearch(uniqueX, xKeys[i]);
+                long yRank = Arrays.binarySearch(uniqueY, yKeys[i]);
+                packed[i] = (xRank << 32) | yRank;
+            }
 
-                        Geometry secondaryGeom = (Geometry) secondaryFeature.getDefaultGeometry();
-                        Geometry intersects = primaryGeometry.intersection(secondaryGeom);
-                        if (intersects instanceof Point || intersects instanceof MultiPoint) {
-                            matrix.visit(primaryID, secondaryID);
+            long[] uniqueVertices = unique(packed.clone());
+            vertexIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                vertexIds[i] = Arrays.binarySearch(uniqueVertices, packed[i]);
+            }
+        }
+
+        /**
+         * Returns the sorted (primary &lt;&lt; 32 | secondary) pairs, one entry per shared vertex.
+         */
+        long[] getSharedVertexPairs() {
+            long[] members = new long[count];
+            for (int i = 0; i < count; i++) {
+                members[i] = ((long) vertexIds[i] << 32) | owners[i];
+            }
+            return collectPairs(unique(members), false);
+        }
+
+        /**
+         * Returns the sorted unique (primary &lt;&lt; 32 | secondary) pairs sharing an edge.
+         */
+        long[] getSharedEdgePairs() {
+            long[] segments = new long[count];
+            int segmentCount = 0;
+            for (int i = 1; i < count; i++) {
+                if (linked[i] && vertexIds[i - 1] != vertexIds[i]) {
+                    segments[segmentCount++] = segmentKey(vertexIds[i - 1], vertexIds[i]);
+                }
+            }
+            long[] uniqueSegments = unique(Arrays.copyOf(segments, segmentCount));
+
+            long[] members = new long[segmentCount];
+            segmentCount = 0;
+            for (int i = 1; i < count; i++) {
+                if (linked[i] && vertexIds[i - 1] != vertexIds[i]) {
+                    long key = segmentKey(vertexIds[i - 1], vertexIds[i]);
+                    long segmentId = Arrays.binarySearch(uniqueSegments, key);
+                    members[segmentCount++] = (segmentId << 32) | owners[i];
+                }
+            }
+            return collectPairs(unique(members), true);
+        }
+
+        /**
+         * Nodes the (snapped) segments of all features and returns the sorted unique (primary &lt;&lt; 32 | secondary) pairs of features whose
+         * segments intersect, [0] = all pairs, [1] = pairs sharing a part of a segment or with crossing polygon edges. Unlike the shared vertices,
+         * this finds a vertex on the edge of another feature and edges sharing only a part of their length.
+         */
+        long[][] getNodedPairs(double snapTolerance) {
+            List<SegmentString> segmentStrings = new ArrayList<SegmentString>();
+            for (int start = 0; start < count;) {
+                int end = start + 1;
+                while (end < count && linked[end]) {
+                    end++;
+                }
+
+                if (end - start > 1) {
+                    Coordinate[] coordinates = new Coordinate[end - start];
+                    for (int i = start; i < end; i++) {
+                        coordinates[i - start] = new Coordinate(snap(xs[i], snapTolerance),
+                                snap(ys[i], snapTolerance));
+                    }
+                    int[] data = new int[] { owners[start], rings[start] ? 1 : 0 };
+                    segmentStrings.add(new BasicSegmentString(coordinates, data));
+                }
+                start = end;
+            }
+
+            IntersectionPairs intersections = new IntersectionPairs();
+            new MCIndexNoder(intersections).computeNodes(segmentStrings);
+            return new long[][] { intersections.getPairs(), intersections.getLinePairs() };
+        }
+
+        // members: sorted unique (group << 32 | owner), emits the owner pairs of each group
+        private long[] collectPairs(long[] members, boolean distinct) {
+            long[] pairs = new long[Math.max(16, members.length)];
+            int pairCount = 0;
+            for (int start = 0; start < members.length;) {
+                long group = members[start] >>> 32;
+                int end = start + 1;
+                while (end < members.length && (members[end] >>> 32) == group) {
+                    end++;
+                }
+
+                for (int a = start; a < end; a++) {
+                    for (int b = a + 1; b < end; b++) {
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
                         }
+                        long first = members[a] & 0xFFFFFFFFL;
+                        long second = members[b] & 0xFFFFFFFFL;
+                        pairs[pairCount++] = (first << 32) | second;
                     }
-                } finally {
-                    subIter.close();
                 }
+                start = end;
             }
-        } finally {
-            featureIter.close();
+
+            pairs = Arrays.copyOf(pairs, pairCount);
+            return distinct ? unique(pairs) : sort(pairs);
+        }
+
+        private static long segmentKey(int from, int to) {
+            return from < to ? ((long) from << 32) | to : ((long) to << 32) | from;
+        }
+
+        private static double snap(double value, double snapTolerance) {
+            return snapTolerance > 0 ? Math.round(value / snapTolerance) * snapTolerance : value;
+        }
+
+        private static long toKey(double value, double snapTolerance) {
+            if (snapTolerance > 0) {
+                return Math.round(value / snapTolerance);
+            }
+
+            // order preserving bits, -0.0 = 0.0
+            long bits = Double.doubleToLongBits(value + 0.0);
+            return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+
+        private static long[] sort(long[] values) {
+            Arrays.sort(values);
+            return values;
+        }
+
+        static long[] unique(long[] values) {
+            Arrays.sort(values);
+            int write = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (write == 0 || values[write - 1] != values[i]) {
+                    values[write++] = values[i];
+                }
+            }
+            return write == values.length ? values : Arrays.copyOf(values, write);
         }
-        return matrix;
     }
 
-    private Filter getIntersectsFilter(String geomField, Geometry searchGeometry) {
-        return ff.and(ff.bbox(ff.property(geomField), JTS.toEnvelope(searchGeometry)),
-                ff.intersects(ff.property(geomField), ff.literal(searchGeometry)));
+    /**
+     * Collects the pairs of features whose segments intersect, the segment strings carry {owner, 1 if a polygon ring}.
+     */
+    static final class IntersectionPairs implements SegmentIntersector {
+        private final LineIntersector lineIntersector = new RobustLineIntersector();
+
+        private long[] pairs = new long[16];
+
+        private int pairCount = 0;
+
+        private long[] linePairs = new long[16];
+
+        private int lineCount = 0;
+
+        @Override
+        public void processIntersections(SegmentString e0, int segIndex0, SegmentString e1,
+                int segIndex1) {
+            int[] data0 = (int[]) e0.getData();
+            int[] data1 = (int[]) e1.getData();
+            if (data0[0] == data1[0]) {
+                return;
+            }
+
+            Coordinate[] c0 = e0.getCoordinates();
+            Coordinate[] c1 = e1.getCoordinates();
+            lineIntersector.computeIntersection(c0[segIndex0], c0[segIndex0 + 1], c1[segIndex1],
+                    c1[segIndex1 + 1]);
+            if (!lineIntersector.hasIntersection()) {
+                return;
+            }
+
+            long first = Math.min(data0[0], data1[0]);
+            long second = Math.max(data0[0], data1[0]);
+            long pair = (first << 32) | second;
+            if (pairCount == pairs.length) {
+                // the same pair is found at every common vertex, drop duplicates before growing
+                long[] unique = VertexIndex.unique(pairs);
+                pairCount = unique.length;
+                pairs = Arrays.copyOf(unique, Math.max(pairs.length, pairCount * 2));
+            }
+            pairs[pairCount++] = pair;
+
+            // a common part of two collinear segments, or crossing edges of two polygons
+            boolean line = lineIntersector.getIntersectionNum() == 2 && !lineIntersector
+                    .getIntersection(0).equals2D(lineIntersector.getIntersection(1));
+            if (line || (lineIntersector.isProper() && data0[1] == 1 && data1[1] == 1)) {
+                if (lineCount == linePairs.length) {
+                    long[] unique = VertexIndex.unique(linePairs);
+                    lineCount = unique.length;
+                    linePairs = Arrays.copyOf(unique, Math.max(linePairs.length, lineCount * 2));
+                }
+                linePairs[lineCount++] = pair;
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        long[] getPairs() {
+            return VertexIndex.unique(Arrays.copyOf(pairs, pairCount));
+        }
+
+        long[] getLinePairs() {
+            return VertexIndex.unique(Arrays.copyOf(linePairs, lineCount));
+        }
     }
 }
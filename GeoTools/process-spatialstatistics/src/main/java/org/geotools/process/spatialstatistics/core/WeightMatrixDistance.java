@@ -16,7 +16,9 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.api.feature.simple.SimpleFeature;
@@ -89,42 +91,35 @@ public class WeightMatrixDistance extends AbstractWeightMatrix {
         matrix.setupVariables(features.getSchema().getTypeName(), uniqueField);
 
         // 1. extract centroid and build spatial index
-        this.buildSpatialIndex(features, uniqueField);
-
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            Envelope queryEnv = new Envelope();
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
-                Object primaryID = getFeatureID(feature, uniqueField);
-
-                queryEnv.init(coordinate);
-                queryEnv.expandBy(thresholdDistance);
-
-                for (@SuppressWarnings("unchecked")
-                Iterator<SpatialEvent> iter = (Iterator<SpatialEvent>) spatialIndex.query(queryEnv)
-                        .iterator(); iter.hasNext();) {
-                    SpatialEvent sample = iter.next();
-
-                    double distance = coordinate.distance(sample.coordinate);
-                    if (!this.isSelfNeighbors()
-                            && (primaryID.equals(sample.id) || distance > thresholdDistance)) {
-                        continue;
-                    }
-
-                    matrix.visit(primaryID, sample.id, distance);
+        List<SpatialEvent> events = this.buildSpatialIndex(matrix, features, uniqueField);
+
+        // 2. visit neighbors within threshold distance
+        Envelope queryEnv = new Envelope();
+        for (SpatialEvent source : events) {
+            queryEnv.init(source.coordinate);
+            queryEnv.expandBy(thresholdDistance);
+
+            for (@SuppressWarnings("unchecked")
+            Iterator<SpatialEvent> iter = (Iterator<SpatialEvent>) spatialIndex.query(queryEnv)
+                    .iterator(); iter.hasNext();) {
+                SpatialEvent sample = iter.next();
+
+                double distance = source.distance(sample);
+                if (!this.isSelfNeighbors()
+                        && (source.index == sample.index || distance > thresholdDistance)) {
+                    continue;
                 }
+
+                matrix.visit(source.index, sample.index, distance);
             }
-        } finally {
-            featureIter.close();
         }
 
         return matrix;
     }
 
-    private void buildSpatialIndex(SimpleFeatureCollection features, String uniqueField) {
+    private List<SpatialEvent> buildSpatialIndex(WeightMatrix matrix,
+            SimpleFeatureCollection features, String uniqueField) {
+        List<SpatialEvent> events = new ArrayList<SpatialEvent>();
         spatialIndex = new STRtree();
         SimpleFeatureIterator featureIter = features.features();
         try {
@@ -134,10 +129,15 @@ public class WeightMatrixDistance extends AbstractWeightMatrix {
                 Coordinate centroid = geometry.getCentroid().getCoordinate();
                 Object primaryID = getFeatureID(feature, uniqueField);
 
-                spatialIndex.insert(new Envelope(centroid), new SpatialEvent(primaryID, centroid));
+                SpatialEvent event = new SpatialEvent(primaryID, centroid);
+                event.index = matrix.addFeature(primaryID);
+
+                spatialIndex.insert(new Envelope(centroid), event);
+                events.add(event);
             }
         } finally {
             featureIter.close();
         }
+        return events;
     }
 }
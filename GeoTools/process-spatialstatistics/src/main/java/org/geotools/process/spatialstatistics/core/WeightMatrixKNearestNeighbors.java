@@ -16,6 +16,8 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,81 +76,54 @@ public class WeightMatrixKNearestNeighbors extends AbstractWeightMatrix {
         matrix.setupVariables(features.getSchema().getTypeName(), uniqueField);
 
         // 1. extract centroid and build spatial index
-        this.buildSpatialIndex(features, uniqueField);
+        List<SpatialEvent> events = this.buildSpatialIndex(matrix, features, uniqueField);
 
         if (numberOfNeighbors >= featureCount) {
-            insertAll(matrix, features, uniqueField);
+            insertAll(matrix, events);
         } else {
-            SimpleFeatureIterator featureIter = features.features();
-            try {
-                while (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                    Coordinate coordinate = geometry.getCentroid().getCoordinate();
-                    Object primaryID = getFeatureID(feature, uniqueField);
-
-                    SpatialEvent soruce = new SpatialEvent(primaryID, coordinate);
-                    Object[] knns = spatialIndex.nearestNeighbour(new Envelope(coordinate), soruce,
-                            new ItemDistance() {
-                                @Override
-                                public double distance(ItemBoundable item1, ItemBoundable item2) {
-                                    SpatialEvent s1 = (SpatialEvent) item1.getItem();
-                                    SpatialEvent s2 = (SpatialEvent) item2.getItem();
-                                    if (!isSelfNeighbors() && s1.id.equals(s2.id)) {
-                                        return Double.MAX_VALUE;
-                                    }
-                                    return s1.distance(s2);
-                                }
-                            }, numberOfNeighbors);
-
-                    // build weight matrix
-                    for (Object object : knns) {
-                        SpatialEvent current = (SpatialEvent) object;
-                        matrix.visit(primaryID, current.id, soruce.distance(current));
+            ItemDistance itemDistance = new ItemDistance() {
+                @Override
+                public double distance(ItemBoundable item1, ItemBoundable item2) {
+                    SpatialEvent s1 = (SpatialEvent) item1.getItem();
+                    SpatialEvent s2 = (SpatialEvent) item2.getItem();
+                    if (!isSelfNeighbors() && s1.index == s2.index) {
+                        return Double.MAX_VALUE;
                     }
+                    return s1.distance(s2);
+                }
+            };
+
+            for (SpatialEvent source : events) {
+                Object[] knns = spatialIndex.nearestNeighbour(new Envelope(source.coordinate),
+                        source, itemDistance, numberOfNeighbors);
+
+                // build weight matrix
+                for (Object object : knns) {
+                    SpatialEvent current = (SpatialEvent) object;
+                    matrix.visit(source.index, current.index, source.distance(current));
                 }
-            } finally {
-                featureIter.close();
             }
         }
 
         return matrix;
     }
 
-    private void insertAll(WeightMatrix matrix, SimpleFeatureCollection features, String uniqueField) {
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Object primaryID = getFeatureID(feature, uniqueField);
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
-
-                SimpleFeatureIterator subIter = features.features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = getFeatureID(secondaryFeature, uniqueField);
-                        if (!this.isSelfNeighbors() && primaryID.equals(secondaryID)) {
-                            continue;
-                        }
-
-                        Geometry secGeom = (Geometry) secondaryFeature.getDefaultGeometry();
-                        Coordinate secCoord = secGeom.getCentroid().getCoordinate();
-                        matrix.visit(primaryID, secondaryID, coordinate.distance(secCoord));
-                    }
-                } finally {
-                    subIter.close();
+    private void insertAll(WeightMatrix matrix, List<SpatialEvent> events) {
+        for (SpatialEvent source : events) {
+            for (SpatialEvent target : events) {
+                if (!this.isSelfNeighbors() && source.index == target.index) {
+                    continue;
                 }
+                matrix.visit(source.index, target.index, source.distance(target));
             }
-        } finally {
-            featureIter.close();
         }
-
     }
 
-    private void buildSpatialIndex(SimpleFeatureCollection features, String uniqueField) {
+    private List<SpatialEvent> buildSpatialIndex(WeightMatrix matrix,
+            SimpleFeatureCollection features, String uniqueField) {
+        List<SpatialEvent> events = new ArrayList<SpatialEvent>();
         spatialIndex = new STRtree();
+        featureCount = 0;
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
@@ -157,11 +132,16 @@ public class WeightMatrixKNearestNeighbors extends AbstractWeightMatrix {
                 Coordinate centroid = geometry.getCentroid().getCoordinate();
                 Object primaryID = getFeatureID(feature, uniqueField);
 
-                spatialIndex.insert(new Envelope(centroid), new SpatialEvent(primaryID, centroid));
+                SpatialEvent event = new SpatialEvent(primaryID, centroid);
+                event.index = matrix.addFeature(primaryID);
+
+                spatialIndex.insert(new Envelope(centroid), event);
+                events.add(event);
                 featureCount++;
             }
         } finally {
             featureIter.close();
         }
+        return events;
     }
 }
@@ -49,4 +49,15 @@ public abstract class AbstractInterpolator {
      */
     public abstract double getValue(Coordinate p);
 
+    /**
+     * Get interpolated value
+     * 
+     * @param x x coordinate of the location
+     * @param y y coordinate of the location
+     * @return interpolated value
+     */
+    public double getValue(double x, double y) {
+        return getValue(new Coordinate(x, y));
+    }
+
 }
@@ -19,12 +19,20 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.eclipse.imagen.PlanarImage;
+import org.eclipse.imagen.iterator.RectIterFactory;
+import org.eclipse.imagen.iterator.WritableRectIter;
 import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.process.spatialstatistics.core.DiskMemImage;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.util.logging.Logging;
 
@@ -38,6 +46,22 @@ import org.geotools.util.logging.Logging;
 public abstract class AbstractSurfaceOperation extends RasterProcessingOperation {
     protected static final Logger LOGGER = Logging.getLogger(AbstractSurfaceOperation.class);
 
+    // maximum number of source cells buffered per region
+    static final int MAX_BUFFER_CELLS = 1 << 22;
+
+    /**
+     * Neighborhood kernel of a surface operation.
+     */
+    protected interface SurfaceKernel {
+        /**
+         * Evaluates the output value of the center cell. The window is indexed as mx[col][row] and is reused for every cell. The center cell is
+         * never NoData, NoData neighbors are assigned the value of the center cell.
+         *
+         * @return output value, NaN to write NoData
+         */
+        double evaluate(double[][] mx);
+    }
+
     protected double srcNoData = -Float.MAX_VALUE;
 
     protected double _8DX = pixelSizeX * 8;
@@ -52,6 +76,9 @@ public abstract class AbstractSurfaceOperation extends RasterProcessingOperation
 
     private int maxRow;
 
+    // 1 = single thread, 0 or negative = all available processors
+    private int parallelism = 1;
+
     protected void initSurface(GridCoverage2D gc) {
         GridGeometry2D gridGeometry2D = gc.getGridGeometry();
         AffineTransform gridToWorld = (AffineTransform) gridGeometry2D.getGridToCRS2D();
@@ -72,10 +99,187 @@ public abstract class AbstractSurfaceOperation extends RasterProcessingOperation
         maxRow = bounds.y + image.getHeight();
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to process the output tiles. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Evaluates the kernel on a size x size window around every cell and writes the results to the output image.<br>
+     * The output is split into regions (row strips on a single thread, output tiles otherwise). Each region reads its source cells plus a halo
+     * of size / 2 cells once into a primitive buffer, and keeps its own statistics which are merged at the end.
+     */
+    protected void executeKernel(final DiskMemImage outputImage, final int size,
+            final double zFactor, final SurfaceKernel kernel) {
+        final List<Rectangle> regions = splitRegions(outputImage, size);
+        final CellStatistics[] statistics = new CellStatistics[regions.size()];
+
+        ParallelRange.execute(parallelism, regions.size(), 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    statistics[k] = executeKernel(outputImage, regions.get(k), size, zFactor,
+                            kernel);
+                }
+            }
+        });
+
+        for (CellStatistics stats : statistics) {
+            mergeStatistics(stats);
+        }
+    }
+
+    private List<Rectangle> splitRegions(DiskMemImage outputImage, int size) {
+        final Rectangle outBounds = outputImage.getBounds();
+        final Rectangle area = new Rectangle(outBounds.x, outBounds.y,
+                Math.min(outBounds.width, bounds.width), Math.min(outBounds.height, bounds.height));
+        final int halo = size / 2;
+        final int threads = ParallelRange.getThreadCount(parallelism);
+
+        List<Rectangle> regions = new ArrayList<Rectangle>();
+        if (area.isEmpty()) {
+            return regions;
+        }
+
+        if (threads > 1) {
+            // output tiles, if there are enough of them to balance the threads
+            for (int ty = outputImage.getMinTileY(); ty <= outputImage.getMaxTileY(); ty++) {
+                for (int tx = outputImage.getMinTileX(); tx <= outputImage.getMaxTileX(); tx++) {
+                    Rectangle tile = outputImage.getTileRect(tx, ty).intersection(area);
+                    if (!tile.isEmpty()) {
+                        regions.add(tile);
+                    }
+                }
+            }
+
+            if (regions.size() >= threads * 4) {
+                return regions;
+            }
+            regions.clear();
+        }
+
+        int stripHeight = Math.max(1, image.getTileHeight());
+        if (threads > 1) {
+            stripHeight = Math.min(stripHeight, (area.height + threads * 4 - 1) / (threads * 4));
+        }
+        stripHeight = Math.min(stripHeight, MAX_BUFFER_CELLS / (area.width + 2 * halo) - 2 * halo);
+        stripHeight = Math.max(1, stripHeight);
+
+        for (int y = 0; y < area.height; y += stripHeight) {
+            regions.add(new Rectangle(area.x, area.y + y, area.width,
+                    Math.min(stripHeight, area.height - y)));
+        }
+        return regions;
+    }
+
+    /**
+     * Evaluates the kernel on the cells of the output region. The output cell (x, y) is the source cell (bounds.x + x - minX, bounds.y + y -
+     * minY) of the output image. Regions must not overlap, so that they can be processed concurrently.
+     *
+     * @return statistics of the written cells
+     */
+    protected CellStatistics executeKernel(DiskMemImage outputImage, Rectangle region, int size,
+            double zFactor, SurfaceKernel kernel) {
+        final CellStatistics statistics = new CellStatistics(noData);
+        final int halo = size / 2;
+        final int blockWidth = region.width + 2 * halo;
+        final int blockHeight = region.height + 2 * halo;
+        final int srcX = bounds.x + region.x - outputImage.getMinX() - halo;
+        final int srcY = bounds.y + region.y - outputImage.getMinY() - halo;
+
+        final double[] block = readBlock(srcX, srcY, blockWidth, blockHeight, zFactor);
+        final double[][] mx = new double[size][size];
+        final int centerOffset = halo * blockWidth + halo;
+
+        WritableRectIter writer = RectIterFactory.createWritable(outputImage, region);
+
+        int row = 0;
+        writer.startLines();
+        while (!writer.finishedLines()) {
+
+            int offset = row * blockWidth;
+            writer.startPixels();
+            while (!writer.finishedPixels()) {
+                final double center = block[offset + centerOffset];
+                if (Double.isNaN(center)) {
+                    writer.setSample(0, noData);
+                } else {
+                    // If any neighborhood cells are NoData, they are assigned the value of the
+                    // center cell
+                    for (int dy = 0, pos = offset; dy < size; dy++, pos += blockWidth) {
+                        for (int dx = 0; dx < size; dx++) {
+                            final double value = block[pos + dx];
+                            mx[dx][dy] = Double.isNaN(value) ? center : value;
+                        }
+                    }
+
+                    final double value = kernel.evaluate(mx);
+                    if (Double.isNaN(value)) {
+                        writer.setSample(0, noData);
+                    } else {
+                        writer.setSample(0, value);
+                        statistics.update(value);
+                    }
+                }
+
+                writer.nextPixel();
+                offset++;
+            }
+
+            writer.nextLine();
+            row++;
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Reads the source cells of the rectangle (band 0) into a row-major buffer. Cells outside the source and NoData cells are NaN.
+     */
+    private double[] readBlock(int x, int y, int width, int height, double zFactor) {
+        final double[] block = new double[width * height];
+        Arrays.fill(block, Double.NaN);
+
+        final Rectangle rect = new Rectangle(x, y, width, height).intersection(bounds);
+        if (rect.isEmpty()) {
+            return block;
+        }
+
+        final Raster raster = image.getData(rect);
+        final double[] samples = raster.getSamples(rect.x, rect.y, rect.width, rect.height, 0,
+                (double[]) null);
+
+        for (int row = 0, k = 0; row < rect.height; row++) {
+            int offset = (rect.y - y + row) * width + (rect.x - x);
+            for (int col = 0; col < rect.width; col++, k++) {
+                final double value = samples[k];
+                if (!Double.isNaN(value) && !SSUtils.compareDouble(value, srcNoData)) {
+                    block[offset + col] = value * zFactor;
+                }
+            }
+        }
+
+        return block;
+    }
+
+    /**
+     * @deprecated use {@link #executeKernel(DiskMemImage, int, double, SurfaceKernel)}
+     */
+    @Deprecated
     protected double[][] getSubMatrix(GridCoordinates2D pos, int width, int height) {
         return getSubMatrix(pos, width, height, 1.0);
     }
 
+    /**
+     * @deprecated use {@link #executeKernel(DiskMemImage, int, double, SurfaceKernel)}
+     */
+    @Deprecated
     protected double[][] getSubMatrix(GridCoordinates2D pos, int width, int height, double zFactor) {
         int posX = width / 2;
         int posY = height / 2;
@@ -0,0 +1,397 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.gridcoverage;
+
+import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import org.eclipse.imagen.KernelImageN;
+import org.geotools.process.spatialstatistics.core.DiskMemImage;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
+import org.geotools.process.spatialstatistics.pattern.BinStore;
+
+/**
+ * Density surface of weighted cells convolved with a kernel.<br>
+ * The weights are first binned on the grid, so any number of points falling in the same cell costs one kernel application. The grid is padded by
+ * the kernel footprint, so cells just outside the raster still contribute to its edge. The output tiles are then computed independently, each tile
+ * gathers the binned cells whose footprint overlaps it and is written straight into the tile of the image. Kernels that are the outer product of a
+ * column and a row vector (rectangles, boxes) are applied as two one dimensional passes.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class DensityConvolver {
+
+    private final int width;
+
+    private final int height;
+
+    private final int kernelWidth;
+
+    private final int kernelHeight;
+
+    private final int xOrigin;
+
+    private final int yOrigin;
+
+    // row major kernel values
+    private final double[] kernel;
+
+    // first and last + 1 nonzero column of each kernel row
+    private final int[] spanStart;
+
+    private final int[] spanEnd;
+
+    // kernel = column (x) row, null if the kernel is not separable
+    private double[] columnVector;
+
+    private double[] rowVector;
+
+    // padding of the binning grid: columns left of and rows above the raster
+    private final int padLeft;
+
+    private final int padTop;
+
+    private final BinStore bins;
+
+    /**
+     * @param width number of columns of the raster
+     * @param height number of rows of the raster
+     * @param kernel kernel whose origin is placed on each binned cell
+     */
+    public DensityConvolver(int width, int height, KernelImageN kernel) {
+        this(width, height, getKernelValues(kernel), kernel.getWidth(), kernel.getHeight(),
+                kernel.getXOrigin(), kernel.getYOrigin());
+    }
+
+    /**
+     * @param width number of columns of the raster
+     * @param height number of rows of the raster
+     * @param kernel row major kernel values
+     * @param kernelWidth number of columns of the kernel
+     * @param kernelHeight number of rows of the kernel
+     * @param xOrigin column of the kernel origin
+     * @param yOrigin row of the kernel origin
+     */
+    public DensityConvolver(int width, int height, double[] kernel, int kernelWidth,
+            int kernelHeight, int xOrigin, int yOrigin) {
+        this.width = width;
+        this.height = height;
+        this.kernel = kernel.clone();
+        this.kernelWidth = kernelWidth;
+        this.kernelHeight = kernelHeight;
+        this.xOrigin = xOrigin;
+        this.yOrigin = yOrigin;
+
+        this.spanStart = new int[kernelHeight];
+        this.spanEnd = new int[kernelHeight];
+        for (int row = 0; row < kernelHeight; row++) {
+            int start = 0;
+            int end = kernelWidth;
+            while (start < end && kernel[row * kernelWidth + start] == 0) {
+                start++;
+            }
+            while (end > start && kernel[row * kernelWidth + end - 1] == 0) {
+                end--;
+            }
+            spanStart[row] = start;
+            spanEnd[row] = end;
+        }
+        factorize();
+
+        // a cell at column c covers the columns c - xOrigin .. c - xOrigin + kernelWidth - 1
+        this.padLeft = kernelWidth - 1 - xOrigin;
+        this.padTop = kernelHeight - 1 - yOrigin;
+        this.bins = new BinStore(width + kernelWidth - 1, height + kernelHeight - 1);
+    }
+
+    private static double[] getKernelValues(KernelImageN kernel) {
+        final int w = kernel.getWidth();
+        final int h = kernel.getHeight();
+        double[] values = new double[w * h];
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                values[row * w + col] = kernel.getElement(col, row);
+            }
+        }
+        return values;
+    }
+
+    // kernel(row, col) = columnVector[row] * rowVector[col] for rank one kernels
+    private void factorize() {
+        int pivot = -1;
+        double max = 0;
+        for (int i = 0; i < kernel.length; i++) {
+            if (Math.abs(kernel[i]) > max) {
+                max = Math.abs(kernel[i]);
+                pivot = i;
+            }
+        }
+        if (pivot < 0) {
+            return;
+        }
+
+        final int pivotRow = pivot / kernelWidth;
+        final int pivotCol = pivot % kernelWidth;
+        final double[] column = new double[kernelHeight];
+        final double[] row = new double[kernelWidth];
+        for (int c = 0; c < kernelWidth; c++) {
+            row[c] = kernel[pivotRow * kernelWidth + c];
+        }
+        for (int r = 0; r < kernelHeight; r++) {
+            column[r] = kernel[r * kernelWidth + pivotCol] / kernel[pivot];
+        }
+
+        final double tolerance = max * 1E-9;
+        for (int r = 0; r < kernelHeight; r++) {
+            for (int c = 0; c < kernelWidth; c++) {
+                if (Math.abs(kernel[r * kernelWidth + c] - column[r] * row[c]) > tolerance) {
+                    return;
+                }
+            }
+        }
+        this.columnVector = column;
+        this.rowVector = row;
+    }
+
+    public boolean isSeparable() {
+        return columnVector != null;
+    }
+
+    /**
+     * Number of binned cells
+     */
+    public int size() {
+        return bins.size();
+    }
+
+    /**
+     * Adds the weight to the cell of the raster. Cells outside the raster whose kernel footprint does not reach the raster are ignored.
+     */
+    public void add(int column, int row, double weight) {
+        final int col = column + padLeft;
+        final int r = row + padTop;
+        if (weight == 0 || col < 0 || r < 0 || col >= bins.getColumns() || r >= bins.getRows()) {
+            return;
+        }
+        bins.add(col, r, weight);
+    }
+
+    /**
+     * Convolves the binned cells with the kernel, divides the result by the scale and writes it to the first band of the image. The image must
+     * have the size of the raster, all of its tiles are written.
+     *
+     * @param image output image
+     * @param scale divisor of the density, usually the kernel area
+     * @param parallelism number of threads, 1 = single thread, 0 or negative = all available processors
+     * @return maximum value written
+     */
+    public double convolve(final DiskMemImage image, final double scale, int parallelism) {
+        final long[] keys = bins.getOccupiedKeys();
+
+        // keys of each padded row in compressed sparse row form
+        final int rows = bins.getRows();
+        final int[] rowOffsets = new int[rows + 1];
+        for (long key : keys) {
+            rowOffsets[bins.getRow(key) + 1]++;
+        }
+        for (int row = 0; row < rows; row++) {
+            rowOffsets[row + 1] += rowOffsets[row];
+        }
+
+        final int numXTiles = image.getNumXTiles();
+        final int tileCount = numXTiles * image.getNumYTiles();
+        final double[] maxima = new double[tileCount];
+
+        ParallelRange.execute(parallelism, tileCount, 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                final int tileWidth = image.getTileWidth();
+                final int tileHeight = image.getTileHeight();
+                final double[] buffer = new double[tileWidth * tileHeight];
+                final double[] temp = isSeparable()
+                        ? new double[tileWidth * (tileHeight + kernelHeight - 1)]
+                        : null;
+
+                for (int tile = start; tile < end; tile++) {
+                    final int tileX = tile % numXTiles;
+                    final int tileY = tile / numXTiles;
+                    final Rectangle region = new Rectangle(tileX * tileWidth,
+                            tileY * tileHeight, tileWidth, tileHeight)
+                            .intersection(new Rectangle(0, 0, width, height));
+                    maxima[tile] = writeTile(image, tileX, tileY, region, keys, rowOffsets,
+                            scale, buffer, temp);
+                }
+            }
+        });
+
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : maxima) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private double writeTile(DiskMemImage image, int tileX, int tileY, Rectangle region,
+            long[] keys, int[] rowOffsets, double scale, double[] buffer, double[] temp) {
+        final int size = region.width * region.height;
+        Arrays.fill(buffer, 0, size, 0d);
+        if (temp == null) {
+            scatter(region, keys, rowOffsets, buffer);
+        } else {
+            scatterSeparable(region, keys, rowOffsets, buffer, temp);
+        }
+
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            buffer[i] = buffer[i] / scale;
+            max = Math.max(max, buffer[i]);
+        }
+
+        final int imageTileX = image.getMinTileX() + tileX;
+        final int imageTileY = image.getMinTileY() + tileY;
+        WritableRaster raster = image.getWritableTile(imageTileX, imageTileY);
+        try {
+            RasterHelper.writeSamples(raster, new Rectangle(image.getMinX() + region.x,
+                    image.getMinY() + region.y, region.width, region.height), buffer);
+        } finally {
+            image.releaseWritableTile(imageTileX, imageTileY);
+        }
+        return max;
+    }
+
+    // binned cells whose footprint overlaps the region, in padded rows [minRow, maxRow]
+    private int firstRow(Rectangle region) {
+        return Math.max(0, region.y + yOrigin - kernelHeight + 1 + padTop);
+    }
+
+    private int lastRow(Rectangle region) {
+        return Math.min(bins.getRows() - 1, region.y + region.height - 1 + yOrigin + padTop);
+    }
+
+    private int firstColumn(Rectangle region) {
+        return region.x + xOrigin - kernelWidth + 1 + padLeft;
+    }
+
+    private int lastColumn(Rectangle region) {
+        return region.x + region.width - 1 + xOrigin + padLeft;
+    }
+
+    private void scatter(Rectangle region, long[] keys, int[] rowOffsets, double[] buffer) {
+        final int x0 = region.x;
+        final int y0 = region.y;
+        final int x1 = region.x + region.width;
+        final int y1 = region.y + region.height;
+        final int minCol = firstColumn(region);
+        final int maxCol = lastColumn(region);
+
+        for (int row = firstRow(region), maxRow = lastRow(region); row <= maxRow; row++) {
+            final int end = rowOffsets[row + 1];
+            for (int k = search(keys, rowOffsets[row], end, minCol); k < end; k++) {
+                final int col = bins.getColumn(keys[k]);
+                if (col > maxCol) {
+                    break;
+                }
+                final double weight = bins.get(keys[k]);
+
+                // upper left cell of the footprint in raster space
+                final int x = col - padLeft - xOrigin;
+                final int y = row - padTop - yOrigin;
+                final int startRow = Math.max(0, y0 - y);
+                final int endRow = Math.min(kernelHeight, y1 - y);
+                for (int kr = startRow; kr < endRow; kr++) {
+                    final int startCol = Math.max(spanStart[kr], x0 - x);
+                    final int endCol = Math.min(spanEnd[kr], x1 - x);
+                    final int kernelOffset = kr * kernelWidth;
+                    int pos = (y + kr - y0) * region.width + (x + startCol - x0);
+                    for (int kc = startCol; kc < endCol; kc++, pos++) {
+                        buffer[pos] += weight * kernel[kernelOffset + kc];
+                    }
+                }
+            }
+        }
+    }
+
+    private void scatterSeparable(Rectangle region, long[] keys, int[] rowOffsets,
+            double[] buffer, double[] temp) {
+        final int x0 = region.x;
+        final int x1 = region.x + region.width;
+        final int minCol = firstColumn(region);
+        final int maxCol = lastColumn(region);
+        final int minRow = firstRow(region);
+        final int maxRow = lastRow(region);
+        if (maxRow < minRow) {
+            return;
+        }
+
+        // horizontal pass over the binned rows
+        final int tempSize = (maxRow - minRow + 1) * region.width;
+        Arrays.fill(temp, 0, tempSize, 0d);
+        for (int row = minRow; row <= maxRow; row++) {
+            final int end = rowOffsets[row + 1];
+            final int offset = (row - minRow) * region.width;
+            for (int k = search(keys, rowOffsets[row], end, minCol); k < end; k++) {
+                final int col = bins.getColumn(keys[k]);
+                if (col > maxCol) {
+                    break;
+                }
+                final double weight = bins.get(keys[k]);
+                final int x = col - padLeft - xOrigin;
+                final int startCol = Math.max(0, x0 - x);
+                final int endCol = Math.min(kernelWidth, x1 - x);
+                int pos = offset + (x + startCol - x0);
+                for (int kc = startCol; kc < endCol; kc++, pos++) {
+                    temp[pos] += weight * rowVector[kc];
+                }
+            }
+        }
+
+        // vertical pass: output row y takes padded row y + yOrigin + padTop - kr
+        for (int y = 0; y < region.height; y++) {
+            final int outOffset = y * region.width;
+            for (int kr = 0; kr < kernelHeight; kr++) {
+                final int row = region.y + y + yOrigin + padTop - kr;
+                if (row < minRow || row > maxRow || columnVector[kr] == 0) {
+                    continue;
+                }
+                final double factor = columnVector[kr];
+                final int offset = (row - minRow) * region.width;
+                for (int x = 0; x < region.width; x++) {
+                    buffer[outOffset + x] += factor * temp[offset + x];
+                }
+            }
+        }
+    }
+
+    // first index in [start, end) whose column is >= column
+    private int search(long[] keys, int start, int end, int column) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (bins.getColumn(keys[mid]) < column) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -16,36 +16,42 @@
  */
 package org.geotools.process.spatialstatistics.gridcoverage;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 import java.util.logging.Logger;
 
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.PointKdTree.Neighbors;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterRadius.SearchRadiusType;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Envelope;
-import org.locationtech.jts.index.strtree.ItemBoundable;
-import org.locationtech.jts.index.strtree.ItemDistance;
-import org.locationtech.jts.index.strtree.STRtree;
 
 /**
- * Implementation of Inverse Distance Weighted interpolation.
- * 
+ * Implementation of Inverse Distance Weighted interpolation.<br>
+ * The samples are kept in a {@link PointKdTree} and the neighbors of each location are collected in a per-thread {@link Neighbors} buffer, so
+ * {@link #getValue(double, double)} does not allocate and can be called from several threads.
+ *
  * @author Minpa Lee, MangoSystem
- * 
+ *
  * @source $URL$
  */
 public class IDWInterpolator extends AbstractInterpolator {
     protected static final Logger LOGGER = Logging.getLogger(IDWInterpolator.class);
 
-    private STRtree spatialIndex = null;
+    private PointKdTree spatialIndex = null;
+
+    // sample values in tree order
+    private double[] values;
 
     private RasterRadius radius = new RasterRadius();
 
     private double power = 2.0;
 
+    private final ThreadLocal<Neighbors> neighbors = new ThreadLocal<Neighbors>() {
+        @Override
+        protected Neighbors initialValue() {
+            return new Neighbors(Math.max(16, radius.numberOfPoints));
+        }
+    };
+
     public IDWInterpolator(Coordinate[] samples) {
         this(samples, new RasterRadius(), 2.0);
     }
@@ -60,105 +66,115 @@ public class IDWInterpolator extends AbstractInterpolator {
     }
 
     private void init() {
-        spatialIndex = new STRtree();
-        for (Coordinate sample : samples) {
-            spatialIndex.insert(new Envelope(sample), sample);
+        double[] xs = new double[number];
+        double[] ys = new double[number];
+        for (int i = 0; i < number; i++) {
+            xs[i] = samples[i].x;
+            ys[i] = samples[i].y;
+        }
+        spatialIndex = new PointKdTree(xs, ys);
+
+        values = new double[number];
+        for (int pos = 0; pos < number; pos++) {
+            values[pos] = samples[spatialIndex.getIndex(pos)].z;
         }
     }
 
     @Override
     public double getValue(Coordinate p) {
+        return getValue(p.x, p.y);
+    }
+
+    @Override
+    public double getValue(double x, double y) {
+        Neighbors found = neighbors.get();
         if (radius.getRadiusType() == SearchRadiusType.Fixed) {
-            return interpolateFixed(p);
+            interpolateFixed(x, y, found);
         } else {
-            return interpolateVariable(p);
+            interpolateVariable(x, y, found);
         }
+        return interpolate(found);
     }
 
     /**
      * Variable search radius With a variable search radius, the number of points used in calculating the value of the interpolated cell is specified,
      * which makes the radius distance vary for each interpolated cell, depending on how far it has to search around each interpolated cell to reach
      * the specified number of input points
-     * 
-     * @param p locations
-     * @return interpolated value
      */
-    private double interpolateVariable(Coordinate p) {
-        Map<Double, Coordinate> sortedMap = new TreeMap<Double, Coordinate>();
-
-        Envelope searchEnv = new Envelope(p);
-        searchEnv.expandBy(radius.distance);
-
-        for (@SuppressWarnings("unchecked")
-        Iterator<Coordinate> iter = (Iterator<Coordinate>) spatialIndex.query(searchEnv).iterator(); iter
-                .hasNext();) {
-            Coordinate sample = iter.next();
-            double distance = p.distance(sample);
-            if (radius.distance < distance) {
-                continue;
-            }
-            sortedMap.put(Double.valueOf(distance), sample);
-        }
-
-        return interpolate(sortedMap);
+    private void interpolateVariable(double x, double y, Neighbors found) {
+        spatialIndex.nearest(x, y, radius.numberOfPoints, radius.distance, found);
     }
 
     /**
      * Fixed search radius <br>
-     * When there are fewer measured points in the neighborhood than the specified minimum, <br>
-     * the search radius will increase until it can encompass the minimum number of points
-     * 
-     * @param p locations
-     * @return interpolated value
+     * Without a minimum number of points, all samples within the radius distance are used. With a minimum, the nearest minimum number of samples
+     * are used whatever their distance, as the former STRtree search did, so the radius does not limit them and samples beyond the minimum are not
+     * added even if they are within the radius.
      */
-    private double interpolateFixed(Coordinate p) {
-        Map<Double, Coordinate> sortedMap = new TreeMap<Double, Coordinate>();
+    private void interpolateFixed(double x, double y, Neighbors found) {
+        if (radius.numberOfPoints > 0) {
+            spatialIndex.nearest(x, y, radius.numberOfPoints, Double.MAX_VALUE, found);
+        } else {
+            spatialIndex.withinDistance(x, y, radius.distance, found);
+        }
+    }
 
-        Envelope searchEnv = new Envelope(p);
-        searchEnv.expandBy(radius.distance);
+    private double interpolate(Neighbors found) {
+        final int size = found.size();
+        if (size == 0) {
+            return -Float.MAX_VALUE;
+        }
 
-        if (radius.numberOfPoints > 0) {
-            Object[] knns = spatialIndex.nearestNeighbour(searchEnv, p, new ItemDistance() {
-                @Override
-                public double distance(ItemBoundable item1, ItemBoundable item2) {
-                    Coordinate s1 = (Coordinate) item1.getItem();
-                    Coordinate s2 = (Coordinate) item2.getItem();
-                    return s1.distance(s2);
+        double sumWeight = 0;
+        double weightSumDist = 0;
+        int coincident = 0;
+        double coincidentSum = 0;
+
+        if (power == 2.0) {
+            for (int i = 0; i < size; i++) {
+                final double d2 = found.getSquaredDistance(i);
+                final double value = values[found.getPosition(i)];
+                if (d2 == 0) {
+                    coincident++;
+                    coincidentSum += value;
+                    continue;
                 }
-            }, radius.numberOfPoints);
-
-            for (Object object : knns) {
-                Coordinate sample = (Coordinate) object;
-                sortedMap.put(Double.valueOf(p.distance(sample)), sample);
+                final double weight = 1.0 / d2;
+                weightSumDist += weight * value;
+                sumWeight += weight;
+            }
+        } else if (power == 1.0) {
+            for (int i = 0; i < size; i++) {
+                final double d2 = found.getSquaredDistance(i);
+                final double value = values[found.getPosition(i)];
+                if (d2 == 0) {
+                    coincident++;
+                    coincidentSum += value;
+                    continue;
+                }
+                final double weight = 1.0 / Math.sqrt(d2);
+                weightSumDist += weight * value;
+                sumWeight += weight;
             }
         } else {
-            for (@SuppressWarnings("unchecked")
-            Iterator<Coordinate> iter = (Iterator<Coordinate>) spatialIndex.query(searchEnv)
-                    .iterator(); iter.hasNext();) {
-                Coordinate sample = iter.next();
-                double distance = p.distance(sample);
-                if (radius.distance < distance) {
+            final double halfPower = -power / 2.0;
+            for (int i = 0; i < size; i++) {
+                final double d2 = found.getSquaredDistance(i);
+                final double value = values[found.getPosition(i)];
+                if (d2 == 0) {
+                    coincident++;
+                    coincidentSum += value;
                     continue;
                 }
-                sortedMap.put(Double.valueOf(distance), sample);
+                final double weight = Math.pow(d2, halfPower);
+                weightSumDist += weight * value;
+                sumWeight += weight;
             }
         }
 
-        return interpolate(sortedMap);
-    }
-
-    private double interpolate(Map<Double, Coordinate> sortedMap) {
-        double sumWeight = 0;
-        double weightSumDist = 0;
-        int process = 0;
-        for (Entry<Double, Coordinate> entry : sortedMap.entrySet()) {
-            process++;
-            final double weight = Math.pow(entry.getKey(), -power);
-            weightSumDist += weight * entry.getValue().z;
-            sumWeight += weight;
-            if (radius.numberOfPoints > 0 && process >= radius.numberOfPoints) {
-                break;
-            }
+        // the location coincides with samples: their weight is infinite
+        if (coincident > 0) {
+            return coincidentSum / coincident;
         }
 
         return sumWeight > 0 ? weightSumDist / sumWeight : -Float.MAX_VALUE;
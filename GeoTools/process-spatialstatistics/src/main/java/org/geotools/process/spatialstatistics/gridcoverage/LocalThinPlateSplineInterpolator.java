@@ -0,0 +1,305 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.gridcoverage;
+
+import java.util.logging.Logger;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.PointKdTree.Neighbors;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Local Thin Plate Spline interpolation for large numbers of samples.<br>
+ * A thin plate spline is fitted to the k nearest samples of every node of a regular grid covering the extent. A location is interpolated by
+ * blending the splines of the four surrounding nodes with bilinear weights, so the surface is continuous and the cost of a location is bounded by
+ * the neighborhood size instead of the number of samples. The local systems are solved with EJML's LU solver, falling back to the pseudo inverse
+ * when a system is singular (e.g. collinear or coincident samples).
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class LocalThinPlateSplineInterpolator extends AbstractInterpolator {
+    protected static final Logger LOGGER = Logging.getLogger(LocalThinPlateSplineInterpolator.class);
+
+    public static final int DEFAULT_NEIGHBORS = 64;
+
+    private final int neighbors;
+
+    // grid of nodes
+    private double originX;
+
+    private double originY;
+
+    private double spacing;
+
+    private int columns;
+
+    private int rows;
+
+    // samples in tree order
+    private double[] xs;
+
+    private double[] ys;
+
+    // per node: sample positions and spline coefficients (weights, then a1, a2, a3)
+    private int[][] nodeSamples;
+
+    private double[][] nodeCoefficients;
+
+    public LocalThinPlateSplineInterpolator(Coordinate[] samples, Envelope extent) {
+        this(samples, extent, DEFAULT_NEIGHBORS, 1);
+    }
+
+    /**
+     * @param samples the observed data values
+     * @param extent extent of the locations to interpolate
+     * @param neighbors number of samples of each local spline
+     * @param parallelism number of threads fitting the local splines, 1 = single thread, 0 or negative = all available processors
+     */
+    public LocalThinPlateSplineInterpolator(Coordinate[] samples, Envelope extent, int neighbors,
+            int parallelism) {
+        this.samples = samples;
+        this.number = samples.length;
+        this.neighbors = Math.max(3, Math.min(neighbors, number));
+
+        init(extent, parallelism);
+    }
+
+    public int getNeighbors() {
+        return neighbors;
+    }
+
+    private void init(Envelope extent, int parallelism) {
+        Envelope bounds = new Envelope(extent);
+        for (Coordinate sample : samples) {
+            bounds.expandToInclude(sample);
+        }
+
+        // nodes are spaced so that the support of a node (2 x 2 cells) holds about k samples
+        double area = Math.max(bounds.getWidth() * bounds.getHeight(), Double.MIN_NORMAL);
+        spacing = 0.5 * Math.sqrt(neighbors * area / Math.max(1, number));
+        if (spacing <= 0 || Double.isNaN(spacing) || Double.isInfinite(spacing)) {
+            spacing = Math.max(bounds.getWidth(), bounds.getHeight());
+        }
+        if (spacing <= 0) {
+            spacing = 1.0;
+        }
+
+        originX = bounds.getMinX();
+        originY = bounds.getMinY();
+        columns = (int) Math.ceil(bounds.getWidth() / spacing) + 1;
+        rows = (int) Math.ceil(bounds.getHeight() / spacing) + 1;
+
+        double[] x = new double[number];
+        double[] y = new double[number];
+        for (int i = 0; i < number; i++) {
+            x[i] = samples[i].x;
+            y[i] = samples[i].y;
+        }
+        final PointKdTree tree = new PointKdTree(x, y);
+
+        xs = new double[number];
+        ys = new double[number];
+        final double[] zs = new double[number];
+        for (int pos = 0; pos < number; pos++) {
+            xs[pos] = tree.getX(pos);
+            ys[pos] = tree.getY(pos);
+            zs[pos] = samples[tree.getIndex(pos)].z;
+        }
+
+        final int nodeCount = columns * rows;
+        nodeSamples = new int[nodeCount][];
+        nodeCoefficients = new double[nodeCount][];
+
+        ParallelRange.execute(parallelism, nodeCount, 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                final Neighbors found = new Neighbors(neighbors);
+                final int size = neighbors + 3;
+                final DMatrixRMaj a = new DMatrixRMaj(size, size);
+                final DMatrixRMaj b = new DMatrixRMaj(size, 1);
+                final DMatrixRMaj solution = new DMatrixRMaj(size, 1);
+
+                for (int node = start; node < end; node++) {
+                    final double cx = originX + (node % columns) * spacing;
+                    final double cy = originY + (node / columns) * spacing;
+                    final int count = tree.nearest(cx, cy, neighbors, Double.MAX_VALUE, found);
+
+                    int[] positions = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        positions[i] = found.getPosition(i);
+                    }
+                    nodeSamples[node] = positions;
+                    nodeCoefficients[node] = fit(positions, zs, cx, cy, a, b, solution);
+                }
+            }
+        });
+    }
+
+    /**
+     * Solves the spline system of the samples in coordinates relative to the node and scaled by the grid spacing.
+     */
+    private double[] fit(int[] positions, double[] zs, double cx, double cy, DMatrixRMaj a,
+            DMatrixRMaj b, DMatrixRMaj solution) {
+        final int n = positions.length;
+        final int size = n + 3;
+        a.reshape(size, size);
+        b.reshape(size, 1);
+        solution.reshape(size, 1);
+
+        fillSystem(positions, zs, cx, cy, a, b);
+
+        LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.lu(size);
+        boolean solved = solver.setA(a) && solver.quality() > 1e-12;
+        if (!solved) {
+            fillSystem(positions, zs, cx, cy, a, b);
+            solver = LinearSolverFactory_DDRM.pseudoInverse(true);
+            solved = solver.setA(a);
+        }
+
+        double[] coefficients = new double[size];
+        if (solved) {
+            solver.solve(b, solution);
+            for (int i = 0; i < size; i++) {
+                coefficients[i] = solution.get(i, 0);
+            }
+        }
+
+        // a failed solve leaves a flat surface at the mean
+        boolean valid = solved;
+        for (int i = 0; i < size && valid; i++) {
+            valid = !Double.isNaN(coefficients[i]) && !Double.isInfinite(coefficients[i]);
+        }
+        if (!valid) {
+            double sum = 0;
+            for (int pos : positions) {
+                sum += zs[pos];
+            }
+            coefficients = new double[size];
+            coefficients[n] = n > 0 ? sum / n : 0;
+        }
+        return coefficients;
+    }
+
+    private void fillSystem(int[] positions, double[] zs, double cx, double cy, DMatrixRMaj a,
+            DMatrixRMaj b) {
+        final int n = positions.length;
+        a.zero();
+        b.zero();
+
+        for (int i = 0; i < n; i++) {
+            final double xi = (xs[positions[i]] - cx) / spacing;
+            final double yi = (ys[positions[i]] - cy) / spacing;
+            for (int j = i + 1; j < n; j++) {
+                final double dx = xi - (xs[positions[j]] - cx) / spacing;
+                final double dy = yi - (ys[positions[j]] - cy) / spacing;
+                final double u = functionU(dx * dx + dy * dy);
+                a.set(i, j, u);
+                a.set(j, i, u);
+            }
+
+            a.set(i, n + 0, 1);
+            a.set(i, n + 1, xi);
+            a.set(i, n + 2, yi);
+
+            a.set(n + 0, i, 1);
+            a.set(n + 1, i, xi);
+            a.set(n + 2, i, yi);
+
+            b.set(i, 0, zs[positions[i]]);
+        }
+    }
+
+    /**
+     * U function of the squared distance: r<sup>2</sup> log(r) or 0 if r = 0
+     */
+    private static double functionU(double squaredDistance) {
+        if (squaredDistance == 0) {
+            return 0;
+        }
+        return 0.5 * squaredDistance * Math.log(squaredDistance);
+    }
+
+    @Override
+    public double getValue(Coordinate p) {
+        return getValue(p.x, p.y);
+    }
+
+    @Override
+    public double getValue(double x, double y) {
+        if (number == 0) {
+            return -Float.MAX_VALUE;
+        }
+
+        final double fx = (x - originX) / spacing;
+        final double fy = (y - originY) / spacing;
+        final int col = Math.max(0, Math.min(columns - 2, (int) Math.floor(fx)));
+        final int row = Math.max(0, Math.min(rows - 2, (int) Math.floor(fy)));
+        final double tx = Math.max(0, Math.min(1, fx - col));
+        final double ty = Math.max(0, Math.min(1, fy - row));
+
+        if (columns == 1 || rows == 1) {
+            // degenerate grid: a single row or column of nodes
+            int c = columns == 1 ? 0 : (int) Math.round(Math.max(0, Math.min(columns - 1, fx)));
+            int r = rows == 1 ? 0 : (int) Math.round(Math.max(0, Math.min(rows - 1, fy)));
+            return evaluate(r * columns + c, x, y);
+        }
+
+        double value = 0;
+        final int node = row * columns + col;
+        if (tx < 1 && ty < 1) {
+            value += (1 - tx) * (1 - ty) * evaluate(node, x, y);
+        }
+        if (tx > 0 && ty < 1) {
+            value += tx * (1 - ty) * evaluate(node + 1, x, y);
+        }
+        if (tx < 1 && ty > 0) {
+            value += (1 - tx) * ty * evaluate(node + columns, x, y);
+        }
+        if (tx > 0 && ty > 0) {
+            value += tx * ty * evaluate(node + columns + 1, x, y);
+        }
+        return value;
+    }
+
+    private double evaluate(int node, double x, double y) {
+        final int[] positions = nodeSamples[node];
+        final double[] coefficients = nodeCoefficients[node];
+        final int n = positions.length;
+
+        final double cx = originX + (node % columns) * spacing;
+        final double cy = originY + (node / columns) * spacing;
+        final double px = (x - cx) / spacing;
+        final double py = (y - cy) / spacing;
+
+        double sum = coefficients[n] + coefficients[n + 1] * px + coefficients[n + 2] * py;
+        for (int i = 0; i < n; i++) {
+            final double dx = px - (xs[positions[i]] - cx) / spacing;
+            final double dy = py - (ys[positions[i]] - cy) / spacing;
+            sum += coefficients[i] * functionU(dx * dx + dy * dy);
+        }
+        return sum;
+    }
+}
@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 
@@ -50,34 +46,17 @@ public class RasterAspectOperation extends AbstractSurfaceOperation {
         this.initSurface(inputGc);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitAspect(writer, pos);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, 1.0, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return aspect(mx);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("Aspect", outputImage);
     }
 
-    private void visitAspect(WritableRectIter writer, GridCoordinates2D pos) {
+    private double aspect(double[][] mx) {
         // http://webhelp.esri.com/arcgisdesktop/9.3/index.cfm?TopicName=How%20Aspect%20works
         // Burrough, P. A. and McDonell, R.A., 1998. Principles of Geographical Information Systems
         // (Oxford University Press, New York), p. 190.
@@ -97,11 +76,6 @@ public class RasterAspectOperation extends AbstractSurfaceOperation {
         // | 3 4 5 |>| d e f |
         // | 6 7 8 | | g h i |
         // +-------+ +-------+
-        double[][] mx = getSubMatrix(pos, 3, 3);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
 
         double dZdX = ((mx[2][0] + 2 * mx[2][1] + mx[2][2]) - (mx[0][0] + 2 * mx[0][1] + mx[0][2]))
                 / (_8DX);
@@ -111,9 +85,7 @@ public class RasterAspectOperation extends AbstractSurfaceOperation {
         double rise_run = (dZdX * dZdX) + (dZdY * dZdY);
         double slope = Math.toDegrees(Math.atan(Math.sqrt(rise_run)));
         if (Double.isNaN(slope) || Double.isInfinite(slope) || slope == 0) {
-            writer.setSample(0, -1);
-            updateStatistics(-1);
-            return;
+            return -1;
         }
 
         // aspect
@@ -135,7 +107,6 @@ public class RasterAspectOperation extends AbstractSurfaceOperation {
             aspect = -1.0;
         }
 
-        writer.setSample(0, aspect);
-        updateStatistics(aspect);
+        return aspect;
     }
 }
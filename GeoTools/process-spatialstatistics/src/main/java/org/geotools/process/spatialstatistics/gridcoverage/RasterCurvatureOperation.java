@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 
@@ -68,45 +64,22 @@ public class RasterCurvatureOperation extends AbstractSurfaceOperation {
         y2L = 2.0 * pixelSizeY;
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitCurvature(writer, pos, zFactor);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, zFactor, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return curvature(mx, zFactor);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("Curvature", outputImage);
     }
 
-    private void visitCurvature(WritableRectIter writer, GridCoordinates2D pos, double zFactor) {
+    private double curvature(double[][] mx, double zFactor) {
         // http://resources.arcgis.com/en/help/main/10.1/#/How_Curvature_works/009z000000vs000000/
         // Zeverbergen, L. W., and C. R. Thorne. 1987. Quantitative Analysis of Land Surface
         // Topography.
         // Earth Surface Processes and Landforms 12: 47–56.
 
-        double[][] mx = getSubMatrix(pos, 3, 3, zFactor);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
-
         // Z = Ax²y² + Bx²y + Cxy² + Dx² + Ey² + Fxy + Gx + Hy + I
 
         // A = [(Z1 + Z3 + Z7 + Z9) / 4 - (Z2 + Z4 + Z6 + Z8) / 2 + Z5] / L4
@@ -161,7 +134,6 @@ public class RasterCurvatureOperation extends AbstractSurfaceOperation {
 
         curvature = curvature * (100.0 * zFactor);
 
-        writer.setSample(0, curvature);
-        updateStatistics(curvature);
+        return curvature;
     }
 }
@@ -17,12 +17,8 @@
 package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
-import java.awt.image.ColorModel;
-import java.awt.image.SampleModel;
-import java.awt.image.WritableRaster;
 
 import org.eclipse.imagen.PlanarImage;
-import org.eclipse.imagen.RasterFactory;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.api.filter.Filter;
@@ -54,8 +50,21 @@ public class RasterDensityOperation extends RasterProcessingOperation {
 
     protected double scaleArea = 0.0;
 
+    protected int parallelism = 1;
+
     protected FilterFactory ff = CommonFactoryFinder.getFilterFactory(GeoTools.getDefaultHints());
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to convolve the output tiles. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     protected Filter getBBoxFilter(SimpleFeatureType schema, ReferencedEnvelope extent,
             double expandDistance) {
         String the_geom = schema.getGeometryDescriptor().getLocalName();
@@ -68,44 +77,6 @@ public class RasterDensityOperation extends RasterProcessingOperation {
         return ff.bbox(ff.property(the_geom), bbox);
     }
 
-    protected PlanarImage scaleUnit(PlanarImage image) {
-        if (scaleArea == 0.0) {
-            return image;
-        }
-
-        // Copy data and divide each sample by the scale factor
-        WritableRaster raster = image.getData().createCompatibleWritableRaster();
-        image.copyData(raster);
-
-        final int width = raster.getWidth();
-        final int height = raster.getHeight();
-        final int numBands = raster.getNumBands();
-
-        double[] pixel = new double[numBands];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                raster.getPixel(x, y, pixel);
-                for (int b = 0; b < numBands; b++) {
-                    pixel[b] = pixel[b] / scaleArea;
-                }
-                raster.setPixel(x, y, pixel);
-            }
-        }
-
-        // Rebuild a DiskMemImage with the divided data
-        ColorModel cm = image.getColorModel();
-        if (cm == null) {
-            cm = PlanarImage.createColorModel(image.getSampleModel());
-        }
-
-        SampleModel sm = RasterFactory.createBandedSampleModel(raster.getDataBuffer().getDataType(),
-                image.getTileWidth(), image.getTileHeight(), numBands);
-
-        DiskMemImage out = new DiskMemImage(0, 0, width, height, 0, 0, sm, cm);
-        out.setData(raster);
-        return out;
-    }
-
     protected PlanarImage pointToRaster(SimpleFeatureCollection pointFeatures,
             String populationField) {
         // calculate extent & cellsize
@@ -16,44 +16,66 @@
  */
 package org.geotools.process.spatialstatistics.gridcoverage;
 
-import java.util.Arrays;
+import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.imagen.PlanarImage;
-import org.eclipse.imagen.iterator.RectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
 import org.geotools.api.filter.Filter;
 import org.geotools.api.filter.FilterFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.process.ProcessException;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.factory.GeoTools;
 import org.geotools.util.logging.Logging;
 
 /**
- * Calculates, for each cell, the Euclidean distance to the closest source.
- * 
+ * Calculates, for each cell, the Euclidean distance to the closest source.<br>
+ * The exact distance transform is computed in column strips and then in row strips. The column distances between the two passes are kept
+ * in a temporary file, so the working memory is one strip per thread; the output image is created like the other raster operations.
+ *
  * @author Minpa Lee, MangoSystem
- * @reference https://github.com/DotSpatial/DotSpatial/blob/master/Source/DotSpatial.Tools/RasterDistance.cs
- * 
+ * @reference A. Meijster, J.B.T.M. Roerdink, W.H. Hesselink, A General Algorithm for Computing Distance Transforms in Linear Time, 2000.
+ *
  * @source $URL$
  */
 public class RasterEuclideanDistanceOperation extends RasterProcessingOperation {
     protected static final Logger LOGGER = Logging
             .getLogger(RasterEuclideanDistanceOperation.class);
 
-    static final int INT_MAX = Integer.MAX_VALUE;
-
     static final int INT_ZERO = 0;
 
     private double maximumDistance = Double.MAX_VALUE;
 
     private FilterFactory ff = CommonFactoryFinder.getFilterFactory(GeoTools.getDefaultHints());
 
-    private DiskMemImage outputImage;
+    private int parallelism = 1;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used by the column and row passes. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
 
     public GridCoverage2D execute(SimpleFeatureCollection inputFeatures, double maximumDistance) {
         final Number gridVal = Short.valueOf((short) 1);
@@ -93,270 +115,303 @@ public class RasterEuclideanDistanceOperation extends RasterProcessingOperation
         }
 
         // create raster
-        outputImage = createDiskMemImage(valueCoverage, RasterPixelType.FLOAT);
+        final DiskMemImage outputImage = createDiskMemImage(valueCoverage, RasterPixelType.FLOAT);
 
-        // declare two jagged arrays for storing the (Rx, Ry) vectors.
-        // rX is distance from current cell to nearest target cell measured in the x-direction
-        // rY is distance from current cell to nearest target cell measured in the y-direction
-        // the actual distance can be calculated as sqrt(rX^2 + rY^2).
-        // in the resulting distance raster we store the squared distance as well as the rX, rY
-        // relative coordinates to improve computation speed
+        // exact euclidean distance transform as two separable passes(Meijster et al. 2000)
+        // pass one: column strips, the distance to the nearest source in the same column
+        // pass two: row strips, the lower envelope of the parabolas of the column distances
+        // the column distances of pass one are kept in a temporary file between the passes
 
-        PlanarImage inputImage = (PlanarImage) valueCoverage.getRenderedImage();
+        final PlanarImage inputImage = (PlanarImage) valueCoverage.getRenderedImage();
         final double inputNoData = RasterHelper.getNoDataValue(valueCoverage);
 
-        // ====================================================================
-        // initialize the arrays
-        // ====================================================================
-        final int numColumns = inputImage.getWidth() + 2;
-        final int numRows = inputImage.getHeight() + 2;
+        final int width = outputImage.getWidth();
+        final int height = outputImage.getHeight();
+        final int tileWidth = Math.min(outputImage.getTileWidth(), width);
+        final int tileHeight = Math.min(outputImage.getTileHeight(), height);
+
+        File file = null;
+        RandomAccessFile raf = null;
+        try {
+            file = File.createTempFile("EuclideanDistance", ".tmp");
+            raf = new RandomAccessFile(file, "rw");
+            final FileChannel channel = raf.getChannel();
+
+            // ====================================================================
+            // pass one - column strips
+            // ====================================================================
+            // buffers are allocated once per chunk of strips and reused for every strip
+            final int numXTiles = outputImage.getNumXTiles();
+            ParallelRange.execute(parallelism, numXTiles, 1, new RangeTask() {
+                @Override
+                public void execute(int start, int end) {
+                    ColumnBuffer buffer = new ColumnBuffer(tileWidth, tileHeight, height);
+                    for (int tileX = start; tileX < end; tileX++) {
+                        transformColumns(inputImage, inputNoData, outputImage, tileX, channel,
+                                buffer);
+                    }
+                }
+            });
+
+            // ====================================================================
+            // pass two - row strips
+            // ====================================================================
+            final int numYTiles = outputImage.getNumYTiles();
+            final CellStatistics[] statistics = new CellStatistics[numYTiles];
+            ParallelRange.execute(parallelism, numYTiles, 1, new RangeTask() {
+                @Override
+                public void execute(int start, int end) {
+                    RowBuffer buffer = new RowBuffer(tileWidth, tileHeight, width);
+                    for (int tileY = start; tileY < end; tileY++) {
+                        statistics[tileY] = transformRows(outputImage, tileY, channel, buffer);
+                    }
+                }
+            });
 
-        int[][] aRx = new int[numRows][];
-        int[][] aRy = new int[numRows][];
-        int[][] aSqDist = new int[numRows][];
+            for (CellStatistics stats : statistics) {
+                mergeStatistics(stats);
+            }
+        } catch (IOException e) {
+            throw new ProcessException(e);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINER, e.getMessage(), e);
+                }
+            }
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
 
-        initializeArrays(inputImage, inputNoData, aRx, aRy, aSqDist, numColumns);
+        return createGridCoverage("EuclideanDistance", outputImage);
+    }
 
-        // ====================================================================
-        // raster distance calculation pass one - top to bottom, left to right
-        // ====================================================================
-        int[] aNcels = new int[4]; // the values of four neighbouring cells (W, NW, N, NE)
-        int[] aDiff = new int[4]; // the | y coordinate distances to nearest target cell
+    static final class ColumnBuffer {
+        // the row distances of a strip, row by row
+        final int[] strip;
 
-        for (int row = 1; row < numRows; row++) {
-            for (int col = 1; col < numColumns - 1; col++) {
-                int val = aSqDist[row][col];
+        final double[] samples;
 
-                // Continue processing only if the current cell is not a target
-                if (val == INT_ZERO) {
-                    continue;
-                }
+        final ByteBuffer bytes;
 
-                // read the values of the cell's neighbours
-                aNcels[0] = aSqDist[row][col - 1]; // W
-                aNcels[1] = aSqDist[row - 1][col - 1]; // NW
-                aNcels[2] = aSqDist[row - 1][col]; // N
-                aNcels[3] = aSqDist[row - 1][col + 1]; // NE
+        ColumnBuffer(int tileWidth, int tileHeight, int height) {
+            strip = new int[tileWidth * height];
+            samples = new double[tileWidth * tileHeight];
+            bytes = ByteBuffer.allocateDirect(4 * tileWidth * tileHeight)
+                    .order(ByteOrder.nativeOrder());
+        }
+    }
 
-                // calculate the squared euclidean distances to each neighbouring cell and to the
-                // nearest target cell
-                if (aNcels[0] < INT_MAX) {
-                    aDiff[0] = aNcels[0] + 2 * aRx[row][col - 1] + 1;
-                } else {
-                    aDiff[0] = INT_MAX;
-                }
+    static final class RowBuffer {
+        final int[] columns;
 
-                if (aNcels[1] < INT_MAX) {
-                    aDiff[1] = aNcels[1] + 2 * (aRx[row - 1][col - 1] + aRy[row - 1][col - 1] + 1);
-                } else {
-                    aDiff[1] = INT_MAX;
-                }
+        final double[] f;
 
-                if (aNcels[2] < INT_MAX) {
-                    aDiff[2] = aNcels[2] + 2 * aRy[row - 1][col] + 1;
-                } else {
-                    aDiff[2] = INT_MAX;
-                }
+        final int[] sites;
 
-                if (aNcels[3] < INT_MAX) {
-                    aDiff[3] = aNcels[3] + 2 * (aRx[row - 1][col + 1] + aRy[row - 1][col + 1] + 1);
-                } else {
-                    aDiff[3] = INT_MAX;
-                }
+        final double[] bounds;
 
-                // find neighbouring cell with minimum distance difference
-                int minDiff = aDiff[0];
-                int minDiffCell = 0;
-                for (int i = 1; i < 4; i++) {
-                    if (aDiff[i] < minDiff) {
-                        minDiff = aDiff[i];
-                        minDiffCell = i;
-                    }
-                }
+        final double[] distances;
 
-                // if a neighbouring cell with known distance was found:
-                if (minDiff < INT_MAX) {
-                    // assign the minimum euclidean distance
-                    aSqDist[row][col] = minDiff;
+        final double[] tile;
 
-                    // update the (rX, rY) cell-to-nearest-target vector
-                    switch (minDiffCell) {
-                    case 0: // W
-                        aRx[row][col] = aRx[row][col - 1] + 1;
-                        aRy[row][col] = aRy[row][col - 1];
-                        break;
-                    case 1: // NW
-                        aRx[row][col] = aRx[row - 1][col - 1] + 1;
-                        aRy[row][col] = aRy[row - 1][col - 1] + 1;
-                        break;
-                    case 2: // N
-                        aRx[row][col] = aRx[row - 1][col];
-                        aRy[row][col] = aRy[row - 1][col] + 1;
-                        break;
-                    case 3: // NE
-                        aRx[row][col] = aRx[row - 1][col + 1] + 1;
-                        aRy[row][col] = aRy[row - 1][col + 1] + 1;
-                        break;
-                    }
-                }
-                // end of update (rX, rY) cell-to-nearest-target vector
-            }
-            // end or current row processing
+        final ByteBuffer bytes;
+
+        RowBuffer(int tileWidth, int tileHeight, int width) {
+            columns = new int[width * tileHeight];
+            f = new double[width];
+            sites = new int[width];
+            bounds = new double[width + 1];
+            distances = new double[width * tileHeight];
+            tile = new double[tileWidth * tileHeight];
+            bytes = ByteBuffer.allocateDirect(4 * tileWidth * tileHeight)
+                    .order(ByteOrder.nativeOrder());
         }
-        // ====================================================================
-        // end of first pass for loop
-        // ====================================================================
-
-        // ====================================================================
-        // raster distance calculation PASS TWO - bottom to top, right to left
-        // ====================================================================
-        for (int row = numRows - 2; row > 0; row--) {
-            for (int col = numColumns - 2; col > 0; col--) {
-                int val = aSqDist[row][col];
-
-                // Continue processing only if the current cell is not a target
-                if (val == INT_ZERO) {
-                    continue;
-                }
+    }
 
-                // read the values of the cell's neighbours
-                aNcels[0] = aSqDist[row][col + 1]; // E
-                aNcels[1] = aSqDist[row + 1][col + 1]; // SE
-                aNcels[2] = aSqDist[row + 1][col]; // S
-                aNcels[3] = aSqDist[row + 1][col - 1]; // SW
+    private void transformColumns(PlanarImage inputImage, double inputNoData,
+            DiskMemImage outputImage, int tileX, FileChannel channel, ColumnBuffer buffer) {
+        final int width = outputImage.getWidth();
+        final int height = outputImage.getHeight();
+        final int x0 = tileX * outputImage.getTileWidth();
+        final int stripWidth = Math.min(outputImage.getTileWidth(), width - x0);
+        final int infinity = width + height;
+        final int[] strip = buffer.strip;
+
+        // sources of the strip
+        final int blockHeight = Math.min(outputImage.getTileHeight(), height);
+        final double[] samples = buffer.samples;
+        for (int y0 = 0; y0 < height; y0 += blockHeight) {
+            final int rows = Math.min(blockHeight, height - y0);
+            Rectangle rect = new Rectangle(inputImage.getMinX() + x0, inputImage.getMinY() + y0,
+                    stripWidth, rows);
+            inputImage.getData(rect).getSamples(rect.x, rect.y, rect.width, rect.height, 0,
+                    samples);
+            for (int i = 0, size = stripWidth * rows; i < size; i++) {
+                final double val = samples[i];
+                final boolean source = !Double.isNaN(val)
+                        && !SSUtils.compareDouble(val, inputNoData);
+                strip[y0 * stripWidth + i] = source ? INT_ZERO : infinity;
+            }
+        }
 
-                // calculate the squared euclidean distances to each neighbouring cell and to the
-                // nearest target cell
-                if (aNcels[0] < INT_MAX) {
-                    aDiff[0] = aNcels[0] + 2 * aRx[row][col + 1] + 1;
-                } else {
-                    aDiff[0] = INT_MAX;
+        // number of rows to the nearest source of the column: top down, then bottom up
+        for (int col = 0; col < stripWidth; col++) {
+            for (int row = 1; row < height; row++) {
+                final int pos = row * stripWidth + col;
+                if (strip[pos] != INT_ZERO && strip[pos - stripWidth] < infinity) {
+                    strip[pos] = strip[pos - stripWidth] + 1;
                 }
-
-                if (aNcels[1] < INT_MAX) {
-                    aDiff[1] = aNcels[1] + 2 * (aRx[row + 1][col + 1] + aRy[row + 1][col + 1] + 1);
-                } else {
-                    aDiff[1] = INT_MAX;
+            }
+            for (int row = height - 2; row >= 0; row--) {
+                final int pos = row * stripWidth + col;
+                if (strip[pos + stripWidth] < strip[pos]) {
+                    strip[pos] = strip[pos + stripWidth] + 1;
                 }
+            }
+        }
 
-                if (aNcels[2] < INT_MAX) {
-                    aDiff[2] = aNcels[2] + 2 * aRy[row + 1][col] + 1;
-                } else {
-                    aDiff[2] = INT_MAX;
-                }
+        // spill the strip to the file, it starts at x0 * height and is stripWidth wide
+        final long offset = (long) x0 * height;
+        for (int y0 = 0; y0 < height; y0 += blockHeight) {
+            final int count = stripWidth * Math.min(blockHeight, height - y0);
+            buffer.bytes.clear();
+            buffer.bytes.asIntBuffer().put(strip, y0 * stripWidth, count);
+            writeInts(channel, offset + (long) y0 * stripWidth, count, buffer.bytes);
+        }
+    }
 
-                if (aNcels[3] < INT_MAX) {
-                    aDiff[3] = aNcels[3] + 2 * (aRx[row + 1][col - 1] + aRy[row + 1][col - 1] + 1);
-                } else {
-                    aDiff[3] = INT_MAX;
-                }
+    private CellStatistics transformRows(DiskMemImage outputImage, int tileY,
+            FileChannel channel, RowBuffer buffer) {
+        final CellStatistics statistics = new CellStatistics(this.noData);
+
+        final int width = outputImage.getWidth();
+        final int height = outputImage.getHeight();
+        final int infinity = width + height;
+        final int tileWidth = outputImage.getTileWidth();
+        final int y0 = tileY * outputImage.getTileHeight();
+        final int rows = Math.min(outputImage.getTileHeight(), height - y0);
+        final int numXTiles = outputImage.getNumXTiles();
+
+        // the rows of every column strip
+        final int[] columns = buffer.columns;
+        for (int tileX = 0; tileX < numXTiles; tileX++) {
+            final int x0 = tileX * tileWidth;
+            final int stripWidth = Math.min(tileWidth, width - x0);
+            IntBuffer ints = readInts(channel, (long) x0 * height + (long) y0 * stripWidth,
+                    stripWidth * rows, buffer.bytes);
+            for (int row = 0; row < rows; row++) {
+                ints.get(columns, row * width + x0, stripWidth);
+            }
+        }
 
-                // find neighbouring cell with minimum distance difference
-                int minDiff = aDiff[0];
-                int minDiffCell = 0;
-                for (int i = 1; i < 4; i++) {
-                    if (aDiff[i] < minDiff) {
-                        minDiff = aDiff[i];
-                        minDiffCell = i;
-                    }
+        // squared column distances of the sites and the lower envelope of their parabolas
+        final double sx2 = pixelSizeX * pixelSizeX;
+        final double sy2 = pixelSizeY * pixelSizeY;
+        final double[] f = buffer.f;
+        final int[] sites = buffer.sites;
+        final double[] bounds = buffer.bounds;
+        final double[] distances = buffer.distances;
+
+        for (int row = 0; row < rows; row++) {
+            final int offset = row * width;
+
+            int k = -1;
+            for (int q = 0; q < width; q++) {
+                final int g = columns[offset + q];
+                if (g >= infinity) {
+                    continue;
                 }
+                f[q] = sy2 * g * g;
 
-                // if a neighbouring cell with known distance smaller than current known distance
-                // was found:
-                if (minDiff < val) {
-                    // assign the minimum euclidean distance
-                    aSqDist[row][col] = minDiff;
-
-                    // update the (rX, rY) cell-to-nearest-target vector
-                    switch (minDiffCell) {
-                    case 0: // E
-                        aRx[row][col] = aRx[row][col + 1] + 1;
-                        aRy[row][col] = aRy[row][col + 1];
-                        break;
-                    case 1: // SE
-                        aRx[row][col] = aRx[row + 1][col + 1] + 1;
-                        aRy[row][col] = aRy[row + 1][col + 1] + 1;
-                        break;
-                    case 2: // S
-                        aRx[row][col] = aRx[row + 1][col];
-                        aRy[row][col] = aRy[row + 1][col] + 1;
-                        break;
-                    case 3: // SW
-                        aRx[row][col] = aRx[row + 1][col - 1] + 1;
-                        aRy[row][col] = aRy[row + 1][col - 1] + 1;
+                double s = Double.NEGATIVE_INFINITY;
+                while (k >= 0) {
+                    final int v = sites[k];
+                    s = ((f[q] + sx2 * q * q) - (f[v] + sx2 * v * v)) / (2.0 * sx2 * (q - v));
+                    if (s > bounds[k]) {
                         break;
                     }
+                    k--;
                 }
-                // end of update (rX, rY) cell-to-nearest-target vector
+                k++;
+                sites[k] = q;
+                bounds[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+                bounds[k + 1] = Double.POSITIVE_INFINITY;
             }
 
-            // write output distance
-            writeDistance(row - 1, aSqDist[row]);
+            for (int x = 0, j = 0; x < width; x++) {
+                if (k < 0) {
+                    distances[offset + x] = noData;
+                    continue;
+                }
+                while (bounds[j + 1] < x) {
+                    j++;
+                }
+                final int v = sites[j];
+                final double distance = Math.sqrt(sx2 * (x - v) * (x - v) + f[v]);
+                if (maximumDistance < distance) {
+                    distances[offset + x] = noData;
+                } else {
+                    distances[offset + x] = distance;
+                    statistics.update(distance);
+                }
+            }
         }
-        // *******************************************************************
-        // end of second pass proximity calculation loop
-        // *******************************************************************
 
-        return createGridCoverage("EuclideanDistance", outputImage);
-    }
+        // write the tiles of the strip
+        final double[] tile = buffer.tile;
+        for (int tileX = 0; tileX < numXTiles; tileX++) {
+            final int x0 = tileX * tileWidth;
+            final int cols = Math.min(tileWidth, width - x0);
+            for (int row = 0; row < rows; row++) {
+                System.arraycopy(distances, row * width + x0, tile, row * cols, cols);
+            }
 
-    private void writeDistance(int row, int[] colValues) {
-        final int length = colValues.length;
-        for (int col = 0; col < length - 1; col++) {
-            int val = colValues[col + 1];
+            final int imageTileX = outputImage.getMinTileX() + tileX;
+            final int imageTileY = outputImage.getMinTileY() + tileY;
+            WritableRaster raster = outputImage.getWritableTile(imageTileX, imageTileY);
+            try {
+                RasterHelper.writeSamples(raster, new Rectangle(outputImage.getMinX() + x0,
+                        outputImage.getMinY() + y0, cols, rows), tile);
+            } finally {
+                outputImage.releaseWritableTile(imageTileX, imageTileY);
+            }
+        }
 
-            if (val == INT_MAX) {
-                outputImage.setSample(col, row, 0, noData);
-            } else {
-                double distance = Math.sqrt(val) * pixelSizeX;
-                if (maximumDistance < distance) {
-                    outputImage.setSample(col, row, 0, noData);
-                } else {
-                    outputImage.setSample(col, row, 0, distance);
-                    updateStatistics(distance);
-                }
+        return statistics;
+    }
+
+    private static void writeInts(FileChannel channel, long index, int count, ByteBuffer bytes) {
+        bytes.position(0).limit(4 * count);
+        long position = 4L * index;
+        try {
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
             }
+        } catch (IOException e) {
+            throw new ProcessException(e);
         }
     }
 
-    private void initializeArrays(PlanarImage inputImage, double inputNoData, final int[][] aRx,
-            final int[][] aRy, final int[][] aSqDist, int numColumns) {
-        final RectIter readIter = RectIterFactory.create(inputImage, inputImage.getBounds());
-
-        // first row
-        int dy = 0;
-        aRx[dy] = new int[numColumns];
-        aRy[dy] = new int[numColumns];
-        aSqDist[dy] = new int[numColumns];
-        Arrays.fill(aSqDist[dy], INT_MAX);
-
-        // valid cell
-        dy++;
-        readIter.startLines();
-        while (!readIter.finishedLines()) {
-            aRx[dy] = new int[numColumns];
-            aRy[dy] = new int[numColumns];
-            aSqDist[dy] = new int[numColumns];
-            Arrays.fill(aSqDist[dy], INT_MAX);
-
-            int dx = 1;
-            readIter.startPixels();
-            while (!readIter.finishedPixels()) {
-                final int val = readIter.getSample(0);
-                if (!SSUtils.compareDouble(val, inputNoData)) {
-                    aSqDist[dy][dx] = INT_ZERO;
+    private static IntBuffer readInts(FileChannel channel, long index, int count,
+            ByteBuffer bytes) {
+        bytes.position(0).limit(4 * count);
+        long position = 4L * index;
+        try {
+            while (bytes.hasRemaining()) {
+                int read = channel.read(bytes, position);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of the column distances");
                 }
-                readIter.nextPixel();
-                dx++;
+                position += read;
             }
-            readIter.nextLine();
-            dy++;
+        } catch (IOException e) {
+            throw new ProcessException(e);
         }
-
-        // last row
-        aRx[dy] = new int[numColumns];
-        aRy[dy] = new int[numColumns];
-        aSqDist[dy] = new int[numColumns];
-        Arrays.fill(aSqDist[dy], INT_MAX);
+        bytes.flip();
+        return bytes.asIntBuffer();
     }
 }
@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
@@ -46,34 +42,20 @@ public class RasterFlowDirectionOperation extends AbstractSurfaceOperation {
         this.initSurface(inputCoverage);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputCoverage, RasterPixelType.INTEGER);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitAspect(writer, pos);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, 1.0, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return flowDirection(mx);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("FlowDirection", outputImage);
     }
 
-    private void visitAspect(WritableRectIter writer, GridCoordinates2D pos) {
+    /**
+     * Returns the D8 flow direction of the center of the 3 x 3 window mx[col][row].
+     */
+    protected double flowDirection(double[][] mx) {
         // https://pro.arcgis.com/en/pro-app/tool-reference/spatial-analyst/how-flow-direction-works.htm
         // +-------+ +-----------+
         // | 0 1 2 | | 32 64 128 |
@@ -81,12 +63,6 @@ public class RasterFlowDirectionOperation extends AbstractSurfaceOperation {
         // | 6 7 8 | | 8 4 2 |
         // +-------+ +-----------+
 
-        double[][] mx = getSubMatrix(pos, 3, 3);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
-
         Coordinate center_pos = new Coordinate(1, 1);
         Coordinate max_drop_pos = null;
 
@@ -115,8 +91,7 @@ public class RasterFlowDirectionOperation extends AbstractSurfaceOperation {
 
         flowDir = getFlowDirection(center_pos, max_drop_pos);
 
-        writer.setSample(0, flowDir);
-        updateStatistics(flowDir);
+        return flowDir;
     }
 
     private int getFlowDirection(Coordinate from, Coordinate to) {
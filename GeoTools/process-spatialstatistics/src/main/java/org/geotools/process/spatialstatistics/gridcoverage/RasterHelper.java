@@ -20,7 +20,12 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -447,4 +452,45 @@ public class RasterHelper {
         GridCoverageFactory factory = CoverageFactoryFinder.getGridCoverageFactory(null);
         return factory.create(name, tiledImage, coverageExtent, bands, null, properties);
     }
+
+    /**
+     * Writes the samples of the rectangle (row major) to the first band of the raster. Float and double samples are written straight into the
+     * data buffer of the raster.
+     */
+    public static void writeSamples(WritableRaster raster, Rectangle rect, double[] buffer) {
+        final SampleModel sm = raster.getSampleModel();
+        final DataBuffer db = raster.getDataBuffer();
+        if (!(sm instanceof ComponentSampleModel)
+                || !(db instanceof DataBufferFloat || db instanceof DataBufferDouble)) {
+            raster.setSamples(rect.x, rect.y, rect.width, rect.height, 0, buffer);
+            return;
+        }
+
+        final ComponentSampleModel csm = (ComponentSampleModel) sm;
+        final int bank = csm.getBankIndices()[0];
+        final int scanlineStride = csm.getScanlineStride();
+        final int pixelStride = csm.getPixelStride();
+        final int base = db.getOffsets()[bank]
+                + csm.getOffset(rect.x - raster.getSampleModelTranslateX(),
+                        rect.y - raster.getSampleModelTranslateY(), 0);
+
+        int k = 0;
+        if (db instanceof DataBufferFloat) {
+            final float[] data = ((DataBufferFloat) db).getData(bank);
+            for (int row = 0; row < rect.height; row++) {
+                int pos = base + row * scanlineStride;
+                for (int col = 0; col < rect.width; col++, pos += pixelStride) {
+                    data[pos] = (float) buffer[k++];
+                }
+            }
+        } else {
+            final double[] data = ((DataBufferDouble) db).getData(bank);
+            for (int row = 0; row < rect.height; row++) {
+                int pos = base + row * scanlineStride;
+                for (int col = 0; col < rect.width; col++, pos += pixelStride) {
+                    data[pos] = buffer[k++];
+                }
+            }
+        }
+    }
 }
@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 
@@ -60,35 +56,18 @@ public class RasterHillshadeOperation extends AbstractSurfaceOperation {
         this.initSurface(inputGc);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitHillShade(writer, pos, azimuth, altitude, zFactor);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, zFactor, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return hillshade(mx, azimuth, altitude, zFactor);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("Aspect", outputImage);
     }
 
-    private void visitHillShade(WritableRectIter writer, GridCoordinates2D pos,
-            final double azimuth, final double altitude, final double zFactor) {
+    private double hillshade(double[][] mx, final double azimuth, final double altitude,
+            final double zFactor) {
         // http://webhelp.esri.com/arcgisdesktop/9.2/index.cfm?TopicName=How%20Hillshade%20works
         // Burrough, P. A. and McDonell, R.A., 1998. Principles of Geographical Information Systems
         // (Oxford University Press, New York), p. 190.
@@ -100,11 +79,6 @@ public class RasterHillshadeOperation extends AbstractSurfaceOperation {
         // | 3 4 5 |>| d e f |
         // | 6 7 8 | | g h i |
         // +-------+ +-------+
-        double[][] mx = getSubMatrix(pos, 3, 3, zFactor);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
 
         double dZdX = ((mx[2][0] + 2 * mx[2][1] + mx[2][2]) - (mx[0][0] + 2 * mx[0][1] + mx[0][2]))
                 / (_8DX);
@@ -113,8 +87,7 @@ public class RasterHillshadeOperation extends AbstractSurfaceOperation {
 
         if (Double.isNaN(dZdX) || Double.isNaN(dZdY) || Double.isInfinite(dZdX)
                 || Double.isInfinite(dZdY)) {
-            writer.setSample(0, noData);
-            return;
+            return Double.NaN;
         }
 
         // Computing the illumination angle
@@ -165,7 +138,6 @@ public class RasterHillshadeOperation extends AbstractSurfaceOperation {
             hsdVal = 255;
         }
 
-        writer.setSample(0, hsdVal);
-        updateStatistics(hsdVal);
+        return hsdVal;
     }
 }
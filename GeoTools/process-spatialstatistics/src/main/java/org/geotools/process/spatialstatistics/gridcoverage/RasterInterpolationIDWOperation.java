@@ -90,11 +90,14 @@ public class RasterInterpolationIDWOperation extends RasterInterpolationOperator
         final int count = Math.max(bounds.width, bounds.height) / MIN_CELL_COUNT;
 
         List<Thread> threads = new ArrayList<Thread>();
+        List<PartialInterpolator> partials = new ArrayList<PartialInterpolator>();
 
         if (count == 0) {
-            Thread thread = new Thread(new PartialInterpolator(oi, bounds, interpolator, trans));
+            PartialInterpolator partial = new PartialInterpolator(oi, bounds, interpolator, trans);
+            Thread thread = new Thread(partial);
             thread.start();
             threads.add(thread);
+            partials.add(partial);
         } else {
             final int sizeX = bounds.width / count;
             final int sizeY = bounds.height / count;
@@ -104,10 +107,12 @@ public class RasterInterpolationIDWOperation extends RasterInterpolationOperator
                 for (int y = 0; y < count; y++) {
                     int posY = y == 0 ? y : (y * sizeY) + y;
                     java.awt.Rectangle rect = new Rectangle(posX, posY, sizeX + 1, sizeY + 1);
-                    Thread thread = new Thread(new PartialInterpolator(oi, rect, interpolator,
-                            trans));
+                    PartialInterpolator partial = new PartialInterpolator(oi, rect,
+                            interpolator, trans);
+                    Thread thread = new Thread(partial);
                     thread.start();
                     threads.add(thread);
+                    partials.add(partial);
                 }
             }
         }
@@ -120,6 +125,11 @@ public class RasterInterpolationIDWOperation extends RasterInterpolationOperator
             }
         }
 
+        // statistics are collected per partial and merged in order
+        for (PartialInterpolator partial : partials) {
+            mergeStatistics(partial.statistics);
+        }
+
         return createGridCoverage("IDW", oi);
     }
 
@@ -132,6 +142,8 @@ public class RasterInterpolationIDWOperation extends RasterInterpolationOperator
 
         private GridTransformer trans;
 
+        private CellStatistics statistics = new CellStatistics(noData);
+
         public PartialInterpolator(DiskMemImage oi, Rectangle rect,
                 AbstractInterpolator interpolator, GridTransformer trans) {
             this.oi = oi;
@@ -147,12 +159,12 @@ public class RasterInterpolationIDWOperation extends RasterInterpolationOperator
             int y = rect.y;
             while (!writer.finishedLines()) {
                 writer.startPixels();
+                final double worldY = trans.getY(y);
                 int x = rect.x;
                 while (!writer.finishedPixels()) {
-                    final Coordinate realPos = trans.gridToWorldCoordinate(x, y);
-                    final double retVal = interpolator.getValue(realPos);
+                    final double retVal = interpolator.getValue(trans.getX(x), worldY);
                     writer.setSample(0, retVal);
-                    updateStatistics(retVal);
+                    statistics.update(retVal);
                     writer.nextPixel();
                     x++;
                 }
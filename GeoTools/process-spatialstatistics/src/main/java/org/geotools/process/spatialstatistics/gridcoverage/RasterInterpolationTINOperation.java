@@ -16,34 +16,29 @@
  */
 package org.geotools.process.spatialstatistics.gridcoverage;
 
+import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.filter.FilterFactory;
 import org.geotools.api.filter.expression.Expression;
-import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
-import org.geotools.util.factory.GeoTools;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateList;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Polygon;
-import org.locationtech.jts.geom.Triangle;
-import org.locationtech.jts.geom.prep.PreparedGeometry;
-import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.locationtech.jts.triangulate.DelaunayTriangulationBuilder;
 
 /**
@@ -56,12 +51,12 @@ import org.locationtech.jts.triangulate.DelaunayTriangulationBuilder;
 public class RasterInterpolationTINOperation extends RasterProcessingOperation {
     protected static final Logger LOGGER = Logging.getLogger(RasterInterpolationTINOperation.class);
 
-    private GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
-
     private FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
 
     private double proximalTolerance = 0.0d;
 
+    private int parallelism = 1;
+
     public RasterInterpolationTINOperation() {
 
     }
@@ -74,6 +69,17 @@ public class RasterInterpolationTINOperation extends RasterProcessingOperation {
         this.proximalTolerance = proximalTolerance;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to rasterize the output tiles. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public GridCoverage2D execute(SimpleFeatureCollection features, String inputField) {
         return execute(features, inputField, RasterPixelType.FLOAT);
     }
@@ -92,11 +98,12 @@ public class RasterInterpolationTINOperation extends RasterProcessingOperation {
         // create delaunay triangulation
         List<Coordinate> coordinates = getCoordinateList(features, inputField);
 
-        // Gets the faces of the computed triangulation as a GeometryCollection of Polygon.
+        // Gets the faces of the computed triangulation, without building polygons
         DelaunayTriangulationBuilder vdBuilder = new DelaunayTriangulationBuilder();
         vdBuilder.setSites(coordinates);
         vdBuilder.setTolerance(proximalTolerance);
-        Geometry triangles = vdBuilder.getTriangles(gf);
+        @SuppressWarnings("unchecked")
+        List<Coordinate[]> triangles = vdBuilder.getSubdivision().getTriangleCoordinates(false);
         coordinates.clear();
 
         // calculate extent & cellsize
@@ -104,60 +111,71 @@ public class RasterInterpolationTINOperation extends RasterProcessingOperation {
 
         // create image & write pixels
         final DiskMemImage oi = createDiskMemImage(gridExtent, pixelType);
-        initializeDefaultValue(oi, this.noData);
-
-        final GridTransformer trans = new GridTransformer(gridExtent, pixelSizeX, pixelSizeY);
-
-        CoordinateReferenceSystem crs = features.getSchema().getCoordinateReferenceSystem();
-        ReferencedEnvelope envelope = null;
-
-        for (int index = 0; index < triangles.getNumGeometries(); index++) {
-            Geometry triangle = triangles.getGeometryN(index);
-            if (triangle == null || triangle.isEmpty()) {
-                continue;
-            }
-
-            PreparedGeometry preparedGeom = PreparedGeometryFactory.prepare(triangle);
-
-            Coordinate[] coords = triangle.getCoordinates();
 
+        // triangles in pixel space, binned by output tile
+        final TriangleRasterizer rasterizer = new TriangleRasterizer(oi.getWidth(),
+                oi.getHeight(), oi.getTileWidth(), oi.getTileHeight());
+        final double minX = gridExtent.getMinX();
+        final double maxY = gridExtent.getMaxY();
+        for (Coordinate[] coords : triangles) {
             Coordinate v0 = coords[0];
             Coordinate v1 = coords[1];
             Coordinate v2 = coords[2];
+            rasterizer.add((v0.x - minX) / pixelSizeX, (maxY - v0.y) / pixelSizeY, v0.getZ(),
+                    (v1.x - minX) / pixelSizeX, (maxY - v1.y) / pixelSizeY, v1.getZ(),
+                    (v2.x - minX) / pixelSizeX, (maxY - v2.y) / pixelSizeY, v2.getZ());
+        }
+        triangles.clear();
+        rasterizer.build();
+
+        // every tile is written completely, cells outside the triangles get noData
+        final int numXTiles = oi.getNumXTiles();
+        final int tileCount = numXTiles * oi.getNumYTiles();
+        final CellStatistics[] statistics = new CellStatistics[tileCount];
+
+        ParallelRange.execute(parallelism, tileCount, 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                final double[] buffer = new double[oi.getTileWidth() * oi.getTileHeight()];
+                for (int tile = start; tile < end; tile++) {
+                    statistics[tile] = writeTile(oi, rasterizer, tile % numXTiles,
+                            tile / numXTiles, buffer);
+                }
+            }
+        });
 
-            // write raster
-            envelope = new ReferencedEnvelope(triangle.getEnvelopeInternal(), crs);
-            java.awt.Rectangle rect = trans.worldToGridBounds(envelope);
-
-            WritableRectIter writer = RectIterFactory.createWritable(oi, rect);
-
-            writer.startLines();
-            int y = rect.y;
-            while (!writer.finishedLines()) {
-                writer.startPixels();
-                int x = rect.x;
-                while (!writer.finishedPixels()) {
-                    Coordinate p = trans.gridToWorldCoordinate(x, y);
+        for (CellStatistics stats : statistics) {
+            mergeStatistics(stats);
+        }
 
-                    if (!preparedGeom.disjoint(gf.createPoint(p))) {
-                        double interpolated = Triangle.interpolateZ(p, v0, v1, v2);
-                        if (Double.isNaN(interpolated) || Double.isInfinite(interpolated)) {
-                            interpolated = this.noData;
-                        }
+        return createGridCoverage("TIN", oi);
+    }
 
-                        writer.setSample(0, interpolated);
-                        updateStatistics(interpolated);
-                    }
+    private CellStatistics writeTile(DiskMemImage oi, TriangleRasterizer rasterizer, int tileX,
+            int tileY, double[] buffer) {
+        final CellStatistics statistics = new CellStatistics(this.noData);
+        final Rectangle region = rasterizer.getTileRegion(tileX, tileY);
+        if (region.isEmpty()) {
+            return statistics;
+        }
 
-                    writer.nextPixel();
-                    x++;
-                }
-                writer.nextLine();
-                y++;
-            }
+        final int size = region.width * region.height;
+        Arrays.fill(buffer, 0, size, this.noData);
+        rasterizer.rasterize(tileX, tileY, buffer, this.noData);
+        for (int i = 0; i < size; i++) {
+            statistics.update(buffer[i]);
         }
 
-        return createGridCoverage("TIN", oi);
+        final int imageTileX = oi.getMinTileX() + tileX;
+        final int imageTileY = oi.getMinTileY() + tileY;
+        WritableRaster raster = oi.getWritableTile(imageTileX, imageTileY);
+        try {
+            RasterHelper.writeSamples(raster, new Rectangle(oi.getMinX() + region.x,
+                    oi.getMinY() + region.y, region.width, region.height), buffer);
+        } finally {
+            oi.releaseWritableTile(imageTileX, imageTileY);
+        }
+        return statistics;
     }
 
     private List<Coordinate> getCoordinateList(SimpleFeatureCollection features,
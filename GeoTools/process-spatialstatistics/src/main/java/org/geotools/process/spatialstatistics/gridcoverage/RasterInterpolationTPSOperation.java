@@ -42,6 +42,36 @@ import org.locationtech.jts.geom.Coordinate;
 public class RasterInterpolationTPSOperation extends RasterInterpolationOperator {
     protected static final Logger LOGGER = Logging.getLogger(RasterInterpolationTPSOperation.class);
 
+    // above this number of samples, the automatic mode fits local splines
+    static final int MAX_GLOBAL_SAMPLES = 2000;
+
+    private int neighbors = 0;
+
+    private int parallelism = 1;
+
+    public int getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * Sets the number of samples of each local spline. 0 = automatic(default): a single global spline up to 2000 samples, local splines of 64
+     * samples otherwise. A negative value always fits a single global spline.
+     */
+    public void setNeighbors(int neighbors) {
+        this.neighbors = neighbors;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to fit the local splines. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public GridCoverage2D execute(SimpleFeatureCollection pointFeatures, String valueField) {
         valueField = FeatureTypes.validateProperty(pointFeatures.getSchema(), valueField);
         if (valueField == null || pointFeatures.getSchema().indexOf(valueField) == -1) {
@@ -55,7 +85,7 @@ public class RasterInterpolationTPSOperation extends RasterInterpolationOperator
 
         // extract the input observation points
         Coordinate[] pts = extractPoints(pointFeatures, valueField);
-        final ThinPlateSplineInterpolator interpolator = new ThinPlateSplineInterpolator(pts);
+        final AbstractInterpolator interpolator = createInterpolator(pts);
 
         // create image & write pixels
         final DiskMemImage oi = this.createDiskMemImage(gridExtent, pixelType);
@@ -66,11 +96,14 @@ public class RasterInterpolationTPSOperation extends RasterInterpolationOperator
         final int count = Math.max(bounds.width, bounds.height) / MIN_CELL_COUNT;
 
         List<Thread> threads = new ArrayList<Thread>();
+        List<PartialInterpolator> partials = new ArrayList<PartialInterpolator>();
 
         if (count == 0) {
-            Thread thread = new Thread(new PartialInterpolator(oi, bounds, interpolator, trans));
+            PartialInterpolator partial = new PartialInterpolator(oi, bounds, interpolator, trans);
+            Thread thread = new Thread(partial);
             thread.start();
             threads.add(thread);
+            partials.add(partial);
         } else {
             final int sizeX = bounds.width / count;
             final int sizeY = bounds.height / count;
@@ -80,10 +113,12 @@ public class RasterInterpolationTPSOperation extends RasterInterpolationOperator
                 for (int y = 0; y < count; y++) {
                     int posY = y == 0 ? y : (y * sizeY) + y;
                     java.awt.Rectangle rect = new Rectangle(posX, posY, sizeX + 1, sizeY + 1);
-                    Thread thread = new Thread(new PartialInterpolator(oi, rect, interpolator,
-                            trans));
+                    PartialInterpolator partial = new PartialInterpolator(oi, rect,
+                            interpolator, trans);
+                    Thread thread = new Thread(partial);
                     thread.start();
                     threads.add(thread);
+                    partials.add(partial);
                 }
             }
         }
@@ -96,9 +131,28 @@ public class RasterInterpolationTPSOperation extends RasterInterpolationOperator
             }
         }
 
+        // statistics are collected per partial and merged in order
+        for (PartialInterpolator partial : partials) {
+            mergeStatistics(partial.statistics);
+        }
+
         return createGridCoverage("TPS", oi);
     }
 
+    private AbstractInterpolator createInterpolator(Coordinate[] pts) {
+        int size = neighbors;
+        if (size == 0) {
+            size = pts.length > MAX_GLOBAL_SAMPLES
+                    ? LocalThinPlateSplineInterpolator.DEFAULT_NEIGHBORS
+                    : -1;
+        }
+
+        if (size < 0 || pts.length <= size) {
+            return new ThinPlateSplineInterpolator(pts);
+        }
+        return new LocalThinPlateSplineInterpolator(pts, gridExtent, size, parallelism);
+    }
+
     final class PartialInterpolator implements Runnable {
         private DiskMemImage oi;
 
@@ -108,6 +162,8 @@ public class RasterInterpolationTPSOperation extends RasterInterpolationOperator
 
         private GridTransformer trans;
 
+        private CellStatistics statistics = new CellStatistics(noData);
+
         public PartialInterpolator(DiskMemImage oi, Rectangle rect,
                 AbstractInterpolator interpolator, GridTransformer trans) {
             this.oi = oi;
@@ -123,12 +179,12 @@ public class RasterInterpolationTPSOperation extends RasterInterpolationOperator
             int y = rect.y;
             while (!writer.finishedLines()) {
                 writer.startPixels();
+                final double worldY = trans.getY(y);
                 int x = rect.x;
                 while (!writer.finishedPixels()) {
-                    final Coordinate realPos = trans.gridToWorldCoordinate(x, y);
-                    final double retVal = interpolator.getValue(realPos);
+                    final double retVal = interpolator.getValue(trans.getX(x), worldY);
                     writer.setSample(0, retVal);
-                    updateStatistics(retVal);
+                    statistics.update(retVal);
                     writer.nextPixel();
                     x++;
                 }
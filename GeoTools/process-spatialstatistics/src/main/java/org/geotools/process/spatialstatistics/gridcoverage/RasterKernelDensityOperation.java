@@ -16,8 +16,6 @@
  */
 package org.geotools.process.spatialstatistics.gridcoverage;
 
-import java.awt.image.WritableRaster;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.imagen.KernelImageN;
@@ -77,7 +75,6 @@ public class RasterKernelDensityOperation extends RasterDensityOperation {
         calculateExtentAndCellSize(pointFeatures, Integer.MIN_VALUE);
 
         DiskMemImage outputImage = this.createDiskMemImage(gridExtent, RasterPixelType.FLOAT);
-        WritableRaster raster = (WritableRaster) outputImage.getData();
 
         KernelImageN kernel = getKernel(searchRadius);
 
@@ -90,6 +87,10 @@ public class RasterKernelDensityOperation extends RasterDensityOperation {
 
         Filter filter = getBBoxFilter(pointFeatures.getSchema(), gridExtent, searchRadius);
 
+        // bin the points, then convolve the binned cells with the kernel
+        DensityConvolver convolver = new DensityConvolver(outputImage.getWidth(),
+                outputImage.getHeight(), kernel);
+
         GridTransformer trans = new GridTransformer(gridExtent, pixelSizeX, pixelSizeY);
         SimpleFeatureIterator featureIter = pointFeatures.subCollection(filter).features();
         try {
@@ -98,14 +99,6 @@ public class RasterKernelDensityOperation extends RasterDensityOperation {
                 weightExp = ff.property(weightField);
             }
 
-            final int imageWidth = outputImage.getWidth();
-            final int imageHeight = outputImage.getHeight();
-
-            final int xOrigin = kernel.getXOrigin();
-            final int yOrigin = kernel.getYOrigin();
-            final int w = kernel.getWidth();
-            final int h = kernel.getHeight();
-
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
                 Geometry multiPoint = (Geometry) feature.getDefaultGeometry();
@@ -122,84 +115,16 @@ public class RasterKernelDensityOperation extends RasterDensityOperation {
                 // Multipoints are treated as a set of individual points.
                 Coordinate[] coordinates = multiPoint.getCoordinates();
                 for (int part = 0; part < coordinates.length; part++) {
-                    Coordinate realPos = coordinates[part];
-                    final GridCoordinates2D gridPos = trans.worldToGrid(realPos);
-
-                    // raster index
-                    int x = gridPos.x - xOrigin;
-                    int y = gridPos.y - yOrigin;
-                    int xw = w;
-                    int yh = h;
-
-                    // kernel index
-                    int startCol = 0;
-                    int startRow = 0;
-                    int endCol = w;
-                    int endRow = h;
-
-                    if (x < 0 || y < 0) {
-                        if (x < 0) {
-                            xw = x + xw;
-                            startCol = Math.abs(x);
-                            x = 0;
-                        } else if (y < 0) {
-                            yh = y + yh;
-                            startRow = Math.abs(y);
-                            y = 0;
-                        }
-                    }
-
-                    if ((x + xw) > imageWidth || (y + yh) > imageHeight) {
-                        if ((x + xw) > imageWidth) {
-                            int dif = (x + xw) - imageWidth;
-                            xw = xw - dif;
-                            endCol = xw;
-                        } else if ((y + yh) > imageHeight) {
-                            int dif = (y + yh) - imageHeight;
-                            yh = yh - dif;
-                            endRow = yh;
-                        }
-                    }
-
-                    if (x < 0 || y < 0 || xw < 1 || yh < 1) {
-                        continue;
-                    }
-
-                    // get data
-                    try {
-                        float[] samples = raster.getSamples(x, y, xw, yh, 0, new float[xw * yh]);
-
-                        int index = 0;
-                        for (int row = startRow; row < endRow; row++) {
-                            for (int col = startCol; col < endCol; col++) {
-                                double kernelValue = kernel.getElement(col, row);
-                                if (kernelValue == 0) {
-                                    index++;
-                                    continue;
-                                }
-
-                                double wValue = ((weight * kernelValue) / scaleArea)
-                                        + samples[index];
-
-                                samples[index] = (float) wValue;
-                                this.maxValue = Math.max(maxValue, wValue);
-                                index++;
-                            }
-                        }
-
-                        // set data
-                        raster.setSamples(x, y, xw, yh, 0, samples);
-                    } catch (Exception e) {
-                        LOGGER.log(Level.FINEST, e.getMessage());
-                    }
+                    final GridCoordinates2D gridPos = trans.worldToGrid(coordinates[part]);
+                    convolver.add(gridPos.x, gridPos.y, weight);
                 }
             }
         } finally {
             featureIter.close();
         }
 
-        // finally, set raster data to image
-        outputImage.setData(raster);
+        double max = convolver.convolve(outputImage, scaleArea, parallelism);
+        this.maxValue = Math.max(maxValue, max);
 
         return createGridCoverage("KernelDensity", outputImage);
     }
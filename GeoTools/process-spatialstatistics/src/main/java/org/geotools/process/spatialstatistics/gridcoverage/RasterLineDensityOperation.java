@@ -73,7 +73,6 @@ public class RasterLineDensityOperation extends RasterDensityOperation {
         calculateExtentAndCellSize(lineFeatures, Integer.MIN_VALUE);
 
         DiskMemImage outputImage = this.createDiskMemImage(gridExtent, RasterPixelType.FLOAT);
-        WritableRaster raster = (WritableRaster) outputImage.getData();
 
         // step 1 : convert line to gridcoverage
         final PlanarImage sourceImage = lineToRaster(lineFeatures, weightField, searchRadius);
@@ -88,96 +87,28 @@ public class RasterLineDensityOperation extends RasterDensityOperation {
             scaleArea = scaleArea / 1000.0;
         }
 
-        final int imageWidth = outputImage.getWidth();
-        final int imageHeight = outputImage.getHeight();
-
-        final int xOrigin = kernel.getXOrigin();
-        final int yOrigin = kernel.getYOrigin();
-        final int w = kernel.getWidth();
-        final int h = kernel.getHeight();
+        // step 2 : convolve the line cells with the kernel
+        DensityConvolver convolver = new DensityConvolver(outputImage.getWidth(),
+                outputImage.getHeight(), kernel);
 
         RectIter readIter = RectIterFactory.create(sourceImage, sourceImage.getBounds());
 
         readIter.startLines();
         int row = 0;
+        final int[] data = new int[4];
         while (!readIter.finishedLines()) {
             readIter.startPixels();
             int col = 0;
             while (!readIter.finishedPixels()) {
                 // (red << 16) + (green << 8) + (blue & 0xFF) + (alpha << 24);
-                int[] data = readIter.getPixel(new int[4]);
+                readIter.getPixel(data);
                 int rgba = (data[0] << 16) + (data[1] << 8) + (data[2] & 0xFF) + (data[3] << 24);
 
                 double weight = Float.intBitsToFloat(rgba);
-                if (weight == 0) {
-                    readIter.nextPixel();
-                    col++;
-                    continue;
-                }
-
-                // raster index
-                int x = col - xOrigin;
-                int y = row - yOrigin;
-                int xw = w;
-                int yh = h;
-
-                // kernel index
-                int startCol = 0;
-                int startRow = 0;
-                int endCol = w;
-                int endRow = h;
-
-                if (x < 0 || y < 0) {
-                    if (x < 0) {
-                        xw = x + xw;
-                        startCol = Math.abs(x);
-                        x = 0;
-                    } else if (y < 0) {
-                        yh = y + yh;
-                        startRow = Math.abs(y);
-                        y = 0;
-                    }
+                if (weight != 0) {
+                    convolver.add(col, row, weight);
                 }
 
-                if ((x + xw) > imageWidth || (y + yh) > imageHeight) {
-                    if ((x + xw) > imageWidth) {
-                        int dif = (x + xw) - imageWidth;
-                        xw = xw - dif;
-                        endCol = xw;
-                    } else if ((y + yh) > imageHeight) {
-                        int dif = (y + yh) - imageHeight;
-                        yh = yh - dif;
-                        endRow = yh;
-                    }
-                }
-
-                if (x < 0 || y < 0 || xw < 1 || yh < 1) {
-                    continue;
-                }
-
-                // get data
-                float[] samples = raster.getSamples(x, y, xw, yh, 0, new float[xw * yh]);
-
-                int index = 0;
-                for (int irow = startRow; irow < endRow; irow++) {
-                    for (int icol = startCol; icol < endCol; icol++) {
-                        double kernelValue = kernel.getElement(icol, irow);
-                        if (kernelValue == 0) {
-                            index++;
-                            continue;
-                        }
-
-                        double wValue = ((weight * kernelValue) / scaleArea) + samples[index];
-
-                        samples[index] = (float) wValue;
-                        this.maxValue = Math.max(maxValue, wValue);
-                        index++;
-                    }
-                }
-
-                // set data
-                raster.setSamples(x, y, xw, yh, 0, samples);
-
                 readIter.nextPixel();
                 col++;
             }
@@ -185,8 +116,8 @@ public class RasterLineDensityOperation extends RasterDensityOperation {
             row++;
         }
 
-        // finally, set raster data to image
-        outputImage.setData(raster);
+        double max = convolver.convolve(outputImage, scaleArea, parallelism);
+        this.maxValue = Math.max(maxValue, max);
 
         return createGridCoverage("LineDensity", outputImage);
     }
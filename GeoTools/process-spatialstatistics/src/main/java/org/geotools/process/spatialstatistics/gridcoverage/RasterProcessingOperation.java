@@ -169,6 +169,18 @@ public abstract class RasterProcessingOperation {
         this.maxValue = Math.max(maxValue, retVal);
     }
 
+    /**
+     * Merges the statistics of a part of the output image, e.g. a tile processed by another thread.
+     */
+    protected void mergeStatistics(CellStatistics statistics) {
+        if (statistics == null || statistics.getCount() == 0) {
+            return;
+        }
+
+        this.minValue = Math.min(minValue, statistics.getMinValue());
+        this.maxValue = Math.max(maxValue, statistics.getMaxValue());
+    }
+
     /**
      * Fill the specified raster with the provided background values
      * 
@@ -638,4 +650,43 @@ public abstract class RasterProcessingOperation {
 
         return output;
     }
+
+    /**
+     * Min/max statistics of the cells written by one thread. NoData values are ignored.
+     */
+    protected static final class CellStatistics {
+        private final double noData;
+
+        private long count = 0;
+
+        private double minValue = Double.MAX_VALUE;
+
+        private double maxValue = -Double.MAX_VALUE;
+
+        public CellStatistics(double noData) {
+            this.noData = noData;
+        }
+
+        public void update(double value) {
+            if (SSUtils.compareDouble(value, noData)) {
+                return;
+            }
+
+            count++;
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMinValue() {
+            return minValue;
+        }
+
+        public double getMaxValue() {
+            return maxValue;
+        }
+    }
 }
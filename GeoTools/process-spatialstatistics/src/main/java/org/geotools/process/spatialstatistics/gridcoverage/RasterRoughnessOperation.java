@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 
@@ -46,44 +42,22 @@ public class RasterRoughnessOperation extends AbstractSurfaceOperation {
         this.initSurface(inputGc);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitRoughness(writer, pos);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, 1.0, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return roughness(mx);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("Roughness", outputImage);
     }
 
-    private void visitRoughness(WritableRectIter writer, GridCoordinates2D pos) {
+    private double roughness(double[][] mx) {
         // +-------+ +-------+
         // | 0 1 2 | | a b c |
         // | 3 4 5 |>| d e f |
         // | 6 7 8 | | g h i |
         // +-------+ +-------+
-        double[][] mx = getSubMatrix(pos, 3, 3);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
 
         // Roughness is the largest difference between any two cells
         double roughnessMin = mx[0][0];
@@ -97,7 +71,6 @@ public class RasterRoughnessOperation extends AbstractSurfaceOperation {
 
         double roughness = roughnessMax - roughnessMin;
 
-        writer.setSample(0, roughness);
-        updateStatistics(roughness);
+        return roughness;
     }
 }
@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.process.spatialstatistics.enumeration.SlopeType;
 import org.geotools.util.logging.Logging;
@@ -52,35 +48,17 @@ public class RasterSlopeOperation extends AbstractSurfaceOperation {
         this.initSurface(inputGc);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitSlope(writer, pos, slopeType, zFactor);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, zFactor, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return slope(mx, slopeType);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("Slope", outputImage);
     }
 
-    private void visitSlope(WritableRectIter writer, GridCoordinates2D pos, SlopeType slopeType,
-            double zFactor) {
+    private double slope(double[][] mx, SlopeType slopeType) {
         // http://webhelp.esri.com/arcgisdesktop/9.3/index.cfm?TopicName=How%20Slope%20works
         // Burrough, P. A. and McDonell, R.A., 1998. Principles of Geographical Information Systems
         // (Oxford University Press, New York), p. 190.
@@ -101,11 +79,6 @@ public class RasterSlopeOperation extends AbstractSurfaceOperation {
         // | 3 4 5 |>| d e f |
         // | 6 7 8 | | g h i |
         // +-------+ +-------+
-        double[][] mx = getSubMatrix(pos, 3, 3, zFactor);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
 
         double dZdX = ((mx[2][0] + 2 * mx[2][1] + mx[2][2]) - (mx[0][0] + 2 * mx[0][1] + mx[0][2]))
                 / (_8DX);
@@ -114,8 +87,7 @@ public class RasterSlopeOperation extends AbstractSurfaceOperation {
 
         double rise_run = (dZdX * dZdX) + (dZdY * dZdY);
         if (Double.isNaN(rise_run) || Double.isInfinite(rise_run)) {
-            writer.setSample(0, noData);
-            return;
+            return Double.NaN;
         }
 
         double slope = Math.atan(Math.sqrt(rise_run));
@@ -127,11 +99,9 @@ public class RasterSlopeOperation extends AbstractSurfaceOperation {
         }
 
         if (slope < 0 || slope > 100) {
-            writer.setSample(0, noData);
-            return;
+            return Double.NaN;
         }
 
-        writer.setSample(0, slope);
-        updateStatistics(slope);
+        return slope;
     }
 }
@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 
@@ -46,51 +42,28 @@ public class RasterTPIOperation extends AbstractSurfaceOperation {
         this.initSurface(inputGc);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitTPI(writer, pos);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, 1.0, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return tpi(mx);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("TPI", outputImage);
     }
 
-    private void visitTPI(WritableRectIter writer, GridCoordinates2D pos) {
+    private double tpi(double[][] mx) {
         // +-------+ +-------+
         // | 0 1 2 | | a b c |
         // | 3 4 5 |>| d e f |
         // | 6 7 8 | | g h i |
         // +-------+ +-------+
-        double[][] mx = getSubMatrix(pos, 3, 3);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
 
         // Topographic Position Index is the difference between
         // The central cell and the mean of the surrounding cells
         double tpi = mx[1][1]
                 - ((mx[0][0] + mx[1][0] + mx[2][0] + mx[0][1] + mx[2][1] + mx[0][2] + mx[1][2] + mx[2][2]) / 8.0);
 
-        writer.setSample(0, tpi);
-        updateStatistics(tpi);
+        return tpi;
     }
 }
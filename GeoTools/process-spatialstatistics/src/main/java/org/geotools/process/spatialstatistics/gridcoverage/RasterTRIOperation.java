@@ -18,12 +18,8 @@ package org.geotools.process.spatialstatistics.gridcoverage;
 
 import java.util.logging.Logger;
 
-import org.eclipse.imagen.iterator.WritableRectIter;
-import org.eclipse.imagen.iterator.RectIterFactory;
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.core.DiskMemImage;
-import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.enumeration.RasterPixelType;
 import org.geotools.util.logging.Logging;
 
@@ -47,44 +43,22 @@ public class RasterTRIOperation extends AbstractSurfaceOperation {
         this.initSurface(inputGc);
 
         DiskMemImage outputImage = this.createDiskMemImage(inputGc, RasterPixelType.FLOAT);
-        WritableRectIter writer = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        GridCoordinates2D pos = new GridCoordinates2D();
-
-        int y = bounds.y;
-        writer.startLines();
-        while (!writer.finishedLines()) {
-
-            int x = bounds.x;
-            writer.startPixels();
-            while (!writer.finishedPixels()) {
-                pos.setLocation(x, y);
-
-                visitTRI(writer, pos);
-
-                writer.nextPixel();
-                x++;
+        executeKernel(outputImage, 3, 1.0, new SurfaceKernel() {
+            @Override
+            public double evaluate(double[][] mx) {
+                return tri(mx);
             }
-
-            writer.nextLine();
-            y++;
-        }
+        });
 
         return createGridCoverage("TRI", outputImage);
     }
 
-    private void visitTRI(WritableRectIter writer, GridCoordinates2D pos) {
+    private double tri(double[][] mx) {
         // +-------+ +-------+
         // | 0 1 2 | | a b c |
         // | 3 4 5 |>| d e f |
         // | 6 7 8 | | g h i |
         // +-------+ +-------+
-        double[][] mx = getSubMatrix(pos, 3, 3);
-        if (Double.isNaN(mx[1][1]) || SSUtils.compareDouble(srcNoData, mx[1][1])) {
-            writer.setSample(0, noData);
-            return;
-        }
 
         // Terrain Ruggedness Index is average difference in height
         final double tri = (Math.abs(mx[0][0] - mx[1][1]) + Math.abs(mx[1][0] - mx[1][1])
@@ -92,7 +66,6 @@ public class RasterTRIOperation extends AbstractSurfaceOperation {
                 + Math.abs(mx[2][1] - mx[1][1]) + Math.abs(mx[0][2] - mx[1][1])
                 + Math.abs(mx[1][2] - mx[1][1]) + Math.abs(mx[2][2] - mx[1][1])) / 8.0;
 
-        writer.setSample(0, tri);
-        updateStatistics(tri);
+        return tri;
     }
 }
@@ -118,23 +118,30 @@ public class RasterZonalOperation extends RasterProcessingOperation {
 
         RectIter zoneIter = RectIterFactory.create(zoneImage, zoneImage.getBounds());
         RectIter inputIter = RectIterFactory.create(inputImage, inputImage.getBounds());
+        // neighboring cells mostly share the zone, so the last visitor is reused
+        int lastKey = 0;
+        StatisticsVisitor lastVisitor = null;
+
         zoneIter.startLines();
         inputIter.startLines();
         while (!zoneIter.finishedLines() && !inputIter.finishedLines()) {
             zoneIter.startPixels();
             inputIter.startPixels();
             while (!zoneIter.finishedPixels() && !inputIter.finishedPixels()) {
-                final Integer key = zoneIter.getSample(0); // one band
+                final int key = zoneIter.getSample(0); // one band
                 final double value = inputIter.getSampleDouble(bandIndex);
 
                 if (!SSUtils.compareDouble(zoneNoData, key)
                         && !SSUtils.compareDouble(inputNoData, value)) {
-                    StatisticsVisitor visitor = visitorMap.get(key);
-                    if (visitor == null) {
-                        visitor = new StatisticsVisitor(new DoubleStrategy());
-                        visitorMap.put(key, visitor);
+                    if (lastVisitor == null || key != lastKey) {
+                        lastVisitor = visitorMap.get(Integer.valueOf(key));
+                        if (lastVisitor == null) {
+                            lastVisitor = new StatisticsVisitor(new DoubleStrategy());
+                            visitorMap.put(Integer.valueOf(key), lastVisitor);
+                        }
+                        lastKey = key;
                     }
-                    visitor.visit(value);
+                    lastVisitor.visit(value);
                 }
 
                 zoneIter.nextPixel();
@@ -0,0 +1,294 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.gridcoverage;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Scanline rasterizer of 3D triangles with linear (barycentric) interpolation of z.<br>
+ * Vertices are kept in pixel space, the center of the cell (column, row) is (column + 0.5, row + 0.5). A cell belongs to a triangle if its center
+ * is inside, or on a top or left edge (top-left fill rule), so cells on an edge shared by two triangles are written exactly once. Triangles are
+ * binned by tile, and the tiles can be rasterized concurrently.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class TriangleRasterizer {
+
+    // u0, v0, z0, u1, v1, z1, u2, v2, z2 per triangle
+    private double[] vertices;
+
+    private int count = 0;
+
+    private final int width;
+
+    private final int height;
+
+    private final int tileWidth;
+
+    private final int tileHeight;
+
+    private final int tileColumns;
+
+    // triangles of each tile in compressed sparse row form
+    private int[] tileOffsets;
+
+    private int[] tileTriangles;
+
+    /**
+     * @param width number of columns of the raster
+     * @param height number of rows of the raster
+     * @param tileWidth tile width in cells
+     * @param tileHeight tile height in cells
+     */
+    public TriangleRasterizer(int width, int height, int tileWidth, int tileHeight) {
+        this.width = width;
+        this.height = height;
+        this.tileWidth = Math.max(1, tileWidth);
+        this.tileHeight = Math.max(1, tileHeight);
+        this.tileColumns = (width + this.tileWidth - 1) / this.tileWidth;
+        this.vertices = new double[9 * 64];
+    }
+
+    public int getTriangleCount() {
+        return count;
+    }
+
+    /**
+     * Adds a triangle in pixel space. Degenerate triangles are ignored.
+     */
+    public void add(double u0, double v0, double z0, double u1, double v1, double z1, double u2,
+            double v2, double z2) {
+        final double area = edge(u0, v0, u1, v1, u2, v2);
+        if (area == 0 || Double.isNaN(area)) {
+            return;
+        }
+
+        if (count * 9 == vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+        }
+
+        // keep a positive orientation: edge(v0, v1, v2) > 0
+        int k = count * 9;
+        vertices[k++] = u0;
+        vertices[k++] = v0;
+        vertices[k++] = z0;
+        if (area > 0) {
+            vertices[k++] = u1;
+            vertices[k++] = v1;
+            vertices[k++] = z1;
+            vertices[k++] = u2;
+            vertices[k++] = v2;
+            vertices[k++] = z2;
+        } else {
+            vertices[k++] = u2;
+            vertices[k++] = v2;
+            vertices[k++] = z2;
+            vertices[k++] = u1;
+            vertices[k++] = v1;
+            vertices[k++] = z1;
+        }
+        count++;
+        tileOffsets = null;
+    }
+
+    /**
+     * Bins the triangles by the tiles their cells may fall in. Called once after all triangles are added.
+     */
+    public void build() {
+        final int tileRows = (height + tileHeight - 1) / tileHeight;
+        final int tileCount = tileColumns * tileRows;
+        final int[] bounds = new int[4];
+
+        // count, then fill
+        int[] offsets = new int[tileCount + 1];
+        for (int t = 0; t < count; t++) {
+            if (getCellBounds(t, bounds)) {
+                for (int ty = bounds[1] / tileHeight; ty <= bounds[3] / tileHeight; ty++) {
+                    for (int tx = bounds[0] / tileWidth; tx <= bounds[2] / tileWidth; tx++) {
+                        offsets[ty * tileColumns + tx + 1]++;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < tileCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] cursor = Arrays.copyOf(offsets, tileCount);
+        int[] triangles = new int[offsets[tileCount]];
+        for (int t = 0; t < count; t++) {
+            if (getCellBounds(t, bounds)) {
+                for (int ty = bounds[1] / tileHeight; ty <= bounds[3] / tileHeight; ty++) {
+                    for (int tx = bounds[0] / tileWidth; tx <= bounds[2] / tileWidth; tx++) {
+                        triangles[cursor[ty * tileColumns + tx]++] = t;
+                    }
+                }
+            }
+        }
+
+        this.tileOffsets = offsets;
+        this.tileTriangles = triangles;
+    }
+
+    // cells whose centers can fall in the triangle: minColumn, minRow, maxColumn, maxRow
+    private boolean getCellBounds(int t, int[] bounds) {
+        final int k = t * 9;
+        final double minU = Math.min(vertices[k], Math.min(vertices[k + 3], vertices[k + 6]));
+        final double maxU = Math.max(vertices[k], Math.max(vertices[k + 3], vertices[k + 6]));
+        final double minV = Math.min(vertices[k + 1], Math.min(vertices[k + 4], vertices[k + 7]));
+        final double maxV = Math.max(vertices[k + 1], Math.max(vertices[k + 4], vertices[k + 7]));
+
+        bounds[0] = (int) Math.max(0, Math.ceil(minU - 0.5));
+        bounds[1] = (int) Math.max(0, Math.ceil(minV - 0.5));
+        bounds[2] = (int) Math.min(width - 1, Math.floor(maxU - 0.5));
+        bounds[3] = (int) Math.min(height - 1, Math.floor(maxV - 0.5));
+        return bounds[0] <= bounds[2] && bounds[1] <= bounds[3];
+    }
+
+    /**
+     * Rasterizes the triangles of the tile into the buffer of the tile's cells (row major, clipped to the raster). Cells outside all triangles are
+     * left untouched, and NaN or infinite values are written as noData.
+     *
+     * @param tileX tile column, the tile (tileX, tileY) covers the cells from (tileX * tileWidth, tileY * tileHeight)
+     * @param tileY tile row
+     * @param buffer cell values of the tile, at least tileWidth * tileHeight
+     * @return number of written cells
+     */
+    public int rasterize(int tileX, int tileY, double[] buffer, double noData) {
+        if (tileOffsets == null) {
+            build();
+        }
+
+        final Rectangle region = getTileRegion(tileX, tileY);
+        if (region.isEmpty()) {
+            return 0;
+        }
+
+        final int tile = tileY * tileColumns + tileX;
+        int written = 0;
+        for (int i = tileOffsets[tile]; i < tileOffsets[tile + 1]; i++) {
+            written += rasterize(tileTriangles[i], region, buffer, noData);
+        }
+        return written;
+    }
+
+    /**
+     * Cells of the tile, clipped to the raster.
+     */
+    public Rectangle getTileRegion(int tileX, int tileY) {
+        Rectangle tile = new Rectangle(tileX * tileWidth, tileY * tileHeight, tileWidth,
+                tileHeight);
+        return tile.intersection(new Rectangle(0, 0, width, height));
+    }
+
+    private int rasterize(int t, Rectangle region, double[] buffer, double noData) {
+        final int k = t * 9;
+        final double u0 = vertices[k], v0 = vertices[k + 1], z0 = vertices[k + 2];
+        final double u1 = vertices[k + 3], v1 = vertices[k + 4], z1 = vertices[k + 5];
+        final double u2 = vertices[k + 6], v2 = vertices[k + 7], z2 = vertices[k + 8];
+
+        // the edge opposite to a vertex: 0 = (v1, v2), 1 = (v2, v0), 2 = (v0, v1)
+        final boolean topLeft0 = isTopLeft(u1, v1, u2, v2);
+        final boolean topLeft1 = isTopLeft(u2, v2, u0, v0);
+        final boolean topLeft2 = isTopLeft(u0, v0, u1, v1);
+
+        final double minV = Math.min(v0, Math.min(v1, v2));
+        final double maxV = Math.max(v0, Math.max(v1, v2));
+        final int minRow = (int) Math.max(region.y, Math.ceil(minV - 0.5));
+        final int maxRow = (int) Math.min(region.y + region.height - 1, Math.floor(maxV - 0.5));
+
+        final int minCol = region.x;
+        final int maxCol = region.x + region.width - 1;
+
+        int written = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            final double pv = row + 0.5;
+
+            // span of the row, widened by a cell: the cells are tested exactly below
+            double lo = Double.NEGATIVE_INFINITY;
+            double hi = Double.POSITIVE_INFINITY;
+            boolean empty = false;
+            for (int e = 0; e < 3 && !empty; e++) {
+                final double au = e == 0 ? u1 : e == 1 ? u2 : u0;
+                final double av = e == 0 ? v1 : e == 1 ? v2 : v0;
+                final double bu = e == 0 ? u2 : e == 1 ? u0 : u1;
+                final double bv = e == 0 ? v2 : e == 1 ? v0 : v1;
+
+                // edge(a, b, p) = (bu - au) * (pv - av) - (bv - av) * (pu - au) = slope * pu + c
+                final double slope = -(bv - av);
+                final double c = (bu - au) * (pv - av) + (bv - av) * au;
+                if (slope > 0) {
+                    lo = Math.max(lo, -c / slope);
+                } else if (slope < 0) {
+                    hi = Math.min(hi, -c / slope);
+                } else if (c < 0) {
+                    empty = true;
+                }
+            }
+            if (empty || lo > hi + 1) {
+                continue;
+            }
+
+            final int startCol = (int) Math.max(minCol, Math.ceil(lo - 0.5) - 1);
+            final int endCol = (int) Math.min(maxCol, Math.floor(hi - 0.5) + 1);
+            int offset = (row - region.y) * region.width + (startCol - region.x);
+            for (int col = startCol; col <= endCol; col++, offset++) {
+                final double pu = col + 0.5;
+
+                final double w0 = edge(u1, v1, u2, v2, pu, pv);
+                if (w0 < 0 || (w0 == 0 && !topLeft0)) {
+                    continue;
+                }
+                final double w1 = edge(u2, v2, u0, v0, pu, pv);
+                if (w1 < 0 || (w1 == 0 && !topLeft1)) {
+                    continue;
+                }
+                final double w2 = edge(u0, v0, u1, v1, pu, pv);
+                if (w2 < 0 || (w2 == 0 && !topLeft2)) {
+                    continue;
+                }
+
+                double value = (w0 * z0 + w1 * z1 + w2 * z2) / (w0 + w1 + w2);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    value = noData;
+                }
+                buffer[offset] = value;
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Edge function: positive if p is on the inner side of the directed edge (a, b) of a positively oriented triangle. The endpoints are evaluated
+     * in a canonical order, so the two triangles sharing an edge get exactly opposite values.
+     */
+    static double edge(double au, double av, double bu, double bv, double pu, double pv) {
+        if (au < bu || (au == bu && av < bv)) {
+            return (bu - au) * (pv - av) - (bv - av) * (pu - au);
+        }
+        return -((au - bu) * (pv - bv) - (av - bv) * (pu - bu));
+    }
+
+    // rows grow downwards: a top edge is horizontal and goes right, a left edge goes up
+    private static boolean isTopLeft(double au, double av, double bu, double bv) {
+        return (av == bv && bu > au) || bv < av;
+    }
+}
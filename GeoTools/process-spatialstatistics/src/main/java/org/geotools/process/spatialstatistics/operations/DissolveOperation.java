@@ -18,9 +18,9 @@ package org.geotools.process.spatialstatistics.operations;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.geotools.api.feature.simple.SimpleFeature;
@@ -30,6 +30,8 @@ import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.StatisticsField;
 import org.geotools.process.spatialstatistics.core.StatisticsVisitor;
 import org.geotools.process.spatialstatistics.core.StatisticsVisitorResult;
@@ -41,7 +43,9 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 
 /**
- * Dissolves features based on specified attributes and aggregation functions.
+ * Dissolves features based on specified attributes and aggregation functions.<br>
+ * The geometries of each group are unioned in batches into a partial union, so only a bounded number of source geometries is kept in memory, and
+ * the batches of different groups are unioned in parallel.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -52,11 +56,17 @@ public class DissolveOperation extends GeneralOperation {
 
     static final String NULL = "NULLVALUE";
 
+    // number of geometries of a group unioned at a time
+    static final int UNION_BATCH_SIZE = 1024;
+
+    // maximum number of geometries waiting to be unioned in all groups
+    static final int MAX_PENDING_SIZE = UNION_BATCH_SIZE * 64;
+
     private Boolean useMultiPart = Boolean.TRUE;
 
-    private Hashtable<Object, Hashtable<String, StatisticsVisitor>> attMap;
+    private boolean sortedInput = false;
 
-    private Hashtable<Object, List<Geometry>> geoMap;
+    private int parallelism = 1;
 
     public boolean isUseMultiPart() {
         return useMultiPart;
@@ -66,6 +76,29 @@ public class DissolveOperation extends GeneralOperation {
         this.useMultiPart = useMultiPart;
     }
 
+    public boolean isSortedInput() {
+        return sortedInput;
+    }
+
+    /**
+     * Sets whether the input features are sorted by the dissolve field. If true, each group is written and released as soon as the next group
+     * starts, and a value that appears again after its group is written starts a new group.
+     */
+    public void setSortedInput(boolean sortedInput) {
+        this.sortedInput = sortedInput;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to union the groups. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String dissolveField,
             String summaryFields) throws IOException {
         return execute(features, dissolveField, summaryFields, null);
@@ -110,100 +143,163 @@ public class DissolveOperation extends GeneralOperation {
             }
         }
 
-        // calculate statistics
-        calculateStatistics(features, dissolveField, schema, uvFields);
+        final int threads = ParallelRange.getThreadCount(parallelism);
+        Map<Object, DissolveGroup> groups = new LinkedHashMap<Object, DissolveGroup>();
+        List<DissolveGroup> ready = new ArrayList<DissolveGroup>();
+        List<DissolveGroup> completed = new ArrayList<DissolveGroup>();
+        DissolveGroup current = null;
+        int pendingSize = 0;
 
-        // post process
         IFeatureInserter writer = getFeatureWriter(featureType);
-        try {
-            for (Entry<Object, List<Geometry>> entry : geoMap.entrySet()) {
-                CascadedPolygonUnion unionOp = new CascadedPolygonUnion(entry.getValue());
-                Geometry unionGeometry = unionOp.union();
-
-                if (useMultiPart) {
-                    // multi part feature
-                    SimpleFeature newFeature = writer.buildFeature();
-                    newFeature.setDefaultGeometry(unionGeometry);
-                    newFeature.setAttribute(dissolveField, entry.getKey());
-
-                    Hashtable<String, StatisticsVisitor> map = attMap.get(entry.getKey());
-                    if (map != null) {
-                        for (StatisticsField field : statisticsList) {
-                            StatisticsVisitorResult ret = map.get(field.getSrcField()).getResult();
-                            if (ret == null) {
-                                continue;
-                            }
-                            Object val = ret.getValue(field.getStatType());
-                            newFeature.setAttribute(field.getTargetField(), val);
-                        }
-                    }
-                    writer.write(newFeature);
-                } else {
-                    // single part feature
-                    for (int idx = 0; idx < unionGeometry.getNumGeometries(); idx++) {
-                        SimpleFeature newFeature = writer.buildFeature();
-                        newFeature.setDefaultGeometry(unionGeometry.getGeometryN(idx));
-                        newFeature.setAttribute(dissolveField, entry.getKey());
-
-                        Hashtable<String, StatisticsVisitor> map = attMap.get(entry.getKey());
-                        if (map != null) {
-                            for (StatisticsField field : statisticsList) {
-                                StatisticsVisitorResult ret = map.get(field.getSrcField())
-                                        .getResult();
-                                if (ret == null) {
-                                    continue;
-                                }
-                                Object val = ret.getValue(field.getStatType());
-                                newFeature.setAttribute(field.getTargetField(), val);
-                            }
-                        }
-                        writer.write(newFeature);
-                    }
-                }
-            }
-        } finally {
-            writer.close();
-        }
-
-        return writer.getFeatureCollection();
-    }
-
-    private void calculateStatistics(SimpleFeatureCollection features, String dissolveField,
-            SimpleFeatureType schema, List<String> uvFields) {
-        attMap = new Hashtable<Object, Hashtable<String, StatisticsVisitor>>();
-        geoMap = new Hashtable<Object, List<Geometry>>();
-
         SimpleFeatureIterator featureIter = features.features();
         try {
             Expression disExpresion = ff.property(dissolveField);
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
                 Object disValue = disExpresion.evaluate(feature);
                 if (disValue == null) {
                     disValue = NULL;
                 }
 
-                // geometries
-                if (geoMap.get(disValue) == null) {
-                    geoMap.put(disValue, new ArrayList<Geometry>());
+                if (current == null || !current.key.equals(disValue)) {
+                    if (sortedInput && current != null) {
+                        // the previous group is complete
+                        completed.add(current);
+                        ready.remove(current);
+                        groups.remove(current.key);
+                    }
+
+                    current = groups.get(disValue);
+                    if (current == null) {
+                        current = new DissolveGroup(disValue, schema, uvFields);
+                        groups.put(disValue, current);
+                    }
                 }
-                geoMap.get(disValue).add(geometry);
 
                 // attributes
-                if (attMap.get(disValue) == null) {
-                    attMap.put(disValue, new Hashtable<String, StatisticsVisitor>());
-                    for (String field : uvFields) {
-                        attMap.get(disValue).put(field, new StatisticsVisitor(schema, field));
+                for (StatisticsVisitor visitor : current.visitors.values()) {
+                    visitor.visit(feature);
+                }
+
+                // geometries
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry != null) {
+                    current.pending.add(geometry);
+                    pendingSize++;
+                    if (current.pending.size() == UNION_BATCH_SIZE) {
+                        ready.add(current);
                     }
                 }
 
-                for (String field : uvFields) {
-                    attMap.get(disValue).get(field).visit(feature);
+                if (completed.size() >= threads) {
+                    pendingSize -= union(completed);
+                    write(writer, completed, dissolveField, statisticsList);
+                    completed.clear();
+                }
+
+                if (ready.size() >= threads) {
+                    pendingSize -= union(ready);
+                    ready.clear();
+                } else if (pendingSize >= MAX_PENDING_SIZE) {
+                    List<DissolveGroup> all = new ArrayList<DissolveGroup>(completed);
+                    all.addAll(groups.values());
+                    pendingSize -= union(all);
+                    ready.clear();
                 }
             }
+
+            completed.addAll(groups.values());
+            union(completed);
+            write(writer, completed, dissolveField, statisticsList);
         } finally {
-            featureIter.close();
+            writer.close(featureIter);
+        }
+
+        return writer.getFeatureCollection();
+    }
+
+    // unions the pending geometries of each group into its partial union, the groups in parallel.
+    // returns the number of geometries unioned
+    private int union(final List<DissolveGroup> groups) {
+        int size = 0;
+        for (DissolveGroup group : groups) {
+            size += group.pending.size();
+        }
+
+        ParallelRange.execute(parallelism, groups.size(), 1, new RangeTask() {
+            @Override
+            public void execute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    groups.get(i).reduce();
+                }
+            }
+        });
+        return size;
+    }
+
+    private void write(IFeatureInserter writer, List<DissolveGroup> groups, String dissolveField,
+            List<StatisticsField> statisticsList) throws IOException {
+        for (DissolveGroup group : groups) {
+            Geometry unionGeometry = group.union;
+            if (useMultiPart || unionGeometry == null) {
+                // multi part feature
+                SimpleFeature newFeature = writer.buildFeature();
+                newFeature.setDefaultGeometry(unionGeometry);
+                setAttributes(newFeature, group, dissolveField, statisticsList);
+                writer.write(newFeature);
+            } else {
+                // single part feature
+                for (int idx = 0; idx < unionGeometry.getNumGeometries(); idx++) {
+                    SimpleFeature newFeature = writer.buildFeature();
+                    newFeature.setDefaultGeometry(unionGeometry.getGeometryN(idx));
+                    setAttributes(newFeature, group, dissolveField, statisticsList);
+                    writer.write(newFeature);
+                }
+            }
+        }
+    }
+
+    private void setAttributes(SimpleFeature newFeature, DissolveGroup group,
+            String dissolveField, List<StatisticsField> statisticsList) {
+        newFeature.setAttribute(dissolveField, group.key);
+        for (StatisticsField field : statisticsList) {
+            StatisticsVisitorResult ret = group.visitors.get(field.getSrcField()).getResult();
+            if (ret == null) {
+                continue;
+            }
+            Object val = ret.getValue(field.getStatType());
+            newFeature.setAttribute(field.getTargetField(), val);
+        }
+    }
+
+    static final class DissolveGroup {
+        final Object key;
+
+        final Map<String, StatisticsVisitor> visitors;
+
+        List<Geometry> pending = new ArrayList<Geometry>();
+
+        Geometry union;
+
+        DissolveGroup(Object key, SimpleFeatureType schema, List<String> uvFields) {
+            this.key = key;
+            this.visitors = new LinkedHashMap<String, StatisticsVisitor>();
+            for (String field : uvFields) {
+                visitors.put(field, new StatisticsVisitor(schema, field));
+            }
+        }
+
+        // unions the pending geometries with the partial union
+        void reduce() {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            if (union != null) {
+                pending.add(union);
+            }
+            union = new CascadedPolygonUnion(pending).union();
+            pending = new ArrayList<Geometry>();
         }
     }
 
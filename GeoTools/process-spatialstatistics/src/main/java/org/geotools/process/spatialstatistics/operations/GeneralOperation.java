@@ -32,6 +32,7 @@ import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.storage.AsyncFeatureInserter;
 import org.geotools.process.spatialstatistics.storage.FeatureInserter;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.process.spatialstatistics.storage.MemoryFeatureInserter;
@@ -55,6 +56,10 @@ public abstract class GeneralOperation {
 
     private DataStore outputDataStore = null;
 
+    private boolean asyncWrite = false;
+
+    private int writeBatchSize = FeatureInserter.DEFAULT_FLUSH_INTERVAL;
+
     public void setOutputDataStore(DataStore outputDataStore) {
         this.outputDataStore = outputDataStore;
     }
@@ -63,6 +68,26 @@ public abstract class GeneralOperation {
         return outputDataStore;
     }
 
+    public boolean isAsyncWrite() {
+        return asyncWrite;
+    }
+
+    /**
+     * Sets whether the features are written to the output data store on a background thread, in batches committed in one transaction. If false
+     * (default), features are added on the calling thread and committed at every batch.
+     */
+    public void setAsyncWrite(boolean asyncWrite) {
+        this.asyncWrite = asyncWrite;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public void setWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+    }
+
     protected boolean isShapefileDataStore(DataStore dataStore) {
         if (dataStore instanceof DirectoryDataStore) {
             return true;
@@ -91,7 +116,14 @@ public abstract class GeneralOperation {
                 featureStore = (SimpleFeatureStore) featureSource;
             }
 
-            return new FeatureInserter(featureStore);
+            if (asyncWrite) {
+                return new AsyncFeatureInserter(featureStore, writeBatchSize,
+                        AsyncFeatureInserter.DEFAULT_QUEUE_CAPACITY);
+            }
+
+            IFeatureInserter featureInserter = new FeatureInserter(featureStore);
+            featureInserter.setFlushInterval(writeBatchSize);
+            return featureInserter;
         }
     }
 
@@ -17,6 +17,8 @@
 package org.geotools.process.spatialstatistics.operations;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +32,8 @@ import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.measure.Measure;
+import org.geotools.process.spatialstatistics.core.FacetDistanceIndex;
+import org.geotools.process.spatialstatistics.core.FacetDistanceIndex.Neighbors;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.UnitConverter;
 import org.geotools.process.spatialstatistics.enumeration.DistanceUnit;
@@ -40,9 +44,6 @@ import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.index.strtree.ItemBoundable;
-import org.locationtech.jts.index.strtree.ItemDistance;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.operation.distance.DistanceOp;
 
 import si.uom.SI;
@@ -119,32 +120,31 @@ public class NearOperation extends GeneralOperation {
             }
         }
 
-        STRtree spatialIndex = loadNearFeatures(nearFeatures, nearIdField);
+        List<Object> nearIds = new ArrayList<Object>();
+        FacetDistanceIndex spatialIndex = loadNearFeatures(nearFeatures, nearIdField, nearIds);
+        Neighbors neighbors = new Neighbors();
 
         SimpleFeatureIterator featureIter = inputFeatures.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
                 Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Object id = hasID ? feature.getAttribute(nearIdField) : feature.getID();
-                NearFeature source = new NearFeature(geometry, id);
 
                 // find nearest hub
-                NearFeature nearest = (NearFeature) spatialIndex.nearestNeighbour(
-                        geometry.getEnvelopeInternal(), source, new ItemDistance() {
-                            @Override
-                            public double distance(ItemBoundable item1, ItemBoundable item2) {
-                                NearFeature s1 = (NearFeature) item1.getItem();
-                                NearFeature s2 = (NearFeature) item2.getItem();
-                                return s1.location.distance(s2.location);
-                            }
-                        });
-
-                double minumumDistance = source.location.distance(nearest.location);
+                if (spatialIndex.nearest(geometry, 1, 0d, neighbors) == 0) {
+                    SimpleFeature newFeature = featureWriter.buildFeature();
+                    featureWriter.copyAttributes(feature, newFeature, true);
+                    featureWriter.write(newFeature);
+                    continue;
+                }
+
+                Object nearestId = nearIds.get(neighbors.getIndex(0));
+                double minumumDistance = neighbors.getDistance(0);
                 double distance = minumumDistance;
                 if (distanceUnit != DistanceUnit.Default) {
                     if (isGeographicCRS) {
-                        Coordinate[] points = DistanceOp.nearestPoints(geometry, nearest.location);
+                        Geometry nearest = spatialIndex.getGeometry(neighbors.getIndex(0));
+                        Coordinate[] points = DistanceOp.nearestPoints(geometry, nearest);
                         minumumDistance = geodetic.getDistance(points[0], points[1]);
 
                         // meter to distance unit
@@ -163,12 +163,12 @@ public class NearOperation extends GeneralOperation {
 
                 if (maxDistance < minumumDistance) {
                     if (hasID) {
-                        newFeature.setAttribute(nearIdField, nearest.id);
+                        newFeature.setAttribute(nearIdField, nearestId);
                     }
                     newFeature.setAttribute(DIST_FIELD, null);
                 } else {
                     if (hasID) {
-                        newFeature.setAttribute(nearIdField, nearest.id);
+                        newFeature.setAttribute(nearIdField, nearestId);
                     }
                     newFeature.setAttribute(DIST_FIELD, distance);
                 }
@@ -184,34 +184,21 @@ public class NearOperation extends GeneralOperation {
         return featureWriter.getFeatureCollection();
     }
 
-    private STRtree loadNearFeatures(SimpleFeatureCollection features, String idField) {
-        STRtree spatialIndex = new STRtree();
+    private FacetDistanceIndex loadNearFeatures(SimpleFeatureCollection features,
+            String idField, List<Object> ids) {
         boolean hasID = idField != null && features.getSchema().indexOf(idField) != -1;
 
+        List<Geometry> geometries = new ArrayList<Geometry>();
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Object id = hasID ? feature.getAttribute(idField) : feature.getID();
-                NearFeature nearFeature = new NearFeature(geometry, id);
-                spatialIndex.insert(geometry.getEnvelopeInternal(), nearFeature);
+                geometries.add((Geometry) feature.getDefaultGeometry());
+                ids.add(hasID ? feature.getAttribute(idField) : feature.getID());
             }
         } finally {
             featureIter.close();
         }
-        return spatialIndex;
-    }
-
-    static final class NearFeature {
-
-        public Geometry location;
-
-        public Object id;
-
-        public NearFeature(Geometry location, Object id) {
-            this.location = location;
-            this.id = id;
-        }
+        return new FacetDistanceIndex(geometries);
     }
-}
\ No newline at end of file
+}
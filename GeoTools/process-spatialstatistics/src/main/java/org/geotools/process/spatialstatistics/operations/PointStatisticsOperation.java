@@ -29,13 +29,12 @@ import javax.measure.quantity.Length;
 
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
-import org.geotools.api.filter.Filter;
 import org.geotools.api.parameter.InvalidParameterValueException;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.process.spatialstatistics.core.DataUtils;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.PointInPolygonAggregator;
 import org.geotools.process.spatialstatistics.core.StatisticsField;
 import org.geotools.process.spatialstatistics.core.StatisticsVisitor;
 import org.geotools.process.spatialstatistics.core.StatisticsVisitorResult;
@@ -71,6 +70,19 @@ public class PointStatisticsOperation extends GeneralOperation {
 
     private int quadrantSegments = 12; // JTS default = 8
 
+    private int parallelism = 1;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to locate the points. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public double getBufferDistance() {
         return bufferDistance;
     }
@@ -160,23 +172,16 @@ public class PointStatisticsOperation extends GeneralOperation {
             }
         }
 
-        // use SpatialIndexFeatureCollection
-        points = DataUtils.toSpatialIndexFeatureCollection(points);
-
-        // prepare transactional feature store
-        final String the_geom = points.getSchema().getGeometryDescriptor().getLocalName();
-        IFeatureInserter featureWriter = getFeatureWriter(schema);
-
-        SimpleFeatureIterator featureIter = polygons.features();
+        // read the points once, locating each point in the indexed (buffered) polygons
+        List<Geometry> geometries = new ArrayList<Geometry>();
+        SimpleFeatureIterator polygonIter = polygons.features();
         try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+            while (polygonIter.hasNext()) {
+                Geometry geometry = (Geometry) polygonIter.next().getDefaultGeometry();
                 if (geometry == null || geometry.isEmpty()) {
                     continue;
                 }
 
-                MultipleStatVisitor visitor = new MultipleStatVisitor(points.getSchema());
                 if (radius > 0) {
                     if (distanceUnit != DistanceUnit.Default && isGeographicCRS) {
                         geometry = geodetic.buffer(geometry, radius);
@@ -184,26 +189,54 @@ public class PointStatisticsOperation extends GeneralOperation {
                         geometry = geometry.buffer(radius, quadrantSegments);
                     }
                 }
+                geometries.add(geometry);
+            }
+        } finally {
+            polygonIter.close();
+        }
 
-                Filter filter = getIntersectsFilter(the_geom, geometry);
-
-                int featureCount = 0;
-                if (statFields.size() > 0) {
-                    SimpleFeatureIterator pointIter = null;
-                    try {
-                        pointIter = points.subCollection(filter).features();
-                        while (pointIter.hasNext()) {
-                            SimpleFeature pointFeature = pointIter.next();
-                            featureCount++;
-                            for (String srcField : uvFields) {
-                                visitor.visit(srcField, pointFeature);
-                            }
+        PointInPolygonAggregator aggregator = new PointInPolygonAggregator(geometries);
+        aggregator.setParallelism(parallelism);
+        geometries.clear();
+
+        final MultipleStatVisitor[] visitors = new MultipleStatVisitor[aggregator.size()];
+        final int[] featureCounts = new int[aggregator.size()];
+        if (statFields.size() > 0) {
+            SimpleFeatureIterator pointIter = points.features();
+            try {
+                while (pointIter.hasNext()) {
+                    SimpleFeature pointFeature = pointIter.next();
+                    Geometry point = (Geometry) pointFeature.getDefaultGeometry();
+                    for (int index : aggregator.locate(point)) {
+                        if (visitors[index] == null) {
+                            visitors[index] = new MultipleStatVisitor(points.getSchema());
+                        }
+                        featureCounts[index]++;
+                        for (String srcField : uvFields) {
+                            visitors[index].visit(srcField, pointFeature);
                         }
-                    } finally {
-                        pointIter.close();
                     }
-                } else {
-                    featureCount = points.subCollection(filter).size();
+                }
+            } finally {
+                pointIter.close();
+            }
+        } else {
+            aggregator.aggregate(points, null);
+            for (int index = 0; index < featureCounts.length; index++) {
+                featureCounts[index] = (int) aggregator.getCount(index);
+            }
+        }
+
+        IFeatureInserter featureWriter = getFeatureWriter(schema);
+
+        SimpleFeatureIterator featureIter = polygons.features();
+        try {
+            int index = 0;
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
                 }
 
                 // create & insert feature
@@ -211,10 +244,11 @@ public class PointStatisticsOperation extends GeneralOperation {
                 featureWriter.copyAttributes(feature, newFeature, true);
 
                 if (hasCountField) {
-                    newFeature.setAttribute(cntField, featureCount);
+                    newFeature.setAttribute(cntField, featureCounts[index]);
                 }
 
-                if (visitor.getResult().size() > 0) {
+                MultipleStatVisitor visitor = visitors[index];
+                if (visitor != null && visitor.getResult().size() > 0) {
                     HashMap<Object, StatisticsVisitor> stat = visitor.getResult();
                     for (StatisticsField field : statFields) {
                         StatisticsVisitorResult ret = stat.get(field.getSrcField()).getResult();
@@ -224,6 +258,7 @@ public class PointStatisticsOperation extends GeneralOperation {
                 }
 
                 featureWriter.write(newFeature);
+                index++;
             }
         } catch (Exception e) {
             featureWriter.rollback(e);
@@ -17,18 +17,19 @@
 package org.geotools.process.spatialstatistics.operations;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
-import org.geotools.api.filter.Filter;
 import org.geotools.api.filter.expression.Expression;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.process.spatialstatistics.core.DataUtils;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.PointInPolygonAggregator;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.process.spatialstatistics.transformation.ReprojectFeatureCollection;
 import org.geotools.referencing.CRS;
@@ -47,10 +48,23 @@ public class PointsInPolygonOperation extends GeneralOperation {
 
     public static final String AGG_FIELD = "val";
 
+    private int parallelism = 1;
+
     public PointsInPolygonOperation() {
 
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to locate the points. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection polygonFeatures,
             SimpleFeatureCollection pointFeatures) throws IOException {
         return execute(polygonFeatures, pointFeatures, null);
@@ -66,17 +80,33 @@ public class PointsInPolygonOperation extends GeneralOperation {
             LOGGER.log(Level.WARNING, "reprojecting features");
         }
 
-        // use SpatialIndexFeatureCollection
-        pointFeatures = DataUtils.toSpatialIndexFeatureCollection(pointFeatures);
+        // read the points once, locating each point in the indexed polygons
+        List<Geometry> polygons = new ArrayList<Geometry>();
+        SimpleFeatureIterator polygonIter = polygonFeatures.features();
+        try {
+            while (polygonIter.hasNext()) {
+                Geometry geometry = (Geometry) polygonIter.next().getDefaultGeometry();
+                if (geometry != null && !geometry.isEmpty()) {
+                    polygons.add(geometry);
+                }
+            }
+        } finally {
+            polygonIter.close();
+        }
+
+        PointInPolygonAggregator aggregator = new PointInPolygonAggregator(polygons);
+        aggregator.setParallelism(parallelism);
+        aggregator.aggregate(pointFeatures, weight);
+        polygons.clear();
 
         SimpleFeatureType schema = polygonFeatures.getSchema();
         schema = FeatureTypes.add(schema, AGG_FIELD, Double.class);
 
-        final String the_geom = pointFeatures.getSchema().getGeometryDescriptor().getLocalName();
         IFeatureInserter featureWriter = getFeatureWriter(schema);
 
         SimpleFeatureIterator featureIter = polygonFeatures.features();
         try {
+            int index = 0;
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
                 Geometry geometry = (Geometry) feature.getDefaultGeometry();
@@ -84,27 +114,9 @@ public class PointsInPolygonOperation extends GeneralOperation {
                     continue;
                 }
 
-                Filter filter = getIntersectsFilter(the_geom, geometry);
-
-                double aggregated = 0;
-                if (weight == null) {
-                    aggregated = pointFeatures.subCollection(filter).size();
-                } else {
-                    SimpleFeatureIterator pointIter = null;
-                    try {
-                        pointIter = pointFeatures.subCollection(filter).features();
-                        while (pointIter.hasNext()) {
-                            SimpleFeature pointFeature = pointIter.next();
-                            Double evaluated = weight.evaluate(pointFeature, Double.class);
-                            if (evaluated == null || evaluated.isNaN() || evaluated.isInfinite()) {
-                                continue;
-                            }
-                            aggregated += evaluated;
-                        }
-                    } finally {
-                        pointIter.close();
-                    }
-                }
+                double aggregated = weight == null ? aggregator.getCount(index)
+                        : aggregator.getSum(index);
+                index++;
 
                 // create & insert feature
                 SimpleFeature newFeature = featureWriter.buildFeature();
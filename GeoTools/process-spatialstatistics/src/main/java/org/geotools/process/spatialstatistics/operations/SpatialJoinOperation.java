@@ -18,6 +18,7 @@ package org.geotools.process.spatialstatistics.operations;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -31,7 +32,12 @@ import org.geotools.api.feature.type.GeometryDescriptor;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.measure.Measure;
+import org.geotools.process.spatialstatistics.core.FacetDistanceIndex;
+import org.geotools.process.spatialstatistics.core.FacetDistanceIndex.Neighbors;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.process.spatialstatistics.core.UnitConverter;
 import org.geotools.process.spatialstatistics.enumeration.DistanceUnit;
 import org.geotools.process.spatialstatistics.enumeration.SpatialJoinType;
@@ -42,15 +48,12 @@ import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.index.strtree.ItemBoundable;
-import org.locationtech.jts.index.strtree.ItemDistance;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.operation.distance.DistanceOp;
 
 import si.uom.SI;
 
 /**
- * SpatialJoin : One by One
+ * SpatialJoin : One by One, or the k nearest join features of each input feature
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -59,8 +62,27 @@ import si.uom.SI;
 public class SpatialJoinOperation extends GeneralOperation {
     protected static final Logger LOGGER = Logging.getLogger(SpatialJoinOperation.class);
 
+    protected static final String DIST_FIELD = "dist";
+
+    protected static final String RANK_FIELD = "rank";
+
+    static final int BLOCK_SIZE = 4096;
+
     private GeodeticBuilder geodetic;
 
+    private int parallelism = 1;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to search the neighbors. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures,
             SimpleFeatureCollection joinFeatures, SpatialJoinType joinType) throws IOException {
         return execute(inputFeatures, joinFeatures, joinType, 0.0d);
@@ -75,8 +97,30 @@ public class SpatialJoinOperation extends GeneralOperation {
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures,
             SimpleFeatureCollection joinFeatures, SpatialJoinType joinType, double searchRadius,
             DistanceUnit radiusUnit) throws IOException {
+        return join(inputFeatures, joinFeatures, joinType, 1, searchRadius, radiusUnit, false);
+    }
+
+    /**
+     * Joins the k nearest join features within the search radius to each input feature. An input feature is written once for each of its
+     * neighbors, with the distance and the rank (1 = nearest) of the neighbor.
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures,
+            SimpleFeatureCollection joinFeatures, SpatialJoinType joinType, int neighbors,
+            double searchRadius, DistanceUnit radiusUnit) throws IOException {
+        return join(inputFeatures, joinFeatures, joinType, Math.max(1, neighbors), searchRadius,
+                radiusUnit, true);
+    }
+
+    private SimpleFeatureCollection join(SimpleFeatureCollection inputFeatures,
+            SimpleFeatureCollection joinFeatures, SpatialJoinType joinType, final int neighbors,
+            double searchRadius, DistanceUnit radiusUnit, boolean nearFields)
+            throws IOException {
         String typeName = inputFeatures.getSchema().getTypeName();
         SimpleFeatureType schema = FeatureTypes.build(inputFeatures.getSchema(), typeName);
+        if (nearFields) {
+            schema = FeatureTypes.add(schema, DIST_FIELD, Double.class, 38);
+            schema = FeatureTypes.add(schema, RANK_FIELD, Integer.class);
+        }
 
         List<String> propertyList = new ArrayList<String>();
         SimpleFeatureType joinSchema = joinFeatures.getSchema();
@@ -105,7 +149,7 @@ public class SpatialJoinOperation extends GeneralOperation {
         if (isGeographicCRS) {
             geodetic = new GeodeticBuilder(crsT);
         }
-        Unit<Length> targetUnit = UnitConverter.getLengthUnit(crsT);
+        final Unit<Length> targetUnit = UnitConverter.getLengthUnit(crsT);
 
         // convert distance unit
         double maxRadius = searchRadius;
@@ -117,61 +161,93 @@ public class SpatialJoinOperation extends GeneralOperation {
             }
         }
 
-        STRtree spatialIndex = loadFeatures(joinFeatures);
+        // geodetic distances: the nearest features by map distance, checked by geodetic distance
+        final boolean geodeticDistance = radiusUnit != DistanceUnit.Default && isGeographicCRS;
+        final double indexRadius = geodeticDistance ? 0d : maxRadius;
+
+        final List<SimpleFeature> joinList = new ArrayList<SimpleFeature>();
+        final FacetDistanceIndex spatialIndex = loadFeatures(joinFeatures, joinList);
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(schema);
 
+        final SimpleFeature[] block = new SimpleFeature[BLOCK_SIZE];
+        final int[][] matches = new int[BLOCK_SIZE][];
+        final double[][] distances = new double[BLOCK_SIZE][];
+
         SimpleFeatureIterator featureIter = inputFeatures.features();
         try {
             while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry source = (Geometry) feature.getDefaultGeometry();
-
-                // find nearest features
-                SimpleFeature joinFeature = (SimpleFeature) spatialIndex.nearestNeighbour(
-                        source.getEnvelopeInternal(), feature, new ItemDistance() {
-                            @Override
-                            public double distance(ItemBoundable item1, ItemBoundable item2) {
-                                SimpleFeature s1 = (SimpleFeature) item1.getItem();
-                                SimpleFeature s2 = (SimpleFeature) item2.getItem();
-
-                                Geometry g1 = (Geometry) s1.getDefaultGeometry();
-                                Geometry g2 = (Geometry) s2.getDefaultGeometry();
-                                return g1.distance(g2);
-                            }
-                        });
+                // read a block of input features and search their neighbors in parallel
+                int size = 0;
+                while (size < BLOCK_SIZE && featureIter.hasNext()) {
+                    block[size++] = featureIter.next();
+                }
 
-                if (maxRadius > 0) {
-                    Geometry target = (Geometry) joinFeature.getDefaultGeometry();
+                ParallelRange.execute(parallelism, size, 16, new RangeTask() {
+                    @Override
+                    public void execute(int start, int end) {
+                        Neighbors found = new Neighbors();
+                        for (int i = start; i < end; i++) {
+                            Geometry source = (Geometry) block[i].getDefaultGeometry();
+                            int count = spatialIndex.nearest(source, neighbors, indexRadius,
+                                    found);
 
-                    double distance = Double.MAX_VALUE;
-                    if (radiusUnit != DistanceUnit.Default && isGeographicCRS) {
-                        Coordinate[] points = DistanceOp.nearestPoints(source, target);
-                        distance = geodetic.getDistance(points[0], points[1]);
-                    } else {
-                        distance = source.distance(target);
+                            matches[i] = new int[count];
+                            distances[i] = new double[count];
+                            for (int n = 0; n < count; n++) {
+                                matches[i][n] = found.getIndex(n);
+                                distances[i][n] = found.getDistance(n);
+                            }
+                        }
                     }
+                });
 
-                    if (maxRadius < distance) {
-                        joinFeature = null;
+                for (int i = 0; i < size; i++) {
+                    SimpleFeature feature = block[i];
+                    int[] indexes = matches[i];
+                    if (geodeticDistance) {
+                        Geometry source = (Geometry) feature.getDefaultGeometry();
+                        int count = toGeodetic(source, spatialIndex, maxRadius, indexes,
+                                distances[i]);
+                        indexes = Arrays.copyOf(indexes, count);
                     }
-                }
 
-                // create & insert feature
-                if (joinType == SpatialJoinType.OnlyMatchingRecord && joinFeature == null) {
-                    continue;
-                }
+                    // create & insert feature
+                    if (indexes.length == 0 && joinType == SpatialJoinType.KeepAllRecord) {
+                        SimpleFeature newFeature = featureWriter.buildFeature();
+                        featureWriter.copyAttributes(feature, newFeature, true);
+                        featureWriter.write(newFeature);
+                    }
+
+                    for (int n = 0; n < indexes.length; n++) {
+                        SimpleFeature joinFeature = joinList.get(indexes[n]);
 
-                SimpleFeature newFeature = featureWriter.buildFeature();
-                featureWriter.copyAttributes(feature, newFeature, true);
+                        SimpleFeature newFeature = featureWriter.buildFeature();
+                        featureWriter.copyAttributes(feature, newFeature, true);
+                        for (String name : propertyList) {
+                            newFeature.setAttribute(name, joinFeature.getAttribute(name));
+                        }
 
-                if (joinFeature != null) {
-                    for (String name : propertyList) {
-                        newFeature.setAttribute(name, joinFeature.getAttribute(name));
+                        if (nearFields) {
+                            double distance = distances[i][n];
+                            if (geodeticDistance) {
+                                distance = UnitConverter.convertDistance(
+                                        new Measure(distance, SI.METRE), radiusUnit);
+                            } else if (radiusUnit != DistanceUnit.Default) {
+                                distance = UnitConverter.convertDistance(
+                                        new Measure(distance, targetUnit), radiusUnit);
+                            }
+                            newFeature.setAttribute(DIST_FIELD, distance);
+                            newFeature.setAttribute(RANK_FIELD, n + 1);
+                        }
+                        featureWriter.write(newFeature);
                     }
+
+                    block[i] = null;
+                    matches[i] = null;
+                    distances[i] = null;
                 }
-                featureWriter.write(newFeature);
             }
         } catch (Exception e) {
             featureWriter.rollback(e);
@@ -182,18 +258,40 @@ public class SpatialJoinOperation extends GeneralOperation {
         return featureWriter.getFeatureCollection();
     }
 
-    private STRtree loadFeatures(SimpleFeatureCollection joinFeatures) {
-        STRtree spatialIndex = new STRtree();
+    // replaces the map distances by geodetic distances (meter), removes the neighbors beyond the
+    // radius and sorts the others
+    private int toGeodetic(Geometry source, FacetDistanceIndex spatialIndex, double maxRadius,
+            int[] indexes, double[] values) {
+        Neighbors sorted = new Neighbors();
+        for (int n = 0; n < indexes.length; n++) {
+            Geometry target = spatialIndex.getGeometry(indexes[n]);
+            Coordinate[] points = DistanceOp.nearestPoints(source, target);
+            double distance = geodetic.getDistance(points[0], points[1]);
+            if (maxRadius <= 0 || distance <= maxRadius) {
+                sorted.offer(indexes[n], distance, indexes.length);
+            }
+        }
+
+        for (int n = 0; n < sorted.size(); n++) {
+            indexes[n] = sorted.getIndex(n);
+            values[n] = sorted.getDistance(n);
+        }
+        return sorted.size();
+    }
+
+    private FacetDistanceIndex loadFeatures(SimpleFeatureCollection joinFeatures,
+            List<SimpleFeature> joinList) {
+        List<Geometry> geometries = new ArrayList<Geometry>();
         SimpleFeatureIterator featureIter = joinFeatures.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                spatialIndex.insert(geometry.getEnvelopeInternal(), feature);
+                joinList.add(feature);
+                geometries.add((Geometry) feature.getDefaultGeometry());
             }
         } finally {
             featureIter.close();
         }
-        return spatialIndex;
+        return new FacetDistanceIndex(geometries);
     }
 }
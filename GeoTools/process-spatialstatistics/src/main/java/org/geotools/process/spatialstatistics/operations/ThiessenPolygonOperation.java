@@ -30,18 +30,15 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.VoronoiCellBuilder;
 import org.geotools.process.spatialstatistics.enumeration.ThiessenAttributeMode;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
-import org.locationtech.jts.index.strtree.ItemBoundable;
-import org.locationtech.jts.index.strtree.ItemDistance;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.triangulate.VoronoiDiagramBuilder;
 
 /**
@@ -64,6 +61,10 @@ public class ThiessenPolygonOperation extends GeneralOperation {
 
     private ThiessenAttributeMode attributeMode = ThiessenAttributeMode.OnlyFID;
 
+    private int tileSize = 0;
+
+    private int parallelism = 1;
+
     public void setAttributeMode(ThiessenAttributeMode attributeMode) {
         this.attributeMode = attributeMode;
     }
@@ -76,6 +77,28 @@ public class ThiessenPolygonOperation extends GeneralOperation {
         this.clipArea = clipArea;
     }
 
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the number of points triangulated together. 0 or negative = all points in a single triangulation(default).
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to build the tiles. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection pointFeatures)
             throws IOException {
         SimpleFeatureType pointSchema = pointFeatures.getSchema();
@@ -96,23 +119,18 @@ public class ThiessenPolygonOperation extends GeneralOperation {
         }
 
         // fast test
-        PreparedGeometry praparedGeom = PreparedGeometryFactory.prepare(clipPolygon);
+        PreparedGeometry praparedGeom = clipArea == null ? null
+                : PreparedGeometryFactory.prepare(clipPolygon);
 
-        // create voronoi diagram
-        VoronoiDiagramBuilder vdBuilder = new VoronoiDiagramBuilder();
-        vdBuilder.setClipEnvelope(clipEnvelope);
-        vdBuilder.setSites(coordinateList);
-        vdBuilder.setTolerance(proximalTolerance);
+        // build the cell of each point, in the order of the point features
+        VoronoiCellBuilder cellBuilder = new VoronoiCellBuilder(coordinateList, clipEnvelope);
+        cellBuilder.setTolerance(proximalTolerance);
+        cellBuilder.setTileSize(tileSize);
+        cellBuilder.setParallelism(parallelism);
 
-        Geometry thiessenGeoms = vdBuilder.getDiagram(gf);
+        Geometry[] cells = cellBuilder.build(gf);
         coordinateList.clear();
 
-        STRtree spatialIndex = new STRtree();
-        for (int k = 0; k < thiessenGeoms.getNumGeometries(); k++) {
-            Geometry geometry = thiessenGeoms.getGeometryN(k);
-            spatialIndex.insert(geometry.getEnvelopeInternal(), geometry);
-        }
-
         SimpleFeatureType featureType = null;
         switch (attributeMode) {
         case OnlyFID:
@@ -131,25 +149,21 @@ public class ThiessenPolygonOperation extends GeneralOperation {
         SimpleFeatureIterator featureIter = pointFeatures.features();
         try {
             int fid = 0;
+            int index = 0;
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
                 Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Point centroid = geometry.getCentroid();
-
-                // get polygon
-                Geometry voronoiPolygon = (Geometry) spatialIndex.nearestNeighbour(
-                        geometry.getEnvelopeInternal(), geometry, new ItemDistance() {
-                            @Override
-                            public double distance(ItemBoundable item1, ItemBoundable item2) {
-                                Geometry s1 = (Geometry) item1.getItem();
-                                Geometry s2 = (Geometry) item2.getItem();
-                                return s1.distance(s2);
-                            }
-                        });
-
-                if (voronoiPolygon.contains(centroid)) {
-                    Geometry finalVoronoi = voronoiPolygon;
+                Geometry voronoiPolygon = cells[index++];
+
+                if (voronoiPolygon == null || !voronoiPolygon.contains(geometry.getCentroid())) {
+                    LOGGER.log(Level.WARNING, "duplicated point feature!");
+                    continue;
+                }
 
+                Geometry finalVoronoi = voronoiPolygon;
+
+                // the cells are already clipped to the clip envelope
+                if (praparedGeom != null) {
                     if (praparedGeom.disjoint(voronoiPolygon)) {
                         continue;
                     } else if (!praparedGeom.contains(voronoiPolygon)) {
@@ -158,19 +172,17 @@ public class ThiessenPolygonOperation extends GeneralOperation {
                             continue;
                         }
                     }
+                }
 
-                    // create feature
-                    SimpleFeature newFeature = featureWriter.buildFeature();
-                    if (attributeMode == ThiessenAttributeMode.All) {
-                        featureWriter.copyAttributes(feature, newFeature, false);
-                    }
-
-                    newFeature.setAttribute(FID_FIELD, fid++);
-                    newFeature.setDefaultGeometry(finalVoronoi);
-                    featureWriter.write(newFeature);
-                } else {
-                    LOGGER.log(Level.WARNING, "duplicated point feature!");
+                // create feature
+                SimpleFeature newFeature = featureWriter.buildFeature();
+                if (attributeMode == ThiessenAttributeMode.All) {
+                    featureWriter.copyAttributes(feature, newFeature, false);
                 }
+
+                newFeature.setAttribute(FID_FIELD, fid++);
+                newFeature.setDefaultGeometry(finalVoronoi);
+                featureWriter.write(newFeature);
             }
         } catch (IOException e) {
             featureWriter.rollback(e);
@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.pattern;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,7 +35,9 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 
 /**
- * Abstract Binning Visitor.
+ * Abstract Binning Visitor.<br>
+ * The values of the cells are accumulated in a {@link BinStore}, which stays sparse while few cells are occupied, and the occupied cells are
+ * returned in row major order.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -54,18 +57,10 @@ public abstract class AbstractBinningVisitor {
 
     protected int rows;
 
-    protected Double[][] gridValues;
+    protected BinStore gridValues;
 
     protected Geometry binTemplate;
 
-    protected int minCol = Integer.MAX_VALUE;
-
-    protected int minRow = Integer.MAX_VALUE;
-
-    protected int maxCol = Integer.MIN_VALUE;
-
-    protected int maxRow = Integer.MIN_VALUE;
-
     protected double minX;
 
     protected double minY;
@@ -78,6 +73,14 @@ public abstract class AbstractBinningVisitor {
 
     protected void visit(SimpleFeatureCollection features, Expression weight,
             GeometryCoordinateSequenceTransformer transformer) {
+        visit(features, weight, transformer, new AbstractBinningVisitor[] { this });
+    }
+
+    /**
+     * Bins each feature into all the visitors with one scan of the features.
+     */
+    static void visit(SimpleFeatureCollection features, Expression weight,
+            GeometryCoordinateSequenceTransformer transformer, AbstractBinningVisitor[] visitors) {
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
@@ -94,14 +97,72 @@ public abstract class AbstractBinningVisitor {
                     geometry = transform(transformer, geometry);
                 }
 
-                this.visit(geometry, value);
+                for (AbstractBinningVisitor visitor : visitors) {
+                    visitor.visit(geometry, value);
+                }
             }
         } finally {
             featureIter.close();
         }
     }
 
-    public abstract Iterator<Bin> getBins(GeometryCoordinateSequenceTransformer transformer);
+    /**
+     * Adds the value to the cell, cells outside the grid are ignored.
+     */
+    protected void addValue(int col, int row, double value) {
+        if (col < 0 || row < 0 || col >= columns || row >= rows) {
+            return;
+        }
+        gridValues.add(col, row, value);
+    }
+
+    /**
+     * Creates the geometry of the cell from the bin template.
+     */
+    protected abstract Geometry createBinGeometry(int col, int row);
+
+    public Iterator<Bin> getBins(final GeometryCoordinateSequenceTransformer transformer) {
+        // only the occupied cells, or all cells with NULL as zero
+        final long[] keys = getOnlyValidGrid() ? gridValues.getOccupiedKeys() : null;
+        final long count = keys == null ? (long) columns * rows : keys.length;
+
+        return new Iterator<Bin>() {
+            int featureID = 0;
+
+            long index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Bin next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("hasNext() returned false!");
+                }
+
+                final long key = keys == null ? index : keys[(int) index];
+                index++;
+
+                final int col = gridValues.getColumn(key);
+                final int row = gridValues.getRow(key);
+
+                Geometry grid = createBinGeometry(col, row);
+                if (transformer != null) {
+                    // reproject grid geometry to sourceCRS
+                    grid = transform(transformer, grid);
+                }
+
+                return new Bin(featureID++, grid, Double.valueOf(gridValues.get(col, row)));
+            }
+
+            @Override
+            public void remove() {
+                // do nothing
+            }
+        };
+    }
 
     public Boolean getOnlyValidGrid() {
         return onlyValidGrid;
@@ -111,7 +172,8 @@ public abstract class AbstractBinningVisitor {
         this.onlyValidGrid = onlyValidGrid;
     }
 
-    protected Geometry transform(GeometryCoordinateSequenceTransformer transformer, Geometry source) {
+    protected static Geometry transform(GeometryCoordinateSequenceTransformer transformer,
+            Geometry source) {
         try {
             return transformer.transform(source);
         } catch (TransformException e) {
@@ -0,0 +1,238 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.pattern;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Accumulated values of the cells of a binning grid.<br>
+ * A cell is addressed by the long key row * columns + column, so the keys sort in row major order. The store starts as an open addressing hash map
+ * of primitive keys and values, and switches to a dense array with an occupancy bit set once enough cells are occupied for the array to be the
+ * smaller of the two. Small grids are dense from the start.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class BinStore {
+
+    static final int DENSE_CELL_COUNT = 1 << 16;
+
+    static final long EMPTY = -1L;
+
+    private final int columns;
+
+    private final int rows;
+
+    private final long cellCount;
+
+    private int size = 0;
+
+    // sparse
+    private long[] keys;
+
+    private double[] values;
+
+    private int mask;
+
+    // dense
+    private double[] denseValues;
+
+    private BitSet occupied;
+
+    public BinStore(int columns, int rows) {
+        this.columns = Math.max(0, columns);
+        this.rows = Math.max(0, rows);
+        this.cellCount = (long) this.columns * this.rows;
+
+        if (cellCount <= DENSE_CELL_COUNT) {
+            toDense();
+        } else {
+            keys = new long[64];
+            values = new double[64];
+            Arrays.fill(keys, EMPTY);
+            mask = keys.length - 1;
+        }
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Number of occupied cells
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isDense() {
+        return denseValues != null;
+    }
+
+    public long getKey(int column, int row) {
+        return (long) row * columns + column;
+    }
+
+    public int getColumn(long key) {
+        return (int) (key % columns);
+    }
+
+    public int getRow(long key) {
+        return (int) (key / columns);
+    }
+
+    /**
+     * Adds the value to the cell, the cell must be inside the grid.
+     */
+    public void add(int column, int row, double value) {
+        final long key = getKey(column, row);
+        if (denseValues != null) {
+            final int index = (int) key;
+            if (occupied.get(index)) {
+                denseValues[index] += value;
+            } else {
+                occupied.set(index);
+                denseValues[index] = value;
+                size++;
+            }
+            return;
+        }
+
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] += value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        // a dense array takes 8 bytes per cell, the map about 32 bytes per occupied cell
+        if ((long) size * 4 > cellCount && cellCount < Integer.MAX_VALUE - 8) {
+            toDense();
+        } else if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    public boolean contains(int column, int row) {
+        final long key = getKey(column, row);
+        if (denseValues != null) {
+            return occupied.get((int) key);
+        }
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns the value of the cell, or 0 if the cell is not occupied.
+     */
+    public double get(int column, int row) {
+        final long key = getKey(column, row);
+        if (denseValues != null) {
+            return denseValues[(int) key];
+        }
+        final int slot = find(key);
+        return slot < 0 ? 0d : values[slot];
+    }
+
+    public double get(long key) {
+        return get(getColumn(key), getRow(key));
+    }
+
+    /**
+     * Returns the keys of the occupied cells in row major order.
+     */
+    public long[] getOccupiedKeys() {
+        long[] result = new long[size];
+        int k = 0;
+        if (denseValues != null) {
+            for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+                result[k++] = i;
+            }
+        } else {
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    result[k++] = key;
+                }
+            }
+            Arrays.sort(result);
+        }
+        return result;
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final double[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new double[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void toDense() {
+        denseValues = new double[(int) cellCount];
+        occupied = new BitSet((int) cellCount);
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    denseValues[(int) keys[i]] = values[i];
+                    occupied.set((int) keys[i]);
+                }
+            }
+            keys = null;
+            values = null;
+        }
+    }
+}
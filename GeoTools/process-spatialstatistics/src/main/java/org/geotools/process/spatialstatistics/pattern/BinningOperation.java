@@ -16,18 +16,30 @@
  */
 package org.geotools.process.spatialstatistics.pattern;
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.filter.expression.Expression;
 import org.geotools.api.referencing.FactoryException;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.api.referencing.operation.MathTransform;
 import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.process.spatialstatistics.pattern.AbstractBinningVisitor.Bin;
+import org.geotools.process.spatialstatistics.pattern.BinningPyramid.BinningType;
+import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
 
 /**
  * Abstract Binning Operation.
@@ -56,6 +68,85 @@ public abstract class BinningOperation extends GeneralOperation {
         this.onlyValidGrid = onlyValidGrid;
     }
 
+    /**
+     * Bins the features at all cell sizes with one scan. The returned pyramid can be cached and passed to
+     * {@link #execute(BinningPyramid, double)} for each size.
+     */
+    public BinningPyramid createPyramid(BinningType type, SimpleFeatureCollection features,
+            Expression weight, ReferencedEnvelope bbox, double[] sizes) {
+        if (bbox == null) {
+            throw new NullPointerException("bbox parameter is null");
+        }
+
+        // check crs
+        CoordinateReferenceSystem sourceCRS = features.getSchema().getCoordinateReferenceSystem();
+        CoordinateReferenceSystem targetCRS = bbox.getCoordinateReferenceSystem();
+        MathTransform transform = findMathTransform(sourceCRS, targetCRS, true);
+
+        GeometryCoordinateSequenceTransformer transformer = null;
+        if (transform != null) {
+            transformer = new GeometryCoordinateSequenceTransformer();
+            transformer.setMathTransform(transform);
+            transformer.setCoordinateReferenceSystem(targetCRS);
+        }
+
+        BinningPyramid pyramid = new BinningPyramid(type, bbox, sizes);
+        pyramid.setOnlyValidGrid(getOnlyValidGrid());
+        pyramid.visit(features, weight, transformer);
+
+        return pyramid;
+    }
+
+    /**
+     * Writes the bins of the level of the pyramid nearest to the size, without reading the features again.
+     */
+    public SimpleFeatureCollection execute(BinningPyramid pyramid, double size) throws IOException {
+        CoordinateReferenceSystem sourceCRS = pyramid.getSourceCRS();
+        CoordinateReferenceSystem targetCRS = pyramid.getExtent().getCoordinateReferenceSystem();
+        MathTransform transform = findMathTransform(sourceCRS, targetCRS, true);
+
+        // create feature type
+        String typeName = pyramid.getType() == BinningType.Rectangular
+                ? RectangularBinningOperation.TYPE_NAME
+                : HexagonalBinningOperation.TYPE_NAME;
+        SimpleFeatureType schema = FeatureTypes.getDefaultType(typeName, Polygon.class, sourceCRS);
+        schema = FeatureTypes.add(schema, UID, Integer.class, 19);
+        schema = FeatureTypes.add(schema, AGG_FIELD, Double.class, 38);
+
+        // write features
+        IFeatureInserter featureWriter = getFeatureWriter(schema);
+        try {
+            GeometryCoordinateSequenceTransformer transformer = null;
+            if (transform != null) {
+                transformer = new GeometryCoordinateSequenceTransformer();
+                transformer.setMathTransform(transform.inverse());
+                transformer.setCoordinateReferenceSystem(sourceCRS);
+            }
+
+            Iterator<Bin> iter = pyramid.getBins(size, transformer);
+            while (iter.hasNext()) {
+                Bin bin = iter.next();
+
+                Geometry grid = bin.geometry;
+                grid.setUserData(targetCRS);
+
+                // create feature and set geometry
+                SimpleFeature newFeature = featureWriter.buildFeature();
+                newFeature.setAttribute(UID, bin.featureID);
+                newFeature.setAttribute(AGG_FIELD, bin.value);
+                newFeature.setDefaultGeometry(grid);
+
+                featureWriter.write(newFeature);
+            }
+        } catch (Exception e) {
+            featureWriter.rollback(e);
+        } finally {
+            featureWriter.close();
+        }
+
+        return featureWriter.getFeatureCollection();
+    }
+
     protected MathTransform findMathTransform(CoordinateReferenceSystem sourceCRS,
             CoordinateReferenceSystem targetCRS, boolean lenient) {
         if (targetCRS == null || CRS.equalsIgnoreMetadata(sourceCRS, targetCRS)) {
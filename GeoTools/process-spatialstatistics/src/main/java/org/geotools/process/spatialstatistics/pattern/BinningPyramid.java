@@ -0,0 +1,250 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.pattern;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import org.geotools.api.filter.expression.Expression;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.pattern.AbstractBinningVisitor.Bin;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Binning of the same features at several cell sizes with one scan of the features.<br>
+ * Rectangular levels whose size is a power of two multiple of a smaller level are aggregated bottom-up from that level, the cells of both levels
+ * share the lower left origin of the extent so every cell nests in exactly one coarser cell. A level is only aggregated from a finer level whose
+ * grid covers all of its cells. The other levels, and all hexagonal levels whose cells do not nest, are binned during the scan. The pyramid keeps
+ * the bins of all levels, so it can be cached and later requests of any of its sizes are answered without reading the features again.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class BinningPyramid {
+    protected static final Logger LOGGER = Logging.getLogger(BinningPyramid.class);
+
+    public enum BinningType {
+        Rectangular, Hexagonal
+    }
+
+    private final BinningType type;
+
+    private final ReferencedEnvelope extent;
+
+    // ascending
+    private final double[] sizes;
+
+    private final AbstractBinningVisitor[] visitors;
+
+    // finer level each level is aggregated from, or -1 if binned during the scan
+    private final int[] sources;
+
+    private CoordinateReferenceSystem sourceCRS;
+
+    private boolean visited = false;
+
+    /**
+     * @param type rectangular or hexagonal bins
+     * @param bbox extent of the bins
+     * @param sizes cell sizes of the levels: the width and height of a rectangular cell, the size (center to vertex) of a hexagon
+     */
+    public BinningPyramid(BinningType type, ReferencedEnvelope bbox, double[] sizes) {
+        if (sizes == null || sizes.length == 0) {
+            throw new IllegalArgumentException("sizes parameter is empty");
+        }
+
+        this.type = type;
+        this.extent = bbox;
+        this.sizes = sizes.clone();
+        Arrays.sort(this.sizes);
+
+        final int levels = this.sizes.length;
+        this.visitors = new AbstractBinningVisitor[levels];
+        this.sources = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            final double size = this.sizes[level];
+            if (size <= 0 || Double.isNaN(size) || Double.isInfinite(size)) {
+                throw new IllegalArgumentException("Invalid cell size: " + size);
+            }
+
+            sources[level] = -1;
+            if (type == BinningType.Rectangular) {
+                visitors[level] = new RectangularBinningVisitor(bbox, size, size);
+
+                // the nearest finer level at a power of two whose cells cover all of the cells
+                for (int finer = level - 1; finer >= 0 && sources[level] == -1; finer--) {
+                    final int shift = getPowerOfTwo(size / this.sizes[finer]);
+                    if (shift > 0 && covers(visitors[finer], visitors[level], shift)) {
+                        sources[level] = finer;
+                    }
+                }
+            } else {
+                visitors[level] = new HexagonalBinningVisitor(bbox, size);
+            }
+        }
+    }
+
+    // true if every cell of the coarser grid is made of cells of the finer grid. the grids are
+    // rounded up to whole cells, so a finer grid may end before the last coarser cells.
+    private static boolean covers(AbstractBinningVisitor finer, AbstractBinningVisitor coarser,
+            int shift) {
+        return finer.columns >= ((long) coarser.columns << shift)
+                && finer.rows >= ((long) coarser.rows << shift);
+    }
+
+    /**
+     * Cell sizes of power of two rectangular levels: size, size * 2, size * 4...
+     */
+    public static double[] getPowerOfTwoSizes(double size, int levels) {
+        double[] sizes = new double[levels];
+        for (int level = 0; level < levels; level++) {
+            sizes[level] = size * Math.pow(2.0, level);
+        }
+        return sizes;
+    }
+
+    /**
+     * Cell sizes of hexagonal levels of the aperture: the area of a hexagon of a level is the aperture (3, 4 or 7) times the area of a hexagon of
+     * the finer level.
+     */
+    public static double[] getApertureSizes(double size, int aperture, int levels) {
+        final double ratio = Math.sqrt(Math.max(2, aperture));
+        double[] sizes = new double[levels];
+        for (int level = 0; level < levels; level++) {
+            sizes[level] = size * Math.pow(ratio, level);
+        }
+        return sizes;
+    }
+
+    public BinningType getType() {
+        return type;
+    }
+
+    public ReferencedEnvelope getExtent() {
+        return extent;
+    }
+
+    public double[] getSizes() {
+        return sizes.clone();
+    }
+
+    public CoordinateReferenceSystem getSourceCRS() {
+        return sourceCRS;
+    }
+
+    public boolean isVisited() {
+        return visited;
+    }
+
+    public void setOnlyValidGrid(Boolean onlyValidGrid) {
+        for (AbstractBinningVisitor visitor : visitors) {
+            visitor.setOnlyValidGrid(onlyValidGrid);
+        }
+    }
+
+    /**
+     * Bins the features at all levels.
+     *
+     * @param features point features
+     * @param weight weight expression, null = 1 per feature
+     * @param transformer transformer of the features to the crs of the extent, or null
+     */
+    public void visit(SimpleFeatureCollection features, Expression weight,
+            GeometryCoordinateSequenceTransformer transformer) {
+        this.sourceCRS = features.getSchema().getCoordinateReferenceSystem();
+
+        int scanned = 0;
+        for (int level = 0; level < sources.length; level++) {
+            if (sources[level] == -1) {
+                scanned++;
+            }
+        }
+
+        final AbstractBinningVisitor[] targets = new AbstractBinningVisitor[scanned];
+        for (int level = 0, k = 0; level < sources.length; level++) {
+            if (sources[level] == -1) {
+                targets[k++] = visitors[level];
+            }
+        }
+
+        AbstractBinningVisitor.visit(features, weight, transformer, targets);
+
+        // bottom-up
+        for (int level = 0; level < sources.length; level++) {
+            if (sources[level] >= 0) {
+                aggregate(visitors[sources[level]], visitors[level],
+                        getPowerOfTwo(sizes[level] / sizes[sources[level]]));
+            }
+        }
+
+        visited = true;
+    }
+
+    private void aggregate(AbstractBinningVisitor finer, AbstractBinningVisitor coarser,
+            int shift) {
+        final BinStore source = finer.gridValues;
+        for (long key : source.getOccupiedKeys()) {
+            final int col = source.getColumn(key) >> shift;
+            final int row = source.getRow(key) >> shift;
+            coarser.addValue(col, row, source.get(key));
+        }
+    }
+
+    /**
+     * Returns the level of the size, or the level of the nearest size.
+     */
+    public int getLevel(double size) {
+        int nearest = 0;
+        double minDiff = Double.MAX_VALUE;
+        for (int level = 0; level < sizes.length; level++) {
+            final double diff = Math.abs(Math.log(sizes[level] / size));
+            if (diff < minDiff) {
+                minDiff = diff;
+                nearest = level;
+            }
+        }
+        return nearest;
+    }
+
+    public AbstractBinningVisitor getVisitor(double size) {
+        return visitors[getLevel(size)];
+    }
+
+    public Iterator<Bin> getBins(double size, GeometryCoordinateSequenceTransformer transformer) {
+        if (!visited) {
+            throw new IllegalStateException("The features are not visited");
+        }
+        return getVisitor(size).getBins(transformer);
+    }
+
+    /**
+     * Returns n if the ratio is 2^n (n >= 1), otherwise 0.
+     */
+    static int getPowerOfTwo(double ratio) {
+        final long power = Math.round(Math.log(ratio) / Math.log(2.0));
+        if (power < 1 || power > 30) {
+            return 0;
+        }
+        final double expected = Math.pow(2.0, power);
+        return Math.abs(ratio - expected) <= expected * 1e-9 ? (int) power : 0;
+    }
+}
@@ -16,12 +16,9 @@
  */
 package org.geotools.process.spatialstatistics.pattern;
 
-import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.util.logging.Logger;
 
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
-import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.spatialstatistics.util.CoordinateTranslateFilter;
 import org.geotools.util.logging.Logging;
@@ -75,7 +72,7 @@ public class RectangularBinningVisitor extends AbstractBinningVisitor {
         this.minX = bbox.getMinX();
         this.minY = bbox.getMinY();
 
-        this.gridValues = new Double[rows][columns];
+        this.gridValues = new BinStore(columns, rows);
 
         CoordinateReferenceSystem targetCRS = bbox.getCoordinateReferenceSystem();
         ReferencedEnvelope bounds = new ReferencedEnvelope(targetCRS);
@@ -89,101 +86,13 @@ public class RectangularBinningVisitor extends AbstractBinningVisitor {
         // origin = lower left
         int col = (int) Math.floor((coordinate.x - minX) / width);
         int row = (int) Math.floor((coordinate.y - minY) / height);
-        if (col < 0 || row < 0 || col >= columns || row >= rows) {
-            return;
-        }
-
-        Double preVal = gridValues[row][col];
-        gridValues[row][col] = preVal == null ? value : preVal + value;
-
-        if (getOnlyValidGrid()) {
-            minCol = Math.min(col, minCol);
-            maxCol = Math.max(col, maxCol);
-            minRow = Math.min(row, minRow);
-            maxRow = Math.max(row, maxRow);
-        }
+        addValue(col, row, value);
     }
 
     @Override
-    public Iterator<Bin> getBins(final GeometryCoordinateSequenceTransformer transformer) {
-        if (!getOnlyValidGrid()) {
-            minCol = 0;
-            maxCol = columns;
-            minRow = 0;
-            maxRow = rows;
-        }
-
-        final int rowLimit = getOnlyValidGrid() ? maxRow + 1 : maxRow;
-        final int colLimit = getOnlyValidGrid() ? maxCol + 1 : maxCol;
-
-        return new Iterator<RectangularBinningVisitor.Bin>() {
-            int featureID = 0;
-
-            int row = minRow;
-
-            int col = minCol;
-
-            double ypos = minRow * height;
-
-            double xpos = minCol * width;
-
-            private void resetIndexes() {
-                if (col == colLimit) {
-                    xpos = minCol * width;
-                    col = minCol;
-
-                    row++;
-                    ypos += height;
-                }
-            }
-
-            @Override
-            public boolean hasNext() {
-                return row < rowLimit && col < colLimit;
-            }
-
-            @Override
-            public Bin next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("hasNext() returned false!");
-                }
-
-                // Loop through the array: rows
-                while (row < rowLimit) {
-                    // Loop through the array: columns
-                    while (col < colLimit) {
-                        Double value = gridValues[row][col];
-                        col++;
-
-                        if (value == null && getOnlyValidGrid()) {
-                            xpos += width;
-                            resetIndexes();
-                        } else {
-                            Geometry grid = (Geometry) binTemplate.copy();
-                            grid.apply(new CoordinateTranslateFilter(xpos, ypos));
-
-                            if (transformer != null) {
-                                // reproject grid geometry to sourceCRS
-                                grid = transform(transformer, grid);
-                            }
-
-                            xpos += width;
-                            resetIndexes();
-
-                            // NULL to zero
-                            value = value == null ? Double.valueOf(0d) : value;
-
-                            return new Bin(featureID++, grid, value);
-                        }
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            public void remove() {
-                // do nothing
-            }
-        };
+    protected Geometry createBinGeometry(int col, int row) {
+        Geometry grid = (Geometry) binTemplate.copy();
+        grid.apply(new CoordinateTranslateFilter(col * width, row * height));
+        return grid;
     }
 }
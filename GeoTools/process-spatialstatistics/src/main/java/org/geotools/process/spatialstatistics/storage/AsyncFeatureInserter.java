@@ -0,0 +1,211 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.storage;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.geotools.api.data.SimpleFeatureStore;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+
+/**
+ * Feature Inserter that writes batches of features to the feature store on a background thread.<br>
+ * The calling thread only builds features. Full batches are handed to the writer thread over a bounded queue, so the calling thread blocks when
+ * the writer falls behind (backpressure). All batches are added in one transaction, which is committed on {@link #close()}. The writer thread is
+ * stopped on close, on rollback and when writing fails.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class AsyncFeatureInserter extends FeatureInserter {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    // marks the end of the batches
+    private final SimpleFeatureCollection endOfBatches;
+
+    private final BlockingQueue<SimpleFeatureCollection> queue;
+
+    private Thread writerThread;
+
+    private volatile Exception writerException;
+
+    private volatile boolean cancelled = false;
+
+    private boolean finished = false;
+
+    public AsyncFeatureInserter(SimpleFeatureStore featureStore) {
+        this(featureStore, DEFAULT_FLUSH_INTERVAL, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param featureStore feature store, with the transaction to be committed on close
+     * @param batchSize number of features added to the store at once
+     * @param queueCapacity maximum number of batches waiting for the writer thread
+     */
+    public AsyncFeatureInserter(SimpleFeatureStore featureStore, int batchSize, int queueCapacity) {
+        super(featureStore);
+        this.setFlushInterval(batchSize);
+        this.queue = new ArrayBlockingQueue<SimpleFeatureCollection>(Math.max(1, queueCapacity));
+        this.endOfBatches = new ListFeatureCollection(featureStore.getSchema());
+    }
+
+    /**
+     * Sets the batch size. Applies to the batches started after the call.
+     */
+    @Override
+    public void setFlushInterval(int flushInterval) {
+        super.setFlushInterval(Math.max(1, flushInterval));
+    }
+
+    @Override
+    public void write(SimpleFeature newFeature) throws IOException {
+        if (finished) {
+            throw new IOException("The inserter of " + typeName + " is already closed");
+        }
+        super.write(newFeature);
+    }
+
+    // hands the full buffer to the writer thread instead of adding it on the calling thread
+    @Override
+    protected void writeBuffer() throws IOException {
+        SimpleFeatureCollection batch = featureBuffer;
+        featureBuffer = new ListFeatureCollection(sfStore.getSchema());
+        submit(batch);
+    }
+
+    private void submit(SimpleFeatureCollection batch) throws IOException {
+        checkWriter();
+        if (writerThread == null) {
+            writerThread = new Thread(new BatchWriter(), "AsyncFeatureInserter-" + typeName);
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+
+        try {
+            // blocks while the queue is full
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shutdown();
+            throw new IOException(e);
+        }
+    }
+
+    private void checkWriter() throws IOException {
+        if (writerException != null) {
+            shutdown();
+            throw new IOException("Failed to write features to " + typeName, writerException);
+        }
+    }
+
+    // sends the remaining features and waits until the writer thread has added all batches
+    @Override
+    protected void flush() throws IOException {
+        checkWriter();
+        if (!finished) {
+            finished = true;
+            if (writerThread == null) {
+                // fewer features than a batch, write them on the calling thread
+                addBuffer();
+            } else {
+                if (featureBuffer.size() > 0) {
+                    writeBuffer();
+                }
+                try {
+                    queue.put(endOfBatches);
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    shutdown();
+                    throw new IOException(e);
+                }
+                checkWriter();
+            }
+        }
+        transaction.commit();
+    }
+
+    // discards the waiting batches and stops the writer thread
+    private void shutdown() {
+        finished = true;
+        cancelled = true;
+        if (writerThread == null || !writerThread.isAlive()) {
+            return;
+        }
+
+        queue.clear();
+        boolean interrupted = Thread.interrupted();
+        try {
+            // only this thread puts into the queue, so the cleared queue has room for the marker
+            queue.put(endOfBatches);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+            writerThread.interrupt();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void rollback() throws IOException {
+        shutdown();
+        super.rollback();
+    }
+
+    final class BatchWriter implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    SimpleFeatureCollection batch = queue.take();
+                    if (batch == endOfBatches) {
+                        break;
+                    }
+
+                    if (writerException == null && !cancelled) {
+                        sfStore.addFeatures(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                writerException = e;
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                writerException = e;
+                // keep draining the queue so that the producer never blocks forever
+                drain();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (queue.take() != endOfBatches) {
+                    // discard
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
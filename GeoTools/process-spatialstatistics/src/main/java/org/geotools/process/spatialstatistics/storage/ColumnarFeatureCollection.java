@@ -0,0 +1,538 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.storage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.BaseSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * Append-only in-memory feature collection that stores attributes column by column.<br>
+ * Integer, Long, Float, Double and Boolean attributes are kept in primitive arrays, point geometries as packed x, y arrays and other geometries
+ * with packed coordinate sequences. Features are created on iteration, so changes to the returned features are not stored. Feature ids of the
+ * form typeName.(row + 1) are not stored.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class ColumnarFeatureCollection extends BaseSimpleFeatureCollection {
+
+    static final int INITIAL_CAPACITY = 64;
+
+    private final Column[] columns;
+
+    private final String idPrefix;
+
+    private final int geometryIndex;
+
+    private final ReferencedEnvelope bounds;
+
+    // only allocated if a feature id does not follow typeName.(row + 1)
+    private String[] ids;
+
+    private int size = 0;
+
+    private int capacity = INITIAL_CAPACITY;
+
+    public ColumnarFeatureCollection(SimpleFeatureType schema) {
+        super(schema);
+
+        this.idPrefix = schema.getTypeName() + ".";
+        this.columns = new Column[schema.getAttributeCount()];
+        for (int index = 0; index < columns.length; index++) {
+            columns[index] = createColumn(schema.getDescriptor(index), capacity);
+        }
+
+        AttributeDescriptor geometry = schema.getGeometryDescriptor();
+        this.geometryIndex = geometry == null ? -1 : schema.indexOf(geometry.getLocalName());
+        this.bounds = new ReferencedEnvelope(schema.getCoordinateReferenceSystem());
+    }
+
+    private static Column createColumn(AttributeDescriptor descriptor, int capacity) {
+        Class<?> binding = descriptor.getType().getBinding();
+        if (binding == Integer.class) {
+            return new IntColumn(capacity);
+        } else if (binding == Long.class) {
+            return new LongColumn(capacity);
+        } else if (binding == Double.class) {
+            return new DoubleColumn(capacity);
+        } else if (binding == Float.class) {
+            return new FloatColumn(capacity);
+        } else if (binding == Boolean.class) {
+            return new BooleanColumn();
+        } else if (binding == Point.class) {
+            return new PointColumn(capacity);
+        } else if (Geometry.class.isAssignableFrom(binding)) {
+            return new GeometryColumn(capacity);
+        }
+        return new ObjectColumn(capacity);
+    }
+
+    public void add(SimpleFeature feature) {
+        if (size == capacity) {
+            capacity = capacity + (capacity >> 1) + 1;
+            for (Column column : columns) {
+                column.ensureCapacity(capacity);
+            }
+            if (ids != null) {
+                ids = Arrays.copyOf(ids, capacity);
+            }
+        }
+
+        final int row = size;
+        for (int index = 0; index < columns.length; index++) {
+            Object value = feature.getAttribute(index);
+            if (!columns[index].set(row, value)) {
+                // unexpected value type, keep the values as objects
+                columns[index] = new ObjectColumn(columns[index], row, capacity);
+                columns[index].set(row, value);
+            }
+        }
+
+        String id = feature.getID();
+        if (ids != null) {
+            ids[row] = id;
+        } else if (id == null || !id.equals(defaultID(row))) {
+            ids = new String[capacity];
+            for (int k = 0; k < row; k++) {
+                ids[k] = defaultID(k);
+            }
+            ids[row] = id;
+        }
+
+        if (geometryIndex >= 0) {
+            Object geometry = feature.getAttribute(geometryIndex);
+            if (geometry instanceof Geometry) {
+                bounds.expandToInclude(((Geometry) geometry).getEnvelopeInternal());
+            }
+        }
+
+        size++;
+    }
+
+    public void addAll(SimpleFeatureCollection features) {
+        SimpleFeatureIterator iter = features.features();
+        try {
+            while (iter.hasNext()) {
+                add(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+    }
+
+    private String defaultID(int row) {
+        return new StringBuilder(idPrefix).append(row + 1).toString();
+    }
+
+    /**
+     * Creates the feature of the row.
+     */
+    public SimpleFeature getFeature(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row: " + row + ", size: " + size);
+        }
+
+        Object[] values = new Object[columns.length];
+        for (int index = 0; index < columns.length; index++) {
+            values[index] = columns[index].get(row);
+        }
+
+        String id = ids == null ? defaultID(row) : ids[row];
+        return new SimpleFeatureImpl(values, schema, new FeatureIdImpl(id), false);
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        return new ColumnarFeatureIterator(size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public ReferencedEnvelope getBounds() {
+        return new ReferencedEnvelope(bounds);
+    }
+
+    final class ColumnarFeatureIterator implements SimpleFeatureIterator {
+        private final int count;
+
+        private int row = 0;
+
+        ColumnarFeatureIterator(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return row < count;
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            if (row >= count) {
+                throw new NoSuchElementException();
+            }
+            return getFeature(row++);
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Values of one attribute. set returns false if the value can not be stored in this column.
+     */
+    abstract static class Column {
+        abstract boolean set(int row, Object value);
+
+        abstract Object get(int row);
+
+        abstract void ensureCapacity(int capacity);
+    }
+
+    static final class IntColumn extends Column {
+        private int[] values;
+
+        private final BitSet nulls = new BitSet();
+
+        IntColumn(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (value.getClass() == Integer.class) {
+                values[row] = ((Integer) value).intValue();
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : Integer.valueOf(values[row]);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    static final class LongColumn extends Column {
+        private long[] values;
+
+        private final BitSet nulls = new BitSet();
+
+        LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (value.getClass() == Long.class) {
+                values[row] = ((Long) value).longValue();
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : Long.valueOf(values[row]);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    static final class DoubleColumn extends Column {
+        private double[] values;
+
+        private final BitSet nulls = new BitSet();
+
+        DoubleColumn(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (value.getClass() == Double.class) {
+                values[row] = ((Double) value).doubleValue();
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : Double.valueOf(values[row]);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    static final class FloatColumn extends Column {
+        private float[] values;
+
+        private final BitSet nulls = new BitSet();
+
+        FloatColumn(int capacity) {
+            values = new float[capacity];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (value.getClass() == Float.class) {
+                values[row] = ((Float) value).floatValue();
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : Float.valueOf(values[row]);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    static final class BooleanColumn extends Column {
+        private final BitSet values = new BitSet();
+
+        private final BitSet nulls = new BitSet();
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+            } else if (value.getClass() == Boolean.class) {
+                values.set(row, ((Boolean) value).booleanValue());
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : Boolean.valueOf(values.get(row));
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            // bit sets grow on demand
+        }
+    }
+
+    /**
+     * 2D points without user data as packed x, y values. Other values are kept in an object column.
+     */
+    static final class PointColumn extends Column {
+        private double[] coordinates;
+
+        private final BitSet others = new BitSet();
+
+        private ObjectColumn otherValues;
+
+        private GeometryFactory factory;
+
+        PointColumn(int capacity) {
+            coordinates = new double[capacity * 2];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value instanceof Point) {
+                Point point = (Point) value;
+                if (isPacked(point)) {
+                    coordinates[row * 2] = point.getX();
+                    coordinates[row * 2 + 1] = point.getY();
+                    return true;
+                }
+            }
+
+            if (value != null && !(value instanceof Geometry)) {
+                return false;
+            }
+
+            if (otherValues == null) {
+                otherValues = new ObjectColumn(coordinates.length / 2);
+            }
+            others.set(row);
+            return otherValues.set(row, value);
+        }
+
+        private boolean isPacked(Point point) {
+            if (point.isEmpty() || point.getUserData() != null
+                    || !Double.isNaN(point.getCoordinate().getZ())) {
+                return false;
+            }
+
+            if (factory == null) {
+                factory = point.getFactory();
+            }
+            return factory == point.getFactory() || (factory.getSRID() == point.getSRID()
+                    && factory.getPrecisionModel().equals(point.getPrecisionModel()));
+        }
+
+        @Override
+        Object get(int row) {
+            if (others.get(row)) {
+                return otherValues.get(row);
+            }
+            return factory.createPoint(new Coordinate(coordinates[row * 2],
+                    coordinates[row * 2 + 1]));
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            coordinates = Arrays.copyOf(coordinates, capacity * 2);
+            if (otherValues != null) {
+                otherValues.ensureCapacity(capacity);
+            }
+        }
+    }
+
+    /**
+     * Geometries copied to packed coordinate sequences, which store the ordinates of a sequence in one double array.
+     */
+    static final class GeometryColumn extends Column {
+        private Geometry[] values;
+
+        private GeometryFactory packedFactory;
+
+        GeometryColumn(int capacity) {
+            values = new Geometry[capacity];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value != null && !(value instanceof Geometry)) {
+                return false;
+            }
+            values[row] = value == null ? null : pack((Geometry) value);
+            return true;
+        }
+
+        private Geometry pack(Geometry geometry) {
+            GeometryFactory source = geometry.getFactory();
+            if (source.getCoordinateSequenceFactory() instanceof PackedCoordinateSequenceFactory) {
+                return geometry;
+            }
+
+            if (packedFactory == null || packedFactory.getSRID() != geometry.getSRID()
+                    || !packedFactory.getPrecisionModel().equals(geometry.getPrecisionModel())) {
+                packedFactory = new GeometryFactory(geometry.getPrecisionModel(),
+                        geometry.getSRID(), PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+            }
+
+            Geometry packed = packedFactory.createGeometry(geometry);
+            packed.setUserData(geometry.getUserData());
+            return packed;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    static final class ObjectColumn extends Column {
+        private Object[] values;
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        ObjectColumn(Column source, int count, int capacity) {
+            values = new Object[capacity];
+            for (int row = 0; row < count; row++) {
+                values[row] = source.get(row);
+            }
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            values[row] = value;
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+}
@@ -47,6 +47,8 @@ import org.geotools.util.logging.Logging;
 public class FeatureInserter implements IFeatureInserter {
     protected static final Logger LOGGER = Logging.getLogger(FeatureInserter.class);
 
+    public static final int DEFAULT_FLUSH_INTERVAL = 2500;
+
     int featureCount = 0;
 
     Boolean isMemoryDataStore = Boolean.FALSE;
@@ -57,7 +59,7 @@ public class FeatureInserter implements IFeatureInserter {
 
     ListFeatureCollection featureBuffer;
 
-    int flushInterval = 2500;
+    int flushInterval = DEFAULT_FLUSH_INTERVAL;
 
     SimpleFeatureStore sfStore = null;
 
@@ -185,19 +187,35 @@ public class FeatureInserter implements IFeatureInserter {
             }
         } else {
             featureBuffer.add(newFeature);
-            if (flushInterval == featureBuffer.size()) {
-                sfStore.addFeatures(featureBuffer);
-                featureBuffer.clear();
-                transaction.commit();
+            if (featureBuffer.size() >= flushInterval) {
+                writeBuffer();
             }
         }
     }
 
-    private void flush() throws IOException {
-        if (!writeMode && featureBuffer.size() > 0) {
+    /**
+     * Writes a full buffer of features to the feature store and commits them.
+     */
+    protected void writeBuffer() throws IOException {
+        addBuffer();
+        transaction.commit();
+    }
+
+    // adds the buffered features to the feature store
+    void addBuffer() throws IOException {
+        if (featureBuffer.size() > 0) {
             sfStore.addFeatures(featureBuffer);
             featureBuffer.clear();
         }
+    }
+
+    /**
+     * Writes the remaining features and commits the transaction.
+     */
+    protected void flush() throws IOException {
+        if (!writeMode) {
+            addBuffer();
+        }
         transaction.commit();
     }
 
@@ -217,13 +235,19 @@ public class FeatureInserter implements IFeatureInserter {
 
     @Override
     public void close() throws IOException {
-        flush();
-        transaction.close();
+        try {
+            flush();
+        } catch (IOException e) {
+            rollback();
+            throw e;
+        } finally {
+            transaction.close();
 
-        if (writeMode) {
-            writer.close();
-        } else {
-            sfStore.setTransaction(Transaction.AUTO_COMMIT);
+            if (writeMode) {
+                writer.close();
+            } else {
+                sfStore.setTransaction(Transaction.AUTO_COMMIT);
+            }
         }
     }
 
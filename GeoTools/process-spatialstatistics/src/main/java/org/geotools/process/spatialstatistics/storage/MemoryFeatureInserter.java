@@ -26,14 +26,13 @@ import org.geotools.api.data.SimpleFeatureSource;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.geotools.data.DataUtilities;
-import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.util.logging.Logging;
 
 /**
- * General Feature Inserter
+ * Memory Feature Inserter, the features are stored in a {@link ColumnarFeatureCollection}
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -50,14 +49,14 @@ public class MemoryFeatureInserter implements IFeatureInserter {
 
     SimpleFeatureBuilder builder;
 
-    ListFeatureCollection features;
+    ColumnarFeatureCollection features;
 
     List<FieldMap> fieldMaps = new ArrayList<FieldMap>();
 
     public MemoryFeatureInserter(SimpleFeatureType schema) {
         this.fieldMaps.clear();
         this.builder = new SimpleFeatureBuilder(schema);
-        this.features = new ListFeatureCollection(schema);
+        this.features = new ColumnarFeatureCollection(schema);
         this.typeName = schema.getTypeName();
     }
 
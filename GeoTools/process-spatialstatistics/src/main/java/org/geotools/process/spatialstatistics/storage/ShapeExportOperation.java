@@ -70,6 +70,10 @@ public class ShapeExportOperation {
 
     private DataStore outputDataStore = null;
 
+    private boolean asyncWrite = false;
+
+    private int writeBatchSize = FeatureInserter.DEFAULT_FLUSH_INTERVAL;
+
     // The shared instance
     private static ShapeExportOperation plugin = new ShapeExportOperation();
 
@@ -97,6 +101,26 @@ public class ShapeExportOperation {
         return outputDataStore;
     }
 
+    public boolean isAsyncWrite() {
+        return asyncWrite;
+    }
+
+    /**
+     * Writes the features to a data store other than a shapefile on a background thread, see {@link AsyncFeatureInserter}. A failure of the
+     * writer thread is thrown by {@link #execute(SimpleFeatureCollection)} and nothing is committed. The default is false.
+     */
+    public void setAsyncWrite(boolean asyncWrite) {
+        this.asyncWrite = asyncWrite;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public void setWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+    }
+
     public void setOutputTypeName(String outputTypeName) {
         this.outputTypeName = outputTypeName;
     }
@@ -132,7 +156,14 @@ public class ShapeExportOperation {
             featureStore = (SimpleFeatureStore) featureSource;
         }
 
-        return new FeatureInserter(featureStore);
+        if (asyncWrite) {
+            return new AsyncFeatureInserter(featureStore, writeBatchSize,
+                    AsyncFeatureInserter.DEFAULT_QUEUE_CAPACITY);
+        }
+
+        IFeatureInserter featureInserter = new FeatureInserter(featureStore);
+        featureInserter.setFlushInterval(writeBatchSize);
+        return featureInserter;
     }
 
     public SimpleFeatureSource execute(SimpleFeatureSource inputFeatures, Filter filter)
@@ -43,6 +43,10 @@ import org.locationtech.jts.geom.MultiPoint;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
 
 /**
  * Extracts input features that overlay the clip geometry.
@@ -138,6 +142,8 @@ public class ClipWithGeometryFeatureCollection extends GXTSimpleFeatureCollectio
 
         private Geometry clip;
 
+        private PreparedGeometry preparedClip;
+
         public ClipWithGeometryFeatureIterator(SimpleFeatureIterator delegate, Geometry clip,
                 SimpleFeatureType schema) {
             this.delegate = delegate;
@@ -147,6 +153,7 @@ public class ClipWithGeometryFeatureCollection extends GXTSimpleFeatureCollectio
                 this.clipper = new GeometryClipper(clip.getEnvelopeInternal());
             } else {
                 this.clip = clip;
+                this.preparedClip = PreparedGeometryFactory.prepare(clip);
             }
 
             builder = new SimpleFeatureBuilder(schema);
@@ -203,7 +210,11 @@ public class ClipWithGeometryFeatureCollection extends GXTSimpleFeatureCollectio
                 clipped = clipper.clip(geom, true);
             } else {
                 if (geom.getEnvelopeInternal().intersects(clip.getEnvelopeInternal())) {
-                    clipped = clip.intersection(geom);
+                    if (preparedClip.containsProperly(geom)) {
+                        clipped = geom;
+                    } else if (preparedClip.intersects(geom)) {
+                        clipped = OverlayNGRobust.overlay(geom, clip, OverlayNG.INTERSECTION);
+                    }
                 }
             }
 
@@ -35,7 +35,9 @@ import org.geotools.feature.collection.SubFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.process.spatialstatistics.core.DataUtils;
+import org.geotools.process.spatialstatistics.core.OverlayEngine;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Geometry;
@@ -47,10 +49,11 @@ import org.locationtech.jts.geom.MultiPoint;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
-import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 
 /**
- * Difference SimpleFeatureCollection Implementation
+ * Difference SimpleFeatureCollection Implementation<br>
+ * The difference features are read once by an overlay engine, built on the first call of features(), and the input features are read in blocks
+ * and overlaid in parallel.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -59,10 +62,16 @@ import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
     protected static final Logger LOGGER = Logging.getLogger(DifferenceFeatureCollection.class);
 
+    static final int BLOCK_SIZE = 1024;
+
     private SimpleFeatureCollection differenceFeatures;
 
+    private OverlayEngine overlays;
+
     private SimpleFeatureType targetSchema;
 
+    private int parallelism = 1;
+
     public DifferenceFeatureCollection(SimpleFeatureCollection delegate,
             SimpleFeatureCollection differenceFeatures) {
         super(delegate);
@@ -77,8 +86,7 @@ public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
             LOGGER.log(Level.WARNING, "reprojecting features");
         }
 
-        // use SpatialIndexFeatureCollection
-        this.differenceFeatures = DataUtils.toSpatialIndexFeatureCollection(differenceFeatures);
+        this.differenceFeatures = differenceFeatures;
         this.targetSchema = buildTargetSchema(delegate.getSchema());
     }
 
@@ -118,9 +126,28 @@ public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
         return targetSchema;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to overlay the features. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     @Override
     public SimpleFeatureIterator features() {
-        return new DifferenceFeatureIterator(delegate.features(), getSchema(), differenceFeatures);
+        return new DifferenceFeatureIterator(delegate.features(), getSchema(),
+                getOverlayEngine(), parallelism);
+    }
+
+    private synchronized OverlayEngine getOverlayEngine() {
+        if (overlays == null) {
+            overlays = new OverlayEngine(differenceFeatures);
+        }
+        return overlays;
     }
 
     @Override
@@ -143,11 +170,9 @@ public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
     static class DifferenceFeatureIterator implements SimpleFeatureIterator {
         private SimpleFeatureIterator delegate;
 
-        private SimpleFeatureCollection differenceFeatures;
+        private OverlayEngine overlays;
 
-        private ReferencedEnvelope bounds;
-
-        private String geomField;
+        private int parallelism;
 
         private SimpleFeatureBuilder builder;
 
@@ -155,12 +180,19 @@ public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
 
         private Class<?> target;
 
+        private final SimpleFeature[] block = new SimpleFeature[BLOCK_SIZE];
+
+        private final Geometry[] results = new Geometry[BLOCK_SIZE];
+
+        private int size = 0;
+
+        private int position = 0;
+
         public DifferenceFeatureIterator(SimpleFeatureIterator delegate, SimpleFeatureType schema,
-                SimpleFeatureCollection differenceFeatures) {
+                OverlayEngine overlays, int parallelism) {
             this.delegate = delegate;
-            this.differenceFeatures = differenceFeatures;
-            this.bounds = differenceFeatures.getBounds();
-            this.geomField = differenceFeatures.getSchema().getGeometryDescriptor().getLocalName();
+            this.overlays = overlays;
+            this.parallelism = parallelism;
             this.builder = new SimpleFeatureBuilder(schema);
             this.target = schema.getGeometryDescriptor().getType().getBinding();
         }
@@ -170,42 +202,17 @@ public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
         }
 
         public boolean hasNext() {
-            while (next == null && delegate.hasNext()) {
-                SimpleFeature feature = delegate.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                if (geometry == null || geometry.isEmpty()) {
+            while (next == null && (position < size || readBlock())) {
+                SimpleFeature feature = block[position];
+                Geometry diffGeom = results[position];
+                block[position] = null;
+                results[position] = null;
+                position++;
+
+                if (diffGeom == null || diffGeom.isEmpty()) {
                     continue;
                 }
 
-                Geometry diffGeom = geometry; // default
-                if (bounds.intersects(geometry.getEnvelopeInternal())) {
-                    Filter filter = getIntersectsFilter(geomField, geometry);
-
-                    // finally difference using union geometries(intersection features)
-                    List<Geometry> geometries = new ArrayList<Geometry>();
-                    SimpleFeatureIterator difIter = differenceFeatures.subCollection(filter)
-                            .features();
-                    try {
-                        while (difIter.hasNext()) {
-                            SimpleFeature diffFeature = difIter.next();
-                            geometries.add((Geometry) diffFeature.getDefaultGeometry());
-                        }
-                    } finally {
-                        difIter.close();
-                    }
-
-                    if (geometries.size() > 0) {
-                        Geometry unionGeometry = new CascadedPolygonUnion(geometries).union();
-                        if (unionGeometry != null && !unionGeometry.isEmpty()) {
-                            diffGeom = difference(geometry, unionGeometry, target);
-                        }
-
-                        if (diffGeom == null || diffGeom.isEmpty()) {
-                            continue;
-                        }
-                    }
-                }
-
                 for (Object attribute : feature.getAttributes()) {
                     if (attribute instanceof Geometry) {
                         builder.add(diffGeom);
@@ -219,9 +226,36 @@ public class DifferenceFeatureCollection extends GXTSimpleFeatureCollection {
             return next != null;
         }
 
-        private Geometry difference(Geometry geom, Geometry overlay, Class<?> target) {
-            Geometry difference = geom.difference(overlay);
+        // reads the next block of features and computes their differences in parallel
+        private boolean readBlock() {
+            size = 0;
+            position = 0;
+            while (size < BLOCK_SIZE && delegate.hasNext()) {
+                SimpleFeature feature = delegate.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+                block[size++] = feature;
+            }
+
+            ParallelRange.execute(parallelism, size, 8, new RangeTask() {
+                @Override
+                public void execute(int start, int end) {
+                    for (int i = start; i < end; i++) {
+                        Geometry geometry = (Geometry) block[i].getDefaultGeometry();
+                        Geometry diffGeom = overlays.difference(geometry);
+                        if (diffGeom != geometry) {
+                            diffGeom = difference(geometry, diffGeom, target);
+                        }
+                        results[i] = diffGeom;
+                    }
+                }
+            });
+            return size > 0;
+        }
 
+        private Geometry difference(Geometry geom, Geometry difference, Class<?> target) {
             // empty difference?
             if (difference == null || difference.getNumGeometries() == 0) {
                 return null;
@@ -37,10 +37,13 @@ import org.geotools.feature.collection.SubFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.process.spatialstatistics.core.DataUtils;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.OverlayEngine;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.ParallelRange.RangeTask;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.GeometryComponentFilter;
@@ -52,7 +55,9 @@ import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 
 /**
- * Intersect SimpleFeatureCollection Implementation
+ * Intersect SimpleFeatureCollection Implementation<br>
+ * The overlay features are read once by an overlay engine, built on the first call of features(), and the input features are read in blocks and
+ * overlaid in parallel.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -61,10 +66,16 @@ import org.locationtech.jts.geom.Polygon;
 public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
     protected static final Logger LOGGER = Logging.getLogger(IntersectFeatureCollection.class);
 
-    private SimpleFeatureCollection overlays;
+    static final int BLOCK_SIZE = 1024;
+
+    private SimpleFeatureCollection overlayFeatures;
+
+    private OverlayEngine overlays;
 
     private SimpleFeatureType targetSchema;
 
+    private int parallelism = 1;
+
     private Hashtable<String, String> fieldMap;
 
     public IntersectFeatureCollection(SimpleFeatureCollection delegate,
@@ -81,8 +92,7 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
             LOGGER.log(Level.WARNING, "reprojecting features");
         }
 
-        // use SpatialIndexFeatureCollection
-        this.overlays = DataUtils.toSpatialIndexFeatureCollection(overlays);
+        this.overlayFeatures = overlays;
         this.targetSchema = buildTargetSchema(delegate.getSchema(), overlays.getSchema());
     }
 
@@ -165,6 +175,17 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
         return targetSchema;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to overlay the features. 1 = single thread(default), 0 or negative = all available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     @Override
     public SimpleFeatureCollection subCollection(Filter filter) {
         if (filter == Filter.INCLUDE) {
@@ -175,7 +196,15 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
 
     @Override
     public SimpleFeatureIterator features() {
-        return new IntersectFeatureIterator(delegate.features(), getSchema(), overlays, fieldMap);
+        return new IntersectFeatureIterator(delegate.features(), getSchema(),
+                getOverlayEngine(), fieldMap, parallelism);
+    }
+
+    private synchronized OverlayEngine getOverlayEngine() {
+        if (overlays == null) {
+            overlays = new OverlayEngine(overlayFeatures);
+        }
+        return overlays;
     }
 
     @Override
@@ -190,11 +219,9 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
     static class IntersectFeatureIterator implements SimpleFeatureIterator {
         private SimpleFeatureIterator delegate;
 
-        private SimpleFeatureCollection overlays;
+        private OverlayEngine overlays;
 
-        private ReferencedEnvelope bounds;
-
-        private String geomField;
+        private int parallelism;
 
         private SimpleFeatureBuilder builder;
 
@@ -202,22 +229,29 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
 
         private SimpleFeature next;
 
-        private SimpleFeature feature;
-
         private String typeName;
 
         private Class<?> target;
 
         private int counter = 1;
 
-        private List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        private final SimpleFeature[] block = new SimpleFeature[BLOCK_SIZE];
+
+        private final int[][] matches = new int[BLOCK_SIZE][];
+
+        private final Geometry[][] results = new Geometry[BLOCK_SIZE][];
+
+        private int size = 0;
+
+        private int position = 0;
+
+        private int match = 0;
 
         public IntersectFeatureIterator(SimpleFeatureIterator delegate, SimpleFeatureType schema,
-                SimpleFeatureCollection overlays, Hashtable<String, String> fieldMap) {
+                OverlayEngine overlays, Hashtable<String, String> fieldMap, int parallelism) {
             this.delegate = delegate;
             this.overlays = overlays;
-            this.bounds = overlays.getBounds();
-            this.geomField = overlays.getSchema().getGeometryDescriptor().getLocalName();
+            this.parallelism = parallelism;
             this.builder = new SimpleFeatureBuilder(schema);
             this.target = schema.getGeometryDescriptor().getType().getBinding();
             this.fieldMap = fieldMap;
@@ -229,41 +263,21 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
         }
 
         public boolean hasNext() {
-            while ((next == null && delegate.hasNext())
-                    || (next == null && !delegate.hasNext() && features.size() > 0)) {
-                if (features.size() == 0) {
-                    // query intersected features
-                    feature = delegate.next();
-                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                    if (geometry == null || geometry.isEmpty()) {
-                        continue;
-                    }
-
-                    if (!bounds.intersects(geometry.getEnvelopeInternal())) {
-                        continue;
-                    }
-
-                    Filter filter = getIntersectsFilter(geomField, geometry);
-                    SimpleFeatureIterator difIter = overlays.subCollection(filter).features();
-                    try {
-                        while (difIter.hasNext()) {
-                            features.add(difIter.next());
-                        }
-                    } finally {
-                        difIter.close();
-                    }
-                }
-
-                if (features.size() == 0) {
+            while (next == null && (position < size || readBlock())) {
+                if (match == matches[position].length) {
+                    block[position] = null;
+                    matches[position] = null;
+                    results[position] = null;
+                    position++;
+                    match = 0;
                     continue;
                 }
 
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                SimpleFeature overlayFeature = features.get(0);
-                Geometry overlayGeom = (Geometry) overlayFeature.getDefaultGeometry();
-                Geometry result = intersect(geometry, overlayGeom, target);
+                SimpleFeature feature = block[position];
+                SimpleFeature overlayFeature = overlays.getFeature(matches[position][match]);
+                Geometry result = results[position][match];
+                match++;
                 if (result == null || result.isEmpty()) {
-                    features.remove(0);
                     continue;
                 }
 
@@ -284,16 +298,49 @@ public class IntersectFeatureCollection extends GXTSimpleFeatureCollection {
 
                 next = builder.buildFeature(buildID(typeName, counter++));
                 builder.reset();
-                features.remove(0);
-                break;
             }
 
             return next != null;
         }
 
-        private Geometry intersect(Geometry geom, Geometry overlay, Class<?> target) {
-            Geometry intersection = geom.intersection(overlay);
+        // reads the next block of features and computes their intersections in parallel
+        private boolean readBlock() {
+            size = 0;
+            position = 0;
+            match = 0;
+            final Envelope bounds = overlays.getBounds();
+            while (size < BLOCK_SIZE && delegate.hasNext()) {
+                SimpleFeature feature = delegate.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+
+                if (!bounds.intersects(geometry.getEnvelopeInternal())) {
+                    continue;
+                }
+                block[size++] = feature;
+            }
+
+            ParallelRange.execute(parallelism, size, 8, new RangeTask() {
+                @Override
+                public void execute(int start, int end) {
+                    for (int i = start; i < end; i++) {
+                        Geometry geometry = (Geometry) block[i].getDefaultGeometry();
+                        matches[i] = overlays.query(geometry);
+                        results[i] = new Geometry[matches[i].length];
+                        for (int k = 0; k < matches[i].length; k++) {
+                            Geometry intersection = overlays.intersection(geometry,
+                                    matches[i][k]);
+                            results[i][k] = intersect(geometry, intersection, target);
+                        }
+                    }
+                }
+            });
+            return size > 0;
+        }
 
+        private Geometry intersect(Geometry geom, Geometry intersection, Class<?> target) {
             // empty intersection?
             if (intersection == null || intersection.getNumGeometries() == 0) {
                 return null;
@@ -16,7 +16,10 @@
  */
 package org.geotools.process.spatialstatistics.transformation;
 
+import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.logging.Logger;
@@ -35,10 +38,12 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
 
 /**
- * Join Attribute SimpleFeatureCollection Implementation
+ * Join Attribute SimpleFeatureCollection Implementation<br>
+ * The join features are read once into a lookup by foreign key value, the primary key values are converted to the type of the foreign key.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -59,6 +64,10 @@ public class JoinAttributeFeatureCollection extends GXTSimpleFeatureCollection {
 
     private Hashtable<String, String> joinFields;
 
+    private Map<Object, SimpleFeature> joinIndex;
+
+    private Class<?> keyBinding;
+
     public JoinAttributeFeatureCollection(SimpleFeatureCollection inputFeatures, String primaryKey,
             SimpleFeatureCollection joinFeatures, String foreignKey, Join.Type joinType) {
         super(inputFeatures);
@@ -68,6 +77,8 @@ public class JoinAttributeFeatureCollection extends GXTSimpleFeatureCollection {
         this.primaryKey = FeatureTypes.validateProperty(inputFeatures.getSchema(), primaryKey);
         this.foreignKey = FeatureTypes.validateProperty(joinFeatures.getSchema(), foreignKey);
         this.joinFeatures = joinFeatures;
+        this.keyBinding = joinFeatures.getSchema().getDescriptor(this.foreignKey).getType()
+                .getBinding();
         this.schema = buildTargetSchema(inputFeatures.getSchema(), joinFeatures.getSchema());
     }
 
@@ -164,7 +175,43 @@ public class JoinAttributeFeatureCollection extends GXTSimpleFeatureCollection {
     @Override
     public SimpleFeatureIterator features() {
         return new AttributeJoinFeatureIterator(delegate.features(), getSchema(), primaryKey,
-                joinFeatures, foreignKey, joinType, joinFields);
+                getJoinIndex(), keyBinding, joinType, joinFields);
+    }
+
+    // the first join feature of each foreign key value, read once
+    private synchronized Map<Object, SimpleFeature> getJoinIndex() {
+        if (joinIndex == null) {
+            joinIndex = new HashMap<Object, SimpleFeature>();
+            SimpleFeatureIterator featureIter = joinFeatures.features();
+            try {
+                while (featureIter.hasNext()) {
+                    SimpleFeature feature = featureIter.next();
+                    Object key = toKey(feature.getAttribute(foreignKey), keyBinding);
+                    if (key != null && !joinIndex.containsKey(key)) {
+                        joinIndex.put(key, feature);
+                    }
+                }
+            } finally {
+                featureIter.close();
+            }
+        }
+        return joinIndex;
+    }
+
+    // both keys are converted to the type of the foreign key, and numbers compare by value, as
+    // the equal filter does. null if the value can not be converted.
+    static Object toKey(Object value, Class<?> binding) {
+        if (value != null && !binding.isInstance(value)) {
+            value = Converters.convert(value, binding);
+        }
+        if (value instanceof Number) {
+            try {
+                return new BigDecimal(value.toString()).stripTrailingZeros();
+            } catch (NumberFormatException e) {
+                return value.toString(); // NaN, Infinity
+            }
+        }
+        return value;
     }
 
     static class AttributeJoinFeatureIterator implements SimpleFeatureIterator {
@@ -173,9 +220,9 @@ public class JoinAttributeFeatureCollection extends GXTSimpleFeatureCollection {
 
         private String primaryKey;
 
-        private SimpleFeatureCollection joinFeatures;
+        private Map<Object, SimpleFeature> joinIndex;
 
-        private String foreignKey;
+        private Class<?> keyBinding;
 
         private Join.Type joinType;
 
@@ -190,12 +237,12 @@ public class JoinAttributeFeatureCollection extends GXTSimpleFeatureCollection {
         private int counter = 1;
 
         public AttributeJoinFeatureIterator(SimpleFeatureIterator originIter,
-                SimpleFeatureType schema, String primaryKey, SimpleFeatureCollection joinFeatures,
-                String foreignKey, Join.Type joinType, Hashtable<String, String> joinFields) {
+                SimpleFeatureType schema, String primaryKey, Map<Object, SimpleFeature> joinIndex,
+                Class<?> keyBinding, Join.Type joinType, Hashtable<String, String> joinFields) {
             this.originIter = originIter;
             this.primaryKey = primaryKey;
-            this.joinFeatures = joinFeatures;
-            this.foreignKey = foreignKey;
+            this.joinIndex = joinIndex;
+            this.keyBinding = keyBinding;
             this.joinType = joinType;
             this.joinFields = joinFields;
             this.builder = new SimpleFeatureBuilder(schema);
@@ -216,23 +263,16 @@ public class JoinAttributeFeatureCollection extends GXTSimpleFeatureCollection {
                 }
 
                 boolean hasJoin = false;
-                Object keyValue = origin.getAttribute(primaryKey);
-                Filter filter = ff.equal(ff.property(foreignKey), ff.literal(keyValue), true);
-                SimpleFeatureIterator destIter = joinFeatures.subCollection(filter).features();
-                try {
-                    while (destIter.hasNext()) {
-                        SimpleFeature dest = destIter.next();
-                        for (Entry<String, String> entry : joinFields.entrySet()) {
-                            Object value = dest.getAttribute(entry.getKey());
-                            builder.set(entry.getValue(), value);
-                        }
-                        hasJoin = true;
-                        nextFeature = builder.buildFeature(buildID(typeName, counter++));
-                        builder.reset();
-                        break; // one to one
+                Object keyValue = toKey(origin.getAttribute(primaryKey), keyBinding);
+                SimpleFeature dest = keyValue == null ? null : joinIndex.get(keyValue);
+                if (dest != null) {
+                    for (Entry<String, String> entry : joinFields.entrySet()) {
+                        Object value = dest.getAttribute(entry.getKey());
+                        builder.set(entry.getValue(), value);
                     }
-                } finally {
-                    destIter.close();
+                    hasJoin = true;
+                    nextFeature = builder.buildFeature(buildID(typeName, counter++));
+                    builder.reset(); // one to one
                 }
 
                 if (joinType == Join.Type.INNER && !hasJoin) {
@@ -0,0 +1,127 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.geotools.process.spatialstatistics.pattern.BinStore;
+import org.junit.Test;
+
+public class BinStoreTest {
+
+    @Test
+    public void testSparse() throws Exception {
+        BinStore store = new BinStore(20000, 20000);
+        TreeMap<Long, Double> expected = fill(store, 20000, 20000, 50000);
+
+        assertFalse(store.isDense());
+        assertOccupied(store, expected);
+        assertEquals(expected.containsKey(Long.valueOf(0)), store.contains(0, 0));
+    }
+
+    @Test
+    public void testSparseToDense() throws Exception {
+        BinStore store = new BinStore(400, 300);
+        assertFalse(store.isDense());
+
+        TreeMap<Long, Double> expected = fill(store, 400, 300, 100000);
+
+        assertTrue(store.isDense());
+        assertOccupied(store, expected);
+    }
+
+    @Test
+    public void testSmallGrids() throws Exception {
+        BinStore single = new BinStore(1, 1);
+        assertTrue(single.isDense());
+        assertEquals(0, single.getOccupiedKeys().length);
+        assertEquals(0.0, single.get(0, 0), 0.0);
+        single.add(0, 0, 2.5);
+        assertEquals(1, single.size());
+        assertEquals(2.5, single.get(0L), 0.0);
+
+        // negative sizes are treated as an empty grid
+        BinStore empty = new BinStore(-3, 5);
+        assertEquals(0, empty.getColumns());
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.getOccupiedKeys().length);
+    }
+
+    @Test
+    public void testZeroSums() throws Exception {
+        // a cell stays occupied when its values sum to zero, in both layouts
+        for (BinStore store : new BinStore[] { new BinStore(10, 10),
+                new BinStore(1000, 1000) }) {
+            store.add(3, 4, 0.0);
+            store.add(5, 6, 1.5);
+            store.add(5, 6, -1.5);
+
+            assertEquals(2, store.size());
+            assertTrue(store.contains(3, 4));
+            assertTrue(store.contains(5, 6));
+            assertFalse(store.contains(4, 3));
+            assertEquals(0.0, store.get(5, 6), 0.0);
+            assertEquals(store.getKey(3, 4), store.getOccupiedKeys()[0]);
+        }
+    }
+
+    @Test
+    public void testKeysBeyondIntegerRange() throws Exception {
+        // 1e10 cells never become dense
+        BinStore store = new BinStore(100000, 100000);
+        TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+        for (int i = 0; i < 5000; i++) {
+            // one column, so the keys differ by multiples of the column count
+            int row = (i * 7919) % 100000;
+            store.add(99999, row, i);
+            Long key = Long.valueOf((long) row * 100000 + 99999);
+            Double previous = expected.get(key);
+            expected.put(key, previous == null ? i : previous + i);
+        }
+        store.add(99999, 99999, -1);
+        store.add(0, 0, 1);
+        expected.put(Long.valueOf(9999999999L), Double.valueOf(-1));
+        expected.put(Long.valueOf(0), Double.valueOf(1));
+
+        assertFalse(store.isDense());
+        assertOccupied(store, expected);
+        assertEquals(99999, store.getColumn(9999999999L));
+        assertEquals(99999, store.getRow(9999999999L));
+        assertEquals(0.0, store.get(99998, 99999), 0.0);
+    }
+
+    private TreeMap<Long, Double> fill(BinStore store, int columns, int rows, int count) {
+        Random random = new Random(5);
+        TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+        for (int i = 0; i < count; i++) {
+            int col = random.nextInt(columns);
+            int row = random.nextInt(rows);
+            double value = random.nextInt(10);
+            store.add(col, row, value);
+
+            Long key = Long.valueOf((long) row * columns + col);
+            Double previous = expected.get(key);
+            expected.put(key, previous == null ? value : previous + value);
+        }
+        return expected;
+    }
+
+    private void assertOccupied(BinStore store, TreeMap<Long, Double> expected) {
+        long[] keys = store.getOccupiedKeys();
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected.size(), keys.length);
+
+        // row major order
+        int index = 0;
+        for (Map.Entry<Long, Double> entry : expected.entrySet()) {
+            long key = keys[index++];
+            assertEquals(entry.getKey().longValue(), key);
+            assertTrue(store.contains(store.getColumn(key), store.getRow(key)));
+            assertEquals(entry.getValue(), store.get(key), 0.0);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.geotools.api.filter.expression.Expression;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.pattern.AbstractBinningVisitor;
+import org.geotools.process.spatialstatistics.pattern.AbstractBinningVisitor.Bin;
+import org.geotools.process.spatialstatistics.pattern.BinningPyramid;
+import org.geotools.process.spatialstatistics.pattern.BinningPyramid.BinningType;
+import org.geotools.process.spatialstatistics.pattern.HexagonalBinningVisitor;
+import org.geotools.process.spatialstatistics.pattern.RectangularBinningVisitor;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class BinningPyramidTest {
+
+    static GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+
+    static ReferencedEnvelope bbox = new ReferencedEnvelope(0, 100, 0, 60, null);
+
+    @Test
+    public void testRectangularLevels() throws Exception {
+        ListFeatureCollection features = TestFixtures.createFeatures("points", "geom:Point");
+        Random random = new Random(7);
+        double[][] points = new double[2000][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[] { random.nextDouble() * 100, random.nextDouble() * 60 };
+            Coordinate coordinate = new Coordinate(points[i][0], points[i][1]);
+            TestFixtures.add(features, gf.createPoint(coordinate));
+        }
+
+        double[] sizes = { 1.25, 2.5, 5.0, 3.0 };
+        BinningPyramid pyramid = new BinningPyramid(BinningType.Rectangular, bbox, sizes);
+        pyramid.visit(features, null, null);
+
+        for (double size : sizes) {
+            Map<String, Double> expected = new HashMap<String, Double>();
+            for (double[] point : points) {
+                String key = cellKey(Math.floor(point[0] / size), Math.floor(point[1] / size));
+                Double count = expected.get(key);
+                expected.put(key, count == null ? 1.0 : count + 1.0);
+            }
+
+            int bins = 0;
+            Iterator<Bin> iter = pyramid.getBins(size, null);
+            while (iter.hasNext()) {
+                Bin bin = iter.next();
+                Envelope cell = bin.geometry.getEnvelopeInternal();
+                String key = cellKey(Math.round(cell.getMinX() / size),
+                        Math.round(cell.getMinY() / size));
+                assertEquals(expected.get(key), bin.value, 0.0);
+                bins++;
+            }
+            assertEquals(expected.size(), bins);
+        }
+    }
+
+    @Test
+    public void testLevelsMatchSingleVisitors() throws Exception {
+        // points around the extent, some outside of it, and weights with nulls
+        ListFeatureCollection features = TestFixtures.createFeatures("points",
+                "geom:Point,w:Double");
+        Random random = new Random(11);
+        Coordinate[] points = new Coordinate[3000];
+        Double[] weights = new Double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Coordinate(random.nextDouble() * 120 - 10,
+                    random.nextDouble() * 80 - 10);
+            weights[i] = i % 50 == 0 ? null : Double.valueOf(random.nextInt(5) - 1);
+            TestFixtures.add(features, gf.createPoint(points[i]), weights[i]);
+        }
+        Expression weight = CommonFactoryFinder.getFilterFactory(null).property("w");
+
+        // the grids of 1.5 and 6 end before the last cells of 3 and 12, so those are scanned
+        double[] sizes = { 1.5, 3.0, 6.0, 12.0, 24.0, 5.0 };
+        BinningPyramid rectangular = new BinningPyramid(BinningType.Rectangular, bbox, sizes);
+        rectangular.visit(features, weight, null);
+
+        double[] apertureSizes = BinningPyramid.getApertureSizes(2.0, 3, 3);
+        BinningPyramid hexagonal = new BinningPyramid(BinningType.Hexagonal, bbox,
+                apertureSizes);
+        hexagonal.visit(features, weight, null);
+
+        for (boolean onlyValidGrid : new boolean[] { true, false }) {
+            rectangular.setOnlyValidGrid(onlyValidGrid);
+            hexagonal.setOnlyValidGrid(onlyValidGrid);
+
+            for (double size : sizes) {
+                AbstractBinningVisitor expected = new RectangularBinningVisitor(bbox, size, size);
+                assertSameBins(expected, points, weights, onlyValidGrid,
+                        rectangular.getBins(size, null));
+            }
+            for (double size : apertureSizes) {
+                AbstractBinningVisitor expected = new HexagonalBinningVisitor(bbox, size);
+                assertSameBins(expected, points, weights, onlyValidGrid,
+                        hexagonal.getBins(size, null));
+            }
+        }
+    }
+
+    @Test
+    public void testLevels() throws Exception {
+        BinningPyramid pyramid = new BinningPyramid(BinningType.Rectangular, bbox,
+                BinningPyramid.getPowerOfTwoSizes(1.0, 4));
+        assertEquals(8.0, pyramid.getSizes()[3], 0.0);
+
+        // the nearest size by ratio
+        assertEquals(0, pyramid.getLevel(0.1));
+        assertEquals(1, pyramid.getLevel(2.5));
+        assertEquals(2, pyramid.getLevel(3.0));
+        assertEquals(3, pyramid.getLevel(1000));
+
+        assertFalse(pyramid.isVisited());
+        try {
+            pyramid.getBins(1.0, null);
+            fail("the features are not visited");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("not visited"));
+        }
+
+        for (double[] sizes : new double[][] { {}, { 1.0, 0.0 }, { Double.NaN },
+                { Double.POSITIVE_INFINITY } }) {
+            try {
+                new BinningPyramid(BinningType.Hexagonal, bbox, sizes);
+                fail("invalid sizes");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private void assertSameBins(AbstractBinningVisitor expected, Coordinate[] points,
+            Double[] weights, boolean onlyValidGrid, Iterator<Bin> actual) {
+        for (int i = 0; i < points.length; i++) {
+            if (weights[i] != null) {
+                expected.visit(points[i], weights[i]);
+            }
+        }
+        expected.setOnlyValidGrid(onlyValidGrid);
+
+        Iterator<Bin> iter = expected.getBins(null);
+        while (iter.hasNext()) {
+            assertTrue(actual.hasNext());
+            Bin expectedBin = iter.next();
+            Bin bin = actual.next();
+            assertEquals(expectedBin.featureID, bin.featureID);
+            assertTrue(expectedBin.geometry.equalsExact(bin.geometry, 1E-9));
+            assertEquals(expectedBin.value, bin.value, 0.0);
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    private String cellKey(double col, double row) {
+        return (long) col + "_" + (long) row;
+    }
+}
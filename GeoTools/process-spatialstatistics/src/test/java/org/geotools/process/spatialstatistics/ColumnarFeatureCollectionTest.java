@@ -0,0 +1,213 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.storage.ColumnarFeatureCollection;
+import org.geotools.util.factory.GeoTools;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.WKTReader;
+
+public class ColumnarFeatureCollectionTest {
+
+    static GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("grid");
+        typeBuilder.add("geom", Point.class);
+        typeBuilder.add("uid", Integer.class);
+        typeBuilder.add("val", Double.class);
+        typeBuilder.add("name", String.class);
+        SimpleFeatureType schema = typeBuilder.buildFeatureType();
+
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(schema);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(gf.createPoint(new Coordinate(i, i * 2)));
+            builder.add(Integer.valueOf(i));
+            builder.add(i % 10 == 0 ? null : Double.valueOf(i * 0.5));
+            builder.add("name" + i);
+            features.add(builder.buildFeature("grid." + (i + 1)));
+        }
+
+        assertEquals(1000, features.size());
+        assertEquals(0.0, features.getBounds().getMinX(), 0.0);
+        assertEquals(1998.0, features.getBounds().getMaxY(), 0.0);
+
+        int row = 0;
+        SimpleFeatureIterator iter = features.features();
+        try {
+            while (iter.hasNext()) {
+                SimpleFeature feature = iter.next();
+                assertEquals("grid." + (row + 1), feature.getID());
+
+                Point point = (Point) feature.getDefaultGeometry();
+                assertEquals(row, point.getX(), 0.0);
+                assertEquals(row * 2, point.getY(), 0.0);
+                assertEquals(Integer.valueOf(row), feature.getAttribute("uid"));
+                if (row % 10 == 0) {
+                    assertNull(feature.getAttribute("val"));
+                } else {
+                    assertEquals(Double.valueOf(row * 0.5), feature.getAttribute("val"));
+                }
+                assertEquals("name" + row, feature.getAttribute("name"));
+                row++;
+            }
+        } finally {
+            iter.close();
+        }
+        assertEquals(1000, row);
+    }
+
+    @Test
+    public void testPrimitiveColumns() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("values",
+                "l:Long,f:Float,d:Double,b:Boolean");
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(schema);
+
+        Object[][] rows = { { Long.MAX_VALUE, Float.valueOf(-0.0f), Double.NaN, Boolean.TRUE },
+                { null, null, null, null },
+                { Long.MIN_VALUE, Float.NaN, Double.valueOf(-1E300), Boolean.FALSE } };
+        for (int i = 0; i < rows.length; i++) {
+            features.add(new SimpleFeatureImpl(rows[i], schema,
+                    new FeatureIdImpl("values." + (i + 1)), false));
+        }
+
+        // no geometry column
+        assertTrue(features.getBounds().isNull());
+        for (int i = 0; i < rows.length; i++) {
+            SimpleFeature feature = features.getFeature(i);
+            for (int k = 0; k < rows[i].length; k++) {
+                assertEquals(rows[i][k], feature.getAttribute(k));
+            }
+        }
+    }
+
+    @Test
+    public void testUnexpectedValueType() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("values", "i:Integer,s:String");
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(schema);
+
+        // the values are not converted to the bindings of the schema
+        Object[][] rows = { { Integer.valueOf(1), "a" }, { null, "b" },
+                { Long.valueOf(3), "c" }, { Integer.valueOf(4), null }, { "five", "e" } };
+        for (int i = 0; i < rows.length; i++) {
+            features.add(new SimpleFeatureImpl(rows[i], schema,
+                    new FeatureIdImpl("values." + (i + 1)), false));
+        }
+
+        for (int i = 0; i < rows.length; i++) {
+            SimpleFeature feature = features.getFeature(i);
+            assertEquals(rows[i][0], feature.getAttribute("i"));
+            assertEquals(rows[i][1], feature.getAttribute("s"));
+        }
+    }
+
+    @Test
+    public void testFeatureIDs() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("ids", "name:String");
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(schema);
+
+        // the ids are only stored from the first one that does not follow typeName.(row + 1)
+        String[] ids = { "ids.1", "ids.2", "other.7", "ids.4", "ids.2" };
+        for (int i = 0; i < ids.length; i++) {
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { "name" + i }, ids[i]));
+        }
+
+        int row = 0;
+        SimpleFeatureIterator iter = features.features();
+        try {
+            while (iter.hasNext()) {
+                assertEquals(ids[row++], iter.next().getID());
+            }
+        } finally {
+            iter.close();
+        }
+        assertEquals(ids.length, row);
+    }
+
+    @Test
+    public void testPointsThatAreNotPacked() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("points", "geom:Point");
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(schema);
+
+        GeometryFactory fixed = new GeometryFactory(new PrecisionModel(10), 5186);
+        Point tagged = gf.createPoint(new Coordinate(5, 6));
+        tagged.setUserData("tag");
+        Point[] points = { gf.createPoint(new Coordinate(1, 2)), null,
+                gf.createPoint(new Coordinate(3, 4, 10)), gf.createPoint(), tagged,
+                fixed.createPoint(new Coordinate(7.5, 8.5)),
+                gf.createPoint(new Coordinate(9, 10)) };
+        for (Point point : points) {
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { point }, null));
+        }
+
+        assertEquals(points.length, features.size());
+        assertEquals(1.0, features.getBounds().getMinX(), 0.0);
+        assertEquals(10.0, features.getBounds().getMaxY(), 0.0);
+
+        assertNull(features.getFeature(1).getDefaultGeometry());
+        assertEquals(10.0, ((Point) features.getFeature(2).getDefaultGeometry()).getCoordinate()
+                .getZ(), 0.0);
+        assertTrue(((Point) features.getFeature(3).getDefaultGeometry()).isEmpty());
+        assertEquals("tag", ((Point) features.getFeature(4).getDefaultGeometry()).getUserData());
+        assertEquals(5186, ((Point) features.getFeature(5).getDefaultGeometry()).getSRID());
+        for (int i : new int[] { 0, 6 }) {
+            Point point = (Point) features.getFeature(i).getDefaultGeometry();
+            assertTrue(points[i].equalsExact(point));
+        }
+    }
+
+    @Test
+    public void testPackedGeometries() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("polygons", "geom:Polygon");
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(schema);
+
+        WKTReader reader = new WKTReader(gf);
+        Geometry[] geometries = {
+                reader.read("POLYGON ((0 0, 4 0, 4 4, 0 4, 0 0), (1 1, 1 2, 2 2, 2 1, 1 1))"),
+                null, reader.read("POLYGON ((10 10, 12 10, 11 13, 10 10))") };
+        geometries[2].setUserData("user data");
+        for (Geometry geometry : geometries) {
+            features.add(SimpleFeatureBuilder.build(schema, new Object[] { geometry }, null));
+        }
+
+        assertEquals(13.0, features.getBounds().getMaxY(), 0.0);
+        for (int i = 0; i < geometries.length; i++) {
+            Geometry geometry = (Geometry) features.getFeature(i).getDefaultGeometry();
+            if (geometries[i] == null) {
+                assertNull(geometry);
+            } else {
+                assertTrue(geometries[i].equalsExact(geometry));
+                assertSame(geometries[i].getUserData(), geometry.getUserData());
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRowOutOfBounds() throws Exception {
+        ColumnarFeatureCollection features = new ColumnarFeatureCollection(
+                DataUtilities.createType("empty", "name:String"));
+        assertFalse(features.features().hasNext());
+        features.getFeature(0);
+    }
+}
@@ -0,0 +1,163 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.imagen.RasterFactory;
+import org.geotools.process.spatialstatistics.core.DiskMemImage;
+import org.geotools.process.spatialstatistics.gridcoverage.DensityConvolver;
+import org.junit.Test;
+
+public class DensityConvolverTest {
+
+    @Test
+    public void testCircularKernel() throws Exception {
+        // circular kernel, not separable
+        int radius = 4;
+        int size = 2 * radius + 1;
+        double[] kernel = new double[size * size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                double dist2 = (row - radius) * (row - radius) + (col - radius) * (col - radius);
+                kernel[row * size + col] = dist2 <= radius * radius ? 1.0 - dist2 / 25.0 : 0.0;
+            }
+        }
+        assertConvolution(kernel, size, size, radius, radius, false);
+    }
+
+    @Test
+    public void testRectangularKernel() throws Exception {
+        double[] kernel = new double[7 * 5];
+        Arrays.fill(kernel, 1.0);
+        assertConvolution(kernel, 7, 5, 3, 2, true);
+    }
+
+    @Test
+    public void testCornerOrigins() throws Exception {
+        // separable with a zero row, the origin on the first and on the last cell
+        double[] column = { 1, 0, 2, 0.5 };
+        double[] row = { 3, 1, 2 };
+        double[] kernel = new double[column.length * row.length];
+        for (int r = 0; r < column.length; r++) {
+            for (int c = 0; c < row.length; c++) {
+                kernel[r * row.length + c] = column[r] * row[c];
+            }
+        }
+        assertConvolution(kernel, 3, 4, 0, 0, true);
+        assertConvolution(kernel, 3, 4, 2, 3, true);
+
+        // not separable once one value changes
+        kernel[5] = 7;
+        assertConvolution(kernel, 3, 4, 0, 3, false);
+        assertConvolution(kernel, 3, 4, 2, 0, false);
+    }
+
+    @Test
+    public void testSingleCellKernel() throws Exception {
+        assertConvolution(new double[] { 2.5 }, 1, 1, 0, 0, true);
+    }
+
+    @Test
+    public void testZeroWeightsAndKernel() throws Exception {
+        DensityConvolver convolver = new DensityConvolver(20, 10, new double[] { 1, 1, 1 }, 3,
+                1, 1, 0);
+        convolver.add(5, 5, 0.0);
+        convolver.add(-2, 5, 1.0); // the footprint does not reach the raster
+        convolver.add(21, 5, 1.0);
+        convolver.add(5, 10, 1.0);
+        assertEquals(0, convolver.size());
+
+        // no cells: every tile is written with zeros
+        DiskMemImage image = createImage(20, 10);
+        assertEquals(0.0, convolver.convolve(image, 1.0, 1), 0.0);
+        Raster raster = image.getData();
+        for (int row = 0; row < 10; row++) {
+            for (int col = 0; col < 20; col++) {
+                assertEquals(0.0, raster.getSampleDouble(col, row, 0), 0.0);
+            }
+        }
+
+        // a kernel of zeros is not separable and adds nothing
+        DensityConvolver zeros = new DensityConvolver(20, 10, new double[9], 3, 3, 1, 1);
+        assertFalse(zeros.isSeparable());
+        zeros.add(4, 4, 3.0);
+        assertEquals(1, zeros.size());
+        assertEquals(0.0, zeros.convolve(createImage(20, 10), 1.0, 1), 0.0);
+    }
+
+    @Test
+    public void testNegativeWeights() throws Exception {
+        // cells in the same bin are summed before the kernel is applied
+        DensityConvolver convolver = new DensityConvolver(5, 5, new double[] { 1, 1, 1, 1 },
+                2, 2, 0, 0);
+        convolver.add(1, 1, -3.0);
+        convolver.add(1, 1, 1.0);
+        assertEquals(1, convolver.size());
+
+        DiskMemImage image = createImage(5, 5);
+        assertEquals(0.0, convolver.convolve(image, 2.0, 1), 0.0);
+        Raster raster = image.getData();
+        assertEquals(-1.0, raster.getSampleDouble(1, 1, 0), 0.0);
+        assertEquals(-1.0, raster.getSampleDouble(2, 2, 0), 0.0);
+        assertEquals(0.0, raster.getSampleDouble(0, 0, 0), 0.0);
+    }
+
+    private DiskMemImage createImage(int width, int height) {
+        return new DiskMemImage(width, height,
+                RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, 16, 16, 1));
+    }
+
+    private void assertConvolution(double[] kernel, int kernelWidth, int kernelHeight,
+            int xOrigin, int yOrigin, boolean separable) {
+        final int width = 53;
+        final int height = 41;
+
+        DensityConvolver convolver = new DensityConvolver(width, height, kernel, kernelWidth,
+                kernelHeight, xOrigin, yOrigin);
+        assertEquals(separable, convolver.isSeparable());
+
+        // points inside and just outside the raster
+        double[] expected = new double[width * height];
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            int col = random.nextInt(width + 20) - 10;
+            int row = random.nextInt(height + 20) - 10;
+            double weight = 1 + random.nextInt(3);
+            convolver.add(col, row, weight);
+
+            for (int kr = 0; kr < kernelHeight; kr++) {
+                for (int kc = 0; kc < kernelWidth; kc++) {
+                    int x = col - xOrigin + kc;
+                    int y = row - yOrigin + kr;
+                    if (x >= 0 && y >= 0 && x < width && y < height) {
+                        expected[y * width + x] += weight * kernel[kr * kernelWidth + kc];
+                    }
+                }
+            }
+        }
+
+        // the tiles are independent, so any number of threads gives the same values
+        for (int parallelism : new int[] { 1, 4 }) {
+            DiskMemImage image = createImage(width, height);
+            double max = convolver.convolve(image, 2.0, parallelism);
+
+            double expectedMax = 0;
+            Raster raster = image.getData();
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    double value = expected[row * width + col] / 2.0;
+                    expectedMax = Math.max(expectedMax, value);
+                    assertEquals(value, raster.getSampleDouble(col, row, 0), 1E-4);
+                }
+            }
+            assertEquals(expectedMax, max, 1E-9);
+            assertTrue(max > 0);
+        }
+    }
+}
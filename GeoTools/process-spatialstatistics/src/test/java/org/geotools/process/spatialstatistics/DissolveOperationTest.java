@@ -0,0 +1,201 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.operations.DissolveOperation;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+
+public class DissolveOperationTest {
+
+    static final String SUMMARY_FIELDS = "Sum.val,Count.val,Min.val,Max.val";
+
+    @Test
+    public void testGroupLargerThanBatch() throws Exception {
+        // 2500 features in one group, more than two union batches of 1024
+        Random random = new Random(1);
+        ListFeatureCollection features = createParcels();
+        for (int i = 0; i < 2500; i++) {
+            add(features, random, i % 50 == 0 ? "B" : "A", 120);
+        }
+        addFeature(features, null, "A", 7.0);
+
+        assertGroups(features, dissolve(features, false, 1));
+    }
+
+    @Test
+    public void testSortedInput() throws Exception {
+        Random random = new Random(2);
+        ListFeatureCollection features = createParcels();
+        for (String key : new String[] { "A", "B", "C" }) {
+            int size = key.equals("B") ? 1500 : 300;
+            for (int i = 0; i < size; i++) {
+                add(features, random, key, 60);
+            }
+        }
+
+        // the same groups as unsorted
+        assertGroups(features, dissolve(features, false, 1));
+        assertGroups(features, dissolve(features, true, 1));
+        assertGroups(features, dissolve(features, true, 4));
+    }
+
+    @Test
+    public void testSortedInputWithReappearingValue() throws Exception {
+        Random random = new Random(3);
+        ListFeatureCollection first = createParcels();
+        ListFeatureCollection second = createParcels();
+        ListFeatureCollection third = createParcels();
+        for (int i = 0; i < 1200; i++) {
+            add(first, random, "A", 60);
+        }
+        for (int i = 0; i < 200; i++) {
+            add(second, random, "B", 60);
+        }
+        for (int i = 0; i < 300; i++) {
+            add(third, random, "A", 60);
+        }
+
+        ListFeatureCollection features = createParcels();
+        for (ListFeatureCollection part : new ListFeatureCollection[] { first, second, third }) {
+            SimpleFeatureIterator iter = part.features();
+            try {
+                while (iter.hasNext()) {
+                    features.add(iter.next());
+                }
+            } finally {
+                iter.close();
+            }
+        }
+
+        // unsorted: the value that appears again joins its first group
+        assertGroups(features, dissolve(features, false, 1));
+
+        // sorted: the value that appears again starts a new group
+        for (int parallelism : new int[] { 1, 4 }) {
+            List<SimpleFeature> result = dissolve(features, true, parallelism);
+            assertEquals(3, result.size());
+            assertGroups(first, result.subList(0, 1));
+            assertGroups(second, result.subList(1, 2));
+            assertGroups(third, result.subList(2, 3));
+        }
+    }
+
+    @Test
+    public void testParallelism() throws Exception {
+        // groups smaller and larger than a batch, interleaved, and a group without geometries
+        Random random = new Random(4);
+        ListFeatureCollection features = createParcels();
+        for (int i = 0; i < 12000; i++) {
+            int group = i % 10 < 6 ? 0 : 1 + random.nextInt(9);
+            add(features, random, "G" + group, 40 * (group + 1));
+            if (i % 1000 == 0) {
+                addFeature(features, null, "N", i);
+            }
+        }
+        addFeature(features, null, null, 1.0);
+
+        for (int parallelism : new int[] { 1, 2, 4, 0 }) {
+            assertGroups(features, dissolve(features, false, parallelism));
+        }
+    }
+
+    private ListFeatureCollection createParcels() {
+        return TestFixtures.createFeatures("parcels", "geom:Polygon,key:String,val:Double");
+    }
+
+    private void add(ListFeatureCollection features, Random random, String key, double range) {
+        // squares on integer coordinates, so the unions are exact
+        double x = random.nextInt((int) range);
+        double y = random.nextInt((int) range);
+        Geometry square = TestFixtures.gf.toGeometry(new Envelope(x, x + 2, y, y + 2));
+        TestFixtures.add(features, square, key, Double.valueOf(random.nextInt(1000) / 10.0));
+    }
+
+    private void addFeature(ListFeatureCollection features, Geometry geometry, String key,
+            double value) {
+        TestFixtures.add(features, geometry, key, Double.valueOf(value));
+    }
+
+    private List<SimpleFeature> dissolve(SimpleFeatureCollection features, boolean sortedInput,
+            int parallelism) throws Exception {
+        DissolveOperation operation = new DissolveOperation();
+        operation.setSortedInput(sortedInput);
+        operation.setParallelism(parallelism);
+        return TestFixtures.toList(operation.execute(features, "key", SUMMARY_FIELDS));
+    }
+
+    // compares the result with one union of all the geometries of each group
+    private void assertGroups(SimpleFeatureCollection features, List<SimpleFeature> result) {
+        Map<Object, List<SimpleFeature>> groups = new LinkedHashMap<Object, List<SimpleFeature>>();
+        SimpleFeatureIterator iter = features.features();
+        try {
+            while (iter.hasNext()) {
+                SimpleFeature feature = iter.next();
+                Object key = feature.getAttribute("key");
+                key = key == null ? "NULLVALUE" : key;
+                List<SimpleFeature> members = groups.get(key);
+                if (members == null) {
+                    members = new ArrayList<SimpleFeature>();
+                    groups.put(key, members);
+                }
+                members.add(feature);
+            }
+        } finally {
+            iter.close();
+        }
+
+        // the groups are written in first-seen order
+        assertEquals(groups.size(), result.size());
+        int index = 0;
+        for (Map.Entry<Object, List<SimpleFeature>> entry : groups.entrySet()) {
+            SimpleFeature dissolved = result.get(index++);
+            assertEquals(entry.getKey(), dissolved.getAttribute("key"));
+
+            List<Geometry> geometries = new ArrayList<Geometry>();
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (SimpleFeature feature : entry.getValue()) {
+                if (feature.getDefaultGeometry() != null) {
+                    geometries.add((Geometry) feature.getDefaultGeometry());
+                }
+                double value = ((Double) feature.getAttribute("val")).doubleValue();
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            Geometry union = (Geometry) dissolved.getDefaultGeometry();
+            if (geometries.isEmpty()) {
+                assertNull(union);
+            } else {
+                Geometry expected = new CascadedPolygonUnion(geometries).union();
+                assertEquals(expected.getArea(), union.getArea(), 1E-6);
+                assertEquals(expected.getNumGeometries(), union.getNumGeometries());
+            }
+
+            assertEquals(sum, number(dissolved, "sum_val"), 1E-6);
+            assertEquals(entry.getValue().size(), number(dissolved, "cnt_val"), 0.0);
+            assertEquals(min, number(dissolved, "min_val"), 0.0);
+            assertEquals(max, number(dissolved, "max_val"), 0.0);
+        }
+    }
+
+    private double number(SimpleFeature feature, String field) {
+        return ((Number) feature.getAttribute(field)).doubleValue();
+    }
+}
@@ -0,0 +1,126 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.core.FacetDistanceIndex;
+import org.geotools.process.spatialstatistics.core.FacetDistanceIndex.Neighbors;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKTReader;
+
+public class FacetDistanceIndexTest {
+
+    static GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+
+    @Test
+    public void testNearest() throws Exception {
+        Random random = new Random(5);
+
+        // buffered points and line strings
+        List<Geometry> targets = new ArrayList<Geometry>();
+        for (int i = 0; i < 200; i++) {
+            Coordinate start = new Coordinate(random.nextDouble() * 1000,
+                    random.nextDouble() * 1000);
+            if (i % 2 == 0) {
+                targets.add(gf.createPoint(start).buffer(1 + random.nextDouble() * 40));
+            } else {
+                Coordinate end = new Coordinate(start.x + random.nextDouble() * 50,
+                        start.y + random.nextDouble() * 50);
+                targets.add(gf.createLineString(new Coordinate[] { start, end }));
+            }
+        }
+        FacetDistanceIndex index = new FacetDistanceIndex(targets);
+
+        // points, some of them inside the buffers, and small polygons
+        Neighbors neighbors = new Neighbors();
+        for (int i = 0; i < 200; i++) {
+            Geometry source = gf.createPoint(
+                    new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000));
+            if (i % 4 == 0) {
+                source = source.buffer(random.nextDouble() * 5);
+            } else if (i % 4 == 1) {
+                source = targets.get(random.nextInt(100) * 2).getCentroid();
+            }
+            double[] expected = new double[targets.size()];
+            for (int j = 0; j < expected.length; j++) {
+                expected[j] = targets.get(j).distance(source);
+            }
+            Arrays.sort(expected);
+
+            // unbounded
+            assertEquals(3, index.nearest(source, 3, 0d, neighbors));
+            for (int k = 0; k < 3; k++) {
+                assertEquals(expected[k], neighbors.getDistance(k), 1E-9);
+                assertEquals(targets.get(neighbors.getIndex(k)).distance(source),
+                        neighbors.getDistance(k), 1E-9);
+            }
+
+            // bounded
+            double maxDistance = 60;
+            int within = 0;
+            while (within < expected.length && expected[within] <= maxDistance) {
+                within++;
+            }
+            assertEquals(Math.min(5, within), index.nearest(source, 5, maxDistance, neighbors));
+            for (int k = 0; k < neighbors.size(); k++) {
+                assertEquals(expected[k], neighbors.getDistance(k), 1E-9);
+            }
+        }
+    }
+
+    @Test
+    public void testInsidePolygons() throws Exception {
+        WKTReader reader = new WKTReader(gf);
+        List<Geometry> targets = Arrays.asList(
+                reader.read("POLYGON ((0 0, 100 0, 100 100, 0 100, 0 0), "
+                        + "(40 40, 40 60, 60 60, 60 40, 40 40))"),
+                reader.read("MULTIPOLYGON (((200 0, 210 0, 210 10, 200 10, 200 0)), "
+                        + "((300 0, 310 0, 310 10, 300 10, 300 0)))"),
+                reader.read("POINT (500 500)"), null,
+                reader.read("GEOMETRYCOLLECTION (POLYGON ((600 0, 700 0, 700 100, 600 0)), "
+                        + "POINT (800 0))"));
+        FacetDistanceIndex index = new FacetDistanceIndex(targets);
+
+        String[] sources = { "POINT (10 10)", // inside, 10 from the boundary
+                "POINT (50 50)", // inside the hole, 10 from its ring
+                "POINT (100 50)", // on the boundary
+                "POINT (305 5)", // inside the second polygon
+                "MULTIPOINT ((150 150), (205 5))", // one point inside
+                "LINESTRING (20 20, 30 30)", // a line inside
+                "POLYGON ((45 45, 55 45, 55 55, 45 55, 45 45))", // a polygon inside the hole
+                "POLYGON ((450 450, 550 450, 550 550, 450 550, 450 450))", // contains a point
+                "POINT (690 50)", // inside the polygon of the collection
+                "POLYGON ((195 -5, 215 -5, 215 15, 195 15, 195 -5))" }; // covers a polygon
+
+        Neighbors neighbors = new Neighbors();
+        for (String wkt : sources) {
+            Geometry source = reader.read(wkt);
+            for (int i = 0; i < targets.size(); i++) {
+                if (targets.get(i) != null) {
+                    assertEquals(wkt, targets.get(i).distance(source), index.distance(i, source),
+                            1E-9);
+                }
+            }
+
+            double[] expected = new double[] { targets.get(0).distance(source),
+                    targets.get(1).distance(source), targets.get(2).distance(source),
+                    targets.get(4).distance(source) };
+            Arrays.sort(expected);
+            assertEquals(4, index.nearest(source, 10, 0d, neighbors));
+            for (int k = 0; k < 4; k++) {
+                assertEquals(wkt, expected[k], neighbors.getDistance(k), 1E-9);
+            }
+        }
+
+        assertEquals(0d, index.distance(0, reader.read("POINT (10 10)")), 0d);
+        assertEquals(10d, index.distance(0, reader.read("POINT (50 50)")), 1E-9);
+    }
+}
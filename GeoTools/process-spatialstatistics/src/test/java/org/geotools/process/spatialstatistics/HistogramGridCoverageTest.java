@@ -0,0 +1,183 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.process.spatialstatistics.core.HistogramGridCoverage;
+import org.junit.Test;
+
+public class HistogramGridCoverageTest {
+
+    private static final float NO_DATA = -9999f;
+
+    // 77 x 103 cells in 16 x 16 tiles, the last row and column of tiles are partial
+    private static final int TILE_SIZE = 16;
+
+    @Test
+    public void testIntegralValues() throws Exception {
+        Random random = new Random(1);
+        float[][] matrix = new float[77][103];
+        for (float[] row : matrix) {
+            for (int col = 0; col < row.length; col++) {
+                row[col] = random.nextInt(10) == 0 ? NO_DATA : random.nextInt(50) - 20;
+            }
+        }
+        assertExact(matrix, 1);
+        assertExact(matrix, 4);
+    }
+
+    @Test
+    public void testFloatingValues() throws Exception {
+        Random random = new Random(2);
+        float[][] matrix = new float[77][103];
+        for (float[] row : matrix) {
+            for (int col = 0; col < row.length; col++) {
+                row[col] = random.nextInt(10) == 0 ? NO_DATA : (float) random.nextGaussian();
+            }
+        }
+        assertExact(matrix, 1);
+        assertExact(matrix, 4);
+    }
+
+    @Test
+    public void testBinnedValues() throws Exception {
+        Random random = new Random(3);
+        float[][] matrix = new float[77][103];
+        for (float[] row : matrix) {
+            for (int col = 0; col < row.length; col++) {
+                row[col] = random.nextInt(10) == 0 ? NO_DATA : (float) random.nextGaussian();
+            }
+        }
+
+        // count, sum and extremes stay exact
+        HistogramGridCoverage histogram = calculate(matrix, 1, 100, 64);
+        TreeMap<Double, Integer> expected = countValues(matrix);
+        double[] values = histogram.getArrayValues();
+        int[] frequencies = histogram.getArrayFrequencies();
+        assertTrue(values.length <= 64 + 2);
+        assertEquals(expected.firstKey(), values[0], 0.0);
+        assertEquals(expected.lastKey(), values[values.length - 1], 0.0);
+
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                assertTrue(values[i] > values[i - 1]);
+            }
+            count += frequencies[i];
+            sum += values[i] * frequencies[i];
+        }
+        assertEquals(histogram.getCount(), count);
+        assertEquals(histogram.getMean() * count, sum, 1E-6);
+
+        // the partial histograms are merged in tile order
+        HistogramGridCoverage parallel = calculate(matrix, 4, 100, 64);
+        assertArrayEquals(values, parallel.getArrayValues(), 0.0);
+        assertArrayEquals(frequencies, parallel.getArrayFrequencies());
+
+        // a single bin keeps the minimum and the maximum
+        HistogramGridCoverage single = calculate(matrix, 1, 100, 1);
+        values = single.getArrayValues();
+        assertEquals(3, values.length);
+        assertEquals(expected.firstKey(), values[0], 0.0);
+        assertEquals(expected.lastKey(), values[2], 0.0);
+        assertEquals(histogram.getCount(), single.getCount());
+    }
+
+    @Test
+    public void testConstantValue() throws Exception {
+        float[][] matrix = new float[40][50];
+        for (float[] row : matrix) {
+            Arrays.fill(row, 0.25f);
+        }
+        matrix[3][7] = NO_DATA;
+
+        // the minimum equals the maximum, so all cells fall into the first bin
+        HistogramGridCoverage histogram = calculate(matrix, 1, 100, 64);
+        assertArrayEquals(new double[] { 0.25 }, histogram.getArrayValues(), 0.0);
+        assertArrayEquals(new int[] { 40 * 50 - 1 }, histogram.getArrayFrequencies());
+    }
+
+    @Test
+    public void testInvalidValues() throws Exception {
+        float[][] matrix = new float[20][30];
+        for (int row = 0; row < matrix.length; row++) {
+            for (int col = 0; col < matrix[row].length; col++) {
+                matrix[row][col] = (row * 31 + col) % 4 == 0 ? Float.NaN : row - col;
+            }
+        }
+        matrix[0][1] = Float.POSITIVE_INFINITY;
+        matrix[0][2] = Float.NEGATIVE_INFINITY;
+        matrix[0][3] = NO_DATA;
+
+        // NaN, infinite and NoData cells are skipped
+        assertExact(matrix, 1);
+        assertExact(matrix, 4);
+    }
+
+    @Test
+    public void testNoValidValues() throws Exception {
+        float[][] matrix = new float[20][30];
+        for (float[] row : matrix) {
+            Arrays.fill(row, NO_DATA);
+        }
+        matrix[5][5] = Float.NaN;
+
+        HistogramGridCoverage histogram = new HistogramGridCoverage();
+        GridCoverage2D coverage = TestFixtures.createCoverage(matrix, TILE_SIZE, 1, 1, NO_DATA);
+        assertFalse(histogram.calculateHistogram(coverage, 0, NO_DATA));
+        assertEquals(0, histogram.getCount());
+    }
+
+    private void assertExact(float[][] matrix, int parallelism) {
+        TreeMap<Double, Integer> expected = countValues(matrix);
+
+        HistogramGridCoverage histogram = calculate(matrix, parallelism, -1, -1);
+        double[] values = histogram.getArrayValues();
+        int[] frequencies = histogram.getArrayFrequencies();
+        assertEquals(expected.size(), values.length);
+        assertEquals(expected.firstKey(), histogram.getMinimum(), 0.0);
+        assertEquals(expected.lastKey(), histogram.getMaximum(), 0.0);
+
+        int index = 0;
+        for (Map.Entry<Double, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), values[index], 0.0);
+            assertEquals(entry.getValue().intValue(), frequencies[index]);
+            index++;
+        }
+    }
+
+    private HistogramGridCoverage calculate(float[][] matrix, int parallelism, int maxSampleSize,
+            int binCount) {
+        HistogramGridCoverage histogram = new HistogramGridCoverage();
+        histogram.setParallelism(parallelism);
+        if (maxSampleSize > 0) {
+            histogram.setMaxSampleSize(maxSampleSize);
+            histogram.setBinCount(binCount);
+        }
+        GridCoverage2D coverage = TestFixtures.createCoverage(matrix, TILE_SIZE, 1, 1, NO_DATA);
+        assertTrue(histogram.calculateHistogram(coverage, 0, NO_DATA));
+        return histogram;
+    }
+
+    private TreeMap<Double, Integer> countValues(float[][] matrix) {
+        TreeMap<Double, Integer> counts = new TreeMap<Double, Integer>();
+        for (float[] row : matrix) {
+            for (float value : row) {
+                if (value != NO_DATA && !Float.isNaN(value) && !Float.isInfinite(value)) {
+                    Integer count = counts.get(Double.valueOf(value));
+                    counts.put(Double.valueOf(value), count == null ? 1 : count + 1);
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,163 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.geotools.process.spatialstatistics.gridcoverage.IDWInterpolator;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterRadius;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class IDWInterpolatorTest {
+
+    private static final int GRID_SIZE = 20;
+
+    private static final double CELL_SIZE = 5.0;
+
+    private final Coordinate[] samples = createSamples(80);
+
+    @Test
+    public void testVariableRadius() {
+        for (double power : new double[] { 1.0, 2.0, 3.0 }) {
+            RasterRadius radius = new RasterRadius();
+            radius.setVariable(12);
+            assertGrid(radius, power);
+
+            radius = new RasterRadius();
+            radius.setVariable(5, 12.0);
+            assertGrid(radius, power);
+        }
+    }
+
+    @Test
+    public void testFixedRadius() {
+        for (double power : new double[] { 1.0, 2.0, 3.0 }) {
+            RasterRadius radius = new RasterRadius();
+            radius.setFixed(15.0);
+            assertGrid(radius, power);
+        }
+    }
+
+    @Test
+    public void testFixedRadiusWithMinimum() {
+        // a small and a large radius, so there are both fewer and more samples within it
+        for (double distance : new double[] { 6.0, 30.0 }) {
+            RasterRadius radius = new RasterRadius();
+            radius.setFixed(distance, 4);
+            IDWInterpolator interpolator = new IDWInterpolator(samples, radius, 2.0);
+
+            for (int row = 0; row < GRID_SIZE; row++) {
+                for (int col = 0; col < GRID_SIZE; col++) {
+                    Coordinate p = cellCenter(col, row);
+
+                    // always the 4 nearest samples, the radius does not limit or extend them
+                    Coordinate[] sorted = sortByDistance(p);
+                    double sumWeight = 0;
+                    double weightSum = 0;
+                    for (int i = 0; i < 4; i++) {
+                        double weight = Math.pow(p.distance(sorted[i]), -2.0);
+                        weightSum += weight * sorted[i].z;
+                        sumWeight += weight;
+                    }
+                    assertEquals(weightSum / sumWeight, interpolator.getValue(p), 1E-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFixedRadiusWithoutSamples() {
+        RasterRadius radius = new RasterRadius();
+        radius.setFixed(1.0);
+        IDWInterpolator interpolator = new IDWInterpolator(samples, radius, 2.0);
+
+        // no sample within the radius and no minimum: no value
+        assertEquals(-Float.MAX_VALUE, interpolator.getValue(-50.0, -50.0), 0.0);
+
+        radius = new RasterRadius();
+        radius.setFixed(1.0, 1);
+        interpolator = new IDWInterpolator(samples, radius, 2.0);
+        Coordinate nearest = sortByDistance(new Coordinate(-50.0, -50.0))[0];
+        assertEquals(nearest.z, interpolator.getValue(-50.0, -50.0), 1E-9);
+    }
+
+    @Test
+    public void testCoincidentSamples() {
+        Coordinate[] coincident = Arrays.copyOf(samples, samples.length + 1);
+        coincident[samples.length] = new Coordinate(samples[0].x, samples[0].y, 100.0);
+
+        IDWInterpolator interpolator = new IDWInterpolator(coincident);
+        assertEquals((samples[0].z + 100.0) / 2.0,
+                interpolator.getValue(samples[0].x, samples[0].y), 1E-9);
+        assertEquals(samples[1].z, interpolator.getValue(samples[1].x, samples[1].y), 0.0);
+    }
+
+    // compares the interpolator with the former per-cell loop over a sorted map of the samples
+    private void assertGrid(RasterRadius radius, double power) {
+        IDWInterpolator interpolator = new IDWInterpolator(samples, radius, power);
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int col = 0; col < GRID_SIZE; col++) {
+                Coordinate p = cellCenter(col, row);
+                double expected = interpolate(p, radius, power);
+                assertEquals(expected, interpolator.getValue(p), 1E-9);
+                assertEquals(expected, interpolator.getValue(p.x, p.y), 1E-9);
+            }
+        }
+    }
+
+    private double interpolate(Coordinate p, RasterRadius radius, double power) {
+        Map<Double, Coordinate> sortedMap = new TreeMap<Double, Coordinate>();
+        for (Coordinate sample : samples) {
+            double distance = p.distance(sample);
+            if (distance <= radius.distance) {
+                sortedMap.put(Double.valueOf(distance), sample);
+            }
+        }
+
+        double sumWeight = 0;
+        double weightSumDist = 0;
+        int process = 0;
+        for (Entry<Double, Coordinate> entry : sortedMap.entrySet()) {
+            process++;
+            final double weight = Math.pow(entry.getKey(), -power);
+            weightSumDist += weight * entry.getValue().z;
+            sumWeight += weight;
+            if (radius.numberOfPoints > 0 && process >= radius.numberOfPoints) {
+                break;
+            }
+        }
+        return sumWeight > 0 ? weightSumDist / sumWeight : -Float.MAX_VALUE;
+    }
+
+    private Coordinate[] sortByDistance(final Coordinate p) {
+        Coordinate[] sorted = samples.clone();
+        Arrays.sort(sorted, new Comparator<Coordinate>() {
+            @Override
+            public int compare(Coordinate o1, Coordinate o2) {
+                return Double.compare(p.distance(o1), p.distance(o2));
+            }
+        });
+        return sorted;
+    }
+
+    private Coordinate cellCenter(int col, int row) {
+        return new Coordinate((col + 0.5) * CELL_SIZE, (row + 0.5) * CELL_SIZE);
+    }
+
+    private static Coordinate[] createSamples(int count) {
+        Random random = new Random(21);
+        Coordinate[] samples = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * GRID_SIZE * CELL_SIZE;
+            double y = random.nextDouble() * GRID_SIZE * CELL_SIZE;
+            samples[i] = new Coordinate(x, y, 10 + x / 10 + random.nextGaussian());
+        }
+        return samples;
+    }
+}
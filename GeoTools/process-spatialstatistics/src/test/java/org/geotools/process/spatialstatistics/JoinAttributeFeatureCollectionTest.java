@@ -0,0 +1,71 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.geotools.api.data.Join;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.process.spatialstatistics.transformation.JoinAttributeFeatureCollection;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class JoinAttributeFeatureCollectionTest {
+
+    @Test
+    public void testIntegerToStringKeys() throws Exception {
+        // an integer key of a shapefile joined to the text key of a csv file
+        ListFeatureCollection inputs = TestFixtures.createFeatures("parcels",
+                "geom:Point,id:Integer");
+        for (int id : new int[] { 1, 2, 3, 10 }) {
+            TestFixtures.add(inputs, TestFixtures.gf.createPoint(new Coordinate(id, id)), id);
+        }
+
+        ListFeatureCollection joins = TestFixtures.createFeatures("csv",
+                "code:String,label:String");
+        TestFixtures.add(joins, "10", "ten");
+        TestFixtures.add(joins, "2", "two");
+        TestFixtures.add(joins, "abc", "text");
+        TestFixtures.add(joins, null, "none");
+        TestFixtures.add(joins, "2", "second two");
+
+        List<SimpleFeature> joined = TestFixtures.toList(new JoinAttributeFeatureCollection(
+                inputs, "id", joins, "code", Join.Type.OUTER));
+        assertEquals(4, joined.size());
+        assertNull(joined.get(0).getAttribute("label"));
+        assertEquals("two", joined.get(1).getAttribute("label"));
+        assertNull(joined.get(2).getAttribute("label"));
+        assertEquals("ten", joined.get(3).getAttribute("label"));
+
+        joined = TestFixtures.toList(new JoinAttributeFeatureCollection(inputs, "id", joins,
+                "code", Join.Type.INNER));
+        assertEquals(2, joined.size());
+        assertEquals(Integer.valueOf(2), joined.get(0).getAttribute("id"));
+        assertEquals(Integer.valueOf(10), joined.get(1).getAttribute("id"));
+    }
+
+    @Test
+    public void testNumericKeys() throws Exception {
+        // text and long keys joined to double values
+        ListFeatureCollection inputs = TestFixtures.createFeatures("parcels",
+                "geom:Point,id:Long,name:String");
+        TestFixtures.add(inputs, TestFixtures.gf.createPoint(new Coordinate(0, 0)), 5L, "5");
+        TestFixtures.add(inputs, TestFixtures.gf.createPoint(new Coordinate(1, 1)), 7L, "7.0");
+        TestFixtures.add(inputs, TestFixtures.gf.createPoint(new Coordinate(2, 2)), null, "x");
+
+        ListFeatureCollection joins = TestFixtures.createFeatures("values",
+                "code:Double,label:String");
+        TestFixtures.add(joins, 5.0, "five");
+        TestFixtures.add(joins, 7.0, "seven");
+
+        for (String primaryKey : new String[] { "id", "name" }) {
+            List<SimpleFeature> joined = TestFixtures.toList(new JoinAttributeFeatureCollection(
+                    inputs, primaryKey, joins, "code", Join.Type.INNER));
+            assertEquals(2, joined.size());
+            assertEquals("five", joined.get(0).getAttribute("label"));
+            assertEquals("seven", joined.get(1).getAttribute("label"));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.core.AbstractWeightMatrix.SpatialWeightMatrixType;
+import org.geotools.process.spatialstatistics.core.WeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class LocalMoransIProcessTest {
+
+    @Test
+    public void testParallelism() throws Exception {
+        SimpleFeatureCollection features = createPoints(4000, 1000.0);
+
+        // serial results
+        LocalMoranIStatisticOperation serial = new LocalMoranIStatisticOperation();
+        serial.setSpatialConceptType(SpatialConcept.FixedDistance);
+        serial.setDistanceBand(50.0);
+        serial.setParallelism(1);
+        List<SimpleFeature> expected = TestFixtures.toList(serial.execute(features, "val"));
+
+        for (int parallelism : new int[] { 4, 16, 0 }) {
+            LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+            operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+            operation.setDistanceBand(50.0);
+            operation.setParallelism(parallelism);
+
+            SimpleFeatureCollection result = operation.execute(features, "val");
+
+            // results must not depend on the number of threads
+            assertTrue(Arrays.equals(serial.getIndex(), operation.getIndex()));
+            assertTrue(Arrays.equals(serial.getZScore(), operation.getZScore()));
+
+            // features are written in the order of the input features
+            List<SimpleFeature> actual = TestFixtures.toList(result);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                SimpleFeature feature = expected.get(i);
+                SimpleFeature other = actual.get(i);
+                for (String field : new String[] { "LMiIndex", "LMiZScore", "LMiPValue",
+                        "COType" }) {
+                    assertEquals(feature.getAttribute(field), other.getAttribute(field));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPermutations() throws Exception {
+        SimpleFeatureCollection features = createPoints(500, 1000.0);
+
+        double[] pseudoP = null;
+        for (int parallelism : new int[] { 1, 4 }) {
+            LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+            operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+            operation.setDistanceBand(100.0);
+            operation.setParallelism(parallelism);
+            operation.setPermutations(99);
+            operation.setSeed(12345L);
+
+            SimpleFeatureCollection result = operation.execute(features, "val");
+            assertNotNull(result.getSchema().getDescriptor("LMiPseudoP"));
+
+            if (pseudoP == null) {
+                pseudoP = operation.getPseudoPValue();
+                for (double p : pseudoP) {
+                    assertTrue(Double.isNaN(p) || (p >= 0.01 && p <= 0.5));
+                }
+            } else {
+                // seeded per feature, results must not depend on the number of threads
+                assertTrue(Arrays.equals(pseudoP, operation.getPseudoPValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testSpatialWeightsFile() throws Exception {
+        SimpleFeatureCollection features = createPoints(1000, 1000.0);
+
+        LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+        operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+        operation.setDistanceBand(80.0);
+        operation.execute(features, "val");
+        double[] index = operation.getIndex();
+
+        File swbFile = File.createTempFile("weights", ".swb");
+        File gwtFile = File.createTempFile("weights", ".gwt");
+        try {
+            WeightMatrix matrix = operation.getSpatialWeightMatrix().getWeightMatrix();
+            matrix.save(swbFile, Charset.forName("UTF-8"));
+            matrix.save(gwtFile, Charset.forName("UTF-8"));
+
+            for (File file : new File[] { swbFile, gwtFile }) {
+                WeightMatrix loaded = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+                assertTrue(loaded.load(file, Charset.forName("UTF-8")));
+                assertEquals(matrix.getFeatureCount(), loaded.getFeatureCount());
+                assertEquals(SpatialWeightMatrixType.Distance, loaded.getSpatialWeightMatrixType());
+                assertEquals(matrix.getSpatialWeights().getNonZeroCount(),
+                        loaded.getSpatialWeights().getNonZeroCount());
+
+                // the matrix is loaded instead of built
+                LocalMoranIStatisticOperation fromFile = new LocalMoranIStatisticOperation();
+                fromFile.setSpatialConceptType(SpatialConcept.FixedDistance);
+                fromFile.setDistanceBand(80.0);
+                fromFile.setSpatialWeightsFile(file);
+                fromFile.execute(features, "val");
+                assertTrue(Arrays.equals(index, fromFile.getIndex()));
+            }
+        } finally {
+            swbFile.delete();
+            gwtFile.delete();
+        }
+    }
+
+    @Test
+    public void testSpatialWeightsFileWithoutUniqueField() throws Exception {
+        WeightMatrix matrix = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+        matrix.visit("1", "2");
+        matrix.visit("2", "1");
+        matrix.visit("2", "3");
+        matrix.visit("3", "2");
+
+        for (String suffix : new String[] { ".gal", ".gwt", ".swb" }) {
+            File file = File.createTempFile("weights", suffix);
+            try {
+                matrix.save(file, Charset.forName("UTF-8"));
+                if (!suffix.equals(".swb")) {
+                    BufferedReader reader = new BufferedReader(new FileReader(file));
+                    try {
+                        assertEquals("0 3", reader.readLine().trim());
+                    } finally {
+                        reader.close();
+                    }
+                }
+
+                WeightMatrix loaded = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+                assertTrue(loaded.load(file, Charset.forName("UTF-8")));
+                assertEquals(3, loaded.getFeatureCount());
+                assertEquals(4, loaded.getSpatialWeights().getNonZeroCount());
+                assertEquals("FeatureID", loaded.getUniqueField());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidSpatialWeightsFile() throws Exception {
+        WeightMatrix matrix = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+        matrix.visit("1", "2");
+        matrix.visit("2", "1");
+        matrix.visit("2", "3");
+        matrix.visit("3", "2");
+
+        // int ids and float weights: ... rowOffsets[4], neighbors[4], weights[4]
+        File file = File.createTempFile("weights", ".swb");
+        try {
+            matrix.save(file, Charset.forName("UTF-8"));
+            final long length = file.length();
+            final long offsets = length - 48;
+            final long neighbors = length - 32;
+
+            WeightMatrix loaded = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+            assertTrue(loaded.load(file, Charset.forName("UTF-8")));
+            assertEquals(1.0, loaded.getSpatialWeights().getWeight(1, 2), 0.0);
+
+            long[][] corruptions = { { 4, 2 }, // version
+                    { 16, 1000 }, // neighbor count beyond the end of the file
+                    { offsets + 8, 0 }, // decreasing row offsets
+                    { neighbors, 7 }, // neighbor index out of range
+                    { neighbors + 4, -1 }, // negative neighbor index
+                    { length, 0 } }; // truncated
+            for (long[] corruption : corruptions) {
+                matrix.save(file, Charset.forName("UTF-8"));
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    if (corruption[0] == length) {
+                        raf.setLength(length - 4);
+                    } else {
+                        raf.seek(corruption[0]);
+                        raf.writeInt(Integer.reverseBytes((int) corruption[1]));
+                    }
+                } finally {
+                    raf.close();
+                }
+
+                loaded = new WeightMatrix(SpatialWeightMatrixType.Contiguity);
+                assertFalse(loaded.load(file, Charset.forName("UTF-8")));
+                assertEquals(0, loaded.getFeatureCount());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAsyncWrite() throws Exception {
+        SimpleFeatureCollection features = createPoints(1000, 1000.0);
+
+        for (boolean asyncWrite : new boolean[] { true, false }) {
+            LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+            operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+            operation.setDistanceBand(80.0);
+            operation.setOutputDataStore(new MemoryDataStore());
+            operation.setAsyncWrite(asyncWrite);
+            operation.setWriteBatchSize(64);
+
+            SimpleFeatureCollection result = operation.execute(features, "val");
+            assertEquals(features.size(), result.size());
+        }
+    }
+
+    @Test
+    public void testEdgeCases() throws Exception {
+        Random random = new Random(7);
+        Coordinate[] points = new Coordinate[201];
+        Coordinate[] constants = new Coordinate[200];
+        for (int i = 0; i < constants.length; i++) {
+            points[i] = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100,
+                    random.nextInt(10));
+            constants[i] = new Coordinate(points[i].x, points[i].y, 5.0);
+        }
+
+        // a feature without neighbors within the distance band
+        points[200] = new Coordinate(10000, 10000, 9.0);
+
+        for (int parallelism : new int[] { 1, 4 }) {
+            LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+            operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+            operation.setDistanceBand(20.0);
+            operation.setParallelism(parallelism);
+
+            List<SimpleFeature> result = TestFixtures.toList(
+                    operation.execute(TestFixtures.createPoints(points, "val"), "val"));
+            assertEquals(201, result.size());
+            assertUndefined(result.get(200));
+
+            // no variance at all
+            result = TestFixtures.toList(
+                    operation.execute(TestFixtures.createPoints(constants, "val"), "val"));
+            assertEquals(200, result.size());
+            for (SimpleFeature feature : result) {
+                assertUndefined(feature);
+            }
+        }
+    }
+
+    // an undefined statistic is written as a zero index and z-score, without a cluster type
+    private void assertUndefined(SimpleFeature feature) {
+        assertEquals(0.0, ((Number) feature.getAttribute("LMiIndex")).doubleValue(), 0.0);
+        assertEquals(0.0, ((Number) feature.getAttribute("LMiZScore")).doubleValue(), 0.0);
+        assertEquals(1.0, ((Number) feature.getAttribute("LMiPValue")).doubleValue(), 0.0);
+        assertEquals("", feature.getAttribute("COType"));
+    }
+
+    private SimpleFeatureCollection createPoints(int count, double size) {
+        Random random = new Random(100);
+        Coordinate[] points = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * size;
+            double y = random.nextDouble() * size;
+            points[i] = new Coordinate(x, y, x / size * 10 + random.nextGaussian());
+        }
+        return TestFixtures.createPoints(points, "val");
+    }
+}
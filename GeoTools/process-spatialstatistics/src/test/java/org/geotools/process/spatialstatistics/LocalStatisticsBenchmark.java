@@ -0,0 +1,111 @@
+package org.geotools.process.spatialstatistics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.AbstractStatisticsOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.FocalLQOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalGStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalGearysCOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Times the local statistics with 1, 4 and 16 threads. Not a unit test, run it from this module with
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.geotools.process.spatialstatistics.LocalStatisticsBenchmark \
+ *     -Dexec.args="200000 3"
+ * </pre>
+ *
+ * The arguments are the number of random points (default 100000) and the number of timed runs (default 3), the best run is reported. The
+ * times include building the spatial weights.
+ */
+public class LocalStatisticsBenchmark {
+
+    static final int[] THREADS = { 1, 4, 16 };
+
+    public static void main(String[] args) throws IOException {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        // about 30 neighbors per feature within the distance band
+        final double size = Math.sqrt(count) * 100.0;
+        final double distanceBand = 300.0;
+        SimpleFeatureCollection features = createPoints(count, size);
+
+        System.out.println(String.format(Locale.ENGLISH, "%d points, %d processors", count,
+                Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format(Locale.ENGLISH, "%-16s %10s %10s %10s", "operation",
+                "threads", "ms", "speedup"));
+
+        for (String name : new String[] { "LocalMoranI", "LocalG", "LocalGearysC", "FocalLQ" }) {
+            long serial = 0;
+            for (int threads : THREADS) {
+                // the first run warms up the JIT
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run <= runs; run++) {
+                    AbstractStatisticsOperation operation = createOperation(name);
+                    operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+                    operation.setDistanceBand(distanceBand);
+                    operation.setParallelism(threads);
+
+                    long start = System.nanoTime();
+                    execute(operation, features);
+                    long elapsed = System.nanoTime() - start;
+                    if (run > 0) {
+                        best = Math.min(best, elapsed);
+                    }
+                }
+
+                if (threads == 1) {
+                    serial = best;
+                }
+                System.out.println(String.format(Locale.ENGLISH, "%-16s %10d %10.1f %10.2f",
+                        name, threads, best / 1e6, serial / (double) best));
+            }
+        }
+    }
+
+    private static AbstractStatisticsOperation createOperation(String name) {
+        if (name.equals("LocalG")) {
+            return new LocalGStatisticOperation();
+        } else if (name.equals("LocalGearysC")) {
+            return new LocalGearysCOperation();
+        } else if (name.equals("FocalLQ")) {
+            return new FocalLQOperation();
+        }
+        return new LocalMoranIStatisticOperation();
+    }
+
+    private static SimpleFeatureCollection execute(AbstractStatisticsOperation operation,
+            SimpleFeatureCollection features) throws IOException {
+        if (operation instanceof LocalGStatisticOperation) {
+            return ((LocalGStatisticOperation) operation).execute(features, "val");
+        } else if (operation instanceof LocalGearysCOperation) {
+            return ((LocalGearysCOperation) operation).execute(features, "val");
+        } else if (operation instanceof FocalLQOperation) {
+            return ((FocalLQOperation) operation).execute(features, "val", "val2");
+        }
+        return ((LocalMoranIStatisticOperation) operation).execute(features, "val");
+    }
+
+    private static SimpleFeatureCollection createPoints(int count, double size) {
+        Random random = new Random(100);
+        ListFeatureCollection features = TestFixtures.createFeatures("points",
+                "geom:Point,val:Double,val2:Double");
+        for (int i = 0; i < count; i++) {
+            Coordinate point = new Coordinate(random.nextDouble() * size,
+                    random.nextDouble() * size);
+            double value = point.x / size * 10 + random.nextGaussian();
+            TestFixtures.add(features, TestFixtures.gf.createPoint(point), value,
+                    Math.abs(random.nextGaussian()) * 10);
+        }
+        return features;
+    }
+}
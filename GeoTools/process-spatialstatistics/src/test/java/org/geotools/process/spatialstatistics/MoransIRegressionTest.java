@@ -0,0 +1,210 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.core.SSUtils;
+import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * The neighbor-list statistics must match the all-pairs loops they replaced. The reference values below are the former all-pairs formulas
+ * over a dense weight matrix.
+ */
+public class MoransIRegressionTest {
+
+    static final double TOLERANCE = 1E-9;
+
+    static final double DISTANCE_BAND = 1.5;
+
+    // a jittered 8 x 8 grid, every point has neighbors within the distance band
+    private final Coordinate[] points = createPoints();
+
+    @Test
+    public void testLocalMoransI() throws Exception {
+        SimpleFeatureCollection features = TestFixtures.createPoints(points, "val");
+        for (StandardizationMethod standardization : StandardizationMethod.values()) {
+            LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+            operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+            operation.setDistanceType(DistanceMethod.Euclidean);
+            operation.setDistanceBand(DISTANCE_BAND);
+            operation.setStandardizationType(standardization);
+            operation.execute(features, "val");
+
+            double[][] expected = localMoransI(weights(standardization));
+            for (int i = 0; i < points.length; i++) {
+                assertEquals(expected[0][i], operation.getIndex()[i], TOLERANCE);
+                assertEquals(expected[1][i], operation.getZScore()[i], TOLERANCE);
+                assertEquals(SSUtils.zProb(expected[1][i], StatEnum.BOTH),
+                        SSUtils.zProb(operation.getZScore()[i], StatEnum.BOTH), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testGlobalMoransI() throws Exception {
+        SimpleFeatureCollection features = TestFixtures.createPoints(points, "val");
+        for (StandardizationMethod standardization : StandardizationMethod.values()) {
+            GlobalMoranIStatisticOperation operation = new GlobalMoranIStatisticOperation();
+            operation.setSpatialConceptType(SpatialConcept.FixedDistance);
+            operation.setDistanceType(DistanceMethod.Euclidean);
+            operation.setDistanceBand(DISTANCE_BAND);
+            operation.setStandardizationType(standardization);
+            MoransI result = operation.execute(features, "val");
+
+            double[] expected = globalMoransI(weights(standardization));
+            assertEquals(expected[0], result.getObservedIndex(), TOLERANCE);
+            assertEquals(expected[1], result.getZScore(), TOLERANCE);
+            assertEquals(SSUtils.zProb(expected[1], StatEnum.BOTH), result.getPValue(),
+                    TOLERANCE);
+        }
+    }
+
+    // w[i][j] of the fixed distance band, row standardized if requested, no self neighbors
+    private double[][] weights(StandardizationMethod standardization) {
+        final int n = points.length;
+        double[][] w = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            double rowSum = 0.0;
+            for (int j = 0; j < n; j++) {
+                if (i != j && points[i].distance(points[j]) <= DISTANCE_BAND) {
+                    w[i][j] = 1.0;
+                    rowSum += 1.0;
+                }
+            }
+            if (standardization == StandardizationMethod.Row && rowSum > 0) {
+                for (int j = 0; j < n; j++) {
+                    w[i][j] /= rowSum;
+                }
+            }
+        }
+        return w;
+    }
+
+    // {index[], zScore[]}
+    private double[][] localMoransI(double[][] w) {
+        final double n = points.length;
+        double meanX = 0.0;
+        for (Coordinate point : points) {
+            meanX += point.z;
+        }
+        meanX /= n;
+
+        double m2 = 0.0;
+        double m4 = 0.0;
+        for (Coordinate point : points) {
+            m2 += Math.pow(point.z - meanX, 2.0);
+            m4 += Math.pow(point.z - meanX, 4.0);
+        }
+        m2 = m2 / (n - 1.0);
+        m4 = m4 / (n - 1.0);
+        double b2 = m4 / Math.pow(m2, 2.0);
+
+        double[][] result = new double[2][points.length];
+        for (int i = 0; i < points.length; i++) {
+            double zxjWSum = 0.0;
+            double wijSum = 0.0;
+            double wij2Sum = 0.0;
+            for (int j = 0; j < points.length; j++) {
+                double wij = w[i][j];
+                if (wij == 0) {
+                    continue;
+                }
+                zxjWSum += wij * (points[j].z - meanX);
+                wijSum += wij;
+                wij2Sum += Math.pow(wij, 2.0);
+            }
+
+            double index = ((points[i].z - meanX) / m2) * zxjWSum;
+            double dExpected = (-1.0 * wijSum) / (n - 1);
+            double wijWihSum = Math.pow(wijSum, 2.0) - wij2Sum;
+            double v1 = (wij2Sum * (n - b2)) / (n - 1);
+            double v2 = Math.pow(wijSum, 2.0) / Math.pow(n - 1, 2.0);
+            double v3 = wijWihSum * ((2.0 * b2) - n);
+            double v4 = (n - 1) * (n - 2);
+            double dVariance = v1 + (v3 / v4) - v2;
+
+            result[0][i] = index;
+            result[1][i] = (index - dExpected) / Math.pow(dVariance, 0.5);
+        }
+        return result;
+    }
+
+    // {observed index, zScore}
+    private double[] globalMoransI(double[][] w) {
+        final double n = points.length;
+        double meanX = 0.0;
+        for (Coordinate point : points) {
+            meanX += point.z;
+        }
+        meanX /= n;
+
+        double zijWSum = 0.0;
+        double wijSum = 0.0;
+        double ziSum2 = 0.0;
+        double ziSum4 = 0.0;
+        double sumS1 = 0.0;
+        double sumS2 = 0.0;
+        for (int i = 0; i < points.length; i++) {
+            double jwijSum = 0.0;
+            double jwjiSum = 0.0;
+
+            double zi = points[i].z - meanX;
+            ziSum2 += Math.pow(zi, 2.0);
+            ziSum4 += Math.pow(zi, 4.0);
+
+            for (int j = 0; j < points.length; j++) {
+                double wij = w[i][j];
+                double wji = w[j][i];
+                if (wij == 0) {
+                    continue;
+                }
+
+                zijWSum += wij * zi * (points[j].z - meanX);
+                wijSum += wij;
+                jwijSum += wij;
+                jwjiSum += wji;
+                sumS1 += Math.pow(wij + wji, 2.0);
+            }
+            sumS2 += Math.pow(jwijSum + jwjiSum, 2.0);
+        }
+
+        ziSum2 = ziSum2 / n;
+        ziSum4 = ziSum4 / n;
+
+        double dExpected = -1.0 / (n - 1.0);
+        double dObserved = zijWSum / (ziSum2 * wijSum);
+
+        double s1 = 0.5 * sumS1;
+        double wijSum2 = Math.pow(wijSum, 2.0);
+        double b2 = ziSum4 / (ziSum2 * ziSum2);
+        double a = n * ((Math.pow(n, 2.0) - (3.0 * n) + 3.0) * s1 - (n * sumS2) + 3.0 * wijSum2);
+        double b = b2 * ((Math.pow(n, 2.0) - n) * s1 - (2.0 * n * sumS2) + 6.0 * wijSum2);
+        double c = ((n - 1.0) * (n - 2.0) * (n - 3.0) * (Math.pow(wijSum, 2.0)));
+        double zVariance = (a / c) - (b / c) - Math.pow(dExpected, 2.0);
+
+        return new double[] { dObserved, (dObserved - dExpected) / Math.pow(zVariance, 0.5) };
+    }
+
+    private static Coordinate[] createPoints() {
+        Random random = new Random(11);
+        Coordinate[] points = new Coordinate[64];
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                double x = col + (random.nextDouble() - 0.5) * 0.4;
+                double y = row + (random.nextDouble() - 0.5) * 0.4;
+                points[row * 8 + col] = new Coordinate(x, y, col + random.nextGaussian() * 2);
+            }
+        }
+        return points;
+    }
+}
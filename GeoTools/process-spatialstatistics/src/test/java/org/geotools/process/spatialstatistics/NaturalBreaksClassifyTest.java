@@ -0,0 +1,197 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.geotools.process.spatialstatistics.clsssifier.NaturalBreaksClassify;
+import org.junit.Test;
+
+public class NaturalBreaksClassifyTest {
+
+    @Test
+    public void testClusters() throws Exception {
+        double[] values = { 1, 2, 3, 10, 11, 12, 20, 21, 22 };
+        int[] frequencies = { 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+
+        Double[] breaks = new NaturalBreaksClassify().classify(values, frequencies, 3);
+        assertEquals(4, breaks.length);
+        assertEquals(1.0, breaks[0], 0.0);
+        assertEquals(3.0, breaks[1], 0.0);
+        assertEquals(12.0, breaks[2], 0.0);
+        assertEquals(22.0, breaks[3], 0.0);
+    }
+
+    @Test
+    public void testOptimalPartition() throws Exception {
+        Random random = new Random(3);
+        for (int test = 0; test < 100; test++) {
+            int n = 5 + random.nextInt(10);
+            int classes = 2 + random.nextInt(Math.min(4, n - 2));
+
+            TreeSet<Double> distinct = new TreeSet<Double>();
+            while (distinct.size() < n) {
+                distinct.add(Math.round(random.nextGaussian() * 100) / 10.0);
+            }
+            double[] values = new double[n];
+            int[] frequencies = new int[n];
+            int index = 0;
+            for (double value : distinct) {
+                values[index] = value;
+                frequencies[index++] = 1 + random.nextInt(5);
+            }
+
+            Double[] breaks = new NaturalBreaksClassify().classify(values, frequencies, classes);
+            assertEquals(values[0], breaks[0], 0.0);
+            assertEquals(values[n - 1], breaks[classes], 0.0);
+
+            double expected = minimumDeviations(values, frequencies, 0, classes);
+            assertEquals(expected, deviations(values, frequencies, breaks), 1E-6);
+        }
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        int n = 20000;
+        double[] values = new double[n];
+        int[] frequencies = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i * 0.01 + (i >= n / 2 ? 1000 : 0);
+            frequencies[i] = 1 + i % 3;
+        }
+
+        NaturalBreaksClassify classify = new NaturalBreaksClassify();
+        classify.setSampleSize(500);
+        Double[] breaks = classify.classify(values, frequencies, 2);
+        assertEquals(values[0], breaks[0], 0.0);
+        assertEquals(values[n / 2 - 1], breaks[1], 0.0);
+        assertEquals(values[n - 1], breaks[2], 0.0);
+    }
+
+    @Test
+    public void testFewValues() throws Exception {
+        // no more values than classes: the values are the breaks
+        Double[] breaks = new NaturalBreaksClassify().classify(new double[] { -1, 4 },
+                new int[] { 3, 1 }, 3);
+        assertArrayEquals(new Double[] { -1.0, 4.0 }, breaks);
+
+        breaks = new NaturalBreaksClassify().classify(new double[] { 7 }, new int[] { 2 }, 1);
+        assertArrayEquals(new Double[] { 7.0 }, breaks);
+
+        // a single class spans all values
+        breaks = new NaturalBreaksClassify().classify(new double[] { 1, 2, 9 },
+                new int[] { 1, 1, 1 }, 1);
+        assertArrayEquals(new Double[] { 1.0, 9.0 }, breaks);
+
+        // no values
+        breaks = new NaturalBreaksClassify().classify(new double[0], new int[0], 2);
+        assertArrayEquals(new Double[] { 0.0, 0.0, 0.0 }, breaks);
+    }
+
+    @Test
+    public void testFrequencies() throws Exception {
+        // the heavy value at 5 forms its own class
+        double[] values = { 0, 1, 5, 9, 10 };
+        int[] frequencies = { 1, 1, 100, 1, 1 };
+
+        Double[] breaks = new NaturalBreaksClassify().classify(values, frequencies, 3);
+        assertArrayEquals(new Double[] { 0.0, 1.0, 5.0, 10.0 }, breaks);
+    }
+
+    @Test
+    public void testLargeOffset() throws Exception {
+        // elevations with a large offset keep the breaks of the values without it
+        double[] values = { 1, 2, 3, 10, 11, 12, 20, 21, 22 };
+        int[] frequencies = { 2, 1, 3, 1, 4, 1, 5, 1, 2 };
+        double[] shifted = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            shifted[i] = values[i] + 1E9;
+        }
+
+        Double[] breaks = new NaturalBreaksClassify().classify(values, frequencies, 3);
+        Double[] shiftedBreaks = new NaturalBreaksClassify().classify(shifted, frequencies, 3);
+        for (int i = 0; i < breaks.length; i++) {
+            assertEquals(breaks[i] + 1E9, shiftedBreaks[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testSampleSizes() throws Exception {
+        Random random = new Random(5);
+        int n = 3000;
+        TreeSet<Double> distinct = new TreeSet<Double>();
+        while (distinct.size() < n) {
+            distinct.add(Math.round(random.nextGaussian() * 100000) / 100.0);
+        }
+        double[] values = new double[n];
+        int[] frequencies = new int[n];
+        int index = 0;
+        for (double value : distinct) {
+            values[index] = value;
+            frequencies[index++] = 1 + random.nextInt(5);
+        }
+
+        NaturalBreaksClassify exact = new NaturalBreaksClassify();
+        Double[] expected = exact.classify(values, frequencies, 5);
+
+        // a sample size not smaller than the number of values gives the exact partition
+        NaturalBreaksClassify classify = new NaturalBreaksClassify();
+        classify.setSampleSize(n);
+        assertArrayEquals(expected, classify.classify(values, frequencies, 5));
+
+        // fewer groups than twice the classes are raised to that, the breaks stay valid values
+        double optimum = deviations(values, frequencies, expected);
+        for (int sampleSize : new int[] { 1, 50, 500 }) {
+            classify.setSampleSize(sampleSize);
+            Double[] breaks = classify.classify(values, frequencies, 5);
+            assertEquals(6, breaks.length);
+            assertEquals(values[0], breaks[0], 0.0);
+            assertEquals(values[n - 1], breaks[5], 0.0);
+            for (int c = 1; c < breaks.length; c++) {
+                assertTrue(breaks[c] > breaks[c - 1]);
+                assertTrue(distinct.contains(breaks[c]));
+            }
+            assertTrue(deviations(values, frequencies, breaks) <= optimum * 1.05);
+        }
+    }
+
+    // sum of squared deviations of the classes [start, end)
+    private double deviations(double[] values, int[] frequencies, int start, int end) {
+        double weight = 0, sum = 0, squares = 0;
+        for (int i = start; i < end; i++) {
+            weight += frequencies[i];
+            sum += frequencies[i] * values[i];
+            squares += frequencies[i] * values[i] * values[i];
+        }
+        return squares - sum * sum / weight;
+    }
+
+    private double deviations(double[] values, int[] frequencies, Double[] breaks) {
+        double total = 0;
+        int start = 0;
+        for (int c = 1; c < breaks.length; c++) {
+            int end = start;
+            while (end < values.length && values[end] <= breaks[c]) {
+                end++;
+            }
+            total += deviations(values, frequencies, start, end);
+            start = end;
+        }
+        return total;
+    }
+
+    private double minimumDeviations(double[] values, int[] frequencies, int start, int classes) {
+        if (classes == 1) {
+            return deviations(values, frequencies, start, values.length);
+        }
+        double minimum = Double.MAX_VALUE;
+        for (int end = start + 1; end <= values.length - (classes - 1); end++) {
+            minimum = Math.min(minimum, deviations(values, frequencies, start, end)
+                    + minimumDeviations(values, frequencies, end, classes - 1));
+        }
+        return minimum;
+    }
+}
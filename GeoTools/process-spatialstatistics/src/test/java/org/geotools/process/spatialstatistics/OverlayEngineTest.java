@@ -0,0 +1,180 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.core.OverlayEngine;
+import org.geotools.process.spatialstatistics.transformation.DifferenceFeatureCollection;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKTReader;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+
+public class OverlayEngineTest {
+
+    static GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+
+    @Test
+    public void testDifferenceAndIntersection() throws Exception {
+        ListFeatureCollection features = TestFixtures.createFeatures("overlays", "geom:Polygon");
+        Random random = new Random(3);
+
+        List<Geometry> overlays = new ArrayList<Geometry>();
+        for (int i = 0; i < 400; i++) {
+            Coordinate center = new Coordinate(random.nextDouble() * 1000,
+                    random.nextDouble() * 1000);
+            Geometry overlay = gf.createPoint(center).buffer(5 + random.nextDouble() * 30);
+            overlays.add(overlay);
+            TestFixtures.add(features, overlay);
+        }
+        OverlayEngine engine = new OverlayEngine(features);
+        assertEquals(overlays.size(), engine.size());
+
+        for (int i = 0; i < 50; i++) {
+            Coordinate center = new Coordinate(random.nextDouble() * 1000,
+                    random.nextDouble() * 1000);
+            Geometry source = gf.createPoint(center).buffer(20 + random.nextDouble() * 80);
+
+            List<Geometry> hits = new ArrayList<Geometry>();
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int k = 0; k < overlays.size(); k++) {
+                if (overlays.get(k).intersects(source)) {
+                    hits.add(overlays.get(k));
+                    expected.add(k);
+                }
+            }
+
+            int[] found = engine.query(source);
+            assertEquals(expected.size(), found.length);
+            for (int k = 0; k < found.length; k++) {
+                assertEquals(expected.get(k).intValue(), found[k]);
+                double area = source.intersection(overlays.get(found[k])).getArea();
+                assertEquals(area, engine.intersection(source, found[k]).getArea(), 1E-6);
+            }
+
+            Geometry expectedDiff = source;
+            if (hits.size() > 0) {
+                expectedDiff = source.difference(new CascadedPolygonUnion(hits).union());
+            }
+            assertEquals(expectedDiff.getArea(), engine.difference(source).getArea(), 1E-6);
+        }
+    }
+
+    @Test
+    public void testDifferenceWithLargeOverlay() throws Exception {
+        ListFeatureCollection features = TestFixtures.createFeatures("overlays", "geom:Polygon");
+        Random random = new Random(5);
+
+        // one overlay across most of the grid cells and many small ones
+        List<Geometry> overlays = new ArrayList<Geometry>();
+        overlays.add(gf.createPoint(new Coordinate(500, 500)).buffer(400, 32));
+        for (int i = 0; i < 600; i++) {
+            Coordinate center = new Coordinate(random.nextDouble() * 1000,
+                    random.nextDouble() * 1000);
+            overlays.add(gf.createPoint(center).buffer(5 + random.nextDouble() * 10));
+        }
+        for (Geometry overlay : overlays) {
+            TestFixtures.add(features, overlay);
+        }
+        OverlayEngine engine = new OverlayEngine(features);
+        Geometry union = new CascadedPolygonUnion(overlays).union();
+
+        for (int i = 0; i < 30; i++) {
+            Coordinate center = new Coordinate(random.nextDouble() * 1000,
+                    random.nextDouble() * 1000);
+            Geometry source = gf.createPoint(center).buffer(50 + random.nextDouble() * 200);
+
+            Geometry expected = source.difference(union);
+            Geometry actual = engine.difference(source);
+            assertEquals(expected.getArea(), actual.getArea(), 1E-6);
+            assertEquals(0.0, actual.symDifference(expected).getArea(), 1E-6);
+        }
+    }
+
+    @Test
+    public void testEdgeCases() throws Exception {
+        WKTReader reader = new WKTReader(gf);
+        ListFeatureCollection features = TestFixtures.createFeatures("overlays", "geom:Polygon");
+        String[] wkts = { "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))", null, "POLYGON EMPTY",
+                "POLYGON ((20 0, 30 0, 30 10, 20 10, 20 0))" };
+        for (String wkt : wkts) {
+            Geometry geometry = wkt == null ? null : reader.read(wkt);
+            TestFixtures.add(features, geometry);
+        }
+
+        // null and empty overlays are skipped
+        OverlayEngine engine = new OverlayEngine(features);
+        assertEquals(2, engine.size());
+        assertArrayEquals(new int[0], engine.query(null));
+        assertArrayEquals(new int[0], engine.query(gf.createPoint()));
+
+        // the geometry itself when there is nothing to overlay
+        Geometry outside = reader.read("POLYGON ((40 0, 50 0, 50 10, 40 10, 40 0))");
+        assertSame(outside, engine.difference(outside));
+
+        Geometry inside = reader.read("POLYGON ((2 2, 8 2, 8 8, 2 8, 2 2))");
+        assertSame(inside, engine.intersection(inside, 0));
+        assertTrue(engine.difference(inside).isEmpty());
+
+        // touching the boundary only
+        Geometry touching = reader.read("POLYGON ((10 0, 20 0, 20 10, 10 10, 10 0))");
+        assertArrayEquals(new int[] { 0, 1 }, engine.query(touching));
+        assertEquals(100.0, engine.difference(touching).getArea(), 1E-9);
+        assertEquals(0.0, engine.intersection(touching, 1).getArea(), 0.0);
+
+        // overlays on a vertical line have an extent without width
+        ListFeatureCollection lines = TestFixtures.createFeatures("lines", "geom:LineString");
+        TestFixtures.add(lines, reader.read("LINESTRING (5 0, 5 10)"));
+        TestFixtures.add(lines, reader.read("LINESTRING (5 20, 5 30)"));
+        OverlayEngine vertical = new OverlayEngine(lines);
+        assertEquals(0.0, vertical.getBounds().getWidth(), 0.0);
+        Geometry square = reader.read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))");
+        assertArrayEquals(new int[] { 0 }, vertical.query(square));
+        assertEquals(100.0, vertical.difference(square).getArea(), 1E-9);
+    }
+
+    @Test
+    public void testDifferenceFeaturesAreReadOnFirstUse() throws Exception {
+        WKTReader reader = new WKTReader(gf);
+        ListFeatureCollection inputs = TestFixtures.createFeatures("polygons",
+                "geom:Polygon,id:int");
+        TestFixtures.add(inputs, reader.read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))"), 1);
+
+        final int[] reads = new int[1];
+        ListFeatureCollection overlays = new ListFeatureCollection(inputs.getSchema()) {
+            @Override
+            public SimpleFeatureIterator features() {
+                reads[0]++;
+                return super.features();
+            }
+        };
+        TestFixtures.add(overlays, reader.read("POLYGON ((5 0, 20 0, 20 10, 5 10, 5 0))"), 2);
+
+        DifferenceFeatureCollection difference = new DifferenceFeatureCollection(inputs,
+                overlays);
+        assertEquals(0, reads[0]);
+
+        for (int i = 0; i < 2; i++) {
+            SimpleFeatureIterator iter = difference.features();
+            try {
+                assertTrue(iter.hasNext());
+                Geometry geometry = (Geometry) iter.next().getDefaultGeometry();
+                assertEquals(50.0, geometry.getArea(), 1E-9);
+            } finally {
+                iter.close();
+            }
+        }
+        assertEquals(1, reads[0]);
+    }
+}
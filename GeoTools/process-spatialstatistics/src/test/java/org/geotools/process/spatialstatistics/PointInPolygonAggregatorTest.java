@@ -0,0 +1,143 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.core.PointInPolygonAggregator;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.WKTReader;
+
+public class PointInPolygonAggregatorTest {
+
+    static GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+
+    @Test
+    public void testAggregate() throws Exception {
+        // 5 x 5 squares and a circle overlapping several of them
+        List<Geometry> polygons = new ArrayList<Geometry>();
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                polygons.add(gf.toGeometry(new Envelope(col * 10, col * 10 + 10, row * 10,
+                        row * 10 + 10)));
+            }
+        }
+        polygons.add(gf.createPoint(new Coordinate(25, 25)).buffer(12));
+
+        ListFeatureCollection features = TestFixtures.createFeatures("points",
+
+                "geom:Point,weight:Double");
+        List<Point> points = new ArrayList<Point>();
+        List<Double> weights = new ArrayList<Double>();
+        Random random = new Random(17);
+        for (int i = 0; i < 3000; i++) {
+            // some points on the edges of the squares
+            double x = i % 10 == 0 ? random.nextInt(6) * 10 : random.nextDouble() * 60 - 5;
+            double y = random.nextDouble() * 60 - 5;
+            Point point = gf.createPoint(new Coordinate(x, y));
+            double weight = random.nextInt(10);
+            points.add(point);
+            weights.add(weight);
+            TestFixtures.add(features, point, weight);
+        }
+
+        for (int parallelism : new int[] { 1, 0 }) {
+            PointInPolygonAggregator aggregator = new PointInPolygonAggregator(polygons);
+            aggregator.setParallelism(parallelism);
+            aggregator.aggregate(features,
+                    CommonFactoryFinder.getFilterFactory(null).property("weight"));
+
+            for (int index = 0; index < polygons.size(); index++) {
+                long count = 0;
+                double sum = 0;
+                for (int i = 0; i < points.size(); i++) {
+                    if (polygons.get(index).intersects(points.get(i))) {
+                        count++;
+                        sum += weights.get(i);
+                    }
+                }
+                assertEquals(count, aggregator.getCount(index));
+                assertEquals(sum, aggregator.getSum(index), 1E-9);
+            }
+        }
+    }
+
+    @Test
+    public void testLocate() throws Exception {
+        WKTReader reader = new WKTReader(gf);
+        List<Geometry> polygons = Arrays.asList(
+                reader.read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 8, 8 8, 8 2, 2 2))"),
+                null, reader.read("POLYGON EMPTY"),
+                reader.read("POLYGON ((5 5, 15 5, 15 15, 5 15, 5 5))"),
+                reader.read("LINESTRING (20 0, 30 10)"));
+        PointInPolygonAggregator aggregator = new PointInPolygonAggregator(polygons);
+        assertEquals(5, aggregator.size());
+
+        // null and empty geometries are never located
+        assertArrayEquals(new int[0], aggregator.locate(null));
+        assertArrayEquals(new int[0], aggregator.locate(gf.createPoint()));
+
+        // inside the hole, on the hole boundary, on the outer boundary, in the overlap
+        assertArrayEquals(new int[0], aggregator.locate(reader.read("POINT (4 4)")));
+        assertArrayEquals(new int[] { 0 }, aggregator.locate(reader.read("POINT (2 5)")));
+        assertArrayEquals(new int[] { 0 }, aggregator.locate(reader.read("POINT (0 0)")));
+        assertArrayEquals(new int[] { 0, 3 }, aggregator.locate(reader.read("POINT (9 9)")));
+        assertArrayEquals(new int[] { 3 }, aggregator.locate(reader.read("POINT (6 6)")));
+
+        // a multipoint is located when any of its points is
+        assertArrayEquals(new int[] { 0, 3 },
+                aggregator.locate(reader.read("MULTIPOINT ((4 4), (9 9))")));
+
+        // other geometries and targets use prepared geometries
+        assertArrayEquals(new int[] { 4 }, aggregator.locate(reader.read("POINT (25 5)")));
+        assertArrayEquals(new int[] { 0, 3 },
+                aggregator.locate(reader.read("LINESTRING (1 1, 6 6)")));
+        // a line inside the hole
+        assertArrayEquals(new int[0], aggregator.locate(reader.read("LINESTRING (3 3, 4 4)")));
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        List<Geometry> polygons = new ArrayList<Geometry>();
+        polygons.add(gf.toGeometry(new Envelope(0, 10, 0, 10)));
+
+        ListFeatureCollection features = TestFixtures.createFeatures("points",
+
+                "geom:Point,weight:Double");
+        Object[][] rows = { { gf.createPoint(new Coordinate(1, 1)), 2.0 },
+                { gf.createPoint(new Coordinate(2, 2)), null },
+                { gf.createPoint(new Coordinate(3, 3)), Double.NaN },
+                { gf.createPoint(new Coordinate(4, 4)), Double.POSITIVE_INFINITY },
+                { null, 100.0 }, { gf.createPoint(), 100.0 },
+                { gf.createPoint(new Coordinate(20, 20)), 100.0 },
+                { gf.createPoint(new Coordinate(5, 5)), -0.5 } };
+        for (Object[] row : rows) {
+            TestFixtures.add(features, row);
+        }
+
+        // null, NaN and infinite weights are counted but not summed
+        PointInPolygonAggregator aggregator = new PointInPolygonAggregator(polygons);
+        aggregator.aggregate(features,
+                CommonFactoryFinder.getFilterFactory(null).property("weight"));
+        assertEquals(5, aggregator.getCount(0));
+        assertEquals(1.5, aggregator.getSum(0), 0.0);
+
+        // without a weight only the counts are accumulated
+        aggregator = new PointInPolygonAggregator(polygons);
+        aggregator.aggregate(features, null);
+        assertEquals(5, aggregator.getCount(0));
+        assertEquals(0.0, aggregator.getSum(0), 0.0);
+    }
+}
@@ -0,0 +1,137 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.PointKdTree.Neighbors;
+import org.junit.Test;
+
+public class PointKdTreeTest {
+
+    @Test
+    public void testNearestRandom() {
+        Random random = new Random(11);
+        double[] x = new double[500];
+        double[] y = new double[500];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = random.nextDouble() * 100;
+        }
+        PointKdTree tree = new PointKdTree(x, y);
+
+        Neighbors neighbors = new Neighbors();
+        for (int q = 0; q < 200; q++) {
+            double qx = random.nextDouble() * 120 - 10;
+            double qy = random.nextDouble() * 120 - 10;
+            for (int k : new int[] { 1, 5, 12 }) {
+                for (double maxDistance : new double[] { Double.NaN, 8.0 }) {
+                    tree.nearest(qx, qy, k, maxDistance, neighbors);
+                    assertArrayEquals(bruteForce(x, y, qx, qy, k, maxDistance),
+                            found(tree, neighbors, x, y, qx, qy), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTiesOnGrid() {
+        // integer grid with duplicated points: many neighbors at exactly the same distance
+        double[] x = new double[11 * 11 + 20];
+        double[] y = new double[x.length];
+        int count = 0;
+        for (int row = 0; row <= 10; row++) {
+            for (int col = 0; col <= 10; col++) {
+                x[count] = col;
+                y[count++] = row;
+            }
+        }
+        while (count < x.length) {
+            x[count] = x[count * 7 % 121];
+            y[count] = y[count * 7 % 121];
+            count++;
+        }
+        PointKdTree tree = new PointKdTree(x, y);
+
+        Neighbors neighbors = new Neighbors(1);
+        for (double qx = -0.5; qx <= 10.5; qx += 0.5) {
+            for (double qy = -0.5; qy <= 10.5; qy += 0.5) {
+                for (int k : new int[] { 1, 4, 9 }) {
+                    tree.nearest(qx, qy, k, Double.NaN, neighbors);
+                    assertArrayEquals(bruteForce(x, y, qx, qy, k, Double.NaN),
+                            found(tree, neighbors, x, y, qx, qy), 0.0);
+                }
+
+                // points exactly on the radius are included
+                tree.withinDistance(qx, qy, 2.0, neighbors);
+                int[] expected = withinDistance(x, y, qx, qy, 2.0);
+                int[] actual = new int[neighbors.size()];
+                for (int i = 0; i < actual.length; i++) {
+                    actual[i] = tree.getIndex(neighbors.getPosition(i));
+                }
+                Arrays.sort(actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyAndSubset() {
+        Neighbors neighbors = new Neighbors();
+        PointKdTree empty = new PointKdTree(new double[0], new double[0]);
+        assertEquals(0, empty.nearest(0, 0, 3, Double.NaN, neighbors));
+
+        // only the first count points are indexed
+        PointKdTree tree = new PointKdTree(new double[] { 0, 1, 2 }, new double[] { 0, 1, 2 }, 2);
+        assertEquals(2, tree.size());
+        assertEquals(2, tree.nearest(2, 2, 3, Double.NaN, neighbors));
+        assertEquals(1, tree.nearest(2, 2, 1, Double.NaN, neighbors));
+        assertEquals(1, tree.getIndex(neighbors.getPosition(0)));
+    }
+
+    // squared distances of the neighbors, checked against the input points and sorted
+    private double[] found(PointKdTree tree, Neighbors neighbors, double[] x, double[] y,
+            double qx, double qy) {
+        double[] distances = new double[neighbors.size()];
+        for (int i = 0; i < distances.length; i++) {
+            int position = neighbors.getPosition(i);
+            assertEquals(x[tree.getIndex(position)], tree.getX(position), 0.0);
+            assertEquals(y[tree.getIndex(position)], tree.getY(position), 0.0);
+            double dx = qx - tree.getX(position);
+            double dy = qy - tree.getY(position);
+            assertEquals(dx * dx + dy * dy, neighbors.getSquaredDistance(i), 0.0);
+            distances[i] = neighbors.getSquaredDistance(i);
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    private double[] bruteForce(double[] x, double[] y, double qx, double qy, int k,
+            double maxDistance) {
+        double[] distances = new double[x.length];
+        int count = 0;
+        for (int i = 0; i < x.length; i++) {
+            double d2 = (qx - x[i]) * (qx - x[i]) + (qy - y[i]) * (qy - y[i]);
+            if (Double.isNaN(maxDistance) || d2 <= maxDistance * maxDistance) {
+                distances[count++] = d2;
+            }
+        }
+        Arrays.sort(distances, 0, count);
+        return Arrays.copyOf(distances, Math.min(k, count));
+    }
+
+    private int[] withinDistance(double[] x, double[] y, double qx, double qy, double distance) {
+        int[] indexes = new int[x.length];
+        int count = 0;
+        for (int i = 0; i < x.length; i++) {
+            double d2 = (qx - x[i]) * (qx - x[i]) + (qy - y[i]) * (qy - y[i]);
+            if (d2 <= distance * distance) {
+                indexes[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+}
@@ -0,0 +1,104 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterEuclideanDistanceOperation;
+import org.junit.Test;
+
+public class RasterEuclideanDistanceOperationTest {
+
+    private static final float NO_DATA = -9999f;
+
+    // 16 x 16 tiles, the last row and column of tiles are partial
+    private static final int TILE_SIZE = 16;
+
+    @Test
+    public void testNoDataHoles() throws Exception {
+        // a few sources, the other cells are NoData or NaN
+        Random random = new Random(5);
+        float[][] matrix = new float[37][45];
+        for (float[] row : matrix) {
+            for (int col = 0; col < row.length; col++) {
+                int k = random.nextInt(25);
+                row[col] = k == 0 ? 1f : k % 2 == 0 ? NO_DATA : Float.NaN;
+            }
+        }
+
+        // non-square cells, any number of threads gives the same distances
+        assertDistances(matrix, 2.0, 3.0, 1, 0);
+        assertDistances(matrix, 2.0, 3.0, 3, 0);
+    }
+
+    @Test
+    public void testMaximumDistance() throws Exception {
+        Random random = new Random(7);
+        float[][] matrix = new float[37][45];
+        for (float[] row : matrix) {
+            for (int col = 0; col < row.length; col++) {
+                row[col] = random.nextInt(60) == 0 ? random.nextInt(5) : NO_DATA;
+            }
+        }
+        assertDistances(matrix, 2.0, 3.0, 3, 10.0);
+    }
+
+    @Test
+    public void testNarrowRaster() throws Exception {
+        // narrower than a tile, the sources in opposite corners
+        float[][] matrix = new float[40][5];
+        for (float[] row : matrix) {
+            Arrays.fill(row, NO_DATA);
+        }
+        matrix[0][4] = 7f;
+        matrix[39][0] = 0f;
+
+        assertDistances(matrix, 1.5, 1.0, 1, 0);
+        assertDistances(matrix, 1.5, 1.0, 4, 0);
+    }
+
+    private void assertDistances(float[][] matrix, double cellWidth, double cellHeight,
+            int parallelism, double maximumDistance) {
+        final int width = matrix[0].length;
+        final int height = matrix.length;
+
+        RasterEuclideanDistanceOperation operation = new RasterEuclideanDistanceOperation();
+        operation.setParallelism(parallelism);
+        GridCoverage2D result = operation.execute(
+                TestFixtures.createCoverage(matrix, TILE_SIZE, cellWidth, cellHeight,
+                        NO_DATA), maximumDistance);
+
+        Raster raster = result.getRenderedImage().getData();
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                double expected = bruteForce(matrix, col, row, cellWidth, cellHeight);
+                double value = raster.getSampleDouble(col, row, 0);
+                if (maximumDistance > 0 && expected > maximumDistance) {
+                    // cells beyond the maximum distance are written with the NoData value
+                    assertEquals(Float.MIN_VALUE, value, 0.0);
+                } else {
+                    assertEquals(expected, value, 1E-3);
+                }
+            }
+        }
+    }
+
+    private double bruteForce(float[][] matrix, int col, int row, double cellWidth,
+            double cellHeight) {
+        double distance = Double.MAX_VALUE;
+        for (int y = 0; y < matrix.length; y++) {
+            for (int x = 0; x < matrix[y].length; x++) {
+                float value = matrix[y][x];
+                if (value != NO_DATA && !Float.isNaN(value)) {
+                    double dx = (col - x) * cellWidth;
+                    double dy = (row - y) * cellHeight;
+                    distance = Math.min(distance, Math.sqrt(dx * dx + dy * dy));
+                }
+            }
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,67 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.Raster;
+import java.util.Random;
+
+import org.geotools.coverage.grid.GridCoordinates2D;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterFlowDirectionOperation;
+import org.junit.Test;
+
+public class RasterFlowDirectionOperationTest {
+
+    static final float NODATA = -9999f;
+
+    @Test
+    public void testNeighborhoodMatchesSubMatrix() throws Exception {
+        // 11 x 9 cells in 4 x 4 tiles, with flats, NoData inside and on the edges
+        Random random = new Random(17);
+        float[][] dem = new float[9][11];
+        for (int row = 0; row < dem.length; row++) {
+            for (int col = 0; col < dem[row].length; col++) {
+                dem[row][col] = random.nextInt(4) == 0 ? 50f : 40f + random.nextInt(20);
+            }
+        }
+        dem[4][5] = NODATA;
+        dem[0][3] = NODATA;
+        dem[8][10] = NODATA;
+        dem[6][0] = NODATA;
+
+        GridCoverage2D coverage = TestFixtures.createCoverage(dem, 4, 10.0, 10.0, NODATA);
+        for (int parallelism : new int[] { 1, 4 }) {
+            SubMatrixFlowDirection operation = new SubMatrixFlowDirection();
+            operation.setParallelism(parallelism);
+            Raster actual = operation.execute(coverage).getRenderedImage().getData();
+            double[][] expected = operation.executeBySubMatrix(coverage);
+
+            for (int row = 0; row < dem.length; row++) {
+                for (int col = 0; col < dem[row].length; col++) {
+                    double value = actual.getSampleDouble(actual.getMinX() + col,
+                            actual.getMinY() + row, 0);
+                    assertEquals("cell " + col + ", " + row, expected[row][col], value, 0.0);
+                }
+            }
+        }
+    }
+
+    // the former per-cell path, a 3 x 3 sub matrix read from the image for every cell
+    static final class SubMatrixFlowDirection extends RasterFlowDirectionOperation {
+
+        @SuppressWarnings("deprecation")
+        double[][] executeBySubMatrix(GridCoverage2D coverage) {
+            initSurface(coverage);
+
+            double[][] result = new double[bounds.height][bounds.width];
+            for (int row = 0; row < bounds.height; row++) {
+                for (int col = 0; col < bounds.width; col++) {
+                    GridCoordinates2D pos = new GridCoordinates2D(bounds.x + col, bounds.y + row);
+                    double[][] mx = getSubMatrix(pos, 3, 3);
+                    result[row][col] = Double.isNaN(mx[1][1]) ? noData : flowDirection(mx);
+                }
+            }
+            return result;
+        }
+    }
+}
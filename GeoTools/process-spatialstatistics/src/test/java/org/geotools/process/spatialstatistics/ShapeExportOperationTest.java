@@ -0,0 +1,111 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.api.data.Query;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.filter.identity.FeatureId;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.memory.MemoryFeatureStore;
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.process.spatialstatistics.storage.ShapeExportOperation;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class ShapeExportOperationTest {
+
+    static final int COUNT = 100;
+
+    static final int BATCH_SIZE = 10;
+
+    @Test
+    public void testAsyncWrite() throws Exception {
+        ListFeatureCollection features = createPoints();
+        for (boolean asyncWrite : new boolean[] { true, false }) {
+            MemoryDataStore dataStore = new MemoryDataStore();
+            ShapeExportOperation operation = new ShapeExportOperation();
+            operation.setOutputDataStore(dataStore);
+            operation.setOutputTypeName("points");
+            operation.setAsyncWrite(asyncWrite);
+            operation.setWriteBatchSize(BATCH_SIZE);
+
+            operation.execute(features);
+            assertEquals(COUNT, dataStore.getFeatureSource("points").getCount(Query.ALL));
+        }
+    }
+
+    @Test
+    public void testAsyncWriteFailure() throws Exception {
+        final IOException failure = new IOException("disk full");
+        FailingDataStore dataStore = new FailingDataStore(failure);
+
+        ShapeExportOperation operation = new ShapeExportOperation();
+        operation.setOutputDataStore(dataStore);
+        operation.setOutputTypeName("points");
+        operation.setAsyncWrite(true);
+        operation.setWriteBatchSize(BATCH_SIZE);
+
+        try {
+            operation.execute(createPoints());
+            fail("the failure of the writer thread is not thrown");
+        } catch (IOException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        // the first batch was added by the writer thread, but not committed
+        assertEquals(2, dataStore.batches.get());
+        assertEquals(0, dataStore.getFeatureSource("points").getCount(Query.ALL));
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName().startsWith("AsyncFeatureInserter-") && thread.isAlive());
+        }
+    }
+
+    private ListFeatureCollection createPoints() {
+        ListFeatureCollection features = TestFixtures.createFeatures("points",
+                "geom:Point,val:Double");
+        for (int i = 0; i < COUNT; i++) {
+            TestFixtures.add(features, TestFixtures.gf.createPoint(new Coordinate(i, i)),
+                    Double.valueOf(i));
+        }
+        return features;
+    }
+
+    // fails on the second batch added to the store
+    static final class FailingDataStore extends MemoryDataStore {
+
+        final AtomicInteger batches = new AtomicInteger();
+
+        final IOException failure;
+
+        FailingDataStore(IOException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        protected ContentFeatureSource createFeatureSource(ContentEntry entry, Query query) {
+            return new MemoryFeatureStore(entry, query) {
+                @Override
+                public List<FeatureId> addFeatures(
+                        FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection)
+                        throws IOException {
+                    if (batches.incrementAndGet() > 1) {
+                        throw failure;
+                    }
+                    return super.addFeatures(featureCollection);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SpatialWeights;
+import org.geotools.process.spatialstatistics.core.WeightMatrixBuilder;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class SpatialWeightsTest {
+
+    @Test
+    public void testBuilder() throws Exception {
+        SpatialWeights.Builder builder = new SpatialWeights.Builder(2);
+        builder.add(2, 0, 0.5);
+        builder.add(0, 2, 2.0);
+        builder.add(0, 1, 1.0);
+        builder.add(2, 1, 3.0);
+        builder.add(0, 2, 4.0); // the last weight wins
+        builder.ensureSize(5); // rows without neighbors
+        assertEquals(5, builder.getCount());
+
+        SpatialWeights sw = builder.build();
+        assertEquals(5, sw.size());
+        assertEquals(4, sw.getNonZeroCount());
+        assertArrayEquals(new int[] { 1, 2 }, neighbors(sw, 0));
+        assertArrayEquals(new int[0], neighbors(sw, 1));
+        assertArrayEquals(new int[] { 0, 1 }, neighbors(sw, 2));
+        assertEquals(0, sw.getNeighborCount(4));
+
+        assertEquals(4.0, sw.getWeight(0, 2), 0.0);
+        assertEquals(1.0, sw.getWeight(0, 1), 0.0);
+        assertEquals(0.0, sw.getWeight(1, 0), 0.0);
+        assertFalse(sw.isNeighbor(1, 0));
+        assertEquals(-1, sw.indexOf(7, 0));
+        assertEquals(5.0, sw.getRowSum(0), 0.0);
+
+        // a copy has the same pattern and weights
+        SpatialWeights copy = new SpatialWeights.Builder(sw).build();
+        assertEquals(sw.size(), copy.size());
+        for (int row = 0; row < sw.size(); row++) {
+            assertArrayEquals(neighbors(sw, row), neighbors(copy, row));
+            assertEquals(sw.getRowSum(row), copy.getRowSum(row), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderNegativeIndex() throws Exception {
+        new SpatialWeights.Builder().add(0, -1, 1.0);
+    }
+
+    @Test
+    public void testSelfNeighbors() throws Exception {
+        SpatialWeights.Builder builder = new SpatialWeights.Builder();
+        for (int i = 0; i < 3; i++) {
+            builder.add(i, i, 1.0);
+        }
+        builder.add(1, 0, 1.0);
+        builder.add(0, 1, 1.0);
+        builder.add(1, 2, 1.0);
+        builder.add(2, 1, 1.0);
+
+        // the diagonal is stored like any other neighbor
+        SpatialWeights sw = builder.build();
+        assertArrayEquals(new int[] { 0, 1 }, neighbors(sw, 0));
+        assertArrayEquals(new int[] { 0, 1, 2 }, neighbors(sw, 1));
+        assertTrue(sw.isNeighbor(2, 2));
+
+        // but not reached by the higher order lags
+        SpatialWeights higher = sw.power(2);
+        assertArrayEquals(new int[] { 1, 2 }, neighbors(higher, 0));
+        assertArrayEquals(new int[] { 0, 2 }, neighbors(higher, 1));
+        assertArrayEquals(new int[] { 0, 1 }, neighbors(higher, 2));
+    }
+
+    @Test
+    public void testRowStandardization() throws Exception {
+        SpatialWeights.Builder builder = new SpatialWeights.Builder();
+        builder.add(0, 1, 1.0);
+        builder.add(0, 2, 3.0);
+        builder.add(1, 0, 2.0);
+        builder.ensureSize(3);
+        SpatialWeights sw = builder.build();
+
+        double[] standardized = new double[sw.getNonZeroCount()];
+        for (int row = 0; row < sw.size(); row++) {
+            double rowSum = sw.getRowSum(row);
+            for (int k = sw.getRowStart(row); k < sw.getRowEnd(row); k++) {
+                standardized[k] = sw.getWeight(k) / rowSum;
+            }
+        }
+
+        SpatialWeights rows = sw.withWeights(standardized);
+        assertEquals(0.25, rows.getWeight(0, 1), 1E-12);
+        assertEquals(0.75, rows.getWeight(0, 2), 1E-12);
+        assertEquals(1.0, rows.getRowSum(0), 1E-12);
+        assertEquals(1.0, rows.getRowSum(1), 1E-12);
+        assertEquals(0.0, rows.getRowSum(2), 0.0);
+        assertArrayEquals(neighbors(sw, 0), neighbors(rows, 0));
+    }
+
+    @Test
+    public void testRowStandardizationOfBuilder() throws Exception {
+        // 0 - 1 - 2 - 3 - 4 on a line, 9 without neighbors
+        Coordinate[] points = new Coordinate[6];
+        for (int i = 0; i < 5; i++) {
+            points[i] = new Coordinate(i, 0, i);
+        }
+        points[5] = new Coordinate(9, 9, 9);
+
+        WeightMatrixBuilder swMatrix = new WeightMatrixBuilder(SpatialConcept.FixedDistance,
+                StandardizationMethod.Row);
+        swMatrix.setDistanceBandWidth(1.5);
+        swMatrix.buildWeightMatrix(TestFixtures.createPoints(points, "val"), "val");
+
+        for (SpatialEvent source : swMatrix.getEvents()) {
+            double sum = 0.0;
+            int count = 0;
+            for (int k = swMatrix.getRowStart(source.index); k < swMatrix
+                    .getRowEnd(source.index); k++) {
+                sum += swMatrix.standardizeWeight(source, swMatrix.getNeighborWeight(source, k));
+                count++;
+            }
+            boolean isolated = source.coordinate.x == 9;
+            assertEquals(isolated ? 0.0 : 1.0, sum, 1E-12);
+            assertEquals(isolated ? 0 : (source.coordinate.x % 4 == 0 ? 1 : 2), count);
+        }
+    }
+
+    @Test
+    public void testPower() throws Exception {
+        // a path 0 - 1 - 2 - 3 - 4 - 5 and a separate pair 6 - 7
+        SpatialWeights.Builder builder = new SpatialWeights.Builder();
+        for (int i = 0; i < 5; i++) {
+            builder.add(i, i + 1, 0.5);
+            builder.add(i + 1, i, 0.5);
+        }
+        builder.add(6, 7, 1.0);
+        builder.add(7, 6, 1.0);
+        SpatialWeights sw = builder.build();
+
+        SpatialWeights first = sw.power(1);
+        for (int row = 0; row < sw.size(); row++) {
+            assertArrayEquals(neighbors(sw, row), neighbors(first, row));
+        }
+
+        // binary weights of the neighbors within the order
+        SpatialWeights second = sw.power(2);
+        assertArrayEquals(new int[] { 1, 2 }, neighbors(second, 0));
+        assertArrayEquals(new int[] { 0, 1, 3, 4 }, neighbors(second, 2));
+        assertArrayEquals(new int[] { 7 }, neighbors(second, 6));
+        assertEquals(1.0, second.getWeight(2, 4), 0.0);
+        assertEquals(2.0, second.getRowSum(0), 0.0);
+
+        SpatialWeights third = sw.power(3);
+        assertArrayEquals(new int[] { 1, 2, 3 }, neighbors(third, 0));
+        assertArrayEquals(new int[] { 0, 1, 2, 4, 5 }, neighbors(third, 3));
+
+        // an order beyond the diameter reaches the whole component only
+        SpatialWeights all = sw.power(12);
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, neighbors(all, 5));
+        assertArrayEquals(new int[] { 6 }, neighbors(all, 7));
+        assertEquals(6 * 5 + 2, all.getNonZeroCount());
+    }
+
+    private int[] neighbors(SpatialWeights sw, int row) {
+        int[] neighbors = new int[sw.getNeighborCount(row)];
+        for (int k = sw.getRowStart(row); k < sw.getRowEnd(row); k++) {
+            neighbors[k - sw.getRowStart(row)] = sw.getNeighbor(k);
+        }
+        return neighbors;
+    }
+}
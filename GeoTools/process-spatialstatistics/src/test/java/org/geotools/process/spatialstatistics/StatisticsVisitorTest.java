@@ -0,0 +1,231 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.process.spatialstatistics.core.StatisticsVisitor;
+import org.geotools.process.spatialstatistics.core.StatisticsVisitor.DoubleStrategy;
+import org.geotools.process.spatialstatistics.core.StatisticsVisitor.IntegerStrategy;
+import org.geotools.process.spatialstatistics.core.StatisticsVisitor.LongStrategy;
+import org.geotools.process.spatialstatistics.core.StatisticsVisitor.StatisticsStrategy;
+import org.geotools.process.spatialstatistics.core.StatisticsVisitorResult;
+import org.junit.Test;
+
+public class StatisticsVisitorTest {
+
+    @Test
+    public void testLargeValues() throws Exception {
+        // elevations with a large offset: 1e9 + {4, 7, 13, 16}
+        StatisticsVisitor visitor = new StatisticsVisitor(new DoubleStrategy());
+        double[] values = { 4, 7, 13, 16 };
+        for (double value : values) {
+            visitor.visit(1e9 + value);
+        }
+
+        StatisticsVisitorResult result = visitor.getResult();
+        assertEquals(4, result.getCount());
+        assertEquals(1e9 + 10, result.getMean(), 1e-6);
+        assertEquals(22.5, result.getVariance(), 1e-9);
+        assertEquals(1e9 + 4, result.getMinimum(), 0.0);
+        assertEquals(1e9 + 16, result.getMaximum(), 0.0);
+        assertEquals(Double.valueOf(1e9 + 16), result.getLastValue());
+    }
+
+    @Test
+    public void testNegativeValues() throws Exception {
+        StatisticsVisitor visitor = new StatisticsVisitor(new DoubleStrategy());
+        visitor.visit(-5.0);
+        visitor.visit(-3.0);
+
+        assertEquals(-3.0, visitor.getResult().getMaximum(), 0.0);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        StatisticsVisitor all = new StatisticsVisitor(new DoubleStrategy());
+        StatisticsVisitor first = new StatisticsVisitor(new DoubleStrategy());
+        StatisticsVisitor second = new StatisticsVisitor(new DoubleStrategy());
+        for (int i = 0; i < 1000; i++) {
+            double value = Math.sin(i) * 100 + 500;
+            all.visit(value);
+            if (i < 300) {
+                first.visit(value);
+            } else {
+                second.visit(value);
+            }
+        }
+        first.merge(second);
+
+        StatisticsVisitorResult expected = all.getResult();
+        StatisticsVisitorResult merged = first.getResult();
+        assertEquals(expected.getCount(), merged.getCount());
+        assertEquals(expected.getSum(), merged.getSum(), 1e-9);
+        assertEquals(expected.getVariance(), merged.getVariance(), 1e-9);
+        assertEquals(expected.getMinimum(), merged.getMinimum(), 0.0);
+        assertEquals(expected.getMaximum(), merged.getMaximum(), 0.0);
+        assertEquals(expected.getFirstValue(), merged.getFirstValue());
+        assertEquals(expected.getLastValue(), merged.getLastValue());
+    }
+
+    @Test
+    public void testInvalidValues() throws Exception {
+        StatisticsVisitor visitor = new StatisticsVisitor(new DoubleStrategy());
+        visitor.setNoData(-9999);
+        visitor.visit((Object) null);
+        visitor.visit(Double.NaN);
+        visitor.visit(Double.POSITIVE_INFINITY);
+        visitor.visit(-9999.0);
+        visitor.visit("abc");
+        visitor.visit("12.5");
+        visitor.visit(Integer.valueOf(3));
+
+        // numeric strings are parsed, the first and last values keep their objects
+        StatisticsVisitorResult result = visitor.getResult();
+        assertEquals(2, result.getCount());
+        assertEquals(5, result.getInvalidCount());
+        assertEquals(15.5, result.getSum(), 0.0);
+        assertEquals(3.0, result.getMinimum(), 0.0);
+        assertEquals(12.5, result.getMaximum(), 0.0);
+        assertEquals("12.5", result.getFirstValue());
+        assertEquals(Integer.valueOf(3), result.getLastValue());
+        assertEquals(Double.valueOf(-9999), result.getNoData());
+    }
+
+    @Test
+    public void testEmptyAndSingleValue() throws Exception {
+        StatisticsVisitor visitor = new StatisticsVisitor(new DoubleStrategy());
+        StatisticsVisitorResult result = visitor.getResult();
+        assertEquals(0, result.getCount());
+        assertNull(result.getFirstValue());
+        assertNull(result.getLastValue());
+        assertEquals(0.0, result.getVariance(), 0.0);
+        assertEquals(0.0, result.getRange(), 0.0);
+
+        visitor.visit(-0.5);
+        result = visitor.getResult();
+        assertEquals(1, result.getCount());
+        assertEquals(0.0, result.getVariance(), 0.0);
+        assertEquals(-0.5, result.getMinimum(), 0.0);
+        assertEquals(-0.5, result.getMaximum(), 0.0);
+        assertEquals(Double.valueOf(-0.5), result.getFirstValue());
+        assertEquals(Double.valueOf(-0.5), result.getLastValue());
+
+        // reset restores the initial state
+        visitor.reset();
+        visitor.visit(7.0);
+        assertEquals(7.0, visitor.getResult().getMinimum(), 0.0);
+        assertEquals(7.0, visitor.getResult().getMaximum(), 0.0);
+        assertEquals(1, visitor.getResult().getCount());
+    }
+
+    @Test
+    public void testMergeEmptyParts() throws Exception {
+        StatisticsVisitor values = new StatisticsVisitor(new DoubleStrategy());
+        values.visit(1.0);
+        values.visit(Double.valueOf(4.0));
+
+        // a part without valid values only adds its invalid count
+        StatisticsVisitor invalid = new StatisticsVisitor(new DoubleStrategy());
+        invalid.visit(Double.NaN);
+        values.merge(invalid);
+
+        // a visitor without a strategy takes the strategy of the other part
+        StatisticsVisitor merged = new StatisticsVisitor((StatisticsStrategy) null);
+        merged.merge(new StatisticsVisitor((StatisticsStrategy) null));
+        assertEquals(0, merged.getResult().getCount());
+        merged.merge(values);
+
+        StatisticsVisitorResult result = merged.getResult();
+        assertEquals(2, result.getCount());
+        assertEquals(1, result.getInvalidCount());
+        assertEquals(2.5, result.getMean(), 0.0);
+        assertEquals(2.25, result.getVariance(), 1e-12);
+        assertEquals(Double.valueOf(1.0), result.getFirstValue());
+        assertEquals(Double.valueOf(4.0), result.getLastValue());
+
+        // an empty first part takes the first value of the other part
+        StatisticsVisitor empty = new StatisticsVisitor(new DoubleStrategy());
+        StatisticsVisitor last = new StatisticsVisitor(new DoubleStrategy());
+        last.visit(9.0);
+        empty.merge(last);
+        assertEquals(Double.valueOf(9.0), empty.getResult().getFirstValue());
+        assertEquals(Double.valueOf(9.0), empty.getResult().getLastValue());
+        assertEquals(9.0, empty.getResult().getMinimum(), 0.0);
+    }
+
+    @Test
+    public void testIntegralStrategies() throws Exception {
+        StatisticsVisitor integers = new StatisticsVisitor(new IntegerStrategy());
+        integers.setNoData(0);
+        for (double value : new double[] { 0, -3, 5, 0, 10 }) {
+            integers.visit(value);
+        }
+
+        // primitive values are boxed in the type of the strategy
+        StatisticsVisitorResult result = integers.getResult();
+        assertEquals(3, result.getCount());
+        assertEquals(2, result.getInvalidCount());
+        assertEquals(Integer.valueOf(-3), result.getFirstValue());
+        assertEquals(Integer.valueOf(10), result.getLastValue());
+        assertEquals(Integer.valueOf(0), result.getNoData());
+
+        StatisticsVisitor longs = new StatisticsVisitor(new LongStrategy());
+        longs.setNoData(Long.valueOf(-1));
+        longs.visit(Long.valueOf(-1));
+        longs.visit(Long.valueOf(3000000000L));
+        longs.visit(Long.valueOf(-3000000000L));
+
+        result = longs.getResult();
+        assertEquals(2, result.getCount());
+        assertEquals(1, result.getInvalidCount());
+        assertEquals(0.0, result.getSum(), 0.0);
+        assertEquals(9E18, result.getVariance(), 0.0);
+        assertEquals(Long.valueOf(3000000000L), result.getFirstValue());
+    }
+
+    @Test
+    public void testStrategyFromValue() throws Exception {
+        StatisticsVisitor visitor = new StatisticsVisitor((StatisticsStrategy) null);
+        visitor.visit("b");
+        visitor.visit((Object) null);
+        visitor.visit("a");
+
+        // strings are counted only
+        StatisticsVisitorResult result = visitor.getResult();
+        assertEquals(2, result.getCount());
+        assertEquals(1, result.getInvalidCount());
+        assertEquals("b", result.getFirstValue());
+        assertEquals("a", result.getLastValue());
+        assertEquals(0.0, result.getSum(), 0.0);
+    }
+
+    @Test
+    public void testClippedTiles() throws Exception {
+        // the image starts inside the first tile, as a cropped coverage, so later tiles are larger
+        Random random = new Random(3);
+        float[][] matrix = new float[37][45];
+        StatisticsVisitor expected = new StatisticsVisitor(new DoubleStrategy());
+        expected.setNoData(-9999);
+        for (float[] row : matrix) {
+            for (int col = 0; col < row.length; col++) {
+                row[col] = random.nextInt(10) == 0 ? -9999f : random.nextInt(100);
+                expected.visit((double) row[col]);
+            }
+        }
+
+        GridCoverage2D coverage = TestFixtures.createCoverage(matrix, 13, 11, 16, 1, 1, -9999);
+        StatisticsVisitor visitor = new StatisticsVisitor(new DoubleStrategy());
+        visitor.setNoData(-9999);
+        visitor.visit(coverage, 0);
+
+        StatisticsVisitorResult result = visitor.getResult();
+        assertEquals(expected.getResult().getCount(), result.getCount());
+        assertEquals(expected.getResult().getInvalidCount(), result.getInvalidCount());
+        assertEquals(expected.getResult().getSum(), result.getSum(), 0.0);
+        assertEquals(expected.getResult().getMinimum(), result.getMinimum(), 0.0);
+        assertEquals(expected.getResult().getMaximum(), result.getMaximum(), 0.0);
+    }
+}
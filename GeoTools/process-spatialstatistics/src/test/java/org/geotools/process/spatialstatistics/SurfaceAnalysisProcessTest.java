@@ -1,6 +1,8 @@
 package org.geotools.process.spatialstatistics;
 
+import java.awt.image.Raster;
 import java.io.File;
+import java.util.Arrays;
 
 import org.apache.commons.io.FileUtils;
 import org.geotools.coverage.grid.GridCoverage2D;
@@ -9,9 +11,11 @@ import org.geotools.coverage.grid.io.GridCoverage2DReader;
 import org.geotools.coverage.grid.io.GridFormatFinder;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.enumeration.SlopeType;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterAspectOperation;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterClipOperation;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterHelper;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterSlopeOperation;
 import org.geotools.util.factory.GeoTools;
 import org.junit.Test;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -39,4 +43,33 @@ public class SurfaceAnalysisProcessTest extends SpatialStatisticsTestCase {
         RasterHelper.describe(croped);
         assertNotNull(aspectOp.execute(croped));
     }
+
+    @Test
+    public void testParallelism() throws Exception {
+        File file = new File(FileUtils.toFile(url(this, null)), "sfdem.tif");
+
+        AbstractGridFormat format = GridFormatFinder.findFormat(file);
+        GridCoverage2DReader reader = format.getReader(file);
+        GridCoverage2D inputCoverage = reader.read(null);
+        assertNotNull(inputCoverage);
+
+        double[] expected = null;
+        for (int parallelism : new int[] { 1, 4 }) {
+            RasterSlopeOperation slopeOp = new RasterSlopeOperation();
+            slopeOp.setParallelism(parallelism);
+
+            GridCoverage2D slope = slopeOp.execute(inputCoverage, SlopeType.Degree, 1.0);
+            assertNotNull(slope);
+
+            Raster raster = slope.getRenderedImage().getData();
+            double[] samples = raster.getSamples(raster.getMinX(), raster.getMinY(),
+                    raster.getWidth(), raster.getHeight(), 0, (double[]) null);
+            if (expected == null) {
+                expected = samples;
+            } else {
+                // tiles are independent, results must not depend on the number of threads
+                assertTrue(Arrays.equals(expected, samples));
+            }
+        }
+    }
 }
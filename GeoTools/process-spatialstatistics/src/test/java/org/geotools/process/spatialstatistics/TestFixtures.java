@@ -0,0 +1,122 @@
+package org.geotools.process.spatialstatistics;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.imagen.PlanarImage;
+import org.eclipse.imagen.RasterFactory;
+import org.eclipse.imagen.TiledImage;
+import org.eclipse.imagen.media.range.NoDataContainer;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.factory.GeoTools;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * In-memory features and coverages shared by the tests that do not read the test-data directory.
+ */
+final class TestFixtures {
+
+    static final GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools
+            .getDefaultHints());
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Creates an empty feature collection, typeSpec as in {@link DataUtilities#createType(String, String)}.
+     */
+    static ListFeatureCollection createFeatures(String typeName, String typeSpec) {
+        try {
+            return new ListFeatureCollection(DataUtilities.createType(typeName, typeSpec));
+        } catch (SchemaException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Adds a feature with the values in the order of the attributes, its id is typeName.index.
+     */
+    static SimpleFeature add(ListFeatureCollection features, Object... values) {
+        String fid = features.getSchema().getTypeName() + "." + features.size();
+        SimpleFeature feature = SimpleFeatureBuilder.build(features.getSchema(), values, fid);
+        features.add(feature);
+        return feature;
+    }
+
+    /**
+     * Creates point features with the z of each coordinate in a Double field.
+     */
+    static ListFeatureCollection createPoints(Coordinate[] points, String valueField) {
+        ListFeatureCollection features = createFeatures("points",
+                "geom:Point," + valueField + ":Double");
+        for (Coordinate point : points) {
+            add(features, gf.createPoint(new Coordinate(point.x, point.y)),
+                    Double.valueOf(point.z));
+        }
+        return features;
+    }
+
+    static List<SimpleFeature> toList(SimpleFeatureCollection features) {
+        List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                list.add(featureIter.next());
+            }
+        } finally {
+            featureIter.close();
+        }
+        return list;
+    }
+
+    /**
+     * Creates a float coverage of matrix[row][col] with square tiles, the lower left corner at (0, 0).
+     */
+    static GridCoverage2D createCoverage(float[][] matrix, int tileSize, double cellWidth,
+            double cellHeight, double noData) {
+        return createCoverage(matrix, 0, 0, tileSize, cellWidth, cellHeight, noData);
+    }
+
+    /**
+     * Creates a float coverage whose image starts at (minX, minY) of a tile grid at (0, 0), so the first row and column of tiles are clipped as
+     * in a cropped coverage.
+     */
+    static GridCoverage2D createCoverage(float[][] matrix, int minX, int minY, int tileSize,
+            double cellWidth, double cellHeight, double noData) {
+        final int width = matrix[0].length;
+        final int height = matrix.length;
+
+        SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, tileSize,
+                tileSize, 1);
+        TiledImage image = new TiledImage(minX, minY, width, height, 0, 0, sm,
+                PlanarImage.createColorModel(sm));
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                image.setSample(minX + col, minY + row, 0, matrix[row][col]);
+            }
+        }
+
+        Map<String, Double> properties = new HashMap<String, Double>();
+        properties.put(NoDataContainer.GC_NODATA, Double.valueOf(noData));
+
+        ReferencedEnvelope extent = new ReferencedEnvelope(0, width * cellWidth, 0,
+                height * cellHeight, null);
+        return new GridCoverageFactory().create("coverage", image, extent, null, null,
+                properties);
+    }
+}
@@ -0,0 +1,101 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.Raster;
+import java.util.Random;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.gridcoverage.LocalThinPlateSplineInterpolator;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterInterpolationTPSOperation;
+import org.geotools.process.spatialstatistics.gridcoverage.ThinPlateSplineInterpolator;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+public class ThinPlateSplineTest {
+
+    private static final double SIZE = 200.0;
+
+    @Test
+    public void testLocalWithAllSamplesMatchesGlobal() {
+        // every local spline holds all the samples, so the blended surface is the global spline
+        Coordinate[] samples = createSamples(40, 31);
+        Envelope extent = new Envelope(0, SIZE, 0, SIZE);
+        ThinPlateSplineInterpolator global = new ThinPlateSplineInterpolator(samples);
+        LocalThinPlateSplineInterpolator local = new LocalThinPlateSplineInterpolator(samples,
+                extent, samples.length, 1);
+
+        for (double y = 0; y <= SIZE; y += 10) {
+            for (double x = 0; x <= SIZE; x += 10) {
+                assertEquals(global.getValue(new Coordinate(x, y)), local.getValue(x, y), 1E-6);
+            }
+        }
+    }
+
+    @Test
+    public void testLocalSplinesFollowGlobal() {
+        Coordinate[] samples = createSamples(600, 37);
+        Envelope extent = new Envelope(0, SIZE, 0, SIZE);
+        ThinPlateSplineInterpolator global = new ThinPlateSplineInterpolator(samples);
+        LocalThinPlateSplineInterpolator local = new LocalThinPlateSplineInterpolator(samples,
+                extent, LocalThinPlateSplineInterpolator.DEFAULT_NEIGHBORS, 1);
+        LocalThinPlateSplineInterpolator parallel = new LocalThinPlateSplineInterpolator(samples,
+                extent, LocalThinPlateSplineInterpolator.DEFAULT_NEIGHBORS, 4);
+
+        double maxDiff = 0;
+        for (double y = 10; y <= SIZE - 10; y += 5) {
+            for (double x = 10; x <= SIZE - 10; x += 5) {
+                double value = local.getValue(x, y);
+                assertEquals(value, parallel.getValue(x, y), 0.0);
+                double expected = global.getValue(new Coordinate(x, y));
+                maxDiff = Math.max(maxDiff, Math.abs(expected - value));
+            }
+        }
+        // within 1% of the range of the surface
+        assertTrue("max difference " + maxDiff, maxDiff < 0.5);
+    }
+
+    @Test
+    public void testAutomaticMode() throws Exception {
+        // more samples than a single spline takes: local splines of the default size
+        ListFeatureCollection features = TestFixtures.createPoints(createSamples(2100, 41), "z");
+        double[] automatic = interpolate(features, 0, 1);
+        assertArrayEquals(interpolate(features, LocalThinPlateSplineInterpolator.DEFAULT_NEIGHBORS,
+                1), automatic, 0.0);
+        assertArrayEquals(automatic, interpolate(features, 0, 4), 0.0);
+
+        // few samples: a single global spline
+        features = TestFixtures.createPoints(createSamples(100, 43), "z");
+        assertArrayEquals(interpolate(features, -1, 1), interpolate(features, 0, 1), 0.0);
+    }
+
+    private double[] interpolate(ListFeatureCollection features, int neighbors, int parallelism) {
+        RasterInterpolationTPSOperation operation = new RasterInterpolationTPSOperation();
+        operation.setExtentAndCellSize(new ReferencedEnvelope(0, SIZE, 0, SIZE, null), 4.0, 4.0);
+        operation.setNeighbors(neighbors);
+        operation.setParallelism(parallelism);
+
+        GridCoverage2D coverage = operation.execute(features, "z");
+        Raster raster = coverage.getRenderedImage().getData();
+        return raster.getSamples(raster.getMinX(), raster.getMinY(), raster.getWidth(),
+                raster.getHeight(), 0, (double[]) null);
+    }
+
+    // a smooth surface with a range of about 50
+    private Coordinate[] createSamples(int count, long seed) {
+        Random random = new Random(seed);
+        Coordinate[] samples = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * SIZE;
+            double y = random.nextDouble() * SIZE;
+            double z = 50 + 0.1 * x - 0.05 * y + 10 * Math.sin(x / 40) * Math.cos(y / 50);
+            samples[i] = new Coordinate(x, y, z);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,109 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import org.geotools.process.spatialstatistics.gridcoverage.TriangleRasterizer;
+import org.junit.Test;
+
+public class TriangleRasterizerTest {
+
+    @Test
+    public void testSharedEdges() throws Exception {
+        final int width = 37;
+        final int height = 29;
+        final double noData = -9999;
+
+        // two triangles per quad, interior vertices on cell centers so that edges cross them
+        TriangleRasterizer rasterizer = new TriangleRasterizer(width, height, 8, 8);
+        double[] us = { 0, 6.5, 12.5, 18.5, 24.5, 30.5, width };
+        double[] vs = { 0, 5.5, 11.5, 17.5, 23.5, height };
+        for (int i = 0; i < us.length - 1; i++) {
+            for (int j = 0; j < vs.length - 1; j++) {
+                rasterizer.add(us[i], vs[j], z(us[i], vs[j]), us[i + 1], vs[j],
+                        z(us[i + 1], vs[j]), us[i + 1], vs[j + 1], z(us[i + 1], vs[j + 1]));
+                rasterizer.add(us[i], vs[j], z(us[i], vs[j]), us[i + 1], vs[j + 1],
+                        z(us[i + 1], vs[j + 1]), us[i], vs[j + 1], z(us[i], vs[j + 1]));
+            }
+        }
+        rasterizer.build();
+
+        int written = 0;
+        double[] buffer = new double[64];
+        for (int tileY = 0; tileY < 4; tileY++) {
+            for (int tileX = 0; tileX < 5; tileX++) {
+                Arrays.fill(buffer, noData);
+                written += rasterizer.rasterize(tileX, tileY, buffer, noData);
+
+                Rectangle region = rasterizer.getTileRegion(tileX, tileY);
+                for (int row = 0; row < region.height; row++) {
+                    for (int col = 0; col < region.width; col++) {
+                        double expected = z(region.x + col + 0.5, region.y + row + 0.5);
+                        assertEquals(expected, buffer[row * region.width + col], 1E-9);
+                    }
+                }
+            }
+        }
+
+        // every cell is written exactly once
+        assertEquals(width * height, written);
+    }
+
+    @Test
+    public void testEdgeCases() throws Exception {
+        final double noData = -9999;
+        double[] buffer = new double[16];
+
+        // no triangles
+        TriangleRasterizer rasterizer = new TriangleRasterizer(4, 4, 4, 4);
+        assertEquals(0, rasterizer.rasterize(0, 0, buffer, noData));
+
+        // degenerate triangles are ignored
+        rasterizer.add(0, 0, 1, 2, 2, 1, 4, 4, 1);
+        rasterizer.add(1, 1, 1, 1, 1, 1, 3, 0, 1);
+        rasterizer.add(0, 0, 1, Double.NaN, 2, 1, 4, 0, 1);
+        assertEquals(0, rasterizer.getTriangleCount());
+
+        // triangles larger than the raster, split by the diagonal u + v = 4. the first one is
+        // negatively oriented, the second one has a NaN vertex
+        rasterizer.add(-10, -10, 0, -10, 14, 0, 14, -10, 0);
+        rasterizer.add(-10, 14, 0, 14, 14, Double.NaN, 14, -10, 0);
+        assertEquals(2, rasterizer.getTriangleCount());
+
+        Arrays.fill(buffer, 1.0);
+        assertEquals(16, rasterizer.rasterize(0, 0, buffer, noData));
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                double value = buffer[row * 4 + col];
+                if (row + col < 3) {
+                    assertEquals(0.0, value, 0.0);
+                } else if (row + col > 3) {
+                    assertEquals(noData, value, 0.0);
+                } else {
+                    assertTrue(value == 0.0 || value == noData);
+                }
+            }
+        }
+
+        // a triangle between the cell centers writes nothing
+        rasterizer = new TriangleRasterizer(4, 4, 2, 2);
+        rasterizer.add(1.6, 1.6, 5, 2.4, 1.6, 5, 2.0, 1.4, 5);
+        Arrays.fill(buffer, noData);
+        for (int tileY = 0; tileY < 2; tileY++) {
+            for (int tileX = 0; tileX < 2; tileX++) {
+                assertEquals(0, rasterizer.rasterize(tileX, tileY, buffer, noData));
+            }
+        }
+
+        // the tiles on the right and bottom are clipped to the raster
+        rasterizer = new TriangleRasterizer(5, 3, 4, 2);
+        assertEquals(new Rectangle(4, 2, 1, 1), rasterizer.getTileRegion(1, 1));
+    }
+
+    private double z(double u, double v) {
+        return 2.0 * u - 3.0 * v + 10.0;
+    }
+}
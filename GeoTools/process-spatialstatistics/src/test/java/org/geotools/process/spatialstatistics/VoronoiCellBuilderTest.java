@@ -0,0 +1,148 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.core.VoronoiCellBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class VoronoiCellBuilderTest {
+
+    static GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+
+    @Test
+    public void testTiledCells() throws Exception {
+        Random random = new Random(9);
+        List<Coordinate> sites = new ArrayList<Coordinate>();
+        for (int i = 0; i < 2000; i++) {
+            sites.add(new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 500));
+        }
+        sites.add(new Coordinate(sites.get(10))); // duplicated site
+
+        Envelope clipEnvelope = new Envelope(-100, 1100, -50, 550);
+        Geometry[] single = assertTiled(sites, clipEnvelope, 100);
+
+        double area = 0;
+        for (int i = 0; i < sites.size(); i++) {
+            assertNotNull(single[i]);
+            assertTrue(single[i].contains(gf.createPoint(sites.get(i))));
+            if (i < sites.size() - 1) {
+                area += single[i].getArea();
+            }
+        }
+        assertSame(single[10], single[sites.size() - 1]);
+        assertEquals(clipEnvelope.getArea(), area, 1E-3);
+    }
+
+    @Test
+    public void testClusteredSites() throws Exception {
+        // two dense clusters and a few sparse sites, whose cells reach far beyond their tiles
+        Random random = new Random(11);
+        List<Coordinate> sites = new ArrayList<Coordinate>();
+        for (int i = 0; i < 600; i++) {
+            double offset = i % 2 == 0 ? 0 : 990;
+            sites.add(new Coordinate(offset + random.nextDouble() * 10,
+                    offset + random.nextDouble() * 10));
+        }
+        for (int i = 0; i < 20; i++) {
+            sites.add(new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 1000));
+        }
+
+        assertTiled(sites, new Envelope(-200, 1200, -200, 1200), 50);
+    }
+
+    @Test
+    public void testCollinearSites() throws Exception {
+        List<Coordinate> sites = new ArrayList<Coordinate>();
+        for (int i = 0; i < 50; i++) {
+            sites.add(new Coordinate(i * 10, 0));
+        }
+
+        Geometry[] single = assertTiled(sites, new Envelope(-10, 500, -10, 10), 10);
+        for (int i = 1; i < sites.size() - 1; i++) {
+            assertEquals(200, single[i].getArea(), 1E-6);
+        }
+    }
+
+    @Test
+    public void testFewSites() throws Exception {
+        Envelope clipEnvelope = new Envelope(-10, 20, -10, 20);
+        assertEquals(0, new VoronoiCellBuilder(new ArrayList<Coordinate>(), clipEnvelope)
+                .build(gf).length);
+
+        // fewer sites than a tile
+        List<Coordinate> sites = new ArrayList<Coordinate>();
+        sites.add(new Coordinate(0, 0));
+        sites.add(new Coordinate(10, 0));
+        sites.add(new Coordinate(5, 10));
+        assertTiled(sites, clipEnvelope, 100);
+    }
+
+    @Test
+    public void testOutsideClipEnvelope() throws Exception {
+        List<Coordinate> sites = new ArrayList<Coordinate>();
+        sites.add(new Coordinate(0, 0));
+        sites.add(new Coordinate(10, 0));
+        sites.add(new Coordinate(100, 100));
+
+        Geometry[] cells = new VoronoiCellBuilder(sites, new Envelope(-5, 15, -5, 5)).build(gf);
+        assertEquals(100, cells[0].getArea(), 1E-9);
+        assertEquals(100, cells[1].getArea(), 1E-9);
+        assertNull(cells[2]);
+    }
+
+    @Test
+    public void testTolerance() throws Exception {
+        List<Coordinate> sites = new ArrayList<Coordinate>();
+        sites.add(new Coordinate(0, 0));
+        sites.add(new Coordinate(10, 0));
+        sites.add(new Coordinate(0.05, 0));
+        sites.add(new Coordinate(5, 10));
+
+        // the merged site gets the cell of the nearest site
+        VoronoiCellBuilder builder = new VoronoiCellBuilder(sites, new Envelope(-10, 20, -10, 20));
+        builder.setTolerance(0.1);
+        Geometry[] cells = builder.build(gf);
+        assertNotNull(cells[0]);
+        assertSame(cells[0], cells[2]);
+        assertTrue(cells[2].contains(gf.createPoint(sites.get(2))));
+    }
+
+    // builds the cells with tiles, single and parallel, and compares them with one triangulation
+    private Geometry[] assertTiled(List<Coordinate> sites, Envelope clipEnvelope, int tileSize) {
+        Geometry[] single = new VoronoiCellBuilder(sites, clipEnvelope).build(gf);
+        assertEquals(sites.size(), single.length);
+
+        for (int parallelism : new int[] { 1, 4 }) {
+            VoronoiCellBuilder builder = new VoronoiCellBuilder(sites, clipEnvelope);
+            builder.setTileSize(tileSize);
+            builder.setParallelism(parallelism);
+            Geometry[] tiled = builder.build(gf);
+
+            assertEquals(single.length, tiled.length);
+            for (int i = 0; i < single.length; i++) {
+                assertNotNull(tiled[i]);
+                assertEquals(single[i].getArea(), tiled[i].getArea(), 1E-6);
+                Envelope expected = single[i].getEnvelopeInternal();
+                Envelope actual = tiled[i].getEnvelopeInternal();
+                assertEquals(expected.getMinX(), actual.getMinX(), 1E-6);
+                assertEquals(expected.getMaxX(), actual.getMaxX(), 1E-6);
+                assertEquals(expected.getMinY(), actual.getMinY(), 1E-6);
+                assertEquals(expected.getMaxY(), actual.getMaxY(), 1E-6);
+            }
+        }
+        return single;
+    }
+}
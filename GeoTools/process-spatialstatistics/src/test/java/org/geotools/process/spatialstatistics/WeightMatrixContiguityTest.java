@@ -0,0 +1,100 @@
+package org.geotools.process.spatialstatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.process.spatialstatistics.core.SpatialWeights;
+import org.geotools.process.spatialstatistics.core.WeightMatrix;
+import org.geotools.process.spatialstatistics.core.WeightMatrixContiguity;
+import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
+import org.junit.Test;
+import org.locationtech.jts.io.WKTReader;
+
+public class WeightMatrixContiguityTest {
+
+    // A, B and C meet in a T-junction: the corners of B and C at (1 1) lie on the top edge of A,
+    // which has no vertex there. E lies on the top edge of D without a shared vertex, and the
+    // apex of F touches the middle of the top edge of G. H and I overlap with crossing edges.
+    private static final String[][] POLYGONS = {
+            { "A", "POLYGON ((0 0, 2 0, 2 1, 0 1, 0 0))" },
+            { "B", "POLYGON ((0 1, 1 1, 1 2, 0 2, 0 1))" },
+            { "C", "POLYGON ((1 1, 2 1, 2 2, 1 2, 1 1))" },
+            { "D", "POLYGON ((3 0, 5 0, 5 1, 3 1, 3 0))" },
+            { "E", "POLYGON ((3.5 1, 4.5 1, 4.5 2, 3.5 2, 3.5 1))" },
+            { "F", "POLYGON ((6.5 2, 7 1, 7.5 2, 6.5 2))" },
+            { "G", "POLYGON ((6 0, 8 0, 8 1, 6 1, 6 0))" },
+            { "H", "POLYGON ((10 0, 12 0, 12 2, 10 2, 10 0))" },
+            { "I", "POLYGON ((11 1, 13 1, 13 3, 11 3, 11 1))" } };
+
+    @Test
+    public void testQueen() throws Exception {
+        assertEquals(pairs("A-B", "A-C", "B-C", "D-E", "F-G", "H-I"),
+                neighbors(ContiguityType.Queen));
+    }
+
+    @Test
+    public void testRook() throws Exception {
+        assertEquals(pairs("A-B", "A-C", "B-C", "D-E", "H-I"), neighbors(ContiguityType.Rook));
+    }
+
+    @Test
+    public void testBishops() throws Exception {
+        assertEquals(pairs("F-G"), neighbors(ContiguityType.Bishops));
+    }
+
+    @Test
+    public void testSnapTolerance() throws Exception {
+        // the corner of K is slightly above the top edge of J
+        String[][] polygons = { { "J", "POLYGON ((0 0, 2 0, 2 1, 0 1, 0 0))" },
+                { "K", "POLYGON ((0.5 1.0000001, 1 1.0000001, 1 2, 0.5 2, 0.5 1.0000001))" } };
+        assertEquals(pairs(), neighbors(polygons, ContiguityType.Queen, 0.0));
+        assertEquals(pairs("J-K"), neighbors(polygons, ContiguityType.Rook, 0.001));
+    }
+
+    private Set<String> neighbors(ContiguityType contiguityType) throws Exception {
+        return neighbors(POLYGONS, contiguityType, 0.0);
+    }
+
+    private Set<String> neighbors(String[][] polygons, ContiguityType contiguityType,
+            double snapTolerance) throws Exception {
+        ListFeatureCollection features = TestFixtures.createFeatures("polygons",
+                "geom:Polygon,name:String");
+        WKTReader reader = new WKTReader();
+        for (String[] polygon : polygons) {
+            TestFixtures.add(features, reader.read(polygon[1]), polygon[0]);
+        }
+
+        WeightMatrixContiguity contiguity = new WeightMatrixContiguity();
+        contiguity.setContiguityType(contiguityType);
+        contiguity.setSnapTolerance(snapTolerance);
+        WeightMatrix matrix = contiguity.execute(features, "name");
+
+        Set<String> pairs = new TreeSet<String>();
+        SpatialWeights sw = matrix.getSpatialWeights();
+        for (int row = 0; row < sw.size(); row++) {
+            for (int k = sw.getRowStart(row); k < sw.getRowEnd(row); k++) {
+                String primary = matrix.getFeatureID(row).toString();
+                String secondary = matrix.getFeatureID(sw.getNeighbor(k)).toString();
+                if (primary.compareTo(secondary) < 0) {
+                    pairs.add(primary + "-" + secondary);
+                } else {
+                    // both directions are visited
+                    assertTrue(pairs.contains(secondary + "-" + primary));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private Set<String> pairs(String... pairs) {
+        Set<String> result = new TreeSet<String>();
+        for (String pair : pairs) {
+            result.add(pair);
+        }
+        return result;
+    }
+}